@@ -57,6 +57,15 @@ public class DiscretePalette extends Palette
 		return out.toString();
 	}
 
+	/**
+	 * Gets the number of colors in this palette
+	 * @return The number of colors
+	 */
+	public int getColorCount()
+	{
+		return m_colors.length;
+	}
+
 	@Override
 	public String getHexColor(int color_nb) 
 	{
@@ -0,0 +1,261 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+import ca.uqac.lif.mtnp.util.DiskStore;
+import ca.uqac.lif.mtnp.util.HashHelper;
+
+/**
+ * Cache of plot images, indexed by the contents that determine each
+ * image. A plot that is given a cache (see
+ * {@link Plot#setImageCache(ImageCache)}) first computes a key
+ * from everything that influences its picture: for a Gnuplot plot, this
+ * is the script sent to Gnuplot; for a GRAL plot, this is the processed
+ * table and the settings of the plot. If an image is already present
+ * for this key, it is returned without calling Gnuplot or GRAL.
+ * <p>
+ * The cache has two tiers:
+ * <ol>
+ * <li>An in-memory tier, which keeps the most recently used images up to
+ * a maximum number of bytes</li>
+ * <li>An optional on-disk tier, which stores every image as a file in a
+ * directory, and can therefore be reused from one run to the next</li>
+ * </ol>
+ * The same cache can be shared by any number of plots, and is safe to
+ * use from multiple threads.
+ * @author Sylvain Hallé
+ */
+public class ImageCache
+{
+	/**
+	 * The images kept in memory, from least to most recently used
+	 */
+	protected final LinkedHashMap<String,byte[]> m_images;
+
+	/**
+	 * The maximum number of bytes of the images kept in memory
+	 */
+	protected final long m_maxBytes;
+
+	/**
+	 * The number of bytes of the images currently kept in memory
+	 */
+	protected long m_bytes = 0;
+
+	/**
+	 * The on-disk tier of the cache, or {@code null} if images are only
+	 * kept in memory
+	 */
+	protected final DiskStore m_disk;
+
+	/**
+	 * The number of images found in memory
+	 */
+	protected long m_hits = 0;
+
+	/**
+	 * The number of images found on disk
+	 */
+	protected long m_diskHits = 0;
+
+	/**
+	 * The number of images that were found in neither tier
+	 */
+	protected long m_misses = 0;
+
+	/**
+	 * Creates a new image cache that only keeps images in memory
+	 * @param max_bytes The maximum number of bytes of the images kept
+	 *   in memory
+	 */
+	public ImageCache(long max_bytes)
+	{
+		this(max_bytes, null);
+	}
+
+	/**
+	 * Creates a new image cache
+	 * @param max_bytes The maximum number of bytes of the images kept
+	 *   in memory
+	 * @param directory The directory where images are stored on disk. Set
+	 *   to {@code null} to keep images only in memory.
+	 */
+	public ImageCache(long max_bytes, File directory)
+	{
+		super();
+		m_images = new LinkedHashMap<String,byte[]>(16, 0.75f, true);
+		m_maxBytes = max_bytes;
+		if (directory == null)
+		{
+			m_disk = null;
+		}
+		else
+		{
+			m_disk = new DiskStore(directory);
+		}
+	}
+
+	/**
+	 * Computes the key under which an image is stored
+	 * @param contents A string containing everything that determines
+	 *   the image
+	 * @param type The image type
+	 * @param with_caption Whether the image shows the plot's caption
+	 * @return The key
+	 */
+	public static String getKey(String contents, ImageType type, boolean with_caption)
+	{
+		return HashHelper.hash(type + "\n" + with_caption + "\n" + contents);
+	}
+
+	/**
+	 * Gets the image stored under a key
+	 * @param key The key
+	 * @return The bytes of the image, or {@code null} if no image is
+	 *   stored under this key
+	 */
+	public byte[] get(String key)
+	{
+		synchronized (this)
+		{
+			byte[] image = m_images.get(key);
+			if (image != null)
+			{
+				m_hits++;
+				return image;
+			}
+		}
+		byte[] image = null;
+		if (m_disk != null)
+		{
+			image = m_disk.get(key);
+		}
+		synchronized (this)
+		{
+			if (image == null)
+			{
+				m_misses++;
+				return null;
+			}
+			m_diskHits++;
+			putInMemory(key, image);
+		}
+		return image;
+	}
+
+	/**
+	 * Stores an image under a key
+	 * @param key The key
+	 * @param image The bytes of the image
+	 */
+	public void put(String key, byte[] image)
+	{
+		synchronized (this)
+		{
+			putInMemory(key, image);
+		}
+		if (m_disk != null)
+		{
+			m_disk.put(key, image);
+		}
+	}
+
+	/**
+	 * Stores an image in the in-memory tier, and evicts the least recently
+	 * used images if the tier exceeds its maximum size. This method must
+	 * be called while holding the lock on this object.
+	 * @param key The key
+	 * @param image The bytes of the image
+	 */
+	protected void putInMemory(String key, byte[] image)
+	{
+		byte[] previous = m_images.put(key, image);
+		if (previous != null)
+		{
+			m_bytes -= previous.length;
+		}
+		m_bytes += image.length;
+		Iterator<Map.Entry<String,byte[]>> it = m_images.entrySet().iterator();
+		while (m_bytes > m_maxBytes && it.hasNext())
+		{
+			Map.Entry<String,byte[]> entry = it.next();
+			m_bytes -= entry.getValue().length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Removes all the images from the cache, in memory and on disk
+	 */
+	public void clear()
+	{
+		synchronized (this)
+		{
+			m_images.clear();
+			m_bytes = 0;
+		}
+		if (m_disk != null)
+		{
+			m_disk.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of times an image was found in memory
+	 * @return The number of hits
+	 */
+	public synchronized long getHits()
+	{
+		return m_hits;
+	}
+
+	/**
+	 * Gets the number of times an image was not in memory, but was found
+	 * on disk
+	 * @return The number of hits
+	 */
+	public synchronized long getDiskHits()
+	{
+		return m_diskHits;
+	}
+
+	/**
+	 * Gets the number of times an image was found in neither tier of the
+	 * cache
+	 * @return The number of misses
+	 */
+	public synchronized long getMisses()
+	{
+		return m_misses;
+	}
+
+	/**
+	 * Gets the number of bytes of the images currently kept in memory
+	 * @return The number of bytes
+	 */
+	public synchronized long getSize()
+	{
+		return m_bytes;
+	}
+}
@@ -17,6 +17,9 @@
  */
 package ca.uqac.lif.mtnp.plot;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -38,6 +41,16 @@ public abstract class Plot
 	 */
 	public static enum ImageType {PNG, DUMB, PDF, CACA};
 
+	/**
+	 * The width of an image, in pixels, when none is specified
+	 */
+	public static final transient int DEFAULT_WIDTH = 640;
+
+	/**
+	 * The height of an image, in pixels, when none is specified
+	 */
+	public static final transient int DEFAULT_HEIGHT = 480;
+
 	/**
 	 * An 8-color preset palette for qualitative data:
 	 * <span style="color:#E41A1C">&#x25A0;</span>
@@ -93,12 +106,30 @@ public abstract class Plot
 	 */
 	public static final transient Palette EGA;
 
+	/**
+	 * An 8-color preset palette for sequential data, going from light
+	 * yellow to dark red:
+	 * <span style="color:#FFFFCC">&#x25A0;</span>
+	 * <span style="color:#FFEDA0">&#x25A0;</span>
+	 * <span style="color:#FED976">&#x25A0;</span>
+	 * <span style="color:#FEB24C">&#x25A0;</span>
+	 * <span style="color:#FD8D3C">&#x25A0;</span>
+	 * <span style="color:#FC4E2A">&#x25A0;</span>
+	 * <span style="color:#E31A1C">&#x25A0;</span>
+	 * <span style="color:#B10026">&#x25A0;</span>
+	 * <p>
+	 * This palette corresponds to the preset <tt>YlOrRd.plt</tt> from
+	 * <a href="https://github.com/aschn/gnuplot-colorbrewer">gnuplot-colorbrewer</a>.
+	 */
+	public static final transient Palette SEQUENTIAL_1;
+
 	static {
 		// Setup of discrete palettes
 		// Found from https://github.com/aschn/gnuplot-colorbrewer
 		QUALITATIVE_1 = new DiscretePalette("#E41A1C", "#377EB8", "#4DAF4A", "#984EA3", "#FF7F00", "#FFFF33", "#A65628", "#F781BF");
 		QUALITATIVE_2 = new DiscretePalette("#66C2A5", "#FC8D62", "#8DA0CB", "#E78AC3", "#A6D854", "#FFD92F", "#E5C494", "#B3B3B3");
 		QUALITATIVE_3 = new DiscretePalette("#8DD3C7", "#FFFFB3", "#BEBADA", "#FB8072", "#80B1D3", "#FDB462", "#B3DE69", "#FCCDE5");
+		SEQUENTIAL_1 = new DiscretePalette("#FFFFCC", "#FFEDA0", "#FED976", "#FEB24C", "#FD8D3C", "#FC4E2A", "#E31A1C", "#B10026");
 		EGA = new DiscretePalette("#5555FF", "#55FF55", "#55FFFF", "#FF5555", "#FF55FF", "#FFFF55", "#0000AA", "#00AA00", "#00AAAA", "#AA0000", "#AA00AA", "#AA5500", "#AAAAAA", "#555555", "#FFFFFF", "#000000");
 	}
 
@@ -148,17 +179,27 @@ public abstract class Plot
 	 */
 	protected String m_nickname = "";
 
+	/**
+	 * A cache where the images produced by this plot are stored, or
+	 * {@code null} if images are not cached
+	 */
+	protected transient ImageCache m_imageCache = null;
+
 	/**
 	 * The bytes of a blank PNG image, used as a placeholder when no plot can
 	 * be drawn
+	 * @deprecated Use {@link #getBlankImage(ImageType)} instead
 	 */
-	public static final transient byte[] s_blankImagePng = FileHelper.internalFileToBytes(Plot.class, "blank.png");
+	@Deprecated
+	public static final transient byte[] s_blankImagePng = BlankImages.PNG;
 
 	/**
 	 * The bytes of a blank PDF image, used as a placeholder when no plot can
 	 * be drawn
+	 * @deprecated Use {@link #getBlankImage(ImageType)} instead
 	 */
-	public static final transient byte[] s_blankImagePdf = FileHelper.internalFileToBytes(Plot.class, "blank.pdf");
+	@Deprecated
+	public static final transient byte[] s_blankImagePdf = BlankImages.PDF;
 
 	/**
 	 * Creates a new plot from a table
@@ -312,6 +353,29 @@ public abstract class Plot
 		return m_hasKey;
 	}
 
+	/**
+	 * Sets the cache where the images produced by this plot are stored.
+	 * When a cache is set, an image whose contents have not changed since
+	 * the last time it was produced is read from the cache instead of
+	 * being drawn again.
+	 * @param cache The cache. Set to {@code null} to disable caching.
+	 * @return This plot
+	 */
+	public Plot setImageCache(ImageCache cache)
+	{
+		m_imageCache = cache;
+		return this;
+	}
+
+	/**
+	 * Gets the cache where the images produced by this plot are stored
+	 * @return The cache, or {@code null} if images are not cached
+	 */
+	public ImageCache getImageCache()
+	{
+		return m_imageCache;
+	}
+
 	/**
 	 * Gets an image from this plot
 	 * @param type The image type to produce
@@ -322,6 +386,57 @@ public abstract class Plot
 	 */
 	public abstract byte[] getImage(ImageType type, boolean with_caption);
 
+	/**
+	 * Gets an image of a given size from this plot
+	 * @param type The image type to produce
+	 * @param with_caption Set to false to remove the caption from the image
+	 *   (even if a caption is defined for the plot)
+	 * @param width The width of the image, in pixels
+	 * @param height The height of the image, in pixels
+	 * @return An array of bytes containing the image, or {@code null} if
+	 *   the image cannot be produced
+	 */
+	public byte[] getImage(ImageType type, boolean with_caption, int width, int height)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try
+		{
+			getImage(type, with_caption, width, height, baos);
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Writes an image of a given size from this plot to a stream. The
+	 * stream is not closed by this method.
+	 * <p>
+	 * By default, this writes the image produced by
+	 * {@link #getImage(ImageType, boolean)}, at the size chosen by the
+	 * plot; plots that can draw at any size, or send their image to the
+	 * stream as it is produced, override this method.
+	 * @param type The image type to produce
+	 * @param with_caption Set to false to remove the caption from the image
+	 *   (even if a caption is defined for the plot)
+	 * @param width The width of the image, in pixels
+	 * @param height The height of the image, in pixels
+	 * @param out The stream where the image is written
+	 * @throws IOException If the image cannot be produced or written to
+	 *   the stream
+	 */
+	public void getImage(ImageType type, boolean with_caption, int width, int height, OutputStream out) throws IOException
+	{
+		byte[] image = getImage(type, with_caption);
+		if (image == null)
+		{
+			throw new IOException("The plot cannot produce an image");
+		}
+		out.write(image);
+	}
+
 	/**
 	 * Gets an image from this plot
 	 * @param type The image type to produce
@@ -333,6 +448,49 @@ public abstract class Plot
 		return getImage(type, true);
 	}
 
+	/**
+	 * Determines if this plot is drawn by an external process, rather than
+	 * within the JVM. This is used to decide how many plots can be drawn at
+	 * the same time (see {@link PlotRenderingService}).
+	 * @return {@code true} if the plot launches an external process,
+	 *   {@code false} otherwise
+	 */
+	public boolean isExternal()
+	{
+		return false;
+	}
+
+	/**
+	 * Gets the blank image used as a placeholder when no plot can be drawn
+	 * @param type The image type
+	 * @return The bytes of the blank image for this type
+	 */
+	public static byte[] getBlankImage(ImageType type)
+	{
+		if (type == ImageType.PDF)
+		{
+			return BlankImages.PDF;
+		}
+		return BlankImages.PNG;
+	}
+
+	/**
+	 * Holds the bytes of the blank images, loaded from the resources of
+	 * the package
+	 */
+	private static class BlankImages
+	{
+		/**
+		 * The bytes of a blank PNG image
+		 */
+		static final byte[] PNG = FileHelper.internalFileToBytes(Plot.class, "blank.png");
+
+		/**
+		 * The bytes of a blank PDF image
+		 */
+		static final byte[] PDF = FileHelper.internalFileToBytes(Plot.class, "blank.pdf");
+	}
+
 	/**
 	 * Transforms a data table before being plotted. A plot can override this
 	 * method to perform pre-processing of the table.
@@ -0,0 +1,367 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+import ca.uqac.lif.mtnp.table.EvaluationContext;
+
+/**
+ * Renders many plots concurrently. Plots are dispatched to one of two
+ * thread pools:
+ * <ul>
+ * <li>Plots drawn by an external process (see {@link Plot#isExternal()})
+ * go to a pool whose size is the maximum number of processes allowed to
+ * run at the same time. The threads of this pool spend most of their
+ * time waiting for the process to finish.</li>
+ * <li>Other plots, which are drawn within the JVM, go to a pool sized
+ * according to the number of available processors.</li>
+ * </ul>
+ * The number of plots that have been submitted but are not yet finished
+ * is bounded. When this bound is reached, {@link #submit(Plot, ImageType, boolean)
+ * submit()} blocks until a plot is done, so that a caller producing
+ * plots faster than they can be drawn does not accumulate an unbounded
+ * queue of pending work.
+ * <p>
+ * Each plot is returned as a {@link RenderResult}, which records the
+ * time spent waiting in the queue and the time spent drawing the image.
+ * <p>
+ * When many plots are drawn from the same transformed tables, an
+ * {@link EvaluationContext} can be given to the service with
+ * {@link #setEvaluationContext(EvaluationContext)}; the threads of the
+ * service then enter this context while drawing, so that each of these
+ * tables is computed only once.
+ * @author Sylvain Hallé
+ */
+public class PlotRenderingService
+{
+	/**
+	 * The pool used for plots drawn by an external process
+	 */
+	protected final ExecutorService m_processPool;
+
+	/**
+	 * The pool used for plots drawn within the JVM
+	 */
+	protected final ExecutorService m_cpuPool;
+
+	/**
+	 * The permits limiting the number of plots that are submitted but not
+	 * yet finished
+	 */
+	protected final Semaphore m_pending;
+
+	/**
+	 * The context entered while drawing plots, if any
+	 */
+	protected volatile EvaluationContext m_context = null;
+
+	/**
+	 * Creates a new rendering service with default settings: as many
+	 * external processes and in-process renderers as there are available
+	 * processors, and up to 64 pending plots
+	 */
+	public PlotRenderingService()
+	{
+		this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(), 64);
+	}
+
+	/**
+	 * Creates a new rendering service
+	 * @param max_processes The maximum number of external processes that
+	 *   can run at the same time
+	 * @param cpu_threads The number of threads used to draw plots within
+	 *   the JVM
+	 * @param max_pending The maximum number of plots that can be submitted
+	 *   and not yet finished
+	 */
+	public PlotRenderingService(int max_processes, int cpu_threads, int max_pending)
+	{
+		super();
+		m_processPool = Executors.newFixedThreadPool(Math.max(1, max_processes), new DaemonThreadFactory("mtnp-process"));
+		m_cpuPool = Executors.newFixedThreadPool(Math.max(1, cpu_threads), new DaemonThreadFactory("mtnp-cpu"));
+		m_pending = new Semaphore(Math.max(1, max_pending));
+	}
+
+	/**
+	 * Sets the context entered by the threads of this service while drawing
+	 * plots
+	 * @param context The context, or {@code null} to draw plots without
+	 *   a context
+	 * @return This service
+	 */
+	public PlotRenderingService setEvaluationContext(EvaluationContext context)
+	{
+		m_context = context;
+		return this;
+	}
+
+	/**
+	 * Submits a plot to be drawn. If the maximum number of pending plots
+	 * is reached, this method blocks until one of them is finished.
+	 * @param plot The plot
+	 * @param type The image type to produce
+	 * @param with_caption Set to false to remove the caption from the image
+	 * @return A future giving access to the result
+	 * @throws InterruptedException If the thread is interrupted while
+	 *   waiting for a plot to finish
+	 */
+	public Future<RenderResult> submit(final Plot plot, final ImageType type, final boolean with_caption) throws InterruptedException
+	{
+		m_pending.acquire();
+		final long submitted = System.nanoTime();
+		ExecutorService pool = plot.isExternal() ? m_processPool : m_cpuPool;
+		final EvaluationContext context = m_context;
+		try
+		{
+			return pool.submit(new Callable<RenderResult>()
+			{
+				@Override
+				public RenderResult call()
+				{
+					long started = System.nanoTime();
+					if (context != null)
+					{
+						context.enter();
+					}
+					try
+					{
+						byte[] image = null;
+						Throwable error = null;
+						try
+						{
+							image = plot.getImage(type, with_caption);
+						}
+						catch (RuntimeException e)
+						{
+							error = e;
+						}
+						return new RenderResult(plot, image, error, started - submitted, System.nanoTime() - started);
+					}
+					finally
+					{
+						if (context != null)
+						{
+							context.exit();
+						}
+						m_pending.release();
+					}
+				}
+			});
+		}
+		catch (RuntimeException e)
+		{
+			// The pool refused the task (e.g. the service is shut down)
+			m_pending.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Draws a collection of plots and waits for all of them to finish
+	 * @param plots The plots
+	 * @param type The image type to produce
+	 * @param with_caption Set to false to remove the caption from the images
+	 * @return The results, in the same order as the plots
+	 * @throws InterruptedException If the thread is interrupted while
+	 *   waiting for the plots
+	 */
+	public List<RenderResult> renderAll(Collection<? extends Plot> plots, ImageType type, boolean with_caption) throws InterruptedException
+	{
+		List<Future<RenderResult>> futures = new ArrayList<Future<RenderResult>>(plots.size());
+		for (Plot p : plots)
+		{
+			futures.add(submit(p, type, with_caption));
+		}
+		List<RenderResult> results = new ArrayList<RenderResult>(plots.size());
+		for (Future<RenderResult> f : futures)
+		{
+			try
+			{
+				results.add(f.get());
+			}
+			catch (ExecutionException e)
+			{
+				// Cannot happen: the task catches its own exceptions
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Stops the service. Plots already submitted are still drawn, but no
+	 * new plot can be submitted.
+	 */
+	public void shutdown()
+	{
+		m_processPool.shutdown();
+		m_cpuPool.shutdown();
+	}
+
+	/**
+	 * The result of drawing a plot
+	 */
+	public static class RenderResult
+	{
+		/**
+		 * The plot
+		 */
+		protected final Plot m_plot;
+
+		/**
+		 * The image produced by the plot
+		 */
+		protected final byte[] m_image;
+
+		/**
+		 * The error thrown while drawing the plot, if any
+		 */
+		protected final Throwable m_error;
+
+		/**
+		 * The time spent waiting before drawing started, in nanoseconds
+		 */
+		protected final long m_waitTime;
+
+		/**
+		 * The time spent drawing the plot, in nanoseconds
+		 */
+		protected final long m_renderTime;
+
+		/**
+		 * Creates a new result
+		 * @param plot The plot
+		 * @param image The image produced by the plot
+		 * @param error The error thrown while drawing the plot, if any
+		 * @param wait_time The time spent waiting before drawing started,
+		 *   in nanoseconds
+		 * @param render_time The time spent drawing the plot, in nanoseconds
+		 */
+		public RenderResult(Plot plot, byte[] image, Throwable error, long wait_time, long render_time)
+		{
+			super();
+			m_plot = plot;
+			m_image = image;
+			m_error = error;
+			m_waitTime = wait_time;
+			m_renderTime = render_time;
+		}
+
+		/**
+		 * Gets the plot
+		 * @return The plot
+		 */
+		public Plot getPlot()
+		{
+			return m_plot;
+		}
+
+		/**
+		 * Gets the image produced by the plot
+		 * @return The bytes of the image, or {@code null} if the image could
+		 *   not be produced
+		 */
+		public byte[] getImage()
+		{
+			return m_image;
+		}
+
+		/**
+		 * Gets the error thrown while drawing the plot
+		 * @return The error, or {@code null} if none was thrown
+		 */
+		public Throwable getError()
+		{
+			return m_error;
+		}
+
+		/**
+		 * Gets the time the plot spent waiting before being drawn
+		 * @return The time, in nanoseconds
+		 */
+		public long getWaitTime()
+		{
+			return m_waitTime;
+		}
+
+		/**
+		 * Gets the time spent drawing the plot
+		 * @return The time, in nanoseconds
+		 */
+		public long getRenderTime()
+		{
+			return m_renderTime;
+		}
+
+		/**
+		 * Gets the total time between the submission of the plot and the
+		 * moment its image was available
+		 * @return The time, in nanoseconds
+		 */
+		public long getLatency()
+		{
+			return m_waitTime + m_renderTime;
+		}
+	}
+
+	/**
+	 * Creates daemon threads, so that the pools of the service never
+	 * prevent the JVM from exiting
+	 */
+	protected static class DaemonThreadFactory implements ThreadFactory
+	{
+		/**
+		 * The prefix given to the name of each thread
+		 */
+		protected final String m_prefix;
+
+		/**
+		 * A counter used to number the threads
+		 */
+		protected int m_count = 0;
+
+		/**
+		 * Creates a new thread factory
+		 * @param prefix The prefix given to the name of each thread
+		 */
+		public DaemonThreadFactory(String prefix)
+		{
+			super();
+			m_prefix = prefix;
+		}
+
+		@Override
+		public synchronized Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, m_prefix + "-" + (++m_count));
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot.gnuplot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.mtnp.DataFormatter;
+import ca.uqac.lif.mtnp.plot.Plot;
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+import ca.uqac.lif.mtnp.util.CommandRunner;
+import ca.uqac.lif.mtnp.util.FileHelper;
+
+/**
+ * Renders multiple {@link GnuPlot}s with a single invocation of Gnuplot.
+ * Rather than launching one Gnuplot process per plot, the renderer
+ * concatenates the instructions of every plot into a single script,
+ * where each plot writes its output to a distinct temporary file and
+ * is followed by a <tt>reset</tt>. This avoids paying the cost of
+ * process startup and terminal initialization for each plot.
+ * <p>
+ * When Gnuplot reads a script from its standard input, it stops at the
+ * first error it encounters. If this happens, the plot that caused the
+ * error is given the blank image, and the renderer launches Gnuplot again
+ * on the plots that come after it. A failure in one plot therefore
+ * never affects the images of the other plots.
+ *
+ * @author Sylvain Hallé
+ */
+public class BatchRenderer
+{
+	/**
+	 * The plots to render
+	 */
+	protected final List<GnuPlot> m_plots;
+
+	/**
+	 * Creates a new batch renderer
+	 * @param plots The plots to render
+	 */
+	public BatchRenderer(Collection<? extends GnuPlot> plots)
+	{
+		super();
+		m_plots = new ArrayList<GnuPlot>(plots.size());
+		m_plots.addAll(plots);
+	}
+
+	/**
+	 * Gets the images of all the plots handled by this renderer
+	 * @param term The image type to produce
+	 * @param with_caption Set to false to remove the caption from the images
+	 * @return A map associating each plot to the bytes of its image. The
+	 *   map enumerates the plots in the order they were given to the
+	 *   renderer. Plots that cannot be drawn are associated to the blank
+	 *   image for the given type.
+	 */
+	public Map<Plot,byte[]> getImages(ImageType term, boolean with_caption)
+	{
+		Map<Plot,byte[]> images = new LinkedHashMap<Plot,byte[]>();
+		if (m_plots.isEmpty())
+		{
+			return images;
+		}
+		if (!GnuplotBackend.get().supportsTerminal(GnuPlot.getTerminalName(term)))
+		{
+			// Gnuplot cannot produce these pictures: give every plot the
+			// blank image without launching it
+			for (GnuPlot gp : m_plots)
+			{
+				images.put(gp, Plot.getBlankImage(term));
+			}
+			return images;
+		}
+		String[] scripts = new String[m_plots.size()];
+		File[] files = new File[m_plots.size()];
+		try
+		{
+			for (int i = 0; i < scripts.length; i++)
+			{
+				try
+				{
+					scripts[i] = m_plots.get(i).toGnuplot(term, with_caption);
+				}
+				catch (RuntimeException e)
+				{
+					// This plot cannot even produce its instructions; it will
+					// be given the blank image
+					scripts[i] = null;
+				}
+				files[i] = File.createTempFile("mtnp", "." + Plot.getTypeExtension(term));
+			}
+			int start = 0;
+			while (start < scripts.length)
+			{
+				CommandRunner runner = run(getScript(scripts, files, start));
+				int next = start;
+				while (next < scripts.length && (scripts[next] == null || files[next].length() > 0))
+				{
+					if (scripts[next] == null)
+					{
+						images.put(m_plots.get(next), Plot.getBlankImage(term));
+					}
+					else
+					{
+						images.put(m_plots.get(next), FileHelper.readToBytes(files[next]));
+					}
+					next++;
+				}
+				if (runner == null || runner.getErrorCode() == -1)
+				{
+					// The command was cancelled or Gnuplot could not be
+					// launched: give up on the remaining plots
+					break;
+				}
+				if (next < scripts.length)
+				{
+					// Gnuplot stopped on the first plot that did not produce
+					// an image; skip it and start again after it
+					images.put(m_plots.get(next), Plot.getBlankImage(term));
+					next++;
+				}
+				start = next;
+			}
+		}
+		catch (IOException e)
+		{
+			// Temporary files cannot be created; fall back to blank images
+		}
+		finally
+		{
+			for (File f : files)
+			{
+				if (f != null)
+				{
+					f.delete();
+				}
+			}
+		}
+		for (GnuPlot gp : m_plots)
+		{
+			if (!images.containsKey(gp))
+			{
+				images.put(gp, Plot.getBlankImage(term));
+			}
+		}
+		return images;
+	}
+
+	/**
+	 * Concatenates the instructions of a range of plots into a single
+	 * Gnuplot script
+	 * @param scripts The instructions of each plot. Plots whose instructions
+	 *   are {@code null} are skipped.
+	 * @param files The output file of each plot
+	 * @param start The index of the first plot to include in the script
+	 * @return The script
+	 */
+	protected static String getScript(String[] scripts, File[] files, int start)
+	{
+		StringBuilder out = new StringBuilder();
+		for (int i = start; i < scripts.length; i++)
+		{
+			if (scripts[i] == null)
+			{
+				continue;
+			}
+			out.append("set output '").append(files[i].getAbsolutePath().replace("'", "''")).append("'").append(DataFormatter.CRLF);
+			out.append(scripts[i]);
+			if (!scripts[i].endsWith("\n"))
+			{
+				out.append(DataFormatter.CRLF);
+			}
+			out.append("unset output").append(DataFormatter.CRLF);
+			out.append("reset").append(DataFormatter.CRLF);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Runs Gnuplot on a script and waits for it to finish
+	 * @param instructions The script
+	 * @return The runner used to execute Gnuplot, or {@code null} if the
+	 *   command was cancelled
+	 */
+	protected static CommandRunner run(String instructions)
+	{
+		String[] command = {GnuPlot.s_path};
+		CommandRunner runner = new CommandRunner(command, instructions);
+		runner.start();
+		// Wait until the command is done
+		while (runner.isAlive())
+		{
+			try
+			{
+				Thread.sleep(GnuPlot.s_waitInterval);
+			}
+			catch (InterruptedException e)
+			{
+				// This happens if the user cancels the command manually
+				runner.stopCommand();
+				runner.interrupt();
+				return null;
+			}
+		}
+		return runner;
+	}
+}
@@ -80,11 +80,17 @@ public class GnuBoxPlot extends GnuPlot implements BoxPlot
 
 	@Override
 	public String toGnuplot(ImageType term, String lab_title, boolean with_caption)
+	{
+		return toGnuplot(term, lab_title, with_caption, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	@Override
+	public String toGnuplot(ImageType term, String lab_title, boolean with_caption, int width, int height)
 	{
 		HardTable tab = processTable(m_table.getDataTable());
 		String csv_values = tab.toCsv(s_datafileSeparator, s_datafileMissing);
 		StringBuilder out = new StringBuilder();
-		out.append(getHeader(term, lab_title, with_caption));
+		out.append(getHeader(term, lab_title, with_caption, width, height));
 		out.append("set boxwidth 0.2 absolute").append(DataFormatter.CRLF);
 		out.append("set offset 0.5,0.5,0,0").append(DataFormatter.CRLF);
 		out.append("set ytics nomirror").append(DataFormatter.CRLF);
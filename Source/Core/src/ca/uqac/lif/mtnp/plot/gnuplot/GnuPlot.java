@@ -17,10 +17,16 @@
  */
 package ca.uqac.lif.mtnp.plot.gnuplot;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.util.Calendar;
+import java.util.Locale;
 
 import ca.uqac.lif.mtnp.util.CommandRunner;
 import ca.uqac.lif.mtnp.DataFormatter;
+import ca.uqac.lif.mtnp.plot.ImageCache;
 import ca.uqac.lif.mtnp.plot.Plot;
 import ca.uqac.lif.mtnp.table.Table;
 import ca.uqac.lif.mtnp.table.TableTransformation;
@@ -42,14 +48,10 @@ public abstract class GnuPlot extends Plot
 	public static final transient String s_datafileMissing = "null";
 	
 	/**
-	 * The path to launch GnuPlot
+	 * The path to launch GnuPlot. It is read again by
+	 * {@link GnuplotBackend#reset()}.
 	 */
-	protected static transient String s_path = "gnuplot";
-	
-	/**
-	 * The version string obtained when checking if Gnuplot is present
-	 */
-	protected static transient String s_gnuplotVersionString = checkGnuplot();
+	protected static transient volatile String s_path = GnuplotBackend.getDefaultPath();
 	
 	/**
 	 * The fill style used to draw the graph
@@ -73,16 +75,19 @@ public abstract class GnuPlot extends Plot
 	public GnuPlot()
 	{
 		super();
+		GnuplotBackend.probe();
 	}
 	
 	public GnuPlot(Table table)
 	{
 		super(table);
+		GnuplotBackend.probe();
 	}
 	
 	public GnuPlot(Table table, TableTransformation transformation)
 	{
 		super(table, "", transformation);
+		GnuplotBackend.probe();
 	}
 	
 	/**
@@ -107,15 +112,93 @@ public abstract class GnuPlot extends Plot
 	 * @return The Gnuplot file contents
 	 */
 	public abstract String toGnuplot(ImageType term, String lab_title, boolean with_caption);
+
+	/**
+	 * Generates a stand-alone Gnuplot file for this plot, producing an
+	 * image of a given size. By default, this takes the file produced by
+	 * {@link #toGnuplot(ImageType, String, boolean)} and adds the size to
+	 * its <tt>set terminal</tt> command; plots that use the size in other
+	 * ways override this method.
+	 * @param term The terminal used to display the plot
+	 * @param lab_title The title of the lab. This is only used in the 
+	 *   auto-generated comments in the file's header
+	 * @param with_caption Set to true to ignore the plot's caption when
+	 *   rendering
+	 * @param width The width of the image, in pixels
+	 * @param height The height of the image, in pixels
+	 * @return The Gnuplot file contents
+	 */
+	public String toGnuplot(ImageType term, String lab_title, boolean with_caption, int width, int height)
+	{
+		String instructions = toGnuplot(term, lab_title, with_caption);
+		String size = getTerminalSize(term, width, height);
+		if (size.isEmpty())
+		{
+			return instructions;
+		}
+		String terminal = "set terminal " + getTerminalName(term);
+		int pos = instructions.indexOf(terminal + DataFormatter.CRLF);
+		if (pos < 0)
+		{
+			// The plot sets its terminal in its own way
+			return instructions;
+		}
+		pos += terminal.length();
+		return instructions.substring(0, pos) + size + instructions.substring(pos);
+	}
 	
 	@Override
 	public final byte[] getImage(ImageType term, boolean with_caption)
 	{
-		String instructions = toGnuplot(term, with_caption);
-		byte[] image = null;
+		return getImage(term, with_caption, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * When no image cache is set, the output of Gnuplot is written to the
+	 * stream as it is produced. If Gnuplot fails after having written part
+	 * of an image, this partial output cannot be taken back, and an
+	 * exception is thrown; the blank image is only written if Gnuplot
+	 * produced nothing.
+	 * @throws InterruptedIOException If the thread is interrupted while
+	 *   Gnuplot writes to the stream. Nothing more is written to the
+	 *   stream once this exception is thrown.
+	 */
+	@Override
+	public final void getImage(ImageType term, boolean with_caption, int width, int height, OutputStream out) throws IOException
+	{
+		String instructions = toGnuplot(term, "", with_caption, width, height);
+		String key = null;
+		if (m_imageCache != null)
+		{
+			key = ImageCache.getKey(getCacheContents(instructions), term, with_caption);
+			byte[] cached = m_imageCache.get(key);
+			if (cached != null)
+			{
+				out.write(cached);
+				return;
+			}
+		}
+		if (!GnuplotBackend.get().supportsTerminal(getTerminalName(term)))
+		{
+			// No need to launch Gnuplot if it cannot produce the picture
+			out.write(getBlankImage(term));
+			return;
+		}
+		// If the image is to be cached, it must be kept in memory; otherwise
+		// it is sent straight to the stream
+		ByteArrayOutputStream baos = null;
+		OutputStream target = out;
+		if (key != null)
+		{
+			baos = new ByteArrayOutputStream();
+			target = baos;
+		}
 		String[] command = {s_path};
-		CommandRunner runner = new CommandRunner(command, instructions);
+		CommandRunner runner = new CommandRunner(command, instructions, target);
 		runner.start();
+		boolean cancelled = false;
 		// Wait until the command is done
 		while (runner.isAlive())
 		{
@@ -129,27 +212,76 @@ public abstract class GnuPlot extends Plot
 				// This happens if the user cancels the command manually
 				runner.stopCommand();
 				runner.interrupt();
-				if (term == ImageType.PDF)
-				{
-					return s_blankImagePdf;
-				}
-				return s_blankImagePng;
+				cancelled = true;
+				break;
 			}
 		}
-		image = runner.getBytes();
-		if (runner.getErrorCode() != 0 || image == null || image.length == 0)
+		if (cancelled)
 		{
-			// Gnuplot could not produce a picture; return the blank image
-			if (term == ImageType.PDF)
+			// Wait for the runner to end, so that it is no longer using the
+			// stream when this method returns
+			joinUninterruptibly(runner);
+		}
+		if (runner.getOutputException() != null)
+		{
+			throw runner.getOutputException();
+		}
+		if (baos == null)
+		{
+			if (cancelled)
 			{
-				image = s_blankImagePdf;
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Gnuplot was interrupted while writing the image");
 			}
-			else
+			if (runner.getByteCount() == 0)
 			{
-				image = s_blankImagePng;
+				// Gnuplot could not produce a picture; write the blank image
+				out.write(getBlankImage(term));
+				return;
 			}
+			if (runner.getErrorCode() != 0)
+			{
+				throw new IOException("Gnuplot exited with code " + runner.getErrorCode() + " after writing part of the image");
+			}
+			return;
 		}
-		return image;		
+		if (cancelled || runner.getErrorCode() != 0 || baos.size() == 0)
+		{
+			// Gnuplot could not produce a picture; write the blank image
+			// (and do not cache it, so that it is attempted again next time)
+			out.write(getBlankImage(term));
+			return;
+		}
+		byte[] image = baos.toByteArray();
+		m_imageCache.put(key, image);
+		out.write(image);
+	}
+
+	/**
+	 * Gets the part of a Gnuplot script that determines the image it
+	 * produces. Comment lines are removed, so that the date written in
+	 * the header of the script does not change the contents.
+	 * @param instructions The script
+	 * @return The contents used to compute the image's cache key
+	 */
+	protected static String getCacheContents(String instructions)
+	{
+		StringBuilder out = new StringBuilder(instructions.length());
+		for (String line : instructions.split("\n"))
+		{
+			if (line.startsWith("#"))
+			{
+				continue;
+			}
+			out.append(line).append("\n");
+		}
+		return out.toString();
+	}
+
+	@Override
+	public boolean isExternal()
+	{
+		return true;
 	}
 
 	/**
@@ -158,9 +290,35 @@ public abstract class GnuPlot extends Plot
 	 */
 	public static boolean isGnuplotPresent()
 	{
-		return s_gnuplotVersionString.endsWith("exit code 0");
+		return GnuplotBackend.get().isPresent();
 	}
 	
+	/**
+	 * Waits for a thread to end, even if the current thread is interrupted
+	 * in the meantime. The interrupted status of the current thread is
+	 * kept.
+	 * @param t The thread
+	 */
+	protected static void joinUninterruptibly(Thread t)
+	{
+		boolean interrupted = false;
+		while (t.isAlive())
+		{
+			try
+			{
+				t.join();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	/**
 	 * Gets a GnuPlot terminal name from an image type
 	 * @param t The image type
@@ -182,6 +340,37 @@ public abstract class GnuPlot extends Plot
 		return "dumb";
 	}
 
+
+	/**
+	 * Gets the option setting the size of the image in a Gnuplot
+	 * <tt>set terminal</tt> command. For the default size, no option is
+	 * given, and the terminal uses its own default (which, for PNG, is
+	 * 640&times;480).
+	 * @param t The image type
+	 * @param width The width of the image, in pixels
+	 * @param height The height of the image, in pixels
+	 * @return The option, starting with a space, or the empty string
+	 */
+	protected static String getTerminalSize(ImageType t, int width, int height)
+	{
+		if (width == DEFAULT_WIDTH && height == DEFAULT_HEIGHT)
+		{
+			return "";
+		}
+		switch (t)
+		{
+		case PDF:
+			// The PDF terminal takes its size in inches; count 72 pixels
+			// per inch
+			return String.format(Locale.US, " size %.2fin,%.2fin", width / 72f, height / 72f);
+		case DUMB:
+		case CACA:
+			// The size of the text terminals is in characters
+			return " size " + Math.max(1, width / 8) + "," + Math.max(1, height / 20);
+		default:
+			return " size " + width + "," + height;
+		}
+	}
 	
 	/**
 	 * Produces a header that is common to all plots generated by the
@@ -193,6 +382,22 @@ public abstract class GnuPlot extends Plot
 	 * @return The header
 	 */
 	public StringBuilder getHeader(ImageType term, String comment_line, boolean with_caption)
+	{
+		return getHeader(term, comment_line, with_caption, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	/**
+	 * Produces a header that is common to all plots generated by the
+	 * application
+	 * @param term The terminal to display this plot
+	 * @param comment_line A line to add in the header comments
+	 * @param with_caption Set to true to ignore the plot's caption when
+	 *   rendering
+	 * @param width The width of the image, in pixels
+	 * @param height The height of the image, in pixels
+	 * @return The header
+	 */
+	public StringBuilder getHeader(ImageType term, String comment_line, boolean with_caption, int width, int height)
 	{
 		StringBuilder out = new StringBuilder();
 		out.append("# ----------------------------------------------------------------").append(DataFormatter.CRLF);
@@ -205,7 +410,7 @@ public abstract class GnuPlot extends Plot
 		}
 		out.append("set datafile separator \"").append(s_datafileSeparator).append("\"").append(DataFormatter.CRLF);
 		out.append("set datafile missing \"").append(s_datafileMissing).append("\"").append(DataFormatter.CRLF);
-		out.append("set terminal ").append(getTerminalName(term)).append(DataFormatter.CRLF);
+		out.append("set terminal ").append(getTerminalName(term)).append(getTerminalSize(term, width, height)).append(DataFormatter.CRLF);
 		switch (m_fillStyle)
 		{
 		case PATTERN:
@@ -242,19 +447,6 @@ public abstract class GnuPlot extends Plot
 	 */
 	public static String getGnuplotVersionString()
 	{
-		return s_gnuplotVersionString;
+		return GnuplotBackend.get().getVersionString();
 	}
-	
-	/**
-	 * Checks if Gnuplot is present on the system
-	 * @return A string with the version and exit code obtained when 
-	 *   attempting to run Gnuplot
-	 */
-	protected static String checkGnuplot()
-	{
-		CommandRunner runner = new CommandRunner(new String[]{"gnuplot", "--version"});
-		runner.run();
-		return runner.getString().trim() + ", exit code " + runner.getErrorCode();
-	}
-
 }
@@ -0,0 +1,310 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot.gnuplot;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import ca.uqac.lif.mtnp.util.CommandRunner;
+
+/**
+ * Describes the capabilities of the Gnuplot installation found on the
+ * system: whether it is present, its version, and the terminals it
+ * supports.
+ * <p>
+ * Finding this information requires launching Gnuplot, which takes some
+ * time. It is therefore not done when the library is loaded, but the
+ * first time it is needed; the result is then kept for the rest of the
+ * execution. Calling {@link #probe()} starts this detection in the
+ * background, and {@link #get()} waits for it to finish.
+ * <p>
+ * The detection can be replaced by values given as system properties:
+ * <ul>
+ * <li><tt>mtnp.gnuplot.path</tt>: the command used to launch Gnuplot</li>
+ * <li><tt>mtnp.gnuplot.version</tt>: the version string of Gnuplot. If
+ * this property is set, Gnuplot is not launched at all; the value
+ * <tt>none</tt> indicates that Gnuplot is not present.</li>
+ * <li><tt>mtnp.gnuplot.terminals</tt>: a comma-separated list of the
+ * terminals supported by Gnuplot</li>
+ * </ul>
+ * @author Sylvain Hallé
+ */
+public class GnuplotBackend
+{
+	/**
+	 * The name of the system property giving the path to Gnuplot
+	 */
+	public static final transient String PATH_PROPERTY = "mtnp.gnuplot.path";
+
+	/**
+	 * The name of the system property giving the version of Gnuplot
+	 */
+	public static final transient String VERSION_PROPERTY = "mtnp.gnuplot.version";
+
+	/**
+	 * The name of the system property giving the terminals supported by
+	 * Gnuplot
+	 */
+	public static final transient String TERMINALS_PROPERTY = "mtnp.gnuplot.terminals";
+
+	/**
+	 * The task detecting the capabilities of Gnuplot, or {@code null} if
+	 * it has not been started yet
+	 */
+	private static FutureTask<GnuplotBackend> s_probe = null;
+
+	/**
+	 * The path used to launch Gnuplot
+	 */
+	protected final String m_path;
+
+	/**
+	 * The version string obtained when checking if Gnuplot is present
+	 */
+	protected final String m_versionString;
+
+	/**
+	 * Whether Gnuplot is present
+	 */
+	protected final boolean m_present;
+
+	/**
+	 * The names of the terminals supported by Gnuplot
+	 */
+	protected final Set<String> m_terminals;
+
+	/**
+	 * Creates a new description of a Gnuplot installation
+	 * @param path The path used to launch Gnuplot
+	 * @param version_string The version string
+	 * @param present Whether Gnuplot is present
+	 * @param terminals The names of the terminals supported by Gnuplot
+	 */
+	protected GnuplotBackend(String path, String version_string, boolean present, Set<String> terminals)
+	{
+		super();
+		m_path = path;
+		m_versionString = version_string;
+		m_present = present;
+		m_terminals = Collections.unmodifiableSet(terminals);
+	}
+
+	/**
+	 * Gets the path used to launch Gnuplot. This does not require Gnuplot
+	 * to be detected.
+	 * @return The path
+	 */
+	public static String getDefaultPath()
+	{
+		return System.getProperty(PATH_PROPERTY, "gnuplot");
+	}
+
+	/**
+	 * Starts detecting the capabilities of Gnuplot in the background, if
+	 * this has not already been done. This method returns immediately.
+	 */
+	public static void probe()
+	{
+		getTask();
+	}
+
+	/**
+	 * Gets the capabilities of Gnuplot, waiting for their detection to
+	 * finish if necessary
+	 * @return The capabilities
+	 */
+	public static GnuplotBackend get()
+	{
+		FutureTask<GnuplotBackend> task = getTask();
+		boolean interrupted = false;
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return task.get();
+				}
+				catch (InterruptedException e)
+				{
+					// Detection is short; finish waiting, and restore the
+					// interrupted status afterwards
+					interrupted = true;
+				}
+				catch (ExecutionException e)
+				{
+					// Cannot happen: detection catches its own errors
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}
+		finally
+		{
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Forgets the capabilities detected so far, so that they are detected
+	 * again the next time they are needed. This can be used after changing
+	 * the system properties read by this class; the path used by
+	 * {@link GnuPlot} to launch Gnuplot is also read again.
+	 */
+	public static synchronized void reset()
+	{
+		s_probe = null;
+		GnuPlot.s_path = getDefaultPath();
+	}
+
+	/**
+	 * Gets the task detecting the capabilities of Gnuplot, starting it if
+	 * necessary
+	 * @return The task
+	 */
+	protected static synchronized FutureTask<GnuplotBackend> getTask()
+	{
+		if (s_probe == null)
+		{
+			s_probe = new FutureTask<GnuplotBackend>(new Callable<GnuplotBackend>()
+			{
+				@Override
+				public GnuplotBackend call()
+				{
+					return detect();
+				}
+			});
+			Thread t = new Thread(s_probe, "mtnp-gnuplot-probe");
+			t.setDaemon(true);
+			t.start();
+		}
+		return s_probe;
+	}
+
+	/**
+	 * Detects the capabilities of Gnuplot, using the values of the system
+	 * properties when they are defined
+	 * @return The capabilities
+	 */
+	protected static GnuplotBackend detect()
+	{
+		String path = getDefaultPath();
+		String version = System.getProperty(VERSION_PROPERTY);
+		String terminal_list = System.getProperty(TERMINALS_PROPERTY);
+		boolean present;
+		if (version != null)
+		{
+			present = !version.trim().equalsIgnoreCase("none");
+		}
+		else
+		{
+			// An empty input is given, so that the standard input of the
+			// process is closed and it can never wait on it
+			CommandRunner runner = new CommandRunner(new String[]{path, "--version"}, "");
+			runner.run();
+			present = runner.getErrorCode() == 0;
+			version = runner.getString().trim() + ", exit code " + runner.getErrorCode();
+		}
+		if (terminal_list == null && present)
+		{
+			CommandRunner runner = new CommandRunner(new String[]{path, "-e", "set print '-'; print GPVAL_TERMINALS"}, "");
+			runner.run();
+			if (runner.getErrorCode() == 0)
+			{
+				terminal_list = runner.getString();
+			}
+		}
+		Set<String> terminals = new HashSet<String>();
+		if (terminal_list != null && present)
+		{
+			for (String term : terminal_list.split("[\\s,]+"))
+			{
+				if (!term.isEmpty())
+				{
+					terminals.add(term);
+				}
+			}
+		}
+		return new GnuplotBackend(path, version, present, terminals);
+	}
+
+	/**
+	 * Gets the path used to launch Gnuplot
+	 * @return The path
+	 */
+	public String getPath()
+	{
+		return m_path;
+	}
+
+	/**
+	 * Gets the version string obtained when checking if Gnuplot is present
+	 * @return The version string
+	 */
+	public String getVersionString()
+	{
+		return m_versionString;
+	}
+
+	/**
+	 * Checks if Gnuplot is present on the system
+	 * @return {@code true} if Gnuplot is present, {@code false} otherwise
+	 */
+	public boolean isPresent()
+	{
+		return m_present;
+	}
+
+	/**
+	 * Gets the names of the terminals supported by Gnuplot
+	 * @return The set of names. This set is empty if Gnuplot is absent, or
+	 *   if its terminals could not be listed.
+	 */
+	public Set<String> getTerminals()
+	{
+		return m_terminals;
+	}
+
+	/**
+	 * Checks if Gnuplot supports a terminal. If the list of terminals could
+	 * not be obtained, every terminal is assumed to be supported as long
+	 * as Gnuplot is present.
+	 * <p>
+	 * A terminal is also considered supported when only its Cairo variant
+	 * is listed (for example <tt>pdfcairo</tt> for <tt>pdf</tt>): Gnuplot
+	 * builds that lack the original terminal use the Cairo one in its
+	 * place when it is selected by its short name.
+	 * @param name The name of the terminal
+	 * @return {@code true} if the terminal is supported, {@code false}
+	 *   otherwise
+	 */
+	public boolean supportsTerminal(String name)
+	{
+		if (!m_present)
+		{
+			return false;
+		}
+		return m_terminals.isEmpty() || m_terminals.contains(name) || m_terminals.contains(name + "cairo");
+	}
+}
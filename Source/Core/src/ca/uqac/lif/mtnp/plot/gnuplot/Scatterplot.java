@@ -20,9 +20,10 @@ package ca.uqac.lif.mtnp.plot.gnuplot;
 import java.util.Vector;
 
 import ca.uqac.lif.mtnp.plot.TwoDimensionalPlot;
-import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.LttbDownsample;
 import ca.uqac.lif.mtnp.table.Table;
 import ca.uqac.lif.mtnp.table.TableTransformation;
+import ca.uqac.lif.mtnp.table.TempTable;
 
 /**
  * Scatterplot with default settings. Given a table, this class will draw
@@ -64,6 +65,12 @@ public class Scatterplot extends GnuPlot implements ca.uqac.lif.mtnp.plot.Scatte
 	 */
 	protected boolean m_withPoints = true;
 	
+	/**
+	 * Whether to reduce the number of points of each data series according
+	 * to the width of the image
+	 */
+	protected boolean m_downsample = false;
+	
 	/**
 	 * Creates an empty scatterplot
 	 */
@@ -118,6 +125,20 @@ public class Scatterplot extends GnuPlot implements ca.uqac.lif.mtnp.plot.Scatte
 	}
 
 
+	/**
+	 * Tells whether to reduce the number of points of each data series
+	 * according to the width of the image, using
+	 * {@link ca.uqac.lif.mtnp.table.LttbDownsample LttbDownsample}. When
+	 * enabled, each series keeps at most one point per pixel column.
+	 * @param b True to reduce the number of points, false otherwise
+	 * @return This plot
+	 */
+	public Scatterplot withDownsampling(boolean b)
+	{
+		m_downsample = b;
+		return this;
+	}
+	
 	@Override
 	public TwoDimensionalPlot setCaption(Axis axis, String caption)
 	{
@@ -135,7 +156,17 @@ public class Scatterplot extends GnuPlot implements ca.uqac.lif.mtnp.plot.Scatte
 	@Override
 	public String toGnuplot(ImageType term, String lab_title, boolean with_caption)
 	{
-		HardTable tab = processTable(m_table.getDataTable());
+		return toGnuplot(term, lab_title, with_caption, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	@Override
+	public String toGnuplot(ImageType term, String lab_title, boolean with_caption, int width, int height)
+	{
+		TempTable tab = processTable(m_table.getDataTable());
+		if (m_downsample)
+		{
+			tab = new LttbDownsample(width).transform(tab);
+		}
 		String[] columns = tab.getColumnNames();
 		String caption_x = m_captionX;
 		if (caption_x.isEmpty())
@@ -162,7 +193,7 @@ public class Scatterplot extends GnuPlot implements ca.uqac.lif.mtnp.plot.Scatte
 		}
 		// Build GP string from table
 		StringBuilder out = new StringBuilder();
-		out.append(getHeader(term, lab_title, with_caption));
+		out.append(getHeader(term, lab_title, with_caption, width, height));
 		if (m_logScaleX)
 		{
 			out.append("set logscale x").append("\n");
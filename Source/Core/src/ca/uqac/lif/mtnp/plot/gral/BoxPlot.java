@@ -71,11 +71,20 @@ public class BoxPlot extends GralPlot implements TwoDimensionalPlot
 		return this;
 	}
 	
+	@Override
+	protected String getCacheContents(HardTable source)
+	{
+		StringBuilder out = new StringBuilder(super.getCacheContents(source));
+		out.append(m_captionX).append("\n");
+		out.append(m_captionY).append("\n");
+		return out.toString();
+	}
+
 	@Override
 	public de.erichseifert.gral.plots.Plot getPlot(HardTable source)
 	{
-		GralDataTable gdt = GralDataTable.toGral(source);
-		DataSource box_source = de.erichseifert.gral.plots.BoxPlot.createBoxData(gdt);
+		PrimitiveDataSource data = PrimitiveDataSource.fromTable(source);
+		DataSource box_source = de.erichseifert.gral.plots.BoxPlot.createBoxData(data);
 		de.erichseifert.gral.plots.BoxPlot plot = new de.erichseifert.gral.plots.BoxPlot(box_source);
 		plot.setInsets(new Insets2D.Double(20d, 60d, 60d, 40d));
 		plot.getTitle().setText(getTitle());
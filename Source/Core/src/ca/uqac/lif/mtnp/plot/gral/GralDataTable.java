@@ -22,9 +22,7 @@ import java.util.Iterator;
 import java.util.Set;
 
 import ca.uqac.lif.mtnp.table.HardTable;
-import ca.uqac.lif.mtnp.table.PrimitiveValue;
 import ca.uqac.lif.mtnp.table.Table;
-import ca.uqac.lif.mtnp.table.TableEntry;
 import ca.uqac.lif.mtnp.table.TempTable;
 import ca.uqac.lif.petitpoucet.NodeFunction;
 import de.erichseifert.gral.data.Column;
@@ -185,24 +183,11 @@ public class GralDataTable extends Table implements DataSource
 	 *   name of the resulting GRAL data series. 
 	 * @param table The table from which to create the data series
 	 * @return The GRAL data series
+	 * @see PrimitiveDataSource#getDefinedView(String, int...)
 	 */
 	public static DataSeries getCleanedDataSeries(String col_name_x, String col_name_y, HardTable table)
 	{
-		TempTable temp_t = new TempTable(table.getId(), col_name_x, col_name_y);
-		for (TableEntry te : table.getEntries())
-		{
-			PrimitiveValue val_x = te.get(col_name_x);
-			PrimitiveValue val_y = te.get(col_name_y);
-			if (val_x != null && val_y != null)
-			{
-				TableEntry new_te = new TableEntry();
-				new_te.put(col_name_x, val_x);
-				new_te.put(col_name_y, val_y);
-				temp_t.add(new_te);
-			}
-		}
-		GralDataTable gdt = GralDataTable.toGral(temp_t);
-		DataSeries series = new DataSeries(col_name_y, gdt, 0, 1);
-		return series;
+		PrimitiveDataSource source = PrimitiveDataSource.fromTable(table, col_name_x, col_name_y);
+		return new DataSeries(col_name_y, source.getDefinedView(col_name_y, 0, 1), 0, 1);
 	}
 }
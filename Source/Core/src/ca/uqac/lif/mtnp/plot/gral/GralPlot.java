@@ -19,7 +19,11 @@ package ca.uqac.lif.mtnp.plot.gral;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
 
+import ca.uqac.lif.mtnp.plot.ImageCache;
 import ca.uqac.lif.mtnp.plot.Plot;
 import ca.uqac.lif.mtnp.table.HardTable;
 import ca.uqac.lif.mtnp.table.Table;
@@ -33,7 +37,20 @@ import de.erichseifert.gral.io.plots.DrawableWriterFactory;
  * @author Sylvain Hallé
  */
 public class GralPlot extends Plot
-{	
+{
+	/**
+	 * The writers used to produce images, for each thread and each image
+	 * type
+	 */
+	protected static final transient ThreadLocal<Map<ImageType,DrawableWriter>> s_writers = new ThreadLocal<Map<ImageType,DrawableWriter>>()
+	{
+		@Override
+		protected Map<ImageType,DrawableWriter> initialValue()
+		{
+			return new EnumMap<ImageType,DrawableWriter>(ImageType.class);
+		}
+	};
+
 	/**
 	 * Creates an empty GRAL plot
 	 */
@@ -83,38 +100,102 @@ public class GralPlot extends Plot
 		return "image/png";
 	}
 
+	@Override
+	public final byte[] getImage(ImageType term, boolean with_caption)
+	{
+		return getImage(term, with_caption, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
 	/**
-	 * Runs GnuPlot on a file and returns the resulting graph
+	 * Draws the plot and writes the resulting image to a stream. The image
+	 * is written directly to the stream, unless an image cache is set, in
+	 * which case it must first be kept in memory to be cached.
 	 * @param term The terminal (i.e. PNG, etc.) to use for the image
 	 * @param with_caption Set to true to ignore the plot's caption when
 	 *   rendering
-	 * @return The (binary) contents of the image produced by Gnuplot
+	 * @param width The width of the image, in pixels
+	 * @param height The height of the image, in pixels
+	 * @param out The stream where the image is written
+	 * @throws IOException If the image cannot be written to the stream
 	 */
-	public final byte[] getImage(ImageType term, boolean with_caption)
+	@Override
+	public final void getImage(ImageType term, boolean with_caption, int width, int height, OutputStream out) throws IOException
 	{
-		de.erichseifert.gral.plots.Plot plot = getPlot();
+		TempTable source = processTable(m_table.getDataTable());
+		String key = null;
+		if (m_imageCache != null)
+		{
+			key = ImageCache.getKey(getCacheContents(source) + width + "x" + height, term, with_caption);
+			byte[] cached = m_imageCache.get(key);
+			if (cached != null)
+			{
+				out.write(cached);
+				return;
+			}
+		}
+		de.erichseifert.gral.plots.Plot plot = getPlot(source, width, height);
 		if (!with_caption)
 		{
 			// Override caption with empty string
 			plot.getTitle().setText("");
 		}
+		DrawableWriter wr = getWriter(term);
+		if (key == null)
+		{
+			wr.write(plot, out, width, height);
+			return;
+		}
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		String type_string = getTypeName(term);
-		DrawableWriter wr = DrawableWriterFactory.getInstance().get(type_string);
-		try
+		wr.write(plot, baos, width, height);
+		byte[] bytes = baos.toByteArray();
+		m_imageCache.put(key, bytes);
+		out.write(bytes);
+	}
+
+	/**
+	 * Gets the GRAL writer producing images of a given type. Writers are
+	 * created once per thread and per type, and reused afterwards.
+	 * @param term The image type
+	 * @return The writer
+	 */
+	protected static DrawableWriter getWriter(ImageType term)
+	{
+		Map<ImageType,DrawableWriter> writers = s_writers.get();
+		DrawableWriter wr = writers.get(term);
+		if (wr == null)
 		{
-			wr.write(plot, baos, 640, 480);
-			baos.flush();
-			byte[] bytes = baos.toByteArray();
-			baos.close();
-			return bytes;
+			wr = DrawableWriterFactory.getInstance().get(getTypeName(term));
+			writers.put(term, wr);
 		}
-		catch (IOException e)
+		return wr;
+	}
+
+	/**
+	 * Gets a string containing everything that determines the image of
+	 * this plot, used to compute the key under which the image is cached.
+	 * Plots that have settings of their own should override this method
+	 * and append these settings to the contents returned by their parent.
+	 * Note that changes made to the plot by
+	 * {@link #customize(de.erichseifert.gral.plots.Plot) customize()} are
+	 * not visible from this method; a plot that overrides
+	 * {@code customize()} with settings that can change should also
+	 * include them here, or not be given an image cache.
+	 * @param source The processed table the plot is drawn from
+	 * @return The contents
+	 */
+	protected String getCacheContents(HardTable source)
+	{
+		StringBuilder out = new StringBuilder();
+		out.append(getClass().getName()).append("\n");
+		out.append(m_title).append("\n");
+		out.append(m_hasKey).append("\n");
+		if (m_palette != null)
 		{
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			out.append(m_palette.getDeclaration());
 		}
-		return null;
+		out.append("\n");
+		out.append(source.getFingerprint()).append("\n");
+		return out.toString();
 	}
 
 	/**
@@ -136,6 +217,20 @@ public class GralPlot extends Plot
 		return null;
 	}
 
+	/**
+	 * Gets a Plot object from a data source, knowing the size of the image
+	 * it will be drawn into. Plots that can take advantage of this size
+	 * can override this method; by default, the size is ignored.
+	 * @param source The data source
+	 * @param width The width of the image, in pixels
+	 * @param height The height of the image, in pixels
+	 * @return The plot
+	 */
+	public de.erichseifert.gral.plots.Plot getPlot(HardTable source, int width, int height)
+	{
+		return getPlot(source);
+	}
+
 	/**
 	 * Customize an existing plot. Override this method to tweak the settings
 	 * of a stock plot.
@@ -0,0 +1,425 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot.gral;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import de.erichseifert.gral.data.Column;
+import de.erichseifert.gral.data.DataListener;
+import de.erichseifert.gral.data.DataSource;
+import de.erichseifert.gral.data.Row;
+import de.erichseifert.gral.data.statistics.Statistics;
+
+/**
+ * A GRAL {@link DataSource} that reads its values from arrays of
+ * primitive numbers. Contrary to {@link GralDataTable}, which looks up
+ * each value in the entries of a table, the contents of a table are read
+ * once into one array per column; numeric columns are stored as arrays
+ * of {@code double}, along with an array telling which cells are
+ * defined.
+ * <p>
+ * A data source can produce <em>views</em> of itself, which show only
+ * some of its columns, and only the rows where these columns are all
+ * defined. A view shares the arrays of its parent, and only stores the
+ * indices of the rows and columns it shows. This replaces the copy of the
+ * table that {@link GralDataTable#getCleanedDataSeries(String, String, HardTable)}
+ * used to make for every data series.
+ * <p>
+ * Since the {@link DataSource} interface returns values as objects,
+ * numbers are still boxed when GRAL reads them through
+ * {@link #get(int, int)}; code that knows it deals with a
+ * {@code PrimitiveDataSource} can use {@link #getDouble(int, int)}
+ * instead.
+ * @author Sylvain Hallé
+ */
+public class PrimitiveDataSource implements DataSource
+{
+	/**
+	 * The name of the data source
+	 */
+	protected final String m_name;
+
+	/**
+	 * The names of all the columns read from the table
+	 */
+	protected final String[] m_columnNames;
+
+	/**
+	 * The values of the numeric columns. The array of a column that is
+	 * not numeric is {@code null}.
+	 */
+	protected final double[][] m_numbers;
+
+	/**
+	 * The values of the columns that are not numeric. The array of a
+	 * numeric column is {@code null}.
+	 */
+	protected final Comparable<?>[][] m_objects;
+
+	/**
+	 * Tells which cells of each column are defined
+	 */
+	protected final boolean[][] m_defined;
+
+	/**
+	 * The indices of the columns shown by this data source
+	 */
+	protected final int[] m_columns;
+
+	/**
+	 * The indices of the rows shown by this data source, or {@code null}
+	 * if all the rows are shown
+	 */
+	protected final int[] m_rows;
+
+	/**
+	 * The number of rows read from the table
+	 */
+	protected final int m_rowCount;
+
+	/**
+	 * The data listeners associated to this data source
+	 */
+	protected final Set<DataListener> m_dataListeners;
+
+	/**
+	 * Creates a new data source
+	 * @param name The name of the data source
+	 * @param column_names The names of all the columns read from the table
+	 * @param numbers The values of the numeric columns
+	 * @param objects The values of the columns that are not numeric
+	 * @param defined Tells which cells of each column are defined
+	 * @param row_count The number of rows read from the table
+	 * @param columns The indices of the columns shown by this data source
+	 * @param rows The indices of the rows shown by this data source, or
+	 *   {@code null} to show all the rows
+	 */
+	protected PrimitiveDataSource(String name, String[] column_names, double[][] numbers, Comparable<?>[][] objects, boolean[][] defined, int row_count, int[] columns, int[] rows)
+	{
+		super();
+		m_name = name;
+		m_columnNames = column_names;
+		m_numbers = numbers;
+		m_objects = objects;
+		m_defined = defined;
+		m_rowCount = row_count;
+		m_columns = columns;
+		m_rows = rows;
+		m_dataListeners = new HashSet<DataListener>();
+	}
+
+	/**
+	 * Reads the columns of a table into a new data source
+	 * @param table The table
+	 * @return The data source
+	 */
+	public static PrimitiveDataSource fromTable(HardTable table)
+	{
+		return fromTable(table, table.getColumnNames());
+	}
+
+	/**
+	 * Reads some of the columns of a table into a new data source
+	 * @param table The table
+	 * @param column_names The names of the columns to read
+	 * @return The data source
+	 */
+	public static PrimitiveDataSource fromTable(HardTable table, String ... column_names)
+	{
+		List<TableEntry> entries = table.getEntries();
+		int num_rows = entries.size();
+		int num_cols = column_names.length;
+		double[][] numbers = new double[num_cols][];
+		Comparable<?>[][] objects = new Comparable<?>[num_cols][];
+		boolean[][] defined = new boolean[num_cols][];
+		int[] columns = new int[num_cols];
+		for (int col = 0; col < num_cols; col++)
+		{
+			String name = column_names[col];
+			columns[col] = col;
+			defined[col] = new boolean[num_rows];
+			double[] values = new double[num_rows];
+			boolean numeric = true;
+			for (int row = 0; row < num_rows; row++)
+			{
+				PrimitiveValue v = entries.get(row).get(name);
+				if (v == null || v.isNull())
+				{
+					continue;
+				}
+				defined[col][row] = true;
+				if (!v.isNumeric())
+				{
+					numeric = false;
+					break;
+				}
+				values[row] = v.numberValue().doubleValue();
+			}
+			if (numeric)
+			{
+				numbers[col] = values;
+				continue;
+			}
+			// At least one value is not a number: keep the column as objects
+			objects[col] = new Comparable<?>[num_rows];
+			for (int row = 0; row < num_rows; row++)
+			{
+				PrimitiveValue v = entries.get(row).get(name);
+				defined[col][row] = v != null && !v.isNull();
+				if (defined[col][row])
+				{
+					objects[col][row] = v.value();
+				}
+			}
+		}
+		return new PrimitiveDataSource(table.getTitle(), column_names, numbers, objects, defined, num_rows, columns, null);
+	}
+
+	/**
+	 * Creates a view of this data source, showing only some of its
+	 * columns, and only the rows where all these columns are defined. This
+	 * is necessary since GRAL fails to draw a plot (i.e. throws a
+	 * <tt>NullPointerException</tt>) when it contains data series with
+	 * missing values. The view does not copy the values of the data source.
+	 * @param name The name of the view
+	 * @param cols The indices of the columns to show, in this data source
+	 * @return The view
+	 */
+	public PrimitiveDataSource getDefinedView(String name, int ... cols)
+	{
+		int[] columns = new int[cols.length];
+		for (int i = 0; i < cols.length; i++)
+		{
+			columns[i] = m_columns[cols[i]];
+		}
+		int num_rows = getRowCount();
+		int[] rows = new int[num_rows];
+		int count = 0;
+		for (int i = 0; i < num_rows; i++)
+		{
+			int row = getPhysicalRow(i);
+			boolean all_defined = true;
+			for (int col : columns)
+			{
+				if (!m_defined[col][row])
+				{
+					all_defined = false;
+					break;
+				}
+			}
+			if (all_defined)
+			{
+				rows[count++] = row;
+			}
+		}
+		if (count < num_rows)
+		{
+			int[] trimmed = new int[count];
+			System.arraycopy(rows, 0, trimmed, 0, count);
+			rows = trimmed;
+		}
+		return new PrimitiveDataSource(name, m_columnNames, m_numbers, m_objects, m_defined, m_rowCount, columns, rows);
+	}
+
+	/**
+	 * Gets the index, in the arrays of values, of a row of this data source
+	 * @param row The index of the row in this data source
+	 * @return The index in the arrays of values
+	 */
+	protected final int getPhysicalRow(int row)
+	{
+		if (m_rows == null)
+		{
+			return row;
+		}
+		return m_rows[row];
+	}
+
+	/**
+	 * Gets the numeric value of a cell, without creating an object
+	 * @param col The column
+	 * @param row The row
+	 * @return The value, or {@link Double#NaN} if the cell is not defined
+	 *   or is not a number
+	 */
+	public double getDouble(int col, int row)
+	{
+		int c = m_columns[col];
+		int r = getPhysicalRow(row);
+		if (m_numbers[c] == null || !m_defined[c][r])
+		{
+			return Double.NaN;
+		}
+		return m_numbers[c][r];
+	}
+
+	/**
+	 * Gets the name of a column
+	 * @param col The index of the column
+	 * @return The name
+	 */
+	public String getColumnName(int col)
+	{
+		return m_columnNames[m_columns[col]];
+	}
+
+	@Override
+	public Comparable<?> get(int col, int row)
+	{
+		int c = m_columns[col];
+		int r = getPhysicalRow(row);
+		if (!m_defined[c][r])
+		{
+			return null;
+		}
+		if (m_numbers[c] != null)
+		{
+			return m_numbers[c][r];
+		}
+		return m_objects[c][r];
+	}
+
+	@Override
+	public String getName()
+	{
+		return m_name;
+	}
+
+	@Override
+	public int getColumnCount()
+	{
+		return m_columns.length;
+	}
+
+	@Override
+	public int getRowCount()
+	{
+		if (m_rows == null)
+		{
+			return m_rowCount;
+		}
+		return m_rows.length;
+	}
+
+	@Override
+	public boolean isColumnNumeric(int col)
+	{
+		return m_numbers[m_columns[col]] != null;
+	}
+
+	@Override
+	public Class<? extends Comparable<?>>[] getColumnTypes()
+	{
+		@SuppressWarnings("unchecked")
+		Class<? extends Comparable<?>>[] types = new Class[m_columns.length];
+		for (int i = 0; i < m_columns.length; i++)
+		{
+			if (isColumnNumeric(i))
+			{
+				types[i] = Double.class;
+			}
+			else
+			{
+				types[i] = String.class;
+			}
+		}
+		return types;
+	}
+
+	@Override
+	public Column getColumn(int col)
+	{
+		return new Column(this, col);
+	}
+
+	@Override
+	public Row getRow(int row)
+	{
+		return new Row(this, row);
+	}
+
+	@Override
+	public Statistics getStatistics()
+	{
+		return new Statistics(this);
+	}
+
+	@Override
+	public void addDataListener(DataListener dataListener)
+	{
+		m_dataListeners.add(dataListener);
+	}
+
+	@Override
+	public void removeDataListener(DataListener dataListener)
+	{
+		m_dataListeners.remove(dataListener);
+	}
+
+	@Override
+	public Iterator<Comparable<?>> iterator()
+	{
+		return new Iterator<Comparable<?>>()
+		{
+			/**
+			 * Index of current column
+			 */
+			protected int m_col = 0;
+
+			/**
+			 * Index of current row
+			 */
+			protected int m_row = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return m_col < getColumnCount() && m_row < getRowCount();
+			}
+
+			@Override
+			public Comparable<?> next()
+			{
+				if (!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				Comparable<?> value = get(m_col, m_row);
+				if (++m_col >= getColumnCount())
+				{
+					m_col = 0;
+					m_row++;
+				}
+				return value;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
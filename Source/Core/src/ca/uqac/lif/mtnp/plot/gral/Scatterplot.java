@@ -19,6 +19,7 @@ package ca.uqac.lif.mtnp.plot.gral;
 
 import ca.uqac.lif.mtnp.plot.TwoDimensionalPlot;
 import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.LttbDownsample;
 import ca.uqac.lif.mtnp.table.Table;
 import ca.uqac.lif.mtnp.table.TableTransformation;
 import de.erichseifert.gral.data.DataSeries;
@@ -71,6 +72,12 @@ public class Scatterplot extends GralPlot implements ca.uqac.lif.mtnp.plot.Scatt
 	 */
 	protected boolean m_withPoints = true;
 	
+	/**
+	 * Whether to reduce the number of points of each data series according
+	 * to the width of the image
+	 */
+	protected boolean m_downsample = false;
+	
 	/**
 	 * Creates an empty scatterplot with default settings
 	 */
@@ -125,8 +132,21 @@ public class Scatterplot extends GralPlot implements ca.uqac.lif.mtnp.plot.Scatt
 		m_withPoints = true;
 		return this;
 	}
-
-
+	
+	/**
+	 * Tells whether to reduce the number of points of each data series
+	 * according to the width of the image, using
+	 * {@link ca.uqac.lif.mtnp.table.LttbDownsample LttbDownsample}. When
+	 * enabled, each series keeps at most one point per pixel column.
+	 * @param b True to reduce the number of points, false otherwise
+	 * @return This plot
+	 */
+	public Scatterplot withDownsampling(boolean b)
+	{
+		m_downsample = b;
+		return this;
+	}
+	
 	@Override
 	public TwoDimensionalPlot setCaption(Axis axis, String caption)
 	{
@@ -141,16 +161,39 @@ public class Scatterplot extends GralPlot implements ca.uqac.lif.mtnp.plot.Scatt
 		return this;
 	}
 	
+	@Override
+	protected String getCacheContents(HardTable source)
+	{
+		StringBuilder out = new StringBuilder(super.getCacheContents(source));
+		out.append(m_captionX).append("\n");
+		out.append(m_captionY).append("\n");
+		out.append(m_logScaleX).append(",").append(m_logScaleY).append("\n");
+		out.append(m_withLines).append(",").append(m_withPoints).append("\n");
+		out.append(m_downsample).append("\n");
+		return out.toString();
+	}
+
+	@Override
+	public de.erichseifert.gral.plots.Plot getPlot(HardTable source, int width, int height)
+	{
+		if (m_downsample)
+		{
+			return getPlot(new LttbDownsample(width).transform(source.getDataTable()));
+		}
+		return getPlot(source);
+	}
+	
 	@Override
 	public de.erichseifert.gral.plots.Plot getPlot(HardTable source)
 	{
-		//GralDataTable gdt = GralDataTable.toGral(source);
+		// Read the table once, and show each series as a view of it
+		PrimitiveDataSource data = PrimitiveDataSource.fromTable(source);
 		int num_cols = source.getColumnCount();
 		DataSeries[] series = new DataSeries[num_cols - 1];
-		String col_0 = source.getColumnName(0);
 		for (int col = 1; col < num_cols; col++)
 		{
-			series[col - 1] = GralDataTable.getCleanedDataSeries(col_0, source.getColumnName(col), source);
+			String col_name = source.getColumnName(col);
+			series[col - 1] = new DataSeries(col_name, data.getDefinedView(col_name, 0, col), 0, 1);
 		}
 		XYPlot plot = new XYPlot(series);
 		for (int col = 1; col < num_cols; col++)
@@ -0,0 +1,462 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot.java2d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import ca.uqac.lif.mtnp.plot.DiscretePalette;
+import ca.uqac.lif.mtnp.plot.ImageCache;
+import ca.uqac.lif.mtnp.plot.Plot;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.RowExecutor;
+import ca.uqac.lif.mtnp.table.Table;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.table.TableTransformation;
+import ca.uqac.lif.mtnp.table.TempTable;
+
+/**
+ * Density plot of a large number of points. Given a table, this class
+ * takes the first column as the "x" value and the second column as the
+ * "y" value of each point. Rather than drawing each point, it divides the
+ * image into pixels, counts the points falling into each pixel, and
+ * colors each pixel according to its count. Pixels with no point are
+ * left white; the others are given a color from the plot's palette, from
+ * its first color for the least dense pixels to its last color for the
+ * densest. Counts are taken on a logarithmic scale, so that sparse areas
+ * remain visible next to dense ones.
+ * <p>
+ * The plot is drawn with Java2D, without any external library. Counting
+ * the points is done in parallel: the rows of the table are split into
+ * as many parts as there are processors, each part is counted into its
+ * own grid, and the grids are then added together. The parts are run on
+ * the pool shared by the table transformations ({@link RowExecutor#getPool()}).
+ * The time taken is therefore proportional to the number of points, while
+ * the memory used only depends on the size of the image: while counting,
+ * each part holds a grid of <i>width</i> &times; <i>height</i> integers,
+ * so that up to (number of processors) &times; <i>width</i> &times;
+ * <i>height</i> &times; 4 bytes are allocated at once. A 1000&times;1000
+ * image on a machine with 16 processors hence takes about 64 MB during
+ * the count.
+ * <p>
+ * Only the PNG image type is supported; other types produce the blank
+ * image.
+ * @author Sylvain Hallé
+ */
+public class DensityPlot extends Plot
+{
+	/**
+	 * The number of parts the rows of the table are split into
+	 */
+	protected static final transient int s_numParts = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The number of colors in the ramp computed from the palette
+	 */
+	protected static final transient int s_rampSize = 256;
+
+	/**
+	 * Creates an empty density plot
+	 */
+	public DensityPlot()
+	{
+		super();
+		setPalette(SEQUENTIAL_1);
+	}
+
+	/**
+	 * Creates a new density plot from a table
+	 * @param t The table
+	 */
+	public DensityPlot(Table t)
+	{
+		super(t);
+		setPalette(SEQUENTIAL_1);
+	}
+
+	/**
+	 * Creates a new density plot from a table, applying a transformation
+	 * to this table
+	 * @param t The table
+	 * @param transformation A table transformation. This transformation
+	 *  will be applied to the table before plotting.
+	 */
+	public DensityPlot(Table t, TableTransformation transformation)
+	{
+		super(t, "", transformation);
+		setPalette(SEQUENTIAL_1);
+	}
+
+	@Override
+	public byte[] getImage(ImageType type, boolean with_caption)
+	{
+		return getImage(type, with_caption, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	@Override
+	public void getImage(ImageType type, boolean with_caption, int width, int height, OutputStream out) throws IOException
+	{
+		if (type != ImageType.PNG)
+		{
+			out.write(getBlankImage(type));
+			return;
+		}
+		TempTable source = processTable(m_table.getDataTable());
+		String key = null;
+		if (m_imageCache != null)
+		{
+			StringBuilder contents = new StringBuilder();
+			contents.append(getClass().getName()).append("\n");
+			contents.append(m_title).append("\n");
+			if (m_palette != null)
+			{
+				contents.append(m_palette.getDeclaration());
+			}
+			contents.append("\n").append(source.getFingerprint()).append("\n");
+			contents.append(width).append("x").append(height);
+			key = ImageCache.getKey(contents.toString(), type, with_caption);
+			byte[] cached = m_imageCache.get(key);
+			if (cached != null)
+			{
+				out.write(cached);
+				return;
+			}
+		}
+		BufferedImage image = draw(source, with_caption, width, height);
+		if (key == null)
+		{
+			ImageIO.write(image, "png", out);
+			return;
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", baos);
+		byte[] bytes = baos.toByteArray();
+		m_imageCache.put(key, bytes);
+		out.write(bytes);
+	}
+
+	/**
+	 * Draws the plot into an image
+	 * @param source The processed table
+	 * @param with_caption Whether to write the plot's title on the image
+	 * @param width The width of the image, in pixels
+	 * @param height The height of the image, in pixels
+	 * @return The image
+	 */
+	protected BufferedImage draw(TempTable source, boolean with_caption, int width, int height)
+	{
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, width, height);
+		if (source.getColumnCount() >= 2)
+		{
+			List<TableEntry> entries = source.getEntries();
+			String col_x = source.getColumnName(0);
+			String col_y = source.getColumnName(1);
+			double[] bounds = getBounds(entries, col_x, col_y);
+			if (bounds != null)
+			{
+				int[] grid = getGrid(entries, col_x, col_y, bounds, width, height);
+				int max = 0;
+				for (int count : grid)
+				{
+					max = Math.max(max, count);
+				}
+				int[] ramp = getRamp();
+				double log_max = Math.log1p(max);
+				for (int i = 0; i < grid.length; i++)
+				{
+					if (grid[i] == 0)
+					{
+						continue;
+					}
+					int index = (int) ((s_rampSize - 1) * Math.log1p(grid[i]) / log_max);
+					// The grid starts at the bottom of the image
+					image.setRGB(i % width, height - 1 - i / width, ramp[index]);
+				}
+			}
+		}
+		if (with_caption && m_title != null && !m_title.isEmpty())
+		{
+			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g.setColor(Color.BLACK);
+			g.drawString(m_title, 5, g.getFontMetrics().getAscent() + 2);
+		}
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Computes the range of the "x" and "y" values of the points
+	 * @param entries The entries of the table
+	 * @param col_x The name of the column of "x" values
+	 * @param col_y The name of the column of "y" values
+	 * @return An array containing the minimum and maximum "x" values,
+	 *   followed by the minimum and maximum "y" values, or {@code null} if
+	 *   the table contains no point
+	 */
+	protected static double[] getBounds(final List<TableEntry> entries, final String col_x, final String col_y)
+	{
+		List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+		for (final int[] part : getParts(entries.size()))
+		{
+			tasks.add(new Callable<double[]>()
+			{
+				@Override
+				public double[] call()
+				{
+					double[] bounds = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+					for (int i = part[0]; i < part[1]; i++)
+					{
+						TableEntry te = entries.get(i);
+						double x = getNumber(te.get(col_x));
+						double y = getNumber(te.get(col_y));
+						if (Double.isNaN(x) || Double.isNaN(y))
+						{
+							continue;
+						}
+						bounds[0] = Math.min(bounds[0], x);
+						bounds[1] = Math.max(bounds[1], x);
+						bounds[2] = Math.min(bounds[2], y);
+						bounds[3] = Math.max(bounds[3], y);
+					}
+					return bounds;
+				}
+			});
+		}
+		double[] bounds = null;
+		for (double[] b : invokeAll(tasks))
+		{
+			if (b[0] > b[1])
+			{
+				// This part contains no point
+				continue;
+			}
+			if (bounds == null)
+			{
+				bounds = b;
+				continue;
+			}
+			bounds[0] = Math.min(bounds[0], b[0]);
+			bounds[1] = Math.max(bounds[1], b[1]);
+			bounds[2] = Math.min(bounds[2], b[2]);
+			bounds[3] = Math.max(bounds[3], b[3]);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Counts the number of points falling into each pixel of the image.
+	 * Each part of the rows is counted into a grid of its own, which is
+	 * then added to the total.
+	 * @param entries The entries of the table
+	 * @param col_x The name of the column of "x" values
+	 * @param col_y The name of the column of "y" values
+	 * @param bounds The range of the "x" and "y" values
+	 * @param width The width of the image, in pixels
+	 * @param height The height of the image, in pixels
+	 * @return The counts, row by row, starting from the bottom of the
+	 *   image
+	 */
+	protected static int[] getGrid(final List<TableEntry> entries, final String col_x, final String col_y, double[] bounds, final int width, final int height)
+	{
+		final double min_x = bounds[0];
+		final double min_y = bounds[2];
+		// Avoid a division by zero when all points have the same coordinate
+		final double range_x = bounds[1] > bounds[0] ? bounds[1] - bounds[0] : 1;
+		final double range_y = bounds[3] > bounds[2] ? bounds[3] - bounds[2] : 1;
+		List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+		for (final int[] part : getParts(entries.size()))
+		{
+			tasks.add(new Callable<int[]>()
+			{
+				@Override
+				public int[] call()
+				{
+					int[] grid = new int[width * height];
+					for (int i = part[0]; i < part[1]; i++)
+					{
+						TableEntry te = entries.get(i);
+						double x = getNumber(te.get(col_x));
+						double y = getNumber(te.get(col_y));
+						if (Double.isNaN(x) || Double.isNaN(y))
+						{
+							continue;
+						}
+						int px = Math.min(width - 1, (int) ((x - min_x) / range_x * width));
+						int py = Math.min(height - 1, (int) ((y - min_y) / range_y * height));
+						grid[py * width + px]++;
+					}
+					return grid;
+				}
+			});
+		}
+		int[] total = null;
+		for (int[] grid : invokeAll(tasks))
+		{
+			if (total == null)
+			{
+				total = grid;
+				continue;
+			}
+			for (int i = 0; i < total.length; i++)
+			{
+				total[i] += grid[i];
+			}
+		}
+		if (total == null)
+		{
+			total = new int[width * height];
+		}
+		return total;
+	}
+
+	/**
+	 * Computes a ramp of colors by interpolating between the colors of the
+	 * plot's palette
+	 * @return The ramp, as an array of RGB values
+	 */
+	protected int[] getRamp()
+	{
+		Color[] stops;
+		if (m_palette instanceof DiscretePalette)
+		{
+			int num_colors = ((DiscretePalette) m_palette).getColorCount();
+			stops = new Color[num_colors];
+			for (int i = 0; i < num_colors; i++)
+			{
+				stops[i] = Color.decode(m_palette.getHexColor(i));
+			}
+		}
+		else if (m_palette != null)
+		{
+			stops = new Color[] {Color.decode(m_palette.getHexColor(0)), Color.decode(m_palette.getHexColor(1))};
+		}
+		else
+		{
+			stops = new Color[] {Color.LIGHT_GRAY, Color.BLACK};
+		}
+		int[] ramp = new int[s_rampSize];
+		if (stops.length == 1)
+		{
+			for (int i = 0; i < s_rampSize; i++)
+			{
+				ramp[i] = stops[0].getRGB();
+			}
+			return ramp;
+		}
+		for (int i = 0; i < s_rampSize; i++)
+		{
+			float pos = (float) i / (s_rampSize - 1) * (stops.length - 1);
+			int stop = Math.min(stops.length - 2, (int) pos);
+			float t = pos - stop;
+			Color c1 = stops[stop];
+			Color c2 = stops[stop + 1];
+			int r = Math.round(c1.getRed() + t * (c2.getRed() - c1.getRed()));
+			int gr = Math.round(c1.getGreen() + t * (c2.getGreen() - c1.getGreen()));
+			int b = Math.round(c1.getBlue() + t * (c2.getBlue() - c1.getBlue()));
+			ramp[i] = new Color(r, gr, b).getRGB();
+		}
+		return ramp;
+	}
+
+	/**
+	 * Gets the numerical value of a table cell
+	 * @param v The value
+	 * @return The number, or {@link Double#NaN} if the cell is not defined
+	 *   or does not contain a number
+	 */
+	protected static double getNumber(PrimitiveValue v)
+	{
+		if (v == null || !v.isNumeric())
+		{
+			return Double.NaN;
+		}
+		return v.numberValue().doubleValue();
+	}
+
+	/**
+	 * Splits a range of rows into contiguous parts
+	 * @param num_rows The number of rows
+	 * @return A list of intervals of row indices, each given as an array
+	 *   with the first index (inclusive) and the last index (exclusive)
+	 */
+	protected static List<int[]> getParts(int num_rows)
+	{
+		List<int[]> parts = new ArrayList<int[]>();
+		int part_size = Math.max(1, (num_rows + s_numParts - 1) / s_numParts);
+		for (int start = 0; start < num_rows; start += part_size)
+		{
+			parts.add(new int[] {start, Math.min(num_rows, start + part_size)});
+		}
+		return parts;
+	}
+
+	/**
+	 * Runs tasks in parallel and waits for their results
+	 * @param tasks The tasks
+	 * @return The results, in the same order as the tasks
+	 */
+	protected static <T> List<T> invokeAll(List<Callable<T>> tasks)
+	{
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (tasks.size() == 1)
+		{
+			// No need to hand a single task to another thread
+			try
+			{
+				results.add(tasks.get(0).call());
+			}
+			catch (Exception e)
+			{
+				throw new IllegalStateException(e);
+			}
+			return results;
+		}
+		try
+		{
+			for (Future<T> f : RowExecutor.getPool().invokeAll(tasks))
+			{
+				results.add(f.get());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException(e.getCause());
+		}
+		return results;
+	}
+}
@@ -0,0 +1,6 @@
+/**
+ * Plots drawn directly with Java2D, without an external program or
+ * plotting library.
+ * @author Sylvain Hallé
+ */
+package ca.uqac.lif.mtnp.plot.java2d;
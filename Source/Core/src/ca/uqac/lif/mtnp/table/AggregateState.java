@@ -0,0 +1,41 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * The partial result of an {@link IncrementalTransformation}. A state
+ * is updated with the rows of the input table one at a time, and can
+ * produce the output table at any moment from what it has seen so far.
+ * @author Sylvain Hallé
+ */
+public interface AggregateState
+{
+	/**
+	 * Updates the state with a row of the input table
+	 * @param entry The row. This entry must not be modified.
+	 */
+	public void update(TableEntry entry);
+
+	/**
+	 * Produces the output table from the rows seen so far
+	 * @param source The input table, used to record the dependencies of
+	 *   the cells of the output table
+	 * @return The output table
+	 */
+	public TempTable getTable(HardTable source);
+}
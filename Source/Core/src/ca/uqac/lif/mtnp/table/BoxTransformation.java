@@ -17,12 +17,20 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import ca.uqac.lif.mtnp.DataFormatter;
+import ca.uqac.lif.mtnp.util.KllSketch;
 import ca.uqac.lif.petitpoucet.AggregateFunction;
 import ca.uqac.lif.petitpoucet.NodeFunction;
 
@@ -56,10 +64,24 @@ import ca.uqac.lif.petitpoucet.NodeFunction;
  * This transformation is called a "box transform", because it produces a
  * table in a form that can be used by a
  * {@link ca.uqac.lif.mtnp.plot.BoxPlot BoxPlot}.
+ * <p>
+ * Columns without any numerical value produce no row. By default, the
+ * quartiles are exact: the values of each column are read into an array
+ * of primitive numbers, and each quartile is found by selection, without
+ * sorting the whole array. With {@link #setSketchSize(int)}, columns with
+ * many values are instead summarized by a {@link KllSketch}, which takes
+ * a few kilobytes whatever the number of values, and gives approximate
+ * quartiles; the minimum and maximum remain exact. Columns of a large
+ * table are processed in parallel.
+ * <p>
+ * The states of this transformation can be merged (see
+ * {@link PartialAggregates}). Without sketches, a state contains every
+ * value of the columns; with sketches, it takes a few kilobytes per
+ * column.
  *  
  * @author Sylvain Hallé
  */
-public class BoxTransformation implements TableTransformation 
+public class BoxTransformation implements IncrementalTransformation 
 {
 	protected String m_captionX = "x";
 	protected String m_captionMin = "Min";
@@ -68,6 +90,18 @@ public class BoxTransformation implements TableTransformation
 	protected String m_captionQ3 = "Q3";
 	protected String m_captionMax = "Max";
 	
+	/**
+	 * The parameter <i>k</i> of the sketches summarizing large columns, or
+	 * 0 to always compute exact quartiles
+	 */
+	protected int m_sketchSize = 0;
+	
+	/**
+	 * The number of values of a column up to which quartiles are exact,
+	 * even when sketches are used
+	 */
+	protected static transient int s_exactLimit = 65536;
+	
 	public BoxTransformation()
 	{
 		super();
@@ -95,55 +129,505 @@ public class BoxTransformation implements TableTransformation
 		m_captionMax = max;
 	}
 
+	/**
+	 * Sets whether large columns are summarized by a sketch
+	 * @param k The parameter <i>k</i> of the sketches (see
+	 *   {@link KllSketch}), or 0 to always compute exact quartiles
+	 * @return This transformation
+	 */
+	public BoxTransformation setSketchSize(int k)
+	{
+		m_sketchSize = Math.max(0, k);
+		return this;
+	}
+	
+	/**
+	 * Gets the parameter <i>k</i> of the sketches summarizing large columns
+	 * @return The parameter, or 0 if quartiles are always exact
+	 */
+	public int getSketchSize()
+	{
+		return m_sketchSize;
+	}
+
 	@Override
 	public TempTable transform(TempTable... tables) 
 	{
-		TempTable table = tables[0];
-		TempTable new_table = new TempTable(-10, m_captionX, m_captionMin, m_captionQ1, m_captionQ2, m_captionQ3, m_captionMax);
-		int col = 0;
-		for (String col_name : table.getColumnNames())
+		final TempTable table = tables[0];
+		final String[] col_names = table.getColumnNames();
+		final ColumnValues[] columns = new ColumnValues[col_names.length];
+		final List<List<NodeFunction>> deps = new ArrayList<List<NodeFunction>>(Collections.<List<NodeFunction>>nCopies(col_names.length, null));
+		if (col_names.length > 1 && (long) table.getRowCount() * col_names.length > RowExecutor.s_chunkSize)
 		{
-			List<NodeFunction> deps = new LinkedList<NodeFunction>();
-			List<Float> values = new ArrayList<Float>();
-			int row = 0;
-			for (TableEntry te : table.getEntries())
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(col_names.length);
+			for (int i = 0; i < col_names.length; i++)
 			{
-				Float f = DataFormatter.readFloat(te.get(col_name));
-				if (f != null)
+				final int col = i;
+				tasks.add(new Callable<Object>()
+				{
+					@Override
+					public Object call()
+					{
+						readColumn(table, col_names, col, columns, deps);
+						return null;
+					}
+				});
+			}
+			try
+			{
+				for (Future<Object> f : RowExecutor.getPool().invokeAll(tasks))
 				{
-					values.add(f);
+					f.get();
 				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		else
+		{
+			for (int col = 0; col < col_names.length; col++)
+			{
+				readColumn(table, col_names, col, columns, deps);
+			}
+		}
+		TempTable new_table = new TempTable(-10, m_captionX, m_captionMin, m_captionQ1, m_captionQ2, m_captionQ3, m_captionMax);
+		for (int col = 0; col < col_names.length; col++)
+		{
+			addRow(new_table, col_names[col], columns[col], deps.get(col), table.m_id);
+		}
+		return new_table;
+	}
+	
+	/**
+	 * Reads the values of a column, and the dependencies of its cells
+	 * @param table The table
+	 * @param col_names The names of the columns of the table
+	 * @param col The index of the column to read
+	 * @param columns The array where the values of the column are put
+	 * @param deps The list where the dependencies of the column are put
+	 */
+	protected void readColumn(TempTable table, String[] col_names, int col, ColumnValues[] columns, List<List<NodeFunction>> deps)
+	{
+		String col_name = col_names[col];
+		ColumnValues values = new ColumnValues(m_sketchSize);
+		List<NodeFunction> col_deps = new LinkedList<NodeFunction>();
+		int row = 0;
+		for (TableEntry te : table.getEntries())
+		{
+			Float f = DataFormatter.readFloat(te.get(col_name));
+			if (f != null)
+			{
+				values.add(f);
+			}
+			if (m_sketchSize == 0)
+			{
 				NodeFunction nf = table.dependsOn(row, col);
-				//NodeFunction nf = //te.getDependency(col_name);
 				if (nf != null)
 				{
-					deps.add(nf);
+					col_deps.add(nf);
 				}
-				row++;
-			}
-			Collections.sort(values);
-			if (values.isEmpty())
-			{
-				// Nothing to do
-				return new_table;
-			}
-			float num_values = values.size();
-			TableEntry te = new TableEntry();
-			te.put(m_captionX, DataFormatter.cast(col_name));
-			te.put(m_captionMin, values.get(0));
-			te.put(m_captionQ1, values.get(Math.max(0, (int)(num_values * 0.25) - 1)));
-			te.put(m_captionQ2, values.get(Math.max(0, (int)(num_values * 0.5) - 1)));
-			te.put(m_captionQ3, values.get(Math.max(0, (int)(num_values * 0.75) - 1)));
-			te.put(m_captionMax, values.get(Math.max(0, (int) num_values - 1)));
-			te.addDependency(m_captionMin, new AggregateFunction("Minimum value of column " + col_name + " in Table #" + table.m_id, deps));
-			te.addDependency(m_captionQ1, new AggregateFunction("First quartile " + col_name + " in Table #" + table.m_id, deps));
-			te.addDependency(m_captionQ2, new AggregateFunction("Median of column " + col_name + " in Table #" + table.m_id, deps));
-			te.addDependency(m_captionQ3, new AggregateFunction("Third quartile of column " + col_name + " in Table #" + table.m_id, deps));
-			te.addDependency(m_captionMax, new AggregateFunction("Maximum value of column " + col_name + " in Table #" + table.m_id, deps));
-			new_table.add(te);
-			col++;
+			}
+			row++;
+		}
+		if (m_sketchSize != 0)
+		{
+			// Do not keep one dependency per row
+			col_deps.add(new TableFunctionNode(table, table.getRowCount(), table.getColumnCount()));
+		}
+		columns[col] = values;
+		deps.set(col, col_deps);
+	}
+	
+	/**
+	 * Adds to the output table the row summarizing a column
+	 * @param new_table The output table
+	 * @param col_name The name of the column
+	 * @param values The values of the column
+	 * @param deps The dependencies of the cells of the row
+	 * @param table_id The ID of the input table
+	 */
+	protected void addRow(TempTable new_table, String col_name, ColumnValues values, List<NodeFunction> deps, int table_id)
+	{
+		long count = values.getCount();
+		if (count == 0)
+		{
+			// Nothing to do
+			return;
+		}
+		float num_values = count;
+		TableEntry te = new TableEntry();
+		te.put(m_captionX, DataFormatter.cast(col_name));
+		te.put(m_captionMin, values.getValueAtRank(0));
+		te.put(m_captionQ1, values.getValueAtRank(Math.max(0, (int)(num_values * 0.25) - 1)));
+		te.put(m_captionQ2, values.getValueAtRank(Math.max(0, (int)(num_values * 0.5) - 1)));
+		te.put(m_captionQ3, values.getValueAtRank(Math.max(0, (int)(num_values * 0.75) - 1)));
+		te.put(m_captionMax, values.getValueAtRank(Math.max(0, (int) num_values - 1)));
+		te.addDependency(m_captionMin, new AggregateFunction("Minimum value of column " + col_name + " in Table #" + table_id, deps));
+		te.addDependency(m_captionQ1, new AggregateFunction("First quartile " + col_name + " in Table #" + table_id, deps));
+		te.addDependency(m_captionQ2, new AggregateFunction("Median of column " + col_name + " in Table #" + table_id, deps));
+		te.addDependency(m_captionQ3, new AggregateFunction("Third quartile of column " + col_name + " in Table #" + table_id, deps));
+		te.addDependency(m_captionMax, new AggregateFunction("Maximum value of column " + col_name + " in Table #" + table_id, deps));
+		new_table.add(te);
+	}
+
+	@Override
+	public AggregateState newState(String[] input_columns)
+	{
+		return new BoxState(input_columns);
+	}
+
+	/**
+	 * The values of the columns of the rows seen so far
+	 */
+	public class BoxState implements MergeableState
+	{
+		/**
+		 * The names of the columns
+		 */
+		protected final String[] m_columnNames;
+
+		/**
+		 * The values of each column
+		 */
+		protected final ColumnValues[] m_columns;
+
+		/**
+		 * Creates a new empty state
+		 * @param col_names The names of the columns
+		 */
+		public BoxState(String[] col_names)
+		{
+			super();
+			m_columnNames = col_names;
+			m_columns = new ColumnValues[col_names.length];
+			for (int col = 0; col < col_names.length; col++)
+			{
+				m_columns[col] = new ColumnValues(m_sketchSize);
+			}
+		}
+
+		@Override
+		public void update(TableEntry entry)
+		{
+			for (int col = 0; col < m_columnNames.length; col++)
+			{
+				Float f = DataFormatter.readFloat(entry.get(m_columnNames[col]));
+				if (f != null)
+				{
+					m_columns[col].add(f);
+				}
+			}
+		}
+
+		@Override
+		public TempTable getTable(HardTable source)
+		{
+			TempTable new_table = new TempTable(-10, m_captionX, m_captionMin, m_captionQ1, m_captionQ2, m_captionQ3, m_captionMax);
+			List<NodeFunction> deps = new ArrayList<NodeFunction>(1);
+			deps.add(new TableFunctionNode(source, source.getRowCount(), source.getColumnCount()));
+			for (int col = 0; col < m_columnNames.length; col++)
+			{
+				addRow(new_table, m_columnNames[col], m_columns[col], deps, source.m_id);
+			}
+			return new_table;
+		}
+
+		@Override
+		public void merge(MergeableState other)
+		{
+			if (!(other instanceof BoxState) || !Arrays.equals(m_columnNames, ((BoxState) other).m_columnNames))
+			{
+				throw new IllegalArgumentException("Incompatible state");
+			}
+			for (int col = 0; col < m_columns.length; col++)
+			{
+				m_columns[col].merge(((BoxState) other).m_columns[col]);
+			}
+		}
+
+		@Override
+		public void write(DataOutput out) throws IOException
+		{
+			PartialAggregates.writeHeader(out, 'B', m_columnNames);
+			for (ColumnValues values : m_columns)
+			{
+				values.write(out);
+			}
+		}
+
+		@Override
+		public void read(DataInput in) throws IOException
+		{
+			PartialAggregates.readHeader(in, 'B', m_columnNames);
+			for (ColumnValues values : m_columns)
+			{
+				values.read(in);
+			}
 		}
-		return new_table;
 	}
 
+	/**
+	 * The values of a column. They are kept in an array of primitive
+	 * numbers until there are more than a given number of them; they are
+	 * then summarized by a sketch, if one is to be used.
+	 */
+	protected static class ColumnValues
+	{
+		/**
+		 * The values, or {@code null} once they are summarized by a sketch
+		 */
+		protected float[] m_values;
+
+		/**
+		 * The number of values in the array
+		 */
+		protected int m_size;
+
+		/**
+		 * The sketch summarizing the values, or {@code null} if they are
+		 * kept in the array
+		 */
+		protected KllSketch m_sketch;
+
+		/**
+		 * The parameter <i>k</i> of the sketch, or 0 to never use one
+		 */
+		protected final int m_sketchSize;
+
+		/**
+		 * Creates an empty set of values
+		 * @param sketch_size The parameter <i>k</i> of the sketch, or 0 to
+		 *   never use one
+		 */
+		public ColumnValues(int sketch_size)
+		{
+			super();
+			m_sketchSize = sketch_size;
+			m_values = new float[16];
+			m_size = 0;
+			m_sketch = null;
+		}
+
+		/**
+		 * Adds a value
+		 * @param v The value
+		 */
+		public void add(float v)
+		{
+			if (m_sketch != null)
+			{
+				m_sketch.update(v);
+				return;
+			}
+			if (m_size == m_values.length)
+			{
+				m_values = Arrays.copyOf(m_values, m_values.length * 2);
+			}
+			m_values[m_size++] = v;
+			if (m_sketchSize > 0 && m_size > s_exactLimit)
+			{
+				toSketch(m_sketchSize);
+			}
+		}
+
+		/**
+		 * Replaces the array of values by a sketch summarizing them
+		 * @param k The parameter <i>k</i> of the sketch
+		 */
+		protected void toSketch(int k)
+		{
+			m_sketch = new KllSketch(k);
+			for (int i = 0; i < m_size; i++)
+			{
+				m_sketch.update(m_values[i]);
+			}
+			m_values = null;
+			m_size = 0;
+		}
+
+		/**
+		 * Adds the values of another column
+		 * @param other The other values, which are not modified
+		 */
+		public void merge(ColumnValues other)
+		{
+			if (other.m_sketch == null)
+			{
+				for (int i = 0; i < other.m_size; i++)
+				{
+					add(other.m_values[i]);
+				}
+				return;
+			}
+			if (m_sketch == null)
+			{
+				toSketch(other.m_sketch.getK());
+			}
+			m_sketch.merge(other.m_sketch);
+		}
+
+		/**
+		 * Writes these values to a stream
+		 * @param out The stream
+		 * @throws IOException If the stream cannot be written to
+		 */
+		public void write(DataOutput out) throws IOException
+		{
+			if (m_sketch != null)
+			{
+				out.writeBoolean(true);
+				m_sketch.write(out);
+				return;
+			}
+			out.writeBoolean(false);
+			out.writeInt(m_size);
+			for (int i = 0; i < m_size; i++)
+			{
+				out.writeFloat(m_values[i]);
+			}
+		}
+
+		/**
+		 * Adds values written to a stream by {@link #write(DataOutput)}
+		 * @param in The stream
+		 * @throws IOException If the stream cannot be read
+		 */
+		public void read(DataInput in) throws IOException
+		{
+			if (in.readBoolean())
+			{
+				KllSketch sketch = KllSketch.read(in);
+				if (m_sketch == null)
+				{
+					toSketch(sketch.getK());
+				}
+				m_sketch.merge(sketch);
+				return;
+			}
+			int size = in.readInt();
+			if (size < 0)
+			{
+				throw new IOException("Invalid number of values");
+			}
+			for (int i = 0; i < size; i++)
+			{
+				add(in.readFloat());
+			}
+		}
+
+		/**
+		 * Gets the number of values
+		 * @return The number of values
+		 */
+		public long getCount()
+		{
+			if (m_sketch != null)
+			{
+				return m_sketch.getCount();
+			}
+			return m_size;
+		}
+
+		/**
+		 * Gets the value that would be at a given position if the values
+		 * were sorted. When the values are kept in the array, they are
+		 * reordered, but not sorted.
+		 * @param rank The position
+		 * @return The value
+		 */
+		public float getValueAtRank(long rank)
+		{
+			if (m_sketch != null)
+			{
+				return m_sketch.getValueAtRank(rank);
+			}
+			return select(m_values, m_size, (int) rank);
+		}
+	}
+
+	/**
+	 * Finds the value that would be at a given position in an array if it
+	 * were sorted, by partially reordering the array
+	 * @param a The array
+	 * @param n The number of values of the array to consider
+	 * @param k The position
+	 * @return The value
+	 */
+	protected static float select(float[] a, int n, int k)
+	{
+		int lo = 0, hi = n - 1;
+		while (lo < hi)
+		{
+			// Median of three, moved to position hi
+			int mid = (lo + hi) >>> 1;
+			if (Float.compare(a[mid], a[lo]) < 0)
+			{
+				swap(a, mid, lo);
+			}
+			if (Float.compare(a[hi], a[lo]) < 0)
+			{
+				swap(a, hi, lo);
+			}
+			if (Float.compare(a[mid], a[hi]) < 0)
+			{
+				swap(a, mid, hi);
+			}
+			float pivot = a[hi];
+			// Three-way partition, so that runs of equal values end quickly
+			int lt = lo, i = lo, gt = hi;
+			while (i <= gt)
+			{
+				int c = Float.compare(a[i], pivot);
+				if (c < 0)
+				{
+					swap(a, lt++, i++);
+				}
+				else if (c > 0)
+				{
+					swap(a, i, gt--);
+				}
+				else
+				{
+					i++;
+				}
+			}
+			if (k < lt)
+			{
+				hi = lt - 1;
+			}
+			else if (k > gt)
+			{
+				lo = gt + 1;
+			}
+			else
+			{
+				return pivot;
+			}
+		}
+		return a[k];
+	}
+
+	/**
+	 * Swaps two values of an array
+	 * @param a The array
+	 * @param i The position of the first value
+	 * @param j The position of the second value
+	 */
+	protected static void swap(float[] a, int i, int j)
+	{
+		float t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
 }
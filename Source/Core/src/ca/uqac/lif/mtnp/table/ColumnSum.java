@@ -17,6 +17,11 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -27,7 +32,7 @@ import ca.uqac.lif.petitpoucet.NodeFunction;
  * Computes the sum of each column
  * @author Sylvain Hallé
  */
-public class ColumnSum implements TableTransformation
+public class ColumnSum implements IncrementalTransformation
 {
 	/**
 	 * A single instance of this table transformation
@@ -89,4 +94,99 @@ public class ColumnSum implements TableTransformation
 		return out_table;
 	}
 
+	@Override
+	public AggregateState newState(String[] input_columns)
+	{
+		return new SumState(input_columns);
+	}
+
+	/**
+	 * The sums of the columns of the rows seen so far
+	 */
+	public static class SumState implements MergeableState
+	{
+		/**
+		 * The names of the columns
+		 */
+		protected final String[] m_columnNames;
+
+		/**
+		 * The sum of each column
+		 */
+		protected final float[] m_sums;
+
+		/**
+		 * Creates a new empty state
+		 * @param col_names The names of the columns
+		 */
+		public SumState(String[] col_names)
+		{
+			super();
+			m_columnNames = col_names;
+			m_sums = new float[col_names.length];
+		}
+
+		@Override
+		public void update(TableEntry entry)
+		{
+			for (int col = 0; col < m_columnNames.length; col++)
+			{
+				PrimitiveValue o = entry.get(m_columnNames[col]);
+				if (o != null && o.isNumeric())
+				{
+					m_sums[col] += o.numberValue().floatValue();
+				}
+			}
+		}
+
+		@Override
+		public TempTable getTable(HardTable source)
+		{
+			TempTable out_table = new TempTable(source.m_id, m_columnNames);
+			NodeFunction whole = new TableFunctionNode(source, source.getRowCount(), source.getColumnCount());
+			TableEntry te = new TableEntry();
+			for (int col = 0; col < m_columnNames.length; col++)
+			{
+				te.put(m_columnNames[col], m_sums[col]);
+				AggregateFunction af = new AggregateFunction("The sum of column " + col + " in Table #" + source.m_id, Collections.singleton(whole));
+				te.addDependency(m_columnNames[col], af);
+			}
+			out_table.add(te);
+			return out_table;
+		}
+
+		@Override
+		public void merge(MergeableState other)
+		{
+			if (!(other instanceof SumState) || !Arrays.equals(((SumState) other).m_columnNames, m_columnNames))
+			{
+				throw new IllegalArgumentException("Incompatible state");
+			}
+			float[] sums = ((SumState) other).m_sums;
+			for (int col = 0; col < m_sums.length; col++)
+			{
+				m_sums[col] += sums[col];
+			}
+		}
+
+		@Override
+		public void write(DataOutput out) throws IOException
+		{
+			PartialAggregates.writeHeader(out, 'S', m_columnNames);
+			for (float sum : m_sums)
+			{
+				out.writeFloat(sum);
+			}
+		}
+
+		@Override
+		public void read(DataInput in) throws IOException
+		{
+			PartialAggregates.readHeader(in, 'S', m_columnNames);
+			for (int col = 0; col < m_sums.length; col++)
+			{
+				m_sums[col] += in.readFloat();
+			}
+		}
+	}
 }
@@ -17,12 +17,28 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * A table transformation made by chaining multiple transformations
  * one after the other.
+ * <p>
+ * Consecutive transformations that process each row independently of
+ * the others (i.e. {@link RowTransformation}s) are merged into a
+ * {@link RowPipeline}, which runs them in a single pass over the table
+ * instead of creating a table after each of them. Other transformations,
+ * such as sorting or joining, still produce their complete table before
+ * the next transformation is applied.
+ * <p>
+ * A composition made of row-local transformations followed by an
+ * {@link IncrementalTransformation} can itself be computed incrementally:
+ * each new row goes through the row-local transformations, and the
+ * resulting row updates the state of the last transformation.
  * @author Sylvain Hallé
  */
-public class Composition implements TableTransformation
+public class Composition implements IncrementalTransformation
 {
 	/**
 	 * The list of transformations to perform
@@ -39,15 +55,168 @@ public class Composition implements TableTransformation
 		m_transformations = transformations;
 	}
 
+	/**
+	 * Gets the transformations of this composition
+	 * @return The transformations, in the order they are applied
+	 */
+	public TableTransformation[] getTransformations()
+	{
+		return m_transformations;
+	}
+
 	@Override
 	public TempTable transform(TempTable ... tables)
 	{
-		TempTable t = m_transformations[0].transform(tables);
-		for (int i = 1; i < m_transformations.length; i++)
+		TempTable t = null;
+		int i = 0;
+		while (i < m_transformations.length)
 		{
-			t = m_transformations[i].transform(t);
+			TempTable[] in_tables = t == null ? tables : new TempTable[]{t};
+			int end = i;
+			while (end < m_transformations.length && m_transformations[end] instanceof RowTransformation)
+			{
+				end++;
+			}
+			if (end - i < 2)
+			{
+				t = m_transformations[i].transform(in_tables);
+				i++;
+				continue;
+			}
+			RowTransformation[] stages = new RowTransformation[end - i];
+			for (int j = i; j < end; j++)
+			{
+				stages[j - i] = (RowTransformation) m_transformations[j];
+			}
+			t = new RowPipeline(in_tables[0].getColumnNames(), stages).transform(in_tables);
+			i = end;
 		}
 		return t;
 	}
 
+	@Override
+	public AggregateState newState(String[] input_columns)
+	{
+		int last = m_transformations.length - 1;
+		if (last < 0 || !(m_transformations[last] instanceof IncrementalTransformation))
+		{
+			return null;
+		}
+		RowTransformation[] stages = new RowTransformation[last];
+		for (int i = 0; i < last; i++)
+		{
+			if (!(m_transformations[i] instanceof RowTransformation))
+			{
+				return null;
+			}
+			stages[i] = (RowTransformation) m_transformations[i];
+		}
+		RowPipeline pipeline = new RowPipeline(input_columns, stages);
+		AggregateState state = ((IncrementalTransformation) m_transformations[last]).newState(pipeline.getOutputColumns(input_columns));
+		if (state == null)
+		{
+			return null;
+		}
+		if (last == 0)
+		{
+			return state;
+		}
+		if (state instanceof MergeableState)
+		{
+			return new MergeablePipelineState(input_columns, pipeline, (MergeableState) state);
+		}
+		return new PipelineState(input_columns, pipeline, state);
+	}
+
+	/**
+	 * The state of a composition of row-local transformations followed by
+	 * an incremental transformation
+	 */
+	protected static class PipelineState implements AggregateState
+	{
+		/**
+		 * The names of the columns of the input table
+		 */
+		protected final String[] m_inputColumns;
+
+		/**
+		 * The row-local transformations
+		 */
+		protected final RowPipeline m_pipeline;
+
+		/**
+		 * The state of the last transformation
+		 */
+		protected final AggregateState m_state;
+
+		/**
+		 * Creates a new empty state
+		 * @param input_columns The names of the columns of the input table
+		 * @param pipeline The row-local transformations
+		 * @param state The empty state of the last transformation
+		 */
+		public PipelineState(String[] input_columns, RowPipeline pipeline, AggregateState state)
+		{
+			super();
+			m_inputColumns = input_columns;
+			m_pipeline = pipeline;
+			m_state = state;
+		}
+
+		@Override
+		public void update(TableEntry entry)
+		{
+			TableEntry te = m_pipeline.transformRow(m_inputColumns, entry);
+			if (te != null)
+			{
+				m_state.update(te);
+			}
+		}
+
+		@Override
+		public TempTable getTable(HardTable source)
+		{
+			return m_state.getTable(source);
+		}
+	}
+
+	/**
+	 * The state of a composition of row-local transformations followed by
+	 * an incremental transformation whose states can be merged
+	 */
+	protected static class MergeablePipelineState extends PipelineState implements MergeableState
+	{
+		/**
+		 * Creates a new empty state
+		 * @param input_columns The names of the columns of the input table
+		 * @param pipeline The row-local transformations
+		 * @param state The empty state of the last transformation
+		 */
+		public MergeablePipelineState(String[] input_columns, RowPipeline pipeline, MergeableState state)
+		{
+			super(input_columns, pipeline, state);
+		}
+
+		@Override
+		public void merge(MergeableState other)
+		{
+			if (other instanceof MergeablePipelineState)
+			{
+				other = (MergeableState) ((MergeablePipelineState) other).m_state;
+			}
+			((MergeableState) m_state).merge(other);
+		}
+
+		@Override
+		public void write(DataOutput out) throws IOException
+		{
+			((MergeableState) m_state).write(out);
+		}
+
+		@Override
+		public void read(DataInput in) throws IOException
+		{
+			((MergeableState) m_state).read(in);
+		}
+	}
 }
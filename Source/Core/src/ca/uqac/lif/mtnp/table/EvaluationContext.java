@@ -0,0 +1,483 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Computes each {@link TransformedTable} at most once, even when it is
+ * used by many other tables or plots. Without a context, a transformed
+ * table is recomputed every time its contents are asked, including when
+ * it is the input of other transformed tables; a join of raw results
+ * shared by a dozen plots is thus computed a dozen times.
+ * <p>
+ * While a context is <em>entered</em> by a thread, the contents of a
+ * transformed table computed by that thread are kept by the context, and
+ * every later request for that table receives a copy of them instead of
+ * computing them again. The tables given to the context with
+ * {@link #add(Table)} can also be computed in advance by
+ * {@link #refresh()}, which walks the graph of their inputs and computes
+ * each distinct transformed table once, starting from the sources. Tables
+ * that do not depend on each other can be computed in parallel.
+ * <p>
+ * A typical use is:
+ * <pre>
+ * EvaluationContext ctx = new EvaluationContext(4);
+ * ctx.add(plot1.getTable()); ctx.add(plot2.getTable());
+ * ctx.refresh();
+ * ctx.enter();
+ * try
+ * {
+ *   byte[] image1 = plot1.getImage(ImageType.PNG, true);
+ *   byte[] image2 = plot2.getImage(ImageType.PNG, true);
+ * }
+ * finally
+ * {
+ *   ctx.exit();
+ * }
+ * </pre>
+ * Contexts can be nested: a thread that enters a context while another
+ * one is entered goes back to the outer context when it exits the inner
+ * one.
+ * <p>
+ * The contents kept by the context are not updated when the source tables
+ * change; calling {@link #refresh()} again discards them.
+ * @author Sylvain Hallé
+ */
+public class EvaluationContext
+{
+	/**
+	 * The context entered by each thread
+	 */
+	private static final ThreadLocal<EvaluationContext> s_current = new ThreadLocal<EvaluationContext>();
+
+	/**
+	 * The contexts entered by each thread before its current one, the most
+	 * recent last
+	 */
+	private static final ThreadLocal<List<EvaluationContext>> s_previous = new ThreadLocal<List<EvaluationContext>>()
+	{
+		@Override
+		protected List<EvaluationContext> initialValue()
+		{
+			return new ArrayList<EvaluationContext>();
+		}
+	};
+
+	/**
+	 * The contents of the tables computed so far
+	 */
+	protected final Map<Table,TempTable> m_results;
+
+	/**
+	 * The tables to compute on a refresh
+	 */
+	protected final List<Table> m_tables;
+
+	/**
+	 * The number of threads used to compute independent tables
+	 */
+	protected final int m_numThreads;
+
+	/**
+	 * The number of tables computed since the last refresh
+	 */
+	protected int m_evaluations = 0;
+
+	/**
+	 * The number of requests answered with contents computed earlier, since
+	 * the last refresh
+	 */
+	protected int m_hits = 0;
+
+	/**
+	 * Creates a new context that computes tables one at a time
+	 */
+	public EvaluationContext()
+	{
+		this(1);
+	}
+
+	/**
+	 * Creates a new context
+	 * @param num_threads The number of threads used to compute tables that
+	 *   do not depend on each other
+	 */
+	public EvaluationContext(int num_threads)
+	{
+		super();
+		m_results = new IdentityHashMap<Table,TempTable>();
+		m_tables = new ArrayList<Table>();
+		m_numThreads = Math.max(1, num_threads);
+	}
+
+	/**
+	 * Gets the context entered by the current thread
+	 * @return The context, or {@code null} if no context is entered
+	 */
+	public static EvaluationContext current()
+	{
+		return s_current.get();
+	}
+
+	/**
+	 * Makes the current thread use this context, until {@link #exit()} is
+	 * called. The context the thread was using, if any, is remembered.
+	 */
+	public void enter()
+	{
+		s_previous.get().add(s_current.get());
+		s_current.set(this);
+	}
+
+	/**
+	 * Makes the current thread stop using this context, and go back to the
+	 * context it was using before calling {@link #enter()}
+	 */
+	public void exit()
+	{
+		List<EvaluationContext> previous = s_previous.get();
+		EvaluationContext outer = previous.isEmpty() ? null : previous.remove(previous.size() - 1);
+		if (outer == null)
+		{
+			s_current.remove();
+		}
+		else
+		{
+			s_current.set(outer);
+		}
+	}
+
+	/**
+	 * Adds a table to compute on each refresh
+	 * @param table The table
+	 * @return This context
+	 */
+	public EvaluationContext add(Table table)
+	{
+		synchronized (m_tables)
+		{
+			m_tables.add(table);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds tables to compute on each refresh
+	 * @param tables The tables
+	 * @return This context
+	 */
+	public EvaluationContext addAll(Collection<? extends Table> tables)
+	{
+		for (Table t : tables)
+		{
+			add(t);
+		}
+		return this;
+	}
+
+	/**
+	 * Discards the contents computed so far, and computes again every
+	 * transformed table needed by the tables added to this context. If the
+	 * thread is interrupted, the computation stops: the contents computed
+	 * so far are discarded, and the thread keeps its interrupted status.
+	 */
+	public void refresh()
+	{
+		List<List<TransformedTable>> levels;
+		synchronized (m_tables)
+		{
+			levels = getLevels(m_tables);
+		}
+		synchronized (this)
+		{
+			m_results.clear();
+			m_evaluations = 0;
+			m_hits = 0;
+		}
+		if (m_numThreads <= 1)
+		{
+			for (List<TransformedTable> level : levels)
+			{
+				for (TransformedTable tt : level)
+				{
+					if (Thread.currentThread().isInterrupted())
+					{
+						discard();
+						return;
+					}
+					compute(tt);
+				}
+			}
+			return;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(m_numThreads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "mtnp-evaluation");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try
+		{
+			for (List<TransformedTable> level : levels)
+			{
+				// The tables of a level only depend on tables of earlier levels
+				List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(level.size());
+				for (final TransformedTable tt : level)
+				{
+					tasks.add(new Callable<Object>()
+					{
+						@Override
+						public Object call()
+						{
+							compute(tt);
+							return null;
+						}
+					});
+				}
+				for (Future<Object> f : pool.invokeAll(tasks))
+				{
+					f.get();
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// Stop, rather than leave the results of some of the tables
+			pool.shutdownNow();
+			discard();
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Discards the contents computed so far
+	 */
+	protected synchronized void discard()
+	{
+		m_results.clear();
+		m_evaluations = 0;
+	}
+
+	/**
+	 * Computes a table in this context, so that its inputs are taken from
+	 * the contents already computed
+	 * @param tt The table
+	 */
+	protected void compute(TransformedTable tt)
+	{
+		enter();
+		try
+		{
+			if (!contains(tt))
+			{
+				// The contents are kept as they are, since no one else gets
+				// this object
+				TempTable out = tt.computeDataTable(false);
+				if (!Thread.currentThread().isInterrupted())
+				{
+					// Not kept if the refresh was stopped in the meantime
+					put(tt, out);
+				}
+			}
+		}
+		finally
+		{
+			exit();
+		}
+	}
+
+	/**
+	 * Sorts the transformed tables needed by a set of tables by level: a
+	 * table is in a level after all the transformed tables it depends on
+	 * @param tables The tables
+	 * @return The levels, each containing distinct tables
+	 */
+	protected static List<List<TransformedTable>> getLevels(Collection<Table> tables)
+	{
+		Map<Table,Integer> depths = new IdentityHashMap<Table,Integer>();
+		List<List<TransformedTable>> levels = new ArrayList<List<TransformedTable>>();
+		for (Table t : tables)
+		{
+			getDepth(t, depths, levels);
+		}
+		return levels;
+	}
+
+	/**
+	 * Gets the level of a table, placing it and its inputs in their level
+	 * if this was not already done
+	 * @param t The table
+	 * @param depths The level of each table already visited
+	 * @param levels The tables in each level
+	 * @return The level of the table, or -1 if it is not a transformed table
+	 */
+	protected static int getDepth(Table t, Map<Table,Integer> depths, List<List<TransformedTable>> levels)
+	{
+		if (!(t instanceof TransformedTable))
+		{
+			return -1;
+		}
+		Integer depth = depths.get(t);
+		if (depth != null)
+		{
+			return depth;
+		}
+		TransformedTable tt = (TransformedTable) t;
+		int d = 0;
+		for (Table in : tt.getInputTables())
+		{
+			d = Math.max(d, getDepth(in, depths, levels) + 1);
+		}
+		depths.put(t, d);
+		while (levels.size() <= d)
+		{
+			levels.add(new ArrayList<TransformedTable>());
+		}
+		levels.get(d).add(tt);
+		return d;
+	}
+
+	/**
+	 * Gets a copy of the contents of a table computed earlier in this
+	 * context. The copy can be modified without affecting the contents kept
+	 * by the context.
+	 * @param table The table
+	 * @return The copy, or {@code null} if the table has not been computed
+	 */
+	public TempTable get(Table table)
+	{
+		TempTable t;
+		synchronized (this)
+		{
+			t = m_results.get(table);
+			if (t == null)
+			{
+				return null;
+			}
+			m_hits++;
+		}
+		return copy(t);
+	}
+
+	/**
+	 * Keeps the contents of a table computed in this context
+	 * @param table The table
+	 * @param contents Its contents. The context keeps this object itself,
+	 *   which must therefore not be modified afterwards; requests for the
+	 *   table receive copies of it (see {@link #get(Table)}).
+	 */
+	public synchronized void put(Table table, TempTable contents)
+	{
+		m_results.put(table, contents);
+		m_evaluations++;
+	}
+
+	/**
+	 * Checks if the contents of a table have been computed in this context
+	 * @param table The table
+	 * @return {@code true} if the contents are available, {@code false}
+	 *   otherwise
+	 */
+	public synchronized boolean contains(Table table)
+	{
+		return m_results.containsKey(table);
+	}
+
+	/**
+	 * Gets the names of the columns of a table computed earlier in this
+	 * context
+	 * @param table The table
+	 * @return The names, or {@code null} if the table has not been computed
+	 */
+	public synchronized String[] getColumnNames(Table table)
+	{
+		TempTable t = m_results.get(table);
+		if (t == null)
+		{
+			return null;
+		}
+		return t.getColumnNames();
+	}
+
+	/**
+	 * Gets the number of tables computed since the last refresh
+	 * @return The number of tables
+	 */
+	public synchronized int getEvaluationCount()
+	{
+		return m_evaluations;
+	}
+
+	/**
+	 * Gets the number of requests for a table answered with contents
+	 * computed earlier, since the last refresh
+	 * @return The number of requests
+	 */
+	public synchronized int getHits()
+	{
+		return m_hits;
+	}
+
+	/**
+	 * Copies the contents of a table. Transformations may reorder the
+	 * entries of their input tables, or modify them, so each consumer of a
+	 * table receives its own entries.
+	 * @param t The table
+	 * @return The copy
+	 */
+	protected static TempTable copy(TempTable t)
+	{
+		List<TableEntry> entries = t.getEntries();
+		List<TableEntry> new_entries = new ArrayList<TableEntry>(entries.size());
+		for (TableEntry te : entries)
+		{
+			TableEntry new_te = new TableEntry(te);
+			new_te.m_rowIndex = te.m_rowIndex;
+			new_entries.add(new_te);
+		}
+		return new TempTable(t.getId(), new_entries, t.getColumnNames());
+	}
+}
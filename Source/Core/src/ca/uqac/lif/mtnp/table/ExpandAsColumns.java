@@ -53,6 +53,9 @@ import java.util.Set;
  * <pre>
  * TableTransformation t = new ExpandAsColumns("Market", "Share");
  * </pre>
+ * Some values can be ignored with {@link #ignore(String...) ignore()}; no
+ * column is created for them. This gives the same table as removing
+ * these columns after the transformation, without filling them first.
  * @author Sylvain Hallé
  *
  */
@@ -62,11 +65,17 @@ public class ExpandAsColumns implements TableTransformation
 	
 	protected final String m_valueKey;
 	
+	/**
+	 * The values for which no column is created
+	 */
+	protected final Set<String> m_ignoredValues;
+	
 	public ExpandAsColumns(String column_key, String value_key)
 	{
 		super();
 		m_columnKey = column_key;
 		m_valueKey = value_key;
+		m_ignoredValues = new HashSet<String>();
 	}
 	
 	public static ExpandAsColumns get(String column_key, String value_key)
@@ -74,11 +83,53 @@ public class ExpandAsColumns implements TableTransformation
 		return new ExpandAsColumns(column_key, value_key);
 	}
 	
+	/**
+	 * Gets the name of the column whose values become column headers
+	 * @return The name
+	 */
+	public String getColumnKey()
+	{
+		return m_columnKey;
+	}
+	
+	/**
+	 * Gets the name of the column whose values fill the new columns
+	 * @return The name
+	 */
+	public String getValueKey()
+	{
+		return m_valueKey;
+	}
+	
+	/**
+	 * Sets values for which no column is to be created
+	 * @param values The values
+	 * @return This transformation
+	 */
+	public ExpandAsColumns ignore(String ... values)
+	{
+		for (String v : values)
+		{
+			m_ignoredValues.add(v);
+		}
+		return this;
+	}
+	
+	/**
+	 * Gets the values for which no column is created
+	 * @return The set of values
+	 */
+	public Set<String> getIgnoredValues()
+	{
+		return m_ignoredValues;
+	}
+	
 	@Override
 	public TempTable transform(TempTable ... tables)
 	{
 		TempTable table = tables[0];
 		Set<String> new_keys = new HashSet<String>();
+		boolean has_keys = false;
 		for (TableEntry te : table.getEntries())
 		{
 			if (!te.containsKey(m_columnKey))
@@ -90,9 +141,13 @@ public class ExpandAsColumns implements TableTransformation
 			{
 				continue;
 			}
-			new_keys.add(o.toString());
+			has_keys = true;
+			if (!m_ignoredValues.contains(o.toString()))
+			{
+				new_keys.add(o.toString());
+			}
 		}
-		if (new_keys.isEmpty())
+		if (!has_keys)
 		{
 			// Nothing to do
 			return table;
@@ -124,6 +179,10 @@ public class ExpandAsColumns implements TableTransformation
 			{
 				
 				String s = getString(te.get(m_columnKey));
+				if (m_ignoredValues.contains(s))
+				{
+					continue;
+				}
 				existing_entry.put(s, te.get(m_valueKey));
 				DirectValue dv = new DirectValue();
 				dv.add(new TableCellNode(table, te.getRowIndex(), value_pos));
@@ -0,0 +1,64 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * Keeps only the rows of a table that satisfy a condition. Since each
+ * row is examined independently of the others, a filter can be processed
+ * in parallel, and merged with the neighbouring row-local transformations
+ * of a {@link Composition}.
+ * @author Sylvain Hallé
+ */
+public abstract class FilterRows implements RowTransformation
+{
+	@Override
+	public TempTable transform(TempTable... tables)
+	{
+		return RowExecutor.transform(this, tables[0]);
+	}
+
+	@Override
+	public String[] getOutputColumns(String[] input_columns)
+	{
+		return input_columns;
+	}
+
+	@Override
+	public int[] getSourceColumns(String[] input_columns)
+	{
+		return null;
+	}
+
+	@Override
+	public TableEntry transformRow(String[] input_columns, TableEntry entry)
+	{
+		if (!accept(entry))
+		{
+			return null;
+		}
+		return new TableEntry(entry);
+	}
+
+	/**
+	 * Decides if a row is kept in the output table. This method may be
+	 * called by multiple threads at the same time.
+	 * @param entry The row
+	 * @return {@code true} if the row is kept, {@code false} otherwise
+	 */
+	public abstract boolean accept(TableEntry entry);
+}
@@ -0,0 +1,481 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.petitpoucet.AggregateFunction;
+import ca.uqac.lif.petitpoucet.NodeFunction;
+
+/**
+ * Groups the rows of a table by the value of one column, and aggregates
+ * the numerical values of the other columns in each group. For example,
+ * given the following table:
+ * <table border="1">
+ * <tr><th>Browser</th><th>Share</th><th>Users</th></tr>
+ * <tr><td>Firefox</td><td>20</td><td>3</td></tr>
+ * <tr><td>IE</td><td>10</td><td>1</td></tr>
+ * <tr><td>Firefox</td><td>23</td><td>4</td></tr>
+ * </table>
+ * the transformation <code>new GroupBy("Browser", Aggregate.SUM)</code>
+ * produces this table:
+ * <table border="1">
+ * <tr><th>Browser</th><th>Share</th><th>Users</th></tr>
+ * <tr><td>Firefox</td><td>43</td><td>7</td></tr>
+ * <tr><td>IE</td><td>10</td><td>1</td></tr>
+ * </table>
+ * Groups appear in the order their value is first found in the input
+ * table. In a group where a column has no numerical value, the cell of
+ * that column is empty (except for {@link Aggregate#COUNT}, which gives
+ * 0).
+ * <p>
+ * Since each group only keeps a few numbers, this transformation can be
+ * computed incrementally, and the states of several parts of a table
+ * can be merged (see {@link PartialAggregates}). The cells of the output
+ * table depend on the input table as a whole.
+ * @author Sylvain Hallé
+ */
+public class GroupBy implements IncrementalTransformation
+{
+	/**
+	 * The aggregations that can be computed on each group
+	 */
+	public static enum Aggregate {COUNT, SUM, MIN, MAX, AVERAGE};
+
+	/**
+	 * The name of the column whose values define the groups
+	 */
+	protected final String m_groupColumn;
+
+	/**
+	 * The aggregation computed on each group
+	 */
+	protected final Aggregate m_aggregate;
+
+	/**
+	 * Creates a new instance of this table transformation
+	 * @param group_column The name of the column whose values define the
+	 *   groups
+	 * @param aggregate The aggregation computed on each group
+	 */
+	public GroupBy(String group_column, Aggregate aggregate)
+	{
+		super();
+		m_groupColumn = group_column;
+		m_aggregate = aggregate;
+	}
+
+	/**
+	 * Gets the name of the column whose values define the groups
+	 * @return The name
+	 */
+	public String getGroupColumn()
+	{
+		return m_groupColumn;
+	}
+
+	/**
+	 * Gets the aggregation computed on each group
+	 * @return The aggregation
+	 */
+	public Aggregate getAggregate()
+	{
+		return m_aggregate;
+	}
+
+	@Override
+	public TempTable transform(TempTable... tables)
+	{
+		TempTable table = tables[0];
+		AggregateState state = newState(table.getColumnNames());
+		for (TableEntry te : table.getEntries())
+		{
+			state.update(te);
+		}
+		return state.getTable(table);
+	}
+
+	@Override
+	public AggregateState newState(String[] input_columns)
+	{
+		return new GroupState(input_columns);
+	}
+
+	/**
+	 * The count, sum, minimum and maximum of each column in each group
+	 * of the rows seen so far
+	 */
+	public class GroupState implements MergeableState
+	{
+		/**
+		 * The names of the columns that are aggregated
+		 */
+		protected final String[] m_valueColumns;
+
+		/**
+		 * The statistics of each group, indexed by the value defining the
+		 * group
+		 */
+		protected final Map<String,Group> m_groups;
+
+		/**
+		 * Creates a new empty state
+		 * @param input_columns The names of the columns of the input table
+		 */
+		public GroupState(String[] input_columns)
+		{
+			super();
+			List<String> value_columns = new ArrayList<String>();
+			for (String name : input_columns)
+			{
+				if (name.compareTo(m_groupColumn) != 0)
+				{
+					value_columns.add(name);
+				}
+			}
+			m_valueColumns = value_columns.toArray(new String[value_columns.size()]);
+			m_groups = new LinkedHashMap<String,Group>();
+		}
+
+		@Override
+		public void update(TableEntry entry)
+		{
+			PrimitiveValue key = entry.get(m_groupColumn);
+			if (key == null || key.isNull())
+			{
+				return;
+			}
+			Group g = getGroup(key.toString(), key);
+			for (int col = 0; col < m_valueColumns.length; col++)
+			{
+				PrimitiveValue v = entry.get(m_valueColumns[col]);
+				if (v != null && v.isNumeric())
+				{
+					g.add(col, v.numberValue().doubleValue());
+				}
+			}
+		}
+
+		@Override
+		public TempTable getTable(HardTable source)
+		{
+			String[] col_names = getColumns();
+			TempTable out = new TempTable(source.getId(), col_names);
+			NodeFunction whole = new TableFunctionNode(source, source.getRowCount(), source.getColumnCount());
+			for (Group g : m_groups.values())
+			{
+				TableEntry te = new TableEntry();
+				te.put(m_groupColumn, g.m_key);
+				for (int col = 0; col < m_valueColumns.length; col++)
+				{
+					Number n = g.get(col, m_aggregate);
+					if (n == null)
+					{
+						continue;
+					}
+					te.put(m_valueColumns[col], n);
+					te.addDependency(m_valueColumns[col], new AggregateFunction(m_aggregate + " of column " + m_valueColumns[col] + " for " + g.m_key + " in Table #" + source.getId(), Collections.singleton(whole)));
+				}
+				out.add(te);
+			}
+			return out;
+		}
+
+		@Override
+		public void merge(MergeableState other)
+		{
+			if (!(other instanceof GroupState) || !Arrays.equals(getColumns(), ((GroupState) other).getColumns()))
+			{
+				throw new IllegalArgumentException("Incompatible state");
+			}
+			for (Map.Entry<String,Group> e : ((GroupState) other).m_groups.entrySet())
+			{
+				Group g = e.getValue();
+				getGroup(e.getKey(), g.m_key).merge(g.m_count, g.m_sum, g.m_min, g.m_max);
+			}
+		}
+
+		@Override
+		public void write(DataOutput out) throws IOException
+		{
+			PartialAggregates.writeHeader(out, 'G', getColumns());
+			out.writeInt(m_groups.size());
+			for (Map.Entry<String,Group> e : m_groups.entrySet())
+			{
+				out.writeUTF(e.getKey());
+				Group g = e.getValue();
+				writeKey(out, g.m_key);
+				for (int col = 0; col < m_valueColumns.length; col++)
+				{
+					out.writeLong(g.m_count[col]);
+					out.writeDouble(g.m_sum[col]);
+					out.writeDouble(g.m_min[col]);
+					out.writeDouble(g.m_max[col]);
+				}
+			}
+		}
+
+		@Override
+		public void read(DataInput in) throws IOException
+		{
+			PartialAggregates.readHeader(in, 'G', getColumns());
+			int num_groups = in.readInt();
+			int num_cols = m_valueColumns.length;
+			long[] count = new long[num_cols];
+			double[] sum = new double[num_cols], min = new double[num_cols], max = new double[num_cols];
+			for (int i = 0; i < num_groups; i++)
+			{
+				String s_key = in.readUTF();
+				PrimitiveValue key = readKey(in);
+				for (int col = 0; col < num_cols; col++)
+				{
+					count[col] = in.readLong();
+					sum[col] = in.readDouble();
+					min[col] = in.readDouble();
+					max[col] = in.readDouble();
+				}
+				getGroup(s_key, key).merge(count, sum, min, max);
+			}
+		}
+
+		/**
+		 * Gets the names of the group column and of the aggregated columns
+		 * @return The names
+		 */
+		protected String[] getColumns()
+		{
+			String[] col_names = new String[m_valueColumns.length + 1];
+			col_names[0] = m_groupColumn;
+			System.arraycopy(m_valueColumns, 0, col_names, 1, m_valueColumns.length);
+			return col_names;
+		}
+
+		/**
+		 * Gets the statistics of a group, creating them if necessary
+		 * @param s_key The string defining the group
+		 * @param key The value defining the group
+		 * @return The statistics
+		 */
+		protected Group getGroup(String s_key, PrimitiveValue key)
+		{
+			Group g = m_groups.get(s_key);
+			if (g == null)
+			{
+				g = new Group(key, m_valueColumns.length);
+				m_groups.put(s_key, g);
+			}
+			return g;
+		}
+	}
+
+	/**
+	 * Writes the value defining a group
+	 * @param out The stream
+	 * @param key The value
+	 * @throws IOException If the stream cannot be written to
+	 */
+	protected static void writeKey(DataOutput out, PrimitiveValue key) throws IOException
+	{
+		Number n = key.numberValue();
+		if (n == null)
+		{
+			out.writeByte('S');
+			out.writeUTF(key.stringValue());
+		}
+		else if (n instanceof Integer)
+		{
+			out.writeByte('I');
+			out.writeInt(n.intValue());
+		}
+		else if (n instanceof Long)
+		{
+			out.writeByte('L');
+			out.writeLong(n.longValue());
+		}
+		else if (n instanceof Float)
+		{
+			out.writeByte('F');
+			out.writeFloat(n.floatValue());
+		}
+		else
+		{
+			out.writeByte('D');
+			out.writeDouble(n.doubleValue());
+		}
+	}
+
+	/**
+	 * Reads the value defining a group
+	 * @param in The stream
+	 * @return The value
+	 * @throws IOException If the stream cannot be read
+	 */
+	protected static PrimitiveValue readKey(DataInput in) throws IOException
+	{
+		byte type = in.readByte();
+		switch (type)
+		{
+		case 'S':
+			return PrimitiveValue.getStringInstance(in.readUTF());
+		case 'I':
+			return PrimitiveValue.getInstance(in.readInt());
+		case 'L':
+			return PrimitiveValue.getInstance(in.readLong());
+		case 'F':
+			return PrimitiveValue.getInstance(in.readFloat());
+		case 'D':
+			return PrimitiveValue.getInstance(in.readDouble());
+		default:
+			throw new IOException("Invalid value type " + type);
+		}
+	}
+
+	/**
+	 * The statistics of the columns of a group
+	 */
+	protected static class Group
+	{
+		/**
+		 * The value defining the group
+		 */
+		protected final PrimitiveValue m_key;
+
+		/**
+		 * The number of numerical values of each column
+		 */
+		protected final long[] m_count;
+
+		/**
+		 * The sum of each column
+		 */
+		protected final double[] m_sum;
+
+		/**
+		 * The minimum of each column
+		 */
+		protected final double[] m_min;
+
+		/**
+		 * The maximum of each column
+		 */
+		protected final double[] m_max;
+
+		/**
+		 * Creates the statistics of an empty group
+		 * @param key The value defining the group
+		 * @param num_columns The number of columns
+		 */
+		public Group(PrimitiveValue key, int num_columns)
+		{
+			super();
+			m_key = key;
+			m_count = new long[num_columns];
+			m_sum = new double[num_columns];
+			m_min = new double[num_columns];
+			m_max = new double[num_columns];
+		}
+
+		/**
+		 * Adds a value to a column
+		 * @param col The index of the column
+		 * @param v The value
+		 */
+		public void add(int col, double v)
+		{
+			if (m_count[col] == 0)
+			{
+				m_min[col] = v;
+				m_max[col] = v;
+			}
+			else
+			{
+				m_min[col] = Math.min(m_min[col], v);
+				m_max[col] = Math.max(m_max[col], v);
+			}
+			m_count[col]++;
+			m_sum[col] += v;
+		}
+
+		/**
+		 * Adds to this group the statistics of another part of the group
+		 * @param count The number of numerical values of each column
+		 * @param sum The sum of each column
+		 * @param min The minimum of each column
+		 * @param max The maximum of each column
+		 */
+		public void merge(long[] count, double[] sum, double[] min, double[] max)
+		{
+			for (int col = 0; col < m_count.length; col++)
+			{
+				if (count[col] == 0)
+				{
+					continue;
+				}
+				if (m_count[col] == 0)
+				{
+					m_min[col] = min[col];
+					m_max[col] = max[col];
+				}
+				else
+				{
+					m_min[col] = Math.min(m_min[col], min[col]);
+					m_max[col] = Math.max(m_max[col], max[col]);
+				}
+				m_count[col] += count[col];
+				m_sum[col] += sum[col];
+			}
+		}
+
+		/**
+		 * Gets the aggregated value of a column
+		 * @param col The index of the column
+		 * @param aggregate The aggregation
+		 * @return The value, or {@code null} if the column has no value
+		 */
+		public Number get(int col, Aggregate aggregate)
+		{
+			if (aggregate == Aggregate.COUNT)
+			{
+				return m_count[col];
+			}
+			if (m_count[col] == 0)
+			{
+				return null;
+			}
+			switch (aggregate)
+			{
+			case SUM:
+				return m_sum[col];
+			case MIN:
+				return m_min[col];
+			case MAX:
+				return m_max[col];
+			default:
+				return m_sum[col] / m_count[col];
+			}
+		}
+	}
+}
@@ -17,8 +17,9 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -72,8 +73,14 @@ public class GroupInColumns implements TableTransformation
 	public TempTable transform(TempTable... tables) 
 	{
 		TempTable table = tables[0];
-		Map<String,List<PrimitiveValue>> values = new HashMap<String,List<PrimitiveValue>>();
-		Map<String,List<TableEntry>> entries = new HashMap<String,List<TableEntry>>();
+		// The position of the list of each value of the parameter
+		Map<String,Integer> positions = new HashMap<String,Integer>();
+		List<List<PrimitiveValue>> values = new ArrayList<List<PrimitiveValue>>();
+		List<List<TableEntry>> entries = new ArrayList<List<TableEntry>>();
+		// For values of the parameter that belong to a dictionary, the same
+		// positions indexed by their code
+		ValueDictionary dictionary = null;
+		int[] code_positions = new int[0];
 		int parameter_column = table.getColumnPosition(m_parameter);
 		int value_column = table.getColumnPosition(m_value);
 		for (TableEntry te : table.getEntries())
@@ -86,32 +93,49 @@ public class GroupInColumns implements TableTransformation
 				PrimitiveValue v = te.get(m_value);
 				if (v != null)
 				{
-					String p_s = p.toString();
-					List<PrimitiveValue> l_values = new LinkedList<PrimitiveValue>();
-					List<TableEntry> e_values = new LinkedList<TableEntry>();
-					if (values.containsKey(p_s))
+					boolean encoded = p.getDictionary() != null && (dictionary == null || dictionary == p.getDictionary());
+					int pos = -1;
+					if (encoded)
 					{
-						l_values = values.get(p_s);
-						e_values = entries.get(p_s);
+						dictionary = p.getDictionary();
+						if (p.getCode() < code_positions.length)
+						{
+							pos = code_positions[p.getCode()];
+						}
 					}
-					l_values.add(v);
-					e_values.add(te);
-					values.put(p_s, l_values);
-					entries.put(p_s, e_values);
+					if (pos < 0)
+					{
+						String p_s = p.toString();
+						Integer i_pos = positions.get(p_s);
+						if (i_pos == null)
+						{
+							i_pos = values.size();
+							positions.put(p_s, i_pos);
+							values.add(new ArrayList<PrimitiveValue>());
+							entries.add(new ArrayList<TableEntry>());
+						}
+						pos = i_pos;
+						if (encoded)
+						{
+							code_positions = setPosition(code_positions, p.getCode(), pos);
+						}
+					}
+					values.get(pos).add(v);
+					entries.get(pos).add(te);
 				}
 			}
 		}
-		String[] a_headers = new String[values.keySet().size()];
+		String[] a_headers = new String[positions.size()];
 		@SuppressWarnings("unchecked")
-		List<PrimitiveValue>[] a_values = new List[values.keySet().size()];
+		List<PrimitiveValue>[] a_values = new List[positions.size()];
 		@SuppressWarnings("unchecked")
-		List<TableEntry>[] a_entries = new List[values.keySet().size()];
+		List<TableEntry>[] a_entries = new List[positions.size()];
 		int i = 0;
-		for (Map.Entry<String,List<PrimitiveValue>> map_entry : values.entrySet())
+		for (Map.Entry<String,Integer> map_entry : positions.entrySet())
 		{
 			a_headers[i] = map_entry.getKey();
-			a_values[i] = map_entry.getValue();
-			a_entries[i] = entries.get(map_entry.getKey());
+			a_values[i] = values.get(map_entry.getValue());
+			a_entries[i] = entries.get(map_entry.getValue());
 			i++;
 		}
 		TempTable new_table = new TempTable(table.getId(), a_headers);
@@ -147,4 +171,23 @@ public class GroupInColumns implements TableTransformation
 		return new_table;
 	}
 
+	/**
+	 * Records the position of the list of a code
+	 * @param code_positions The positions of the codes seen so far, -1
+	 *   standing for a code not seen yet
+	 * @param code The code
+	 * @param pos The position of its list
+	 * @return The positions, in a larger array if necessary
+	 */
+	protected static int[] setPosition(int[] code_positions, int code, int pos)
+	{
+		if (code >= code_positions.length)
+		{
+			int old_length = code_positions.length;
+			code_positions = Arrays.copyOf(code_positions, Math.max(code + 1, old_length * 2));
+			Arrays.fill(code_positions, old_length, code_positions.length, -1);
+		}
+		code_positions[code] = pos;
+		return code_positions;
+	}
 }
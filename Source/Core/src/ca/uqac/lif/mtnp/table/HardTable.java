@@ -17,11 +17,16 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -30,7 +35,9 @@ import java.util.Scanner;
 import java.util.Set;
 
 import ca.uqac.lif.mtnp.DataFormatter;
+import ca.uqac.lif.mtnp.table.io.CsvReader;
 import ca.uqac.lif.mtnp.table.rendering.CsvTableRenderer;
+import ca.uqac.lif.mtnp.util.HashHelper;
 import ca.uqac.lif.petitpoucet.NodeFunction;
 
 /**
@@ -57,6 +64,14 @@ public class HardTable extends Table
 	 */
 	protected String[] m_preferredOrdering;
 	
+	/**
+	 * A counter incremented every time rows are removed from the table.
+	 * Objects that remember how many rows of the table they have already
+	 * processed compare it to the value they saw last, to know if these
+	 * rows are still the same.
+	 */
+	protected int m_generation = 0;
+	
 	/**
 	 * The symbol used to separate data values in a CSV rendition
 	 */
@@ -141,6 +156,45 @@ public class HardTable extends Table
 		m_entries.add(e);
 	}
 	
+	/**
+	 * Removes entries from the table. The remaining entries are numbered
+	 * again, and the generation of the table is incremented (see
+	 * {@link #getGeneration()}).
+	 * @param entries The entries to remove. They are compared by identity,
+	 * so that other entries with the same values are kept.
+	 * @return The number of entries removed
+	 */
+	public int removeAll(Collection<TableEntry> entries)
+	{
+		Set<TableEntry> to_remove = Collections.newSetFromMap(new IdentityHashMap<TableEntry,Boolean>());
+		to_remove.addAll(entries);
+		List<TableEntry> kept = new ArrayList<TableEntry>(m_entries.size());
+		for (TableEntry te : m_entries)
+		{
+			if (!to_remove.contains(te))
+			{
+				te.m_rowIndex = kept.size();
+				kept.add(te);
+			}
+		}
+		int removed = m_entries.size() - kept.size();
+		m_entries.clear();
+		m_entries.addAll(kept);
+		m_generation++;
+		return removed;
+	}
+	
+	/**
+	 * Gets the generation of the table. This number changes every time
+	 * rows are removed through {@link #removeAll(Collection)}; as long as
+	 * it stays the same, rows are only ever added at the end of the table.
+	 * @return The generation
+	 */
+	public int getGeneration()
+	{
+		return m_generation;
+	}
+	
 	/**
 	 * Gets the contents of this table as a tree
 	 * @return A reference to the root node of the tree
@@ -210,7 +264,9 @@ public class HardTable extends Table
 	
 	/**
 	 * Partitions a set of entries into sets, with all entries having the
-	 * same value with respect to a key being put into the same set
+	 * same value with respect to a key being put into the same set.
+	 * Entries whose value belongs to a {@link ValueDictionary} are put in
+	 * the set of their code, without hashing their value.
 	 * @param available_entries The set of entries to partition
 	 * @param key The key against which to partition the set
 	 * @return A map from values to sets of entries
@@ -218,9 +274,31 @@ public class HardTable extends Table
 	protected static Map<PrimitiveValue,Set<TableEntry>> partitionEntries(Collection<TableEntry> available_entries, String key)
 	{
 		Map<PrimitiveValue,Set<TableEntry>> partition = new HashMap<PrimitiveValue,Set<TableEntry>>();
+		ValueDictionary dictionary = null;
+		List<Set<TableEntry>> by_code = null;
 		for (TableEntry e : available_entries)
 		{
 			PrimitiveValue o = e.get(key);
+			if (o != null && o.m_dictionary != null && (dictionary == null || o.m_dictionary == dictionary))
+			{
+				if (dictionary == null)
+				{
+					dictionary = o.m_dictionary;
+					by_code = new ArrayList<Set<TableEntry>>();
+				}
+				while (by_code.size() <= o.m_code)
+				{
+					by_code.add(null);
+				}
+				Set<TableEntry> code_set = by_code.get(o.m_code);
+				if (code_set == null)
+				{
+					code_set = new HashSet<TableEntry>();
+					by_code.set(o.m_code, code_set);
+				}
+				code_set.add(e);
+				continue;
+			}
 			Set<TableEntry> value_set;
 			if (partition.containsKey(o))
 			{
@@ -233,9 +311,96 @@ public class HardTable extends Table
 			value_set.add(e);
 			partition.put(o, value_set);
 		}
+		if (dictionary != null)
+		{
+			for (int code = 0; code < by_code.size(); code++)
+			{
+				Set<TableEntry> code_set = by_code.get(code);
+				if (code_set == null)
+				{
+					continue;
+				}
+				PrimitiveValue o = dictionary.decode(code);
+				Set<TableEntry> value_set = partition.get(o);
+				if (value_set == null)
+				{
+					partition.put(o, code_set);
+				}
+				else
+				{
+					// The same string was also found outside the dictionary
+					value_set.addAll(code_set);
+				}
+			}
+		}
 		return partition;
 	}
 	
+	/**
+	 * Encodes the string values of the columns that have few distinct
+	 * strings. Each such column is given its own {@link ValueDictionary}.
+	 * @param max_distinct The maximum number of distinct strings in a
+	 *   column for it to be encoded, such as
+	 *   {@link ValueDictionary#DEFAULT_LIMIT}
+	 * @return The number of columns encoded
+	 */
+	public int encodeStrings(int max_distinct)
+	{
+		int encoded = 0;
+		for (String name : m_preferredOrdering)
+		{
+			if (encodeColumn(name, new ValueDictionary(), max_distinct))
+			{
+				encoded++;
+			}
+		}
+		return encoded;
+	}
+	
+	/**
+	 * Encodes the string values of a column with a dictionary. Giving the
+	 * same dictionary to columns of different tables lets operations
+	 * involving both tables, such as a {@link Join}, compare their values
+	 * by their codes.
+	 * @param name The name of the column
+	 * @param dictionary The dictionary
+	 * @param max_distinct The maximum number of distinct strings in the
+	 *   column for it to be encoded
+	 * @return {@code true} if the column was encoded, {@code false} if it
+	 *   contains no string that is not already encoded, or too many
+	 *   distinct strings
+	 */
+	public boolean encodeColumn(String name, ValueDictionary dictionary, int max_distinct)
+	{
+		Set<String> distinct = new HashSet<String>();
+		for (TableEntry te : m_entries)
+		{
+			PrimitiveValue v = te.get(name);
+			if (v == null || !v.isString() || v.isNull() || v.m_dictionary == dictionary)
+			{
+				continue;
+			}
+			distinct.add(v.m_string);
+			if (distinct.size() > max_distinct)
+			{
+				return false;
+			}
+		}
+		if (distinct.isEmpty())
+		{
+			return false;
+		}
+		for (TableEntry te : m_entries)
+		{
+			PrimitiveValue v = te.get(name);
+			if (v != null)
+			{
+				te.put(name, dictionary.encode(v));
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * Produces a flat HTML rendition of the table
 	 * @return A string containing the HTML code for the table
@@ -501,7 +666,9 @@ public class HardTable extends Table
 	}
 	
 	/**
-	 * Returns the contents of the table as a CSV string
+	 * Returns the contents of the table as a CSV string. To write a large
+	 * table to a file without building such a string, use a
+	 * {@link ca.uqac.lif.mtnp.table.io.CsvWriter CsvWriter}.
 	 * @return The CSV contents
 	 */
 	public String toCsv()
@@ -519,7 +686,58 @@ public class HardTable extends Table
 	{
 		return toCsv(m_preferredOrdering, separator, missing);
 	}
-	
+
+	/**
+	 * Computes a hash of the contents of the table. Two tables with the
+	 * same columns, and the same values in the same rows, have the same
+	 * fingerprint. Contrary to {@link #toCsv()}, the rows are taken in
+	 * the order they were added, and numbers are distinguished from
+	 * strings with the same text.
+	 * @return The fingerprint, as a string of hexadecimal digits
+	 */
+	public String getFingerprint()
+	{
+		MessageDigest digest = HashHelper.getDigest();
+		for (String col_name : m_preferredOrdering)
+		{
+			updateFingerprint(digest, 'c', col_name);
+		}
+		for (TableEntry e : m_entries)
+		{
+			HashHelper.update(digest, "\n");
+			for (String col_name : m_preferredOrdering)
+			{
+				PrimitiveValue v = e.get(col_name);
+				if (v == null || v.isNull())
+				{
+					HashHelper.update(digest, "-");
+				}
+				else if (v.isNumeric())
+				{
+					updateFingerprint(digest, 'n', v.toString());
+				}
+				else
+				{
+					updateFingerprint(digest, 's', v.toString());
+				}
+			}
+		}
+		return HashHelper.toHex(digest.digest());
+	}
+
+	/**
+	 * Adds a value to the fingerprint of a table. The value is preceded by
+	 * its length, so that no sequence of values can be mistaken for
+	 * another, whatever characters they contain.
+	 * @param digest The digest computing the fingerprint
+	 * @param kind A character telling the kind of the value
+	 * @param value The value
+	 */
+	protected static void updateFingerprint(MessageDigest digest, char kind, String value)
+	{
+		HashHelper.update(digest, kind + Integer.toString(value.length()) + ":" + value);
+	}
+
 	@Override
 	public String toString()
 	{
@@ -588,11 +806,56 @@ public class HardTable extends Table
 	}
 	
 	/**
-	 * Populates a table from a CSV file
+	 * Populates a table from a CSV file. When the separator is a single
+	 * character, the lines of the scanner are parsed by a
+	 * {@link CsvReader} with quoting disabled, which gives the same table
+	 * as splitting each line. For large files, prefer using a
+	 * {@link CsvReader} directly on the file: it avoids going through the
+	 * scanner, and also handles quoted values.
 	 * @param scanner A scanner to an open CSV text file
-	 * @return A data table
+	 * @param separator The separator between values, given as a regular
+	 *   expression
+	 * @return A data table, or {@code null} if the file contains no line
 	 */
 	public static HardTable read(Scanner scanner, String separator)
+	{
+		if (separator.length() != 1 || "\\^$.|?*+()[]{}".indexOf(separator.charAt(0)) >= 0)
+		{
+			// The separator is a real regular expression
+			return readLines(scanner, separator);
+		}
+		StringBuilder contents = new StringBuilder();
+		while (scanner.hasNextLine())
+		{
+			contents.append(scanner.nextLine()).append('\n');
+		}
+		CsvReader.Parser parser = new CsvReader(separator.charAt(0)).setQuote((char) 0).newParser();
+		List<TableEntry> entries = new ArrayList<TableEntry>();
+		try
+		{
+			parser.readAll(Channels.newChannel(new ByteArrayInputStream(contents.toString().getBytes("UTF-8"))), entries);
+		}
+		catch (IOException e)
+		{
+			// Cannot happen when reading from memory
+			throw new IllegalStateException(e);
+		}
+		if (parser.getColumnNames() == null)
+		{
+			return null;
+		}
+		return parser.toTable(entries);
+	}
+
+	/**
+	 * Populates a table from a CSV file, by splitting each of its lines
+	 * with a regular expression
+	 * @param scanner A scanner to an open CSV text file
+	 * @param separator The separator between values, given as a regular
+	 *   expression
+	 * @return A data table, or {@code null} if the file contains no line
+	 */
+	protected static HardTable readLines(Scanner scanner, String separator)
 	{
 		HardTable dt = null;
 		boolean first_line = true;
@@ -0,0 +1,39 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * A table transformation whose result can be maintained as rows are
+ * appended to its input table, without reading again the rows it has
+ * already seen. This is the case of aggregations such as sums, counts,
+ * minima and maxima.
+ * <p>
+ * A {@link TransformedTable} uses this ability when it is set to be
+ * incremental (see {@link TransformedTable#setIncremental(boolean)}).
+ * @author Sylvain Hallé
+ */
+public interface IncrementalTransformation extends TableTransformation
+{
+	/**
+	 * Creates an empty state for this transformation
+	 * @param input_columns The names of the columns of the input table
+	 * @return The state, or {@code null} if the transformation cannot be
+	 *   computed incrementally for such a table
+	 */
+	public AggregateState newState(String[] input_columns);
+}
@@ -42,6 +42,15 @@ public class Join implements TableTransformation
 		super();
 		m_commonDimensions = common_dimensions;
 	}
+
+	/**
+	 * Gets the names of the columns on which the join is performed
+	 * @return The names
+	 */
+	public String[] getCommonDimensions()
+	{
+		return m_commonDimensions;
+	}
 	
 	/**
 	 * Finds an entry with the same values of common dimensions
@@ -143,20 +152,38 @@ public class Join implements TableTransformation
 	}
 
 	protected String[] getColumnNames(HardTable ... tables)
+	{
+		String[][] input_columns = new String[tables.length][];
+		for (int i = 0; i < tables.length; i++)
+		{
+			input_columns[i] = tables[i].getColumnNames();
+		}
+		return getOutputColumns(input_columns);
+	}
+
+	/**
+	 * Gets the names of the columns of the joined table, without
+	 * looking at the contents of the input tables
+	 * @param input_columns The names of the columns of each input table
+	 * @return The names of the columns of the joined table
+	 */
+	public String[] getOutputColumns(String[] ... input_columns)
 	{
 		List<String> names = new ArrayList<String>();
 		for (String name : m_commonDimensions)
 		{
 			names.add(name);
 		}
-		for (int table_index = 0; table_index < tables.length; table_index++)
+		for (String[] col_names : input_columns)
 		{
-			String[] col_names = getOtherColumns(table_index, tables);
 			for (String col_name : col_names)
 			{
-				names.add(col_name);				
+				if (!isJoinColumn(col_name))
+				{
+					names.add(col_name);
+				}
 			}
-		} 
+		}
 		String[] a_names = new String[names.size()];
 		int i = 0;
 		for (String name : names)
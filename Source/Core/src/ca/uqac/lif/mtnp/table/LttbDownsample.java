@@ -0,0 +1,259 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import ca.uqac.lif.petitpoucet.DirectValue;
+
+/**
+ * Reduces the number of points of each data series in a table, using the
+ * <i>Largest-Triangle-Three-Buckets</i> (LTTB) algorithm. The first
+ * column of the table is taken as the "x" value, and each other column
+ * is a data series. The points of a series are divided into buckets, and
+ * the algorithm keeps from each bucket the point that forms the largest
+ * triangle with the point kept in the previous bucket and the average of
+ * the next bucket. This keeps the peaks and troughs of a series visible,
+ * which is not the case when keeping every <i>n</i>-th point.
+ * <p>
+ * Each series is reduced independently. The resulting table contains
+ * the rows of the original table where at least one series has a point
+ * that was kept, in their original order; in such a row, the series
+ * whose point was not kept have no value. Every cell of the resulting
+ * table depends on the cell of the original table it was copied from.
+ * <p>
+ * For example, a table with 100,000 rows drawn in an image 640 pixels
+ * wide can be reduced to 640 points per series without any visible
+ * difference.
+ * <p>
+ * Reference: S. Steinarsson, <i>Downsampling Time Series for Visual
+ * Representation</i>, M.Sc. thesis, University of Iceland, 2013.
+ * @author Sylvain Hallé
+ */
+public class LttbDownsample implements TableTransformation
+{
+	/**
+	 * The maximum number of points kept for each series
+	 */
+	protected final int m_numPoints;
+
+	/**
+	 * Creates a new instance of this table transformation
+	 * @param num_points The maximum number of points kept for each series.
+	 *   Series with fewer points are left unchanged.
+	 */
+	public LttbDownsample(int num_points)
+	{
+		super();
+		m_numPoints = num_points;
+	}
+
+	/**
+	 * Gets the maximum number of points kept for each series
+	 * @return The number of points
+	 */
+	public int getNumPoints()
+	{
+		return m_numPoints;
+	}
+
+	@Override
+	public TempTable transform(TempTable... tables)
+	{
+		TempTable table = tables[0];
+		String[] col_names = table.getColumnNames();
+		List<TableEntry> entries = table.getEntries();
+		if (col_names.length < 2 || entries.size() <= m_numPoints)
+		{
+			// Nothing to reduce
+			return table;
+		}
+		String col_x = col_names[0];
+		// For each row, tells which series keep their point in this row
+		boolean[][] kept = new boolean[col_names.length][entries.size()];
+		boolean[] row_kept = new boolean[entries.size()];
+		for (int col = 1; col < col_names.length; col++)
+		{
+			for (int row : getKeptRows(entries, col_x, col_names[col]))
+			{
+				kept[col][row] = true;
+				row_kept[row] = true;
+			}
+		}
+		List<TableEntry> new_entries = new ArrayList<TableEntry>();
+		for (int row = 0; row < entries.size(); row++)
+		{
+			if (!row_kept[row])
+			{
+				continue;
+			}
+			TableEntry te = entries.get(row);
+			TableEntry new_te = new TableEntry();
+			for (int col = 0; col < col_names.length; col++)
+			{
+				if (col > 0 && !kept[col][row])
+				{
+					continue;
+				}
+				String k = col_names[col];
+				PrimitiveValue v = te.get(k);
+				if (v == null)
+				{
+					continue;
+				}
+				new_te.put(k, v);
+				DirectValue dv = new DirectValue();
+				dv.add(new TableCellNode(table, row, col));
+				new_te.addDependency(k, dv);
+			}
+			new_entries.add(new_te);
+		}
+		return new TempTable(table.getId(), new_entries, col_names);
+	}
+
+	/**
+	 * Selects the points of a series to keep
+	 * @param entries The entries of the table
+	 * @param col_x The name of the column of "x" values
+	 * @param col_y The name of the column of the series
+	 * @return The indices of the rows whose point is kept
+	 */
+	protected int[] getKeptRows(List<TableEntry> entries, String col_x, String col_y)
+	{
+		// Only rows where both values are numbers are points of the series
+		Integer[] rows = new Integer[entries.size()];
+		final double[] all_x = new double[entries.size()];
+		int n = 0;
+		boolean sorted = true;
+		for (int row = 0; row < entries.size(); row++)
+		{
+			TableEntry te = entries.get(row);
+			PrimitiveValue x = te.get(col_x);
+			PrimitiveValue y = te.get(col_y);
+			if (x == null || y == null || !x.isNumeric() || !y.isNumeric())
+			{
+				continue;
+			}
+			all_x[row] = x.numberValue().doubleValue();
+			if (n > 0 && all_x[row] < all_x[rows[n - 1]])
+			{
+				sorted = false;
+			}
+			rows[n++] = row;
+		}
+		rows = Arrays.copyOf(rows, n);
+		if (!sorted)
+		{
+			// The algorithm requires the points to be ordered by "x" value
+			Arrays.sort(rows, new Comparator<Integer>()
+			{
+				@Override
+				public int compare(Integer r1, Integer r2)
+				{
+					return Double.compare(all_x[r1], all_x[r2]);
+				}
+			});
+		}
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++)
+		{
+			xs[i] = all_x[rows[i]];
+			ys[i] = entries.get(rows[i]).get(col_y).numberValue().doubleValue();
+		}
+		int[] chosen = downsample(xs, ys, m_numPoints);
+		int[] kept_rows = new int[chosen.length];
+		for (int i = 0; i < chosen.length; i++)
+		{
+			kept_rows[i] = rows[chosen[i]];
+		}
+		return kept_rows;
+	}
+
+	/**
+	 * Selects points of a series using the LTTB algorithm
+	 * @param xs The "x" values of the points, in increasing order
+	 * @param ys The "y" values of the points
+	 * @param threshold The maximum number of points to keep
+	 * @return The indices of the points kept, in increasing order
+	 */
+	public static int[] downsample(double[] xs, double[] ys, int threshold)
+	{
+		int n = xs.length;
+		if (threshold >= n || threshold < 3)
+		{
+			// Keep every point
+			int[] all = new int[n];
+			for (int i = 0; i < n; i++)
+			{
+				all[i] = i;
+			}
+			return all;
+		}
+		int[] sampled = new int[threshold];
+		int count = 0;
+		// The first and last points are always kept
+		sampled[count++] = 0;
+		double every = (double) (n - 2) / (threshold - 2);
+		int a = 0;
+		for (int i = 0; i < threshold - 2; i++)
+		{
+			// Average point of the next bucket
+			int avg_start = (int) Math.floor((i + 1) * every) + 1;
+			int avg_end = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+			double avg_x = 0, avg_y = 0;
+			for (int j = avg_start; j < avg_end; j++)
+			{
+				avg_x += xs[j];
+				avg_y += ys[j];
+			}
+			int avg_len = avg_end - avg_start;
+			if (avg_len > 0)
+			{
+				avg_x /= avg_len;
+				avg_y /= avg_len;
+			}
+			else
+			{
+				avg_x = xs[n - 1];
+				avg_y = ys[n - 1];
+			}
+			// Point of the current bucket forming the largest triangle
+			int range_start = (int) Math.floor(i * every) + 1;
+			int range_end = Math.min((int) Math.floor((i + 1) * every) + 1, n - 1);
+			double max_area = -1;
+			int max_index = range_start;
+			for (int j = range_start; j < range_end; j++)
+			{
+				double area = Math.abs((xs[a] - avg_x) * (ys[j] - ys[a]) - (xs[a] - xs[j]) * (avg_y - ys[a]));
+				if (area > max_area)
+				{
+					max_area = area;
+					max_index = j;
+				}
+			}
+			sampled[count++] = max_index;
+			a = max_index;
+		}
+		sampled[count++] = n - 1;
+		return Arrays.copyOf(sampled, count);
+	}
+}
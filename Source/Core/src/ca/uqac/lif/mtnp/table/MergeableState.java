@@ -0,0 +1,61 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * An {@link AggregateState} that can be combined with another state of
+ * the same transformation, and written to a stream in binary form. This
+ * makes it possible to split the rows of a table between several
+ * processes or machines: each of them computes a state from its own
+ * rows, and only these states are sent to the process that combines
+ * them into the output table. See {@link PartialAggregates}.
+ * @author Sylvain Hallé
+ */
+public interface MergeableState extends AggregateState
+{
+	/**
+	 * Adds to this state the rows seen by another state
+	 * @param other The other state, which is not modified. It must have
+	 *   been created by the same transformation, for the same input
+	 *   columns.
+	 * @throws IllegalArgumentException If the other state cannot be
+	 *   merged into this one
+	 */
+	public void merge(MergeableState other);
+
+	/**
+	 * Writes this state to a stream
+	 * @param out The stream
+	 * @throws IOException If the stream cannot be written to
+	 */
+	public void write(DataOutput out) throws IOException;
+
+	/**
+	 * Adds to this state the rows seen by a state written to a stream by
+	 * {@link #write(DataOutput)}. This has the same effect as reading the
+	 * state and merging it into this one.
+	 * @param in The stream
+	 * @throws IOException If the stream cannot be read, or does not
+	 *   contain a state compatible with this one
+	 */
+	public void read(DataInput in) throws IOException;
+}
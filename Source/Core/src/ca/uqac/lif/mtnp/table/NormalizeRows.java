@@ -23,7 +23,7 @@ import java.util.Map.Entry;
  * Replaces the content of each entry by its fraction of the
  * sum of all values for the row
  */
-public class NormalizeRows implements TableTransformation 
+public class NormalizeRows implements RowTransformation 
 {
 	public NormalizeRows()
 	{
@@ -33,38 +33,48 @@ public class NormalizeRows implements TableTransformation
 	@Override
 	public TempTable transform(TempTable ... tables)
 	{
-		TempTable in_table = tables[0];
-		TempTable out_table = new TempTable(in_table.getId());
-		if (in_table.getRowCount() == 0)
+		return RowExecutor.transform(this, tables[0]);
+	}
+
+	@Override
+	public String[] getOutputColumns(String[] input_columns)
+	{
+		// This transformation does not give names to the columns of its
+		// output table
+		return new String[0];
+	}
+
+	@Override
+	public int[] getSourceColumns(String[] input_columns)
+	{
+		return null;
+	}
+
+	@Override
+	public TableEntry transformRow(String[] input_columns, TableEntry te)
+	{
+		float total = 0;
+		for (Object o : te.values())
 		{
-			return out_table;
+			if (o instanceof Number)
+			{
+				total += ((Number) o).floatValue();
+			}
 		}
-		for (TableEntry te : in_table.getEntries())
+		TableEntry new_entry = new TableEntry();
+		for (Entry<String,PrimitiveValue> map_entry : te.entrySet())
 		{
-			float total = 0;
-			for (Object o : te.values())
+			String key = map_entry.getKey();
+			PrimitiveValue o = map_entry.getValue();
+			if (o.isNumeric())
 			{
-				if (o instanceof Number)
-				{
-					total += ((Number) o).floatValue();
-				}
+				new_entry.put(key, o.numberValue().floatValue() / total);
 			}
-			TableEntry new_entry = new TableEntry();
-			for (Entry<String,PrimitiveValue> map_entry : te.entrySet())
+			else
 			{
-				String key = map_entry.getKey();
-				PrimitiveValue o = map_entry.getValue();
-				if (o.isNumeric())
-				{
-					new_entry.put(key, o.numberValue().floatValue() / total);
-				}
-				else
-				{
-					new_entry.put(key, o);
-				}
+				new_entry.put(key, o);
 			}
-			out_table.add(new_entry);
 		}
-		return out_table;
+		return new_entry;
 	}
 }
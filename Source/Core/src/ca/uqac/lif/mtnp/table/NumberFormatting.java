@@ -19,12 +19,17 @@ package ca.uqac.lif.mtnp.table;
 
 import java.text.DecimalFormat;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
  * Transformation that applies a formatting from a {@link DecimalFormat}
  * object to every numerical cell of a table. It leaves non-numerical cells
  * as is.
+ * <p>
+ * Since {@link DecimalFormat} objects cannot be used by multiple threads
+ * at the same time, each thread formats numbers with its own copy of the
+ * formatters given to this transformation.
  * @author Sylvain Hallé
  */
 public class NumberFormatting extends SingleCellTransformation 
@@ -38,6 +43,18 @@ public class NumberFormatting extends SingleCellTransformation
 	 * The default formatter for unspecified numerical fields
 	 */
 	protected DecimalFormat m_defaultFormatter;
+
+	/**
+	 * The copies of the formatters used by each thread
+	 */
+	protected final transient ThreadLocal<Map<DecimalFormat,DecimalFormat>> m_threadFormatters = new ThreadLocal<Map<DecimalFormat,DecimalFormat>>()
+	{
+		@Override
+		protected Map<DecimalFormat,DecimalFormat> initialValue()
+		{
+			return new IdentityHashMap<DecimalFormat,DecimalFormat>();
+		}
+	};
 	
 	/**
 	 * Creates a transformation with the specified formatting rules
@@ -99,10 +116,28 @@ public class NumberFormatting extends SingleCellTransformation
 		{
 			return value;
 		}
-		if (m_formatters.containsKey(key))
+		DecimalFormat formatter = m_formatters.get(key);
+		if (formatter == null)
+		{
+			formatter = m_defaultFormatter;
+		}
+		return PrimitiveValue.getInstance(getThreadFormatter(formatter).format(value.numberValue()));
+	}
+
+	/**
+	 * Gets the copy of a formatter used by the current thread
+	 * @param formatter The formatter
+	 * @return The copy
+	 */
+	protected DecimalFormat getThreadFormatter(DecimalFormat formatter)
+	{
+		Map<DecimalFormat,DecimalFormat> copies = m_threadFormatters.get();
+		DecimalFormat copy = copies.get(formatter);
+		if (copy == null)
 		{
-			return PrimitiveValue.getInstance(m_formatters.get(key).format(value.numberValue()));
+			copy = (DecimalFormat) formatter.clone();
+			copies.put(formatter, copy);
 		}
-		return PrimitiveValue.getInstance(m_defaultFormatter.format(value.numberValue()));
+		return copy;
 	}
 }
@@ -0,0 +1,212 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Computes the result of an {@link IncrementalTransformation} from
+ * partial results obtained separately on parts of its input table. A
+ * typical use is a set of experiments whose results are spread across
+ * several machines:
+ * <ul>
+ * <li>on each machine, {@link #aggregate(IncrementalTransformation, Table)
+ * aggregate()} computes the state of the transformation on the local
+ * table, and {@link #toBytes(MergeableState) toBytes()} encodes it;</li>
+ * <li>the process that collects these encoded states gives them to
+ * {@link #combine(IncrementalTransformation, String[], Collection)
+ * combine()}, which produces the same table as if the transformation had
+ * been applied to all the rows at once.</li>
+ * </ul>
+ * Only the states travel between processes, and not the rows of the
+ * tables. The states of {@link ColumnSum} and {@link GroupBy} take a few
+ * bytes per column (and per group); that of {@link BoxTransformation}
+ * contains every value, unless it uses sketches (see
+ * {@link BoxTransformation#setSketchSize(int)}).
+ * <p>
+ * The cells of the combined table depend on an empty table standing for
+ * the tables of all the processes, since these tables are not available.
+ * @author Sylvain Hallé
+ */
+public class PartialAggregates
+{
+	/**
+	 * A number written at the start of each encoded state
+	 */
+	protected static final transient int MAGIC = 0x4d544e50;
+
+	/**
+	 * Private constructor, so that the class cannot be instantiated
+	 */
+	private PartialAggregates()
+	{
+		super();
+	}
+
+	/**
+	 * Creates an empty state for a transformation
+	 * @param t The transformation
+	 * @param input_columns The names of the columns of the input table
+	 * @return The state
+	 * @throws IllegalArgumentException If the transformation does not
+	 *   produce states that can be merged
+	 */
+	public static MergeableState newState(IncrementalTransformation t, String[] input_columns)
+	{
+		AggregateState state = t.newState(input_columns);
+		if (!(state instanceof MergeableState))
+		{
+			throw new IllegalArgumentException("The transformation does not produce states that can be merged");
+		}
+		return (MergeableState) state;
+	}
+
+	/**
+	 * Computes the state of a transformation on a table
+	 * @param t The transformation
+	 * @param table The table
+	 * @return The state
+	 */
+	public static MergeableState aggregate(IncrementalTransformation t, Table table)
+	{
+		TempTable data = table.getDataTable();
+		MergeableState state = newState(t, data.getColumnNames());
+		for (TableEntry te : data.getEntries())
+		{
+			state.update(te);
+		}
+		return state;
+	}
+
+	/**
+	 * Encodes a state as an array of bytes
+	 * @param state The state
+	 * @return The bytes
+	 */
+	public static byte[] toBytes(MergeableState state)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		try
+		{
+			state.write(out);
+			out.flush();
+		}
+		catch (IOException e)
+		{
+			// Cannot happen when writing to an array
+			throw new IllegalStateException(e);
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Adds to a state the rows seen by a state encoded as an array of bytes
+	 * @param state The state
+	 * @param bytes The encoded state
+	 * @throws IOException If the bytes do not contain a state compatible
+	 *   with the given one
+	 */
+	public static void merge(MergeableState state, byte[] bytes) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		state.read(in);
+		if (in.available() > 0)
+		{
+			throw new IOException("Unexpected data after the end of the state");
+		}
+	}
+
+	/**
+	 * Combines states encoded as arrays of bytes, and produces the output
+	 * table of the transformation
+	 * @param t The transformation
+	 * @param input_columns The names of the columns of the input tables
+	 * @param parts The encoded states
+	 * @return The output table
+	 * @throws IOException If one of the arrays does not contain a state
+	 *   of this transformation
+	 */
+	public static TempTable combine(IncrementalTransformation t, String[] input_columns, Collection<byte[]> parts) throws IOException
+	{
+		MergeableState state = newState(t, input_columns);
+		for (byte[] part : parts)
+		{
+			merge(state, part);
+		}
+		HardTable source = new HardTable(input_columns);
+		source.setTitle("Combined partial aggregates");
+		return state.getTable(source);
+	}
+
+	/**
+	 * Writes the beginning of an encoded state, which identifies its kind
+	 * and the columns it applies to
+	 * @param out The stream
+	 * @param kind A character identifying the kind of state
+	 * @param columns The names of the columns
+	 * @throws IOException If the stream cannot be written to
+	 */
+	public static void writeHeader(DataOutput out, char kind, String[] columns) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeChar(kind);
+		out.writeInt(columns.length);
+		for (String name : columns)
+		{
+			out.writeUTF(name);
+		}
+	}
+
+	/**
+	 * Reads the beginning of an encoded state, and checks that it matches
+	 * the state it is to be merged into
+	 * @param in The stream
+	 * @param kind A character identifying the kind of state expected
+	 * @param columns The names of the columns expected
+	 * @throws IOException If the stream cannot be read, or the state it
+	 *   contains does not match
+	 */
+	public static void readHeader(DataInput in, char kind, String[] columns) throws IOException
+	{
+		if (in.readInt() != MAGIC || in.readChar() != kind)
+		{
+			throw new IOException("The data does not contain a state of the expected kind");
+		}
+		int num_columns = in.readInt();
+		if (num_columns != columns.length)
+		{
+			throw new IOException("The state has " + num_columns + " columns, " + columns.length + " expected");
+		}
+		for (String name : columns)
+		{
+			String read_name = in.readUTF();
+			if (read_name.compareTo(name) != 0)
+			{
+				throw new IOException("Expected column " + name + ", found " + read_name);
+			}
+		}
+	}
+}
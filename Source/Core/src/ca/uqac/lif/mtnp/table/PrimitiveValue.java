@@ -22,6 +22,10 @@ package ca.uqac.lif.mtnp.table;
  * Such a value can either be a number or a string. Primitive
  * values are created so that a collection can mix values of
  * these types together, and still be able to sort them.
+ * <p>
+ * A string value can also belong to a {@link ValueDictionary}, which
+ * gives it an integer code; two values of the same dictionary are
+ * compared by their codes.
  * @author Sylvain Hallé
  */
 public class PrimitiveValue implements Comparable<PrimitiveValue>
@@ -30,6 +34,16 @@ public class PrimitiveValue implements Comparable<PrimitiveValue>
 	
 	protected Number m_number;
 	
+	/**
+	 * The dictionary this value belongs to, or {@code null} if none
+	 */
+	protected ValueDictionary m_dictionary = null;
+	
+	/**
+	 * The code of this value in its dictionary, or -1 if it has none
+	 */
+	protected int m_code = -1;
+	
 	public static PrimitiveValue getInstance(Object o)
 	{
 		if (o instanceof PrimitiveValue)
@@ -39,6 +53,37 @@ public class PrimitiveValue implements Comparable<PrimitiveValue>
 		return new PrimitiveValue(o);
 	}
 	
+	/**
+	 * Gets a value holding a string. Contrary to
+	 * {@link #getInstance(Object)}, the string is not parsed, and the value
+	 * is a string even if it looks like a number.
+	 * @param s The string
+	 * @return The value
+	 */
+	public static PrimitiveValue getStringInstance(String s)
+	{
+		PrimitiveValue v = new PrimitiveValue(null);
+		v.m_string = s;
+		return v;
+	}
+	
+	/**
+	 * Creates a value belonging to a dictionary. This method is called by
+	 * the dictionary, which ensures that it creates only one value for each
+	 * string.
+	 * @param s The string
+	 * @param dictionary The dictionary
+	 * @param code The code of the value in the dictionary
+	 * @return The value
+	 */
+	protected static PrimitiveValue getEncodedInstance(String s, ValueDictionary dictionary, int code)
+	{
+		PrimitiveValue v = getStringInstance(s);
+		v.m_dictionary = dictionary;
+		v.m_code = code;
+		return v;
+	}
+	
 	private PrimitiveValue(Object o)
 	{
 		super();
@@ -94,6 +139,25 @@ public class PrimitiveValue implements Comparable<PrimitiveValue>
 		return m_number == null && m_string == null;
 	}
 	
+	/**
+	 * Gets the dictionary this value belongs to
+	 * @return The dictionary, or {@code null} if the value does not belong
+	 *   to a dictionary
+	 */
+	public ValueDictionary getDictionary()
+	{
+		return m_dictionary;
+	}
+	
+	/**
+	 * Gets the code of this value in its dictionary
+	 * @return The code, or -1 if the value does not belong to a dictionary
+	 */
+	public int getCode()
+	{
+		return m_code;
+	}
+	
 	public Number numberValue()
 	{
 		return m_number;
@@ -126,6 +190,11 @@ public class PrimitiveValue implements Comparable<PrimitiveValue>
 			// Nulls go last
 			return 1;
 		}
+		if (m_dictionary != null && m_dictionary == o.m_dictionary)
+		{
+			// Strings of the same dictionary are compared by their codes
+			return m_dictionary.compare(m_code, o.m_code);
+		}
 		if (m_number != null && o.m_number != null)
 		{
 			// Numbers are compared as numbers
@@ -198,6 +267,11 @@ public class PrimitiveValue implements Comparable<PrimitiveValue>
 		{
 			return false;
 		}
-		return compareTo((PrimitiveValue) o) == 0;
+		PrimitiveValue v = (PrimitiveValue) o;
+		if (m_dictionary != null && m_dictionary == v.m_dictionary)
+		{
+			return m_code == v.m_code;
+		}
+		return compareTo(v) == 0;
 	}
 }
\ No newline at end of file
@@ -23,7 +23,7 @@ import java.util.Map.Entry;
  * Replaces each value of the input table by the ratio of this value
  * to the smallest value in the row
  */
-public class RelativizeRows implements TableTransformation 
+public class RelativizeRows implements RowTransformation 
 {
 	public RelativizeRows()
 	{
@@ -33,38 +33,46 @@ public class RelativizeRows implements TableTransformation
 	@Override
 	public TempTable transform(TempTable ... tables)
 	{
-		TempTable in_table = tables[0];
-		TempTable out_table = new TempTable(in_table.getId(), in_table.getColumnNames());
-		if (in_table.getRowCount() == 0)
+		return RowExecutor.transform(this, tables[0]);
+	}
+
+	@Override
+	public String[] getOutputColumns(String[] input_columns)
+	{
+		return input_columns;
+	}
+
+	@Override
+	public int[] getSourceColumns(String[] input_columns)
+	{
+		return null;
+	}
+
+	@Override
+	public TableEntry transformRow(String[] input_columns, TableEntry te)
+	{
+		float min = 1000000000;
+		for (Object o : te.values())
 		{
-			return out_table;
+			if (o instanceof Number)
+			{
+				min = Math.min(min, ((Number) o).floatValue());
+			}
 		}
-		for (TableEntry te : in_table.getEntries())
+		TableEntry new_entry = new TableEntry();
+		for (Entry<String,PrimitiveValue> map_entry : te.entrySet())
 		{
-			float min = 1000000000;
-			for (Object o : te.values())
+			String key = map_entry.getKey();
+			PrimitiveValue o = map_entry.getValue();
+			if (o.isNumeric())
 			{
-				if (o instanceof Number)
-				{
-					min = Math.min(min, ((Number) o).floatValue());
-				}
+				new_entry.put(key, o.numberValue().floatValue() / min);
 			}
-			TableEntry new_entry = new TableEntry();
-			for (Entry<String,PrimitiveValue> map_entry : te.entrySet())
+			else
 			{
-				String key = map_entry.getKey();
-				PrimitiveValue o = map_entry.getValue();
-				if (o.isNumeric())
-				{
-					new_entry.put(key, o.numberValue().floatValue() / min);
-				}
-				else
-				{
-					new_entry.put(key, o);
-				}
+				new_entry.put(key, o);
 			}
-			out_table.add(new_entry);
 		}
-		return out_table;
+		return new_entry;
 	}
 }
@@ -20,13 +20,11 @@ package ca.uqac.lif.mtnp.table;
 import java.util.ArrayList;
 import java.util.List;
 
-import ca.uqac.lif.petitpoucet.DirectValue;
-
 /**
  * Removes columns from a table
  * @author Sylvain Hallé
  */
-public class RemoveColumns implements TableTransformation 
+public class RemoveColumns implements RowTransformation 
 {
 	/**
 	 * The names of the columns to remove
@@ -55,12 +53,25 @@ public class RemoveColumns implements TableTransformation
 		return new RemoveColumns(names_to_remove);
 	}
 
+	/**
+	 * Gets the names of the columns removed by this transformation
+	 * @return The names
+	 */
+	public String[] getRemovedColumns()
+	{
+		return m_namesToRemove;
+	}
+
 	@Override
 	public TempTable transform(TempTable... tables)
 	{
-		TempTable table = tables[0];
+		return RowExecutor.transform(this, tables[0]);
+	}
+
+	@Override
+	public String[] getOutputColumns(String[] col_names)
+	{
 		List<String> cols = new ArrayList<String>();
-		String[] col_names = table.getColumnNames();
 		for (String name : col_names)
 		{
 			cols.add(name.intern());
@@ -76,6 +87,13 @@ public class RemoveColumns implements TableTransformation
 			new_col_names[i] = name;
 			i++;
 		}
+		return new_col_names;
+	}
+
+	@Override
+	public int[] getSourceColumns(String[] col_names)
+	{
+		String[] new_col_names = getOutputColumns(col_names);
 		int[] old_indices = new int[new_col_names.length];
 		// Keep the correspondence between the column number in the original table
 		int old_j = 0;
@@ -85,24 +103,21 @@ public class RemoveColumns implements TableTransformation
 				old_j++;
 			old_indices[j] = old_j;
 		}
-		List<TableEntry> old_entries = table.getEntries();
-		List<TableEntry> new_entries = new ArrayList<TableEntry>(old_entries.size());
-		for (TableEntry te : old_entries)
+		return old_indices;
+	}
+
+	@Override
+	public TableEntry transformRow(String[] col_names, TableEntry te)
+	{
+		TableEntry new_te = new TableEntry();
+		for (String k : col_names)
+		{
+			new_te.put(k, te.get(k));
+		}
+		for (String k : m_namesToRemove)
 		{
-			TableEntry new_te = new TableEntry();
-			for (int j = 0; j < new_col_names.length; j++)
-			{
-				String k = new_col_names[j];
-				new_te.put(k, te.get(k));
-				DirectValue dv = new DirectValue();
-				dv.add(new TableCellNode(table, te.getRowIndex(), old_indices[j]));
-				new_te.addDependency(k, dv);
-			}
-			new_entries.add(new_te);
+			new_te.remove(k);
 		}
-		TempTable tt = new TempTable(table.getId(), new_entries, new_col_names);
-		return tt;
+		return new_te;
 	}
-	
-	
 }
@@ -21,7 +21,7 @@ package ca.uqac.lif.mtnp.table;
  * Table built by renaming the columns of another table
  * @author Sylvain Hallé
  */
-public class RenameColumns implements TableTransformation
+public class RenameColumns implements RowTransformation
 {
 	/**
 	 * The new names to be given to the original table's columns
@@ -42,19 +42,35 @@ public class RenameColumns implements TableTransformation
 	@Override
 	public TempTable transform(TempTable ... tables)
 	{
-		TempTable table = tables[0];
-		String[] ordering = table.getColumnNames();
-		TempTable tt = new TempTable(-4, m_names);
-		for (TableEntry te : table.getEntries())
+		return RowExecutor.transform(this, tables[0], -4);
+	}
+
+	@Override
+	public String[] getOutputColumns(String[] input_columns)
+	{
+		return m_names;
+	}
+
+	@Override
+	public int[] getSourceColumns(String[] input_columns)
+	{
+		// Each column comes from the column at the same position
+		int[] sources = new int[m_names.length];
+		for (int i = 0; i < sources.length; i++)
 		{
-			TableEntry new_te = new TableEntry();
-			for (int i = 0; i < ordering.length; i++)
-			{
-				new_te.put(m_names[i], te.get(ordering[i]));
-			}
-			tt.add(new_te);
+			sources[i] = i < input_columns.length ? i : -1;
 		}
-		return tt;
+		return sources;
+	}
 
+	@Override
+	public TableEntry transformRow(String[] ordering, TableEntry te)
+	{
+		TableEntry new_te = new TableEntry();
+		for (int i = 0; i < ordering.length; i++)
+		{
+			new_te.put(m_names[i], te.get(ordering[i]));
+		}
+		return new_te;
 	}
 }
@@ -0,0 +1,424 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.text.DecimalFormat;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import ca.uqac.lif.mtnp.table.io.BinaryTableFormat;
+import ca.uqac.lif.mtnp.util.DiskStore;
+import ca.uqac.lif.mtnp.util.HashHelper;
+
+/**
+ * Persistent cache of the contents of transformed tables. A
+ * {@link TransformedTable} that is given a cache (see
+ * {@link TransformedTable#setResultCache(ResultCache)}) first computes a
+ * key from everything that determines its contents:
+ * <ul>
+ * <li>the class and the configuration of its transformation, obtained
+ * by reading the fields of the transformation object;</li>
+ * <li>for each input table that is itself a transformed table, the key
+ * of that table, computed in the same way (without computing its
+ * contents);</li>
+ * <li>for each other input table, the {@link HardTable#getFingerprint()
+ * fingerprint} of its contents.</li>
+ * </ul>
+ * If a table is stored under this key, it is read back instead of being
+ * computed. Otherwise, the table is computed and saved under this key.
+ * Tables are stored in a directory, in the format of
+ * {@link BinaryTableFormat}; the directory can be given a maximum size,
+ * in which case the least recently used tables are deleted when it is
+ * exceeded. Since the directory survives from one run to the next, a
+ * program that builds the same tables from the same data reloads them
+ * instead of computing them again.
+ * <p>
+ * The configuration of a transformation is read from its fields, and
+ * the fields of the objects they refer to. Strings, numbers, enums,
+ * arrays, collections, maps, tables and objects from this library are
+ * supported. A transformation referring to any other kind of object
+ * (for example a function defined elsewhere) is not cached, since its
+ * configuration cannot be determined. Because only the values of the
+ * fields are considered, the cache must be {@link #clear() cleared} when
+ * the code of a transformation changes.
+ * <p>
+ * The cells of a table read from the cache do not depend on the cells of
+ * its input tables.
+ * @author Sylvain Hallé
+ */
+public class ResultCache
+{
+	/**
+	 * The prefix of the classes whose fields are read to obtain the
+	 * configuration of a transformation
+	 */
+	protected static final transient String s_packagePrefix = "ca.uqac.lif.";
+
+	/**
+	 * The store where the tables are saved
+	 */
+	protected final DiskStore m_store;
+
+	/**
+	 * The format used to save the tables
+	 */
+	protected final BinaryTableFormat m_format;
+
+	/**
+	 * The number of tables read from the cache
+	 */
+	protected long m_hits = 0;
+
+	/**
+	 * The number of tables that were not found in the cache
+	 */
+	protected long m_misses = 0;
+
+	/**
+	 * Creates a new result cache with no size limit
+	 * @param directory The directory where the tables are stored. It is
+	 *   created if it does not exist.
+	 */
+	public ResultCache(File directory)
+	{
+		this(directory, 0);
+	}
+
+	/**
+	 * Creates a new result cache
+	 * @param directory The directory where the tables are stored. It is
+	 *   created if it does not exist.
+	 * @param max_bytes The maximum number of bytes occupied by the stored
+	 *   tables. Set to 0 for no limit.
+	 */
+	public ResultCache(File directory, long max_bytes)
+	{
+		super();
+		m_store = new DiskStore(directory, max_bytes);
+		m_format = new BinaryTableFormat();
+	}
+
+	/**
+	 * Computes the key under which the contents of a table are stored
+	 * @param table The table
+	 * @param temporary Passed to the input tables whose contents must be
+	 *   computed to obtain their fingerprint
+	 * @return The key, or {@code null} if the configuration of one of the
+	 *   transformations leading to the table cannot be determined
+	 */
+	public String getKey(TransformedTable table, boolean temporary)
+	{
+		MessageDigest digest = HashHelper.getDigest();
+		if (!update(digest, table, temporary))
+		{
+			return null;
+		}
+		return HashHelper.toHex(digest.digest());
+	}
+
+	/**
+	 * Gets the table stored under a key
+	 * @param key The key
+	 * @return The table, or {@code null} if no table is stored under this
+	 *   key
+	 */
+	public TempTable get(String key)
+	{
+		HardTable t = null;
+		if (m_store.touch(key))
+		{
+			try
+			{
+				t = m_format.read(m_store.getFile(key));
+			}
+			catch (IOException e)
+			{
+				// The entry was evicted or is damaged: compute it again
+				m_store.remove(key);
+			}
+		}
+		synchronized (this)
+		{
+			if (t == null)
+			{
+				m_misses++;
+				return null;
+			}
+			m_hits++;
+		}
+		return new TempTable(t.getId(), t.getEntries(), t.getColumnNames());
+	}
+
+	/**
+	 * Stores a table under a key
+	 * @param key The key
+	 * @param table The table
+	 */
+	public void put(String key, Table table)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try
+		{
+			m_format.write(table, bos);
+		}
+		catch (IOException e)
+		{
+			// Cannot happen when writing to memory
+			return;
+		}
+		m_store.put(key, bos.toByteArray());
+	}
+
+	/**
+	 * Deletes all the tables stored in the cache
+	 */
+	public void clear()
+	{
+		m_store.clear();
+	}
+
+	/**
+	 * Gets the number of bytes occupied by the stored tables
+	 * @return The number of bytes
+	 */
+	public long getSize()
+	{
+		return m_store.getSize();
+	}
+
+	/**
+	 * Gets the number of tables read from the cache
+	 * @return The number of tables
+	 */
+	public synchronized long getHits()
+	{
+		return m_hits;
+	}
+
+	/**
+	 * Gets the number of tables that were not found in the cache
+	 * @return The number of tables
+	 */
+	public synchronized long getMisses()
+	{
+		return m_misses;
+	}
+
+	/**
+	 * Adds to a digest everything that determines the contents of a table
+	 * @param digest The digest
+	 * @param table The table
+	 * @param temporary Passed to the tables whose contents must be computed
+	 * @return {@code false} if the contents of the table cannot be
+	 *   described, {@code true} otherwise
+	 */
+	protected boolean update(MessageDigest digest, Table table, boolean temporary)
+	{
+		if (table instanceof TransformedTable)
+		{
+			TransformedTable tt = (TransformedTable) table;
+			StringBuilder config = new StringBuilder();
+			if (!describe(tt.getTransformation(), config, new IdentityHashMap<Object,Integer>()))
+			{
+				return false;
+			}
+			HashHelper.update(digest, "T" + config + "(");
+			for (Table in : tt.getInputTables())
+			{
+				if (!update(digest, in, temporary))
+				{
+					return false;
+				}
+				HashHelper.update(digest, ",");
+			}
+			HashHelper.update(digest, ")");
+			return true;
+		}
+		HardTable contents;
+		if (table instanceof HardTable)
+		{
+			contents = (HardTable) table;
+		}
+		else
+		{
+			contents = table.getDataTable(temporary);
+		}
+		HashHelper.update(digest, "H" + contents.getFingerprint());
+		return true;
+	}
+
+	/**
+	 * Writes a description of an object and of the objects it refers to
+	 * @param o The object
+	 * @param out The string builder where the description is written
+	 * @param seen The objects already described, associated to the order
+	 *   in which they were encountered. An object seen a second time is
+	 *   described by a reference to that number, so that cycles do not
+	 *   lead to an infinite description.
+	 * @return {@code false} if the object cannot be described,
+	 *   {@code true} otherwise
+	 */
+	protected static boolean describe(Object o, StringBuilder out, IdentityHashMap<Object,Integer> seen)
+	{
+		if (o == null)
+		{
+			out.append("null");
+			return true;
+		}
+		Class<?> c = o.getClass();
+		if (o instanceof String)
+		{
+			String s = (String) o;
+			out.append("s").append(s.length()).append(":").append(s);
+			return true;
+		}
+		if (o instanceof Number || o instanceof Boolean || o instanceof Character)
+		{
+			out.append(c.getSimpleName()).append(":").append(o);
+			return true;
+		}
+		if (o instanceof Enum)
+		{
+			out.append(((Enum<?>) o).getDeclaringClass().getName()).append(".").append(((Enum<?>) o).name());
+			return true;
+		}
+		if (o instanceof Class)
+		{
+			out.append("c:").append(((Class<?>) o).getName());
+			return true;
+		}
+		if (o instanceof Pattern)
+		{
+			Pattern p = (Pattern) o;
+			out.append("p").append(p.flags()).append(":");
+			return describe(p.pattern(), out, seen);
+		}
+		if (o instanceof DecimalFormat)
+		{
+			out.append("f:");
+			return describe(((DecimalFormat) o).toPattern(), out, seen);
+		}
+		Integer previous = seen.get(o);
+		if (previous != null)
+		{
+			out.append("@").append(previous);
+			return true;
+		}
+		seen.put(o, seen.size());
+		if (o instanceof Table)
+		{
+			// A table referred to by a transformation is described by its contents
+			HardTable t = o instanceof HardTable ? (HardTable) o : ((Table) o).getDataTable();
+			out.append("t:").append(t.getFingerprint());
+			return true;
+		}
+		if (c.isArray())
+		{
+			int len = Array.getLength(o);
+			out.append("[").append(len).append(":");
+			for (int i = 0; i < len; i++)
+			{
+				if (!describe(Array.get(o, i), out, seen))
+				{
+					return false;
+				}
+				out.append(",");
+			}
+			out.append("]");
+			return true;
+		}
+		if (o instanceof Collection)
+		{
+			out.append("{").append(c.getName()).append(":");
+			for (Object e : (Collection<?>) o)
+			{
+				if (!describe(e, out, seen))
+				{
+					return false;
+				}
+				out.append(",");
+			}
+			out.append("}");
+			return true;
+		}
+		if (o instanceof Map)
+		{
+			out.append("{").append(c.getName()).append(":");
+			for (Map.Entry<?,?> e : ((Map<?,?>) o).entrySet())
+			{
+				if (!describe(e.getKey(), out, seen))
+				{
+					return false;
+				}
+				out.append("=");
+				if (!describe(e.getValue(), out, seen))
+				{
+					return false;
+				}
+				out.append(",");
+			}
+			out.append("}");
+			return true;
+		}
+		if (!c.getName().startsWith(s_packagePrefix))
+		{
+			// An object whose contents are unknown
+			return false;
+		}
+		out.append(c.getName()).append("(");
+		for (Class<?> cl = c; cl != null && cl != Object.class; cl = cl.getSuperclass())
+		{
+			for (Field f : cl.getDeclaredFields())
+			{
+				int mod = f.getModifiers();
+				if (Modifier.isStatic(mod) || Modifier.isTransient(mod))
+				{
+					continue;
+				}
+				Object value;
+				try
+				{
+					f.setAccessible(true);
+					value = f.get(o);
+				}
+				catch (Exception e)
+				{
+					// The field cannot be read
+					return false;
+				}
+				out.append(f.getName()).append("=");
+				if (!describe(value, out, seen))
+				{
+					return false;
+				}
+				out.append(";");
+			}
+		}
+		out.append(")");
+		return true;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ca.uqac.lif.petitpoucet.DirectValue;
+
+/**
+ * Applies a {@link RowTransformation} to a table. Small tables are
+ * processed row by row in the calling thread. Larger tables are split
+ * into chunks of contiguous rows, which are processed in parallel on a
+ * fork/join pool; the resulting rows are then put back together in their
+ * original order. Rows for which the transformation returns {@code null}
+ * are left out of the output table.
+ * @author Sylvain Hallé
+ */
+public class RowExecutor
+{
+	/**
+	 * The number of rows under which a table (or a part of a table) is
+	 * processed in a single thread
+	 */
+	protected static transient int s_chunkSize = 16384;
+
+	/**
+	 * The pool used to process the chunks
+	 */
+	private static ForkJoinPool s_pool = null;
+
+	/**
+	 * Private constructor, so that the class cannot be instantiated
+	 */
+	private RowExecutor()
+	{
+		super();
+	}
+
+	/**
+	 * Applies a row transformation to a table
+	 * @param t The transformation
+	 * @param table The input table
+	 * @return The output table, with the same ID as the input table
+	 */
+	public static TempTable transform(RowTransformation t, TempTable table)
+	{
+		return transform(t, table, table.getId());
+	}
+
+	/**
+	 * Applies a row transformation to a table
+	 * @param t The transformation
+	 * @param table The input table
+	 * @param id The ID to give to the output table
+	 * @return The output table
+	 */
+	public static TempTable transform(RowTransformation t, TempTable table, int id)
+	{
+		String[] input_columns = table.getColumnNames();
+		String[] output_columns = t.getOutputColumns(input_columns);
+		int[] sources = t.getSourceColumns(input_columns);
+		List<TableEntry> entries = table.getEntries();
+		RowTask task = new RowTask(t, table, input_columns, output_columns, sources, 0, entries.size());
+		List<TableEntry> new_entries;
+		if (entries.size() <= s_chunkSize)
+		{
+			new_entries = task.compute();
+		}
+		else
+		{
+			new_entries = getPool().invoke(task);
+		}
+		TempTable new_tt = new TempTable(id, output_columns);
+		for (TableEntry te : new_entries)
+		{
+			new_tt.add(te);
+		}
+		return new_tt;
+	}
+
+	/**
+	 * Gets the pool used to process the chunks, creating it if necessary.
+	 * Other classes that process parts of a table in parallel use the
+	 * same pool.
+	 * @return The pool
+	 */
+	public static synchronized ForkJoinPool getPool()
+	{
+		if (s_pool == null)
+		{
+			s_pool = new ForkJoinPool();
+		}
+		return s_pool;
+	}
+
+	/**
+	 * Processes a range of rows, splitting it in two if it is too large
+	 */
+	protected static class RowTask extends RecursiveTask<List<TableEntry>>
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The transformation to apply
+		 */
+		protected final RowTransformation m_transformation;
+
+		/**
+		 * The input table
+		 */
+		protected final TempTable m_table;
+
+		/**
+		 * The names of the columns of the input table
+		 */
+		protected final String[] m_inputColumns;
+
+		/**
+		 * The names of the columns of the output table
+		 */
+		protected final String[] m_outputColumns;
+
+		/**
+		 * The input column each output column comes from, or {@code null}
+		 * if dependencies are not recorded
+		 */
+		protected final int[] m_sources;
+
+		/**
+		 * The index of the first row to process
+		 */
+		protected final int m_start;
+
+		/**
+		 * The index after the last row to process
+		 */
+		protected final int m_end;
+
+		/**
+		 * Creates a new task
+		 * @param t The transformation to apply
+		 * @param table The input table
+		 * @param input_columns The names of the columns of the input table
+		 * @param output_columns The names of the columns of the output table
+		 * @param sources The input column each output column comes from
+		 * @param start The index of the first row to process
+		 * @param end The index after the last row to process
+		 */
+		public RowTask(RowTransformation t, TempTable table, String[] input_columns, String[] output_columns, int[] sources, int start, int end)
+		{
+			super();
+			m_transformation = t;
+			m_table = table;
+			m_inputColumns = input_columns;
+			m_outputColumns = output_columns;
+			m_sources = sources;
+			m_start = start;
+			m_end = end;
+		}
+
+		@Override
+		protected List<TableEntry> compute()
+		{
+			if (m_end - m_start > s_chunkSize)
+			{
+				int middle = (m_start + m_end) / 2;
+				RowTask left = new RowTask(m_transformation, m_table, m_inputColumns, m_outputColumns, m_sources, m_start, middle);
+				RowTask right = new RowTask(m_transformation, m_table, m_inputColumns, m_outputColumns, m_sources, middle, m_end);
+				right.fork();
+				List<TableEntry> out = left.compute();
+				out.addAll(right.join());
+				return out;
+			}
+			List<TableEntry> entries = m_table.getEntries();
+			List<TableEntry> out = new ArrayList<TableEntry>(m_end - m_start);
+			for (int i = m_start; i < m_end; i++)
+			{
+				TableEntry te = entries.get(i);
+				TableEntry new_te = m_transformation.transformRow(m_inputColumns, te);
+				if (new_te == null)
+				{
+					continue;
+				}
+				if (m_sources != null)
+				{
+					addDependencies(te, new_te);
+				}
+				out.add(new_te);
+			}
+			return out;
+		}
+
+		/**
+		 * Makes each cell of an output row depend on the cell of the input
+		 * row it comes from
+		 * @param te The input row
+		 * @param new_te The output row
+		 */
+		protected void addDependencies(TableEntry te, TableEntry new_te)
+		{
+			for (int j = 0; j < m_outputColumns.length; j++)
+			{
+				if (m_sources[j] < 0)
+				{
+					continue;
+				}
+				DirectValue dv = new DirectValue();
+				dv.add(new TableCellNode(m_table, te.getRowIndex(), m_sources[j]));
+				new_te.addDependency(m_outputColumns[j], dv);
+			}
+		}
+	}
+}
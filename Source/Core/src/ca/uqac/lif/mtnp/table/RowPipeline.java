@@ -0,0 +1,174 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.Arrays;
+
+/**
+ * A sequence of row-local transformations applied in a single pass over
+ * a table. Each row of the input table goes through all the
+ * transformations before the next row is processed; no table is created
+ * between the transformations. This is how {@link Composition} executes
+ * consecutive {@link RowTransformation}s.
+ * <p>
+ * A row left out by one of the transformations (e.g. a {@link FilterRows})
+ * is not processed by the following ones. A filter that is not the first
+ * transformation examines the row produced by the previous
+ * transformation, and passes it on without copying it.
+ * <p>
+ * The cells of the output table depend on the cells of the input table
+ * if at least one of the transformations records dependencies. Through
+ * the transformations that do not, a column is followed by its name.
+ * @author Sylvain Hallé
+ */
+public class RowPipeline implements RowTransformation
+{
+	/**
+	 * The transformations, in the order they are applied
+	 */
+	protected final RowTransformation[] m_stages;
+
+	/**
+	 * The names of the columns of the input table of each transformation.
+	 * The last element holds the names of the columns of the output table.
+	 */
+	protected final String[][] m_columns;
+
+	/**
+	 * Creates a new pipeline
+	 * @param input_columns The names of the columns of the input table
+	 * @param stages The transformations, in the order they are applied
+	 */
+	public RowPipeline(String[] input_columns, RowTransformation ... stages)
+	{
+		super();
+		m_stages = stages;
+		m_columns = new String[stages.length + 1][];
+		m_columns[0] = input_columns;
+		for (int i = 0; i < stages.length; i++)
+		{
+			m_columns[i + 1] = stages[i].getOutputColumns(m_columns[i]);
+		}
+	}
+
+	@Override
+	public TempTable transform(TempTable... tables)
+	{
+		TempTable table = tables[0];
+		if (!Arrays.equals(table.getColumnNames(), m_columns[0]))
+		{
+			// Not the table this pipeline was made for
+			return RowExecutor.transform(new RowPipeline(table.getColumnNames(), m_stages), table);
+		}
+		return RowExecutor.transform(this, table);
+	}
+
+	@Override
+	public String[] getOutputColumns(String[] input_columns)
+	{
+		return m_columns[m_stages.length];
+	}
+
+	@Override
+	public int[] getSourceColumns(String[] input_columns)
+	{
+		String[] output_columns = m_columns[m_stages.length];
+		int[] sources = new int[output_columns.length];
+		for (int j = 0; j < sources.length; j++)
+		{
+			sources[j] = j;
+		}
+		boolean recorded = false;
+		for (int i = m_stages.length - 1; i >= 0; i--)
+		{
+			int[] stage_sources = m_stages[i].getSourceColumns(m_columns[i]);
+			if (stage_sources != null)
+			{
+				recorded = true;
+			}
+			for (int j = 0; j < sources.length; j++)
+			{
+				if (sources[j] < 0)
+				{
+					continue;
+				}
+				if (stage_sources != null)
+				{
+					sources[j] = stage_sources[sources[j]];
+				}
+				else
+				{
+					sources[j] = indexOf(m_columns[i], m_columns[i + 1][sources[j]]);
+				}
+			}
+		}
+		if (!recorded)
+		{
+			return null;
+		}
+		return sources;
+	}
+
+	@Override
+	public TableEntry transformRow(String[] input_columns, TableEntry entry)
+	{
+		TableEntry current = entry;
+		for (int i = 0; i < m_stages.length; i++)
+		{
+			RowTransformation stage = m_stages[i];
+			if (stage instanceof FilterRows && current != entry)
+			{
+				// The row is an intermediate result: no need to copy it
+				if (!((FilterRows) stage).accept(current))
+				{
+					return null;
+				}
+				continue;
+			}
+			current = stage.transformRow(m_columns[i], current);
+			if (current == null)
+			{
+				return null;
+			}
+		}
+		if (current == entry)
+		{
+			// Can only happen with an empty pipeline
+			current = new TableEntry(entry);
+		}
+		return current;
+	}
+
+	/**
+	 * Finds the position of a name in an array
+	 * @param names The array
+	 * @param name The name
+	 * @return The position, or -1 if the name is not in the array
+	 */
+	protected static int indexOf(String[] names, String name)
+	{
+		for (int i = 0; i < names.length; i++)
+		{
+			if (names[i].compareTo(name) == 0)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
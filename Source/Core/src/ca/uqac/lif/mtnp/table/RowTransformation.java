@@ -0,0 +1,65 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * A table transformation that processes each row of its input table
+ * independently of the other rows. Declaring this property allows the
+ * rows of a large table to be processed in parallel by a
+ * {@link RowExecutor}; implementations of
+ * {@link TableTransformation#transform(TempTable...) transform()} are
+ * expected to delegate to it.
+ * <p>
+ * Since rows can be processed by multiple threads at the same time,
+ * {@link #transformRow(String[], TableEntry) transformRow()} must not
+ * modify the state of the transformation.
+ * @author Sylvain Hallé
+ */
+public interface RowTransformation extends TableTransformation
+{
+	/**
+	 * Gets the names of the columns of the output table
+	 * @param input_columns The names of the columns of the input table
+	 * @return The names of the output columns
+	 */
+	public String[] getOutputColumns(String[] input_columns);
+
+	/**
+	 * Gets the column of the input table each column of the output table
+	 * is computed from. When this information is given, each cell of the
+	 * output table is made to depend on the corresponding cell of the
+	 * input table.
+	 * @param input_columns The names of the columns of the input table
+	 * @return An array giving, for each output column, the index of the
+	 *   input column it comes from, or -1 if it comes from no single column.
+	 *   Returns {@code null} if the transformation does not record the
+	 *   dependencies of its cells.
+	 */
+	public int[] getSourceColumns(String[] input_columns);
+
+	/**
+	 * Transforms a single row of the input table
+	 * @param input_columns The names of the columns of the input table
+	 * @param entry The row of the input table. This entry must not be
+	 *   modified.
+	 * @return The corresponding row of the output table, or {@code null}
+	 *   if the row is to be left out of the output table. The entry returned
+	 *   must be a new object, and not the entry received as an argument.
+	 */
+	public TableEntry transformRow(String[] input_columns, TableEntry entry);
+}
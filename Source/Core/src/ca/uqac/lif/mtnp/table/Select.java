@@ -18,10 +18,12 @@
 package ca.uqac.lif.mtnp.table;
 
 /**
- * Selects columns from another table
+ * Selects columns from another table. On its own, this transformation
+ * does not copy the rows of the table; it only does so when it is merged
+ * with other row-local transformations (see {@link RowPipeline}).
  * @author Sylvain Hallé
  */
-public class Select implements TableTransformation 
+public class Select implements RowTransformation 
 {
 	/**
 	 * The column names to select
@@ -39,6 +41,15 @@ public class Select implements TableTransformation
 		return new Select(column_names);
 	}
 
+	/**
+	 * Gets the names of the columns selected by this transformation
+	 * @return The names
+	 */
+	public String[] getColumnNames()
+	{
+		return m_columnNames;
+	}
+
 	@Override
 	public TempTable transform(TempTable... tables)
 	{
@@ -46,4 +57,31 @@ public class Select implements TableTransformation
 		return table.getDataTable(m_columnNames);
 	}
 
+	@Override
+	public String[] getOutputColumns(String[] input_columns)
+	{
+		return m_columnNames;
+	}
+
+	@Override
+	public int[] getSourceColumns(String[] input_columns)
+	{
+		return null;
+	}
+
+	@Override
+	public TableEntry transformRow(String[] input_columns, TableEntry entry)
+	{
+		TableEntry new_te = new TableEntry();
+		for (String k : m_columnNames)
+		{
+			if (entry.containsKey(k))
+			{
+				new_te.put(k, entry.get(k));
+				new_te.addDependency(k, entry.getDependency(k));
+			}
+		}
+		return new_te;
+	}
+
 }
@@ -22,28 +22,43 @@ import java.util.Map;
 /**
  * Transformation that applies an operation on each individual cell
  * (i.e. key-value pair) in the table independently of the other cells.
+ * Since rows can be processed in parallel, {@link #applyTransformation(String, PrimitiveValue)
+ * applyTransformation()} may be called by multiple threads at the same
+ * time.
  * 
  * @author Sylvain Hallé
  */
-public abstract class SingleCellTransformation implements TableTransformation 
+public abstract class SingleCellTransformation implements RowTransformation 
 {
 	@Override
 	public final TempTable transform(TempTable ... tables) 
 	{
-		TempTable tt = tables[0];
-		TempTable new_tt = new TempTable(tt.getId(), tt.getColumnNames());
-		for (TableEntry te : tt.getEntries())
+		return RowExecutor.transform(this, tables[0]);
+	}
+
+	@Override
+	public String[] getOutputColumns(String[] input_columns)
+	{
+		return input_columns;
+	}
+
+	@Override
+	public int[] getSourceColumns(String[] input_columns)
+	{
+		return null;
+	}
+
+	@Override
+	public TableEntry transformRow(String[] input_columns, TableEntry te)
+	{
+		TableEntry new_te = new TableEntry();
+		for (Map.Entry<String,PrimitiveValue> entry :  te.entrySet())
 		{
-			TableEntry new_te = new TableEntry();
-			for (Map.Entry<String,PrimitiveValue> entry :  te.entrySet())
-			{
-				String key = entry.getKey();
-				PrimitiveValue new_value = applyTransformation(key, entry.getValue());
-				new_te.put(key, new_value);
-			}
-			new_tt.add(new_te);
+			String key = entry.getKey();
+			PrimitiveValue new_value = applyTransformation(key, entry.getValue());
+			new_te.put(key, new_value);
 		}
-		return new_tt;
+		return new_te;
 	}
 	
 	/**
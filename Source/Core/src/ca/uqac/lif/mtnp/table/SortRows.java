@@ -99,6 +99,11 @@ public class SortRows implements TableTransformation
 						}
 						return 1;
 					}
+					if (v1.getDictionary() != null && v1.getDictionary() == v2.getDictionary())
+					{
+						// Strings of the same dictionary are compared by their codes
+						return v1.getDictionary().compare(v1.getCode(), v2.getCode());
+					}
 					if (v1.isString() && v2.isString())
 					{
 						String s1 = v1.stringValue();
@@ -17,10 +17,48 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.util.Arrays;
+import java.util.List;
+
+import ca.uqac.lif.mtnp.table.plan.PlanNode;
+import ca.uqac.lif.mtnp.table.plan.PlanOptimizer;
 import ca.uqac.lif.petitpoucet.NodeFunction;
 
 /**
- * Table obtained from applying a transformation to other tables
+ * Table obtained from applying a transformation to other tables.
+ * <p>
+ * By default, the transformations leading to this table are applied
+ * exactly as they were written. When optimization is enabled with
+ * {@link #setOptimized(boolean)}, they are first turned into a logical
+ * plan (see {@link #getPlan()}), which is rewritten by a
+ * {@link PlanOptimizer} before being executed. The table produced has the
+ * same columns and values, but the cells of intermediate tables its
+ * values depend on may be different.
+ * <p>
+ * When an {@link EvaluationContext} is entered by the current thread,
+ * the contents of this table are computed only once in that context.
+ * <p>
+ * When the table is set to be incremental with
+ * {@link #setIncremental(boolean)}, its input table is assumed to only
+ * grow by rows appended at its end. If the transformation is an
+ * {@link IncrementalTransformation} and the input is a {@link HardTable}
+ * holding its own rows, the table then keeps its state from one
+ * computation to the next, and only reads the rows added since the last
+ * one. In such a table, the cells depend on the input table as a whole,
+ * rather than on individual cells. The state is rebuilt from scratch if
+ * rows were removed from the input table (see
+ * {@link HardTable#getGeneration()}), or if it has fewer rows or
+ * different columns than at the last computation. Other transformations,
+ * and tables whose input is itself computed from other tables, are
+ * computed in full every time: the rows of such an input are produced
+ * again at each computation, and nothing tells whether the previous ones
+ * are still among them.
+ * <p>
+ * When a {@link ResultCache} is given to the table with
+ * {@link #setResultCache(ResultCache)}, its contents are read from the
+ * cache if the same transformation was already applied to the same
+ * data, possibly in a previous run; otherwise, they are computed and
+ * saved in the cache. Incremental tables do not use the cache.
  * @author Sylvain Hallé
  */
 public class TransformedTable extends Table 
@@ -35,6 +73,44 @@ public class TransformedTable extends Table
 	 */
 	protected final TableTransformation m_transformation;
 	
+	/**
+	 * Whether the table is computed from an optimized plan
+	 */
+	protected boolean m_optimized = false;
+	
+	/**
+	 * Whether the table is computed incrementally when possible
+	 */
+	protected boolean m_incremental = false;
+	
+	/**
+	 * The state of the transformation, when the table is computed
+	 * incrementally
+	 */
+	protected transient AggregateState m_state = null;
+	
+	/**
+	 * The names of the columns of the input table when the state was
+	 * created
+	 */
+	protected transient String[] m_stateColumns = null;
+	
+	/**
+	 * The number of rows of the input table already given to the state
+	 */
+	protected transient int m_stateRows = 0;
+	
+	/**
+	 * The generation of the input table when the state was created (see
+	 * {@link HardTable#getGeneration()})
+	 */
+	protected transient int m_stateGeneration = 0;
+	
+	/**
+	 * The cache where the contents of the table are saved, if any
+	 */
+	protected transient ResultCache m_resultCache = null;
+	
 	public TransformedTable(TableTransformation trans, Table ... tables)
 	{
 		super();
@@ -42,18 +118,96 @@ public class TransformedTable extends Table
 		m_inputTables = tables;
 	}
 	
-	@Override
-	protected TempTable getDataTable(boolean link_to_experiments, String... ordering) 
+	/**
+	 * Sets whether the table is computed from an optimized plan
+	 * @param b Set to {@code true} to optimize, {@code false} otherwise
+	 * @return This table
+	 */
+	public TransformedTable setOptimized(boolean b)
 	{
-		TempTable[] concrete_tables = new TempTable[m_inputTables.length];
-		for (int i = 0; i < m_inputTables.length; i++)
+		m_optimized = b;
+		return this;
+	}
+	
+	/**
+	 * Gets whether the table is computed from an optimized plan
+	 * @return {@code true} if the plan is optimized, {@code false}
+	 *   otherwise
+	 */
+	public boolean isOptimized()
+	{
+		return m_optimized;
+	}
+	
+	/**
+	 * Sets whether the table is computed incrementally when possible
+	 * @param b Set to {@code true} to compute the table incrementally,
+	 *   {@code false} otherwise
+	 * @return This table
+	 */
+	public TransformedTable setIncremental(boolean b)
+	{
+		synchronized (this)
 		{
-			concrete_tables[i] = m_inputTables[i].getDataTable(link_to_experiments);
-			concrete_tables[i].setId(m_inputTables[i].getId());
+			m_incremental = b;
+			m_state = null;
 		}
-		TempTable out = m_transformation.transform(concrete_tables);
-		out.setId(getId());
-		return out;
+		return this;
+	}
+	
+	/**
+	 * Gets whether the table is computed incrementally when possible
+	 * @return {@code true} if the table is computed incrementally,
+	 *   {@code false} otherwise
+	 */
+	public boolean isIncremental()
+	{
+		return m_incremental;
+	}
+	
+	/**
+	 * Sets the cache where the contents of this table are saved
+	 * @param cache The cache, or {@code null} to always compute the table
+	 * @return This table
+	 */
+	public TransformedTable setResultCache(ResultCache cache)
+	{
+		m_resultCache = cache;
+		return this;
+	}
+	
+	/**
+	 * Gets the cache where the contents of this table are saved
+	 * @return The cache, or {@code null} if the table has none
+	 */
+	public ResultCache getResultCache()
+	{
+		return m_resultCache;
+	}
+	
+	/**
+	 * Gets the logical plan computing this table, as written
+	 * @return The root of the plan
+	 */
+	public PlanNode getPlan()
+	{
+		return PlanNode.of(this);
+	}
+	
+	/**
+	 * Gets the logical plan computing this table, after optimization. The
+	 * plan can be inspected with {@link PlanNode#explain()}.
+	 * @return The root of the plan
+	 */
+	public PlanNode getOptimizedPlan()
+	{
+		return new PlanOptimizer().optimize(getPlan());
+	}
+	
+	@Override
+	protected TempTable getDataTable(boolean link_to_experiments, String... ordering) 
+	{
+		return getDataTable(link_to_experiments);
 	}
 	
 	/**
@@ -65,10 +219,88 @@ public class TransformedTable extends Table
 	{
 		return m_inputTables;
 	}
+	
+	/**
+	 * Gets the transformation applied to the input tables
+	 * @return The transformation
+	 */
+	public TableTransformation getTransformation()
+	{
+		return m_transformation;
+	}
 
 	@Override
 	public TempTable getDataTable(boolean temporary) 
 	{
+		EvaluationContext context = EvaluationContext.current();
+		if (context != null)
+		{
+			TempTable out = context.get(this);
+			if (out != null)
+			{
+				return out;
+			}
+		}
+		TempTable out = computeDataTable(temporary);
+		if (context != null)
+		{
+			// The context keeps the contents; the caller gets its own copy
+			context.put(this, out);
+			return EvaluationContext.copy(out);
+		}
+		return out;
+	}
+	
+	/**
+	 * Computes the contents of this table from the contents of its inputs
+	 * @param temporary Passed to the input tables
+	 * @return The contents
+	 */
+	protected TempTable computeDataTable(boolean temporary)
+	{
+		ResultCache cache = m_resultCache;
+		if (cache == null || m_incremental)
+		{
+			return computeUncached(temporary);
+		}
+		String key = cache.getKey(this, temporary);
+		if (key == null)
+		{
+			return computeUncached(temporary);
+		}
+		TempTable out = cache.get(key);
+		if (out == null)
+		{
+			out = computeUncached(temporary);
+			cache.put(key, out);
+		}
+		out.setId(getId());
+		return out;
+	}
+	
+	/**
+	 * Computes the contents of this table from the contents of its inputs,
+	 * without using the cache
+	 * @param temporary Passed to the input tables
+	 * @return The contents
+	 */
+	protected TempTable computeUncached(boolean temporary)
+	{
+		if (m_incremental && m_inputTables.length == 1 && m_transformation instanceof IncrementalTransformation)
+		{
+			TempTable out = computeIncrementally(temporary);
+			if (out != null)
+			{
+				out.setId(getId());
+				return out;
+			}
+		}
+		if (m_optimized)
+		{
+			TempTable out = getOptimizedPlan().execute(temporary);
+			out.setId(getId());
+			return out;
+		}
 		TempTable[] concrete_tables = new TempTable[m_inputTables.length];
 		for (int i = 0; i < m_inputTables.length; i++)
 		{
@@ -80,6 +312,51 @@ public class TransformedTable extends Table
 		return out;
 	}
 	
+	/**
+	 * Computes the contents of this table by giving the new rows of the
+	 * input table to the state of the transformation
+	 * @param temporary Passed to the input table
+	 * @return The contents, or {@code null} if the transformation cannot
+	 *   be computed incrementally for the input table
+	 */
+	protected synchronized TempTable computeIncrementally(boolean temporary)
+	{
+		if (!(m_inputTables[0] instanceof HardTable))
+		{
+			// The input is computed again every time; its rows cannot be
+			// compared to those given to the state
+			m_state = null;
+			return null;
+		}
+		// Read the rows of the source directly, without copying them
+		HardTable input = (HardTable) m_inputTables[0];
+		// Hold the lock of the input table while reading its rows, as they
+		// may be added by another thread (see CsvFollower)
+		synchronized (input)
+		{
+			String[] col_names = input.getColumnNames();
+			List<TableEntry> entries = input.getEntries();
+			int generation = input.getGeneration();
+			if (m_state == null || generation != m_stateGeneration || entries.size() < m_stateRows || !Arrays.equals(col_names, m_stateColumns))
+			{
+				m_state = ((IncrementalTransformation) m_transformation).newState(col_names);
+				m_stateColumns = col_names;
+				m_stateGeneration = generation;
+				m_stateRows = 0;
+				if (m_state == null)
+				{
+					return null;
+				}
+			}
+			for (int i = m_stateRows; i < entries.size(); i++)
+			{
+				m_state.update(entries.get(i));
+			}
+			m_stateRows = entries.size();
+			return m_state.getTable(input);
+		}
+	}
+	
 	@Override
 	public NodeFunction getDependency(int row, int col)
 	{
@@ -0,0 +1,199 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dictionary of the string values of one or more columns. Columns such
+ * as the name of an algorithm or of a dataset often contain a handful of
+ * distinct strings, repeated over a large number of rows. Instead of
+ * giving each cell its own string, the dictionary gives every distinct
+ * string a single value, identified by an integer code, and the cells
+ * of these columns refer to this value (see
+ * {@link HardTable#encodeStrings(int)}).
+ * <p>
+ * Two values of the same dictionary are compared by their codes, without
+ * looking at their strings: they are equal if they have the same code,
+ * and their order is given by the rank of their string among those of
+ * the dictionary, which is computed once. Grouping, joining and sorting
+ * rows on such a column therefore never compares strings. The string of
+ * a value is still available to display it. Values from different
+ * dictionaries, or from a dictionary and from elsewhere, are compared by
+ * their strings as usual.
+ * <p>
+ * A dictionary can be shared by the columns of several tables (for
+ * example the tables to be joined), and is safe to use from multiple
+ * threads.
+ * @author Sylvain Hallé
+ */
+public class ValueDictionary
+{
+	/**
+	 * The number of distinct strings under which a column is considered
+	 * to have few enough values to be encoded
+	 */
+	public static final transient int DEFAULT_LIMIT = 4096;
+
+	/**
+	 * The value of each string
+	 */
+	protected final ConcurrentMap<String,PrimitiveValue> m_values;
+
+	/**
+	 * The values of the dictionary, in the order of their codes
+	 */
+	protected final List<PrimitiveValue> m_byCode;
+
+	/**
+	 * The rank of the string of each code, in alphabetical order. This
+	 * array is computed again when codes are added.
+	 */
+	protected volatile int[] m_ranks = new int[0];
+
+	/**
+	 * Creates a new empty dictionary
+	 */
+	public ValueDictionary()
+	{
+		super();
+		m_values = new ConcurrentHashMap<String,PrimitiveValue>();
+		m_byCode = new ArrayList<PrimitiveValue>();
+	}
+
+	/**
+	 * Gets the value of a string, adding the string to the dictionary if
+	 * it is not already present
+	 * @param s The string
+	 * @return The value
+	 */
+	public PrimitiveValue encode(String s)
+	{
+		PrimitiveValue v = m_values.get(s);
+		if (v != null)
+		{
+			return v;
+		}
+		synchronized (this)
+		{
+			v = m_values.get(s);
+			if (v == null)
+			{
+				v = PrimitiveValue.getEncodedInstance(s, this, m_byCode.size());
+				m_byCode.add(v);
+				m_values.put(s, v);
+			}
+			return v;
+		}
+	}
+
+	/**
+	 * Gets the value of this dictionary corresponding to a value. Strings
+	 * are encoded; other values, and values already encoded by this
+	 * dictionary, are returned as is.
+	 * @param v The value
+	 * @return The value of this dictionary
+	 */
+	public PrimitiveValue encode(PrimitiveValue v)
+	{
+		if (v == null || !v.isString() || v.isNull() || v.getDictionary() == this)
+		{
+			return v;
+		}
+		return encode(v.stringValue());
+	}
+
+	/**
+	 * Gets the value of a code
+	 * @param code The code
+	 * @return The value
+	 */
+	public synchronized PrimitiveValue decode(int code)
+	{
+		return m_byCode.get(code);
+	}
+
+	/**
+	 * Gets the number of distinct strings in the dictionary
+	 * @return The number of strings
+	 */
+	public synchronized int size()
+	{
+		return m_byCode.size();
+	}
+
+	/**
+	 * Compares the strings of two codes
+	 * @param code1 The first code
+	 * @param code2 The second code
+	 * @return A negative number, zero or a positive number if the string
+	 *   of the first code comes before, is the same as or comes after the
+	 *   string of the second code
+	 */
+	public int compare(int code1, int code2)
+	{
+		if (code1 == code2)
+		{
+			return 0;
+		}
+		int[] ranks = m_ranks;
+		if (code1 >= ranks.length || code2 >= ranks.length)
+		{
+			ranks = computeRanks();
+		}
+		return ranks[code1] - ranks[code2];
+	}
+
+	/**
+	 * Computes the rank of the string of each code
+	 * @return The ranks
+	 */
+	protected synchronized int[] computeRanks()
+	{
+		if (m_ranks.length == m_byCode.size())
+		{
+			// Already done by another thread
+			return m_ranks;
+		}
+		Integer[] codes = new Integer[m_byCode.size()];
+		for (int i = 0; i < codes.length; i++)
+		{
+			codes[i] = i;
+		}
+		Arrays.sort(codes, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer c1, Integer c2)
+			{
+				return m_byCode.get(c1).stringValue().compareTo(m_byCode.get(c2).stringValue());
+			}
+		});
+		int[] ranks = new int[codes.length];
+		for (int i = 0; i < codes.length; i++)
+		{
+			ranks[codes[i]] = i;
+		}
+		m_ranks = ranks;
+		return ranks;
+	}
+}
@@ -0,0 +1,889 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.Table;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.table.ValueDictionary;
+import ca.uqac.lif.mtnp.table.TempTable;
+
+/**
+ * Saves tables in a compact binary file, and loads them back. Contrary
+ * to CSV, no number has to be parsed and no type has to be guessed when
+ * the file is loaded, and the values are read back exactly as they were
+ * (an integer stays an integer, a float stays a float, and a string that
+ * looks like a number stays a string).
+ * <p>
+ * The file stores the table column by column. Each column is a block
+ * of one of the following kinds:
+ * <ul>
+ * <li>a column of integers, long integers, floats or doubles is an array
+ * of numbers of that type, with one number per row;</li>
+ * <li>a column of strings is dictionary-encoded: each distinct string is
+ * stored once, and each row holds the index of its string in the
+ * dictionary, on 1, 2 or 4 bytes depending on the size of the
+ * dictionary;</li>
+ * <li>a column mixing types holds, for each row, a byte giving the type
+ * of its value and 8 bytes for the value itself.</li>
+ * </ul>
+ * A column where some rows have no value starts with one byte per row
+ * telling whether the row has a value. Blocks can optionally be
+ * compressed with {@link Deflater} (see {@link #setCompressed(boolean)}).
+ * <p>
+ * When loading, the blocks are mapped into memory rather than read, and
+ * the rows of the table are built in parallel from these blocks. The
+ * strings of a dictionary are decoded once, and their value is shared by
+ * all the rows where they appear. Numbers of other types than the four
+ * above are saved as doubles. The dependencies of the cells are not
+ * saved.
+ * @author Sylvain Hallé
+ */
+public class BinaryTableFormat
+{
+	/**
+	 * The number at the start of a file in this format
+	 */
+	public static final transient int MAGIC = 0x4d544e42;
+
+	/**
+	 * The version of the format
+	 */
+	public static final transient int VERSION = 1;
+
+	/**
+	 * Kinds of column blocks
+	 */
+	protected static final transient byte KIND_INT = 'I', KIND_LONG = 'L', KIND_FLOAT = 'F', KIND_DOUBLE = 'D', KIND_STRING = 'S', KIND_MIXED = 'M';
+
+	/**
+	 * Flag indicating that a block starts with the presence of each row
+	 */
+	protected static final transient byte FLAG_PRESENCE = 1;
+
+	/**
+	 * Flag indicating that a block is compressed
+	 */
+	protected static final transient byte FLAG_COMPRESSED = 2;
+
+	/**
+	 * Values of the presence of a row in a column
+	 */
+	protected static final transient byte ABSENT = 0, NULL_VALUE = 1, PRESENT = 2;
+
+	/**
+	 * The number of rows under which a table is built in a single thread
+	 */
+	protected static final transient int s_chunkSize = 16384;
+
+	/**
+	 * The encoding of strings
+	 */
+	protected static final transient Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Whether blocks are compressed
+	 */
+	protected boolean m_compressed = false;
+
+	/**
+	 * Creates a new instance of the format
+	 */
+	public BinaryTableFormat()
+	{
+		super();
+	}
+
+	/**
+	 * Sets whether blocks are compressed when a table is saved.
+	 * Compression makes files smaller, but saving and loading slower.
+	 * @param b Set to {@code true} to compress blocks
+	 * @return This format
+	 */
+	public BinaryTableFormat setCompressed(boolean b)
+	{
+		m_compressed = b;
+		return this;
+	}
+
+	/**
+	 * Saves a table to a file
+	 * @param t The table
+	 * @param f The file
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(Table t, File f) throws IOException
+	{
+		FileOutputStream fos = new FileOutputStream(f);
+		try
+		{
+			write(t, fos);
+		}
+		finally
+		{
+			fos.close();
+		}
+	}
+
+	/**
+	 * Saves a table to a stream. The stream is not closed.
+	 * @param t The table
+	 * @param os The stream
+	 * @throws IOException If the stream cannot be written to
+	 */
+	public void write(Table t, OutputStream os) throws IOException
+	{
+		TempTable table = t.getDataTable();
+		String[] col_names = table.getColumnNames();
+		List<TableEntry> entries = table.getEntries();
+		int num_rows = entries.size();
+		byte[][] blocks = new byte[col_names.length][];
+		byte[] kinds = new byte[col_names.length];
+		byte[] flags = new byte[col_names.length];
+		int[] raw_lengths = new int[col_names.length];
+		for (int col = 0; col < col_names.length; col++)
+		{
+			PrimitiveValue[] values = new PrimitiveValue[num_rows];
+			byte[] presence = new byte[num_rows];
+			boolean all_present = true;
+			for (int row = 0; row < num_rows; row++)
+			{
+				PrimitiveValue v = entries.get(row).get(col_names[col]);
+				values[row] = v;
+				if (v == null)
+				{
+					presence[row] = ABSENT;
+					all_present = false;
+				}
+				else if (v.isNull())
+				{
+					presence[row] = NULL_VALUE;
+					all_present = false;
+				}
+				else
+				{
+					presence[row] = PRESENT;
+				}
+			}
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(baos);
+			if (!all_present)
+			{
+				flags[col] |= FLAG_PRESENCE;
+				out.write(presence);
+			}
+			kinds[col] = getKind(values, presence);
+			writeColumn(out, kinds[col], values, presence);
+			out.flush();
+			byte[] block = baos.toByteArray();
+			raw_lengths[col] = block.length;
+			if (m_compressed)
+			{
+				flags[col] |= FLAG_COMPRESSED;
+				block = deflate(block);
+			}
+			blocks[col] = block;
+		}
+		// The header, which gives the position of each block
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(baos);
+		header.writeUTF(t.getTitle() == null ? "" : t.getTitle());
+		header.writeInt(col_names.length);
+		header.writeInt(num_rows);
+		for (String name : col_names)
+		{
+			header.writeUTF(name);
+		}
+		long offset = 0;
+		for (int col = 0; col < col_names.length; col++)
+		{
+			header.writeByte(kinds[col]);
+			header.writeByte(flags[col]);
+			header.writeInt(raw_lengths[col]);
+			header.writeInt(blocks[col].length);
+			header.writeLong(offset);
+			offset += blocks[col].length;
+		}
+		header.flush();
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(baos.size());
+		baos.writeTo(out);
+		for (byte[] block : blocks)
+		{
+			out.write(block);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Determines the kind of block used to store a column
+	 * @param values The values of the column
+	 * @param presence The presence of each row
+	 * @return The kind of block
+	 */
+	protected static byte getKind(PrimitiveValue[] values, byte[] presence)
+	{
+		Class<?> type = null;
+		for (int row = 0; row < values.length; row++)
+		{
+			if (presence[row] != PRESENT)
+			{
+				continue;
+			}
+			Number n = values[row].numberValue();
+			Class<?> row_type = n == null ? String.class : n.getClass();
+			if (type == null)
+			{
+				type = row_type;
+			}
+			else if (type != row_type)
+			{
+				return KIND_MIXED;
+			}
+		}
+		if (type == null || type == String.class)
+		{
+			return KIND_STRING;
+		}
+		if (type == Integer.class)
+		{
+			return KIND_INT;
+		}
+		if (type == Long.class)
+		{
+			return KIND_LONG;
+		}
+		if (type == Float.class)
+		{
+			return KIND_FLOAT;
+		}
+		if (type == Double.class)
+		{
+			return KIND_DOUBLE;
+		}
+		return KIND_MIXED;
+	}
+
+	/**
+	 * Writes the values of a column
+	 * @param out The stream to write to
+	 * @param kind The kind of block
+	 * @param values The values of the column
+	 * @param presence The presence of each row
+	 * @throws IOException If the stream cannot be written to
+	 */
+	protected static void writeColumn(DataOutputStream out, byte kind, PrimitiveValue[] values, byte[] presence) throws IOException
+	{
+		if (kind == KIND_STRING || kind == KIND_MIXED)
+		{
+			// The dictionary of strings
+			Map<String,Integer> codes = new HashMap<String,Integer>();
+			List<String> dictionary = new ArrayList<String>();
+			int[] row_codes = new int[values.length];
+			for (int row = 0; row < values.length; row++)
+			{
+				if (presence[row] != PRESENT || values[row].isNumeric())
+				{
+					continue;
+				}
+				String s = values[row].stringValue();
+				Integer code = codes.get(s);
+				if (code == null)
+				{
+					code = dictionary.size();
+					codes.put(s, code);
+					dictionary.add(s);
+				}
+				row_codes[row] = code;
+			}
+			out.writeInt(dictionary.size());
+			for (String s : dictionary)
+			{
+				byte[] bytes = s.getBytes(UTF8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			if (kind == KIND_STRING)
+			{
+				int width = getCodeWidth(dictionary.size());
+				for (int row = 0; row < values.length; row++)
+				{
+					writeCode(out, row_codes[row], width);
+				}
+				return;
+			}
+			for (int row = 0; row < values.length; row++)
+			{
+				Number n = presence[row] == PRESENT ? values[row].numberValue() : null;
+				out.writeByte(getType(n));
+			}
+			for (int row = 0; row < values.length; row++)
+			{
+				if (presence[row] != PRESENT)
+				{
+					out.writeLong(0);
+					continue;
+				}
+				Number n = values[row].numberValue();
+				switch (getType(n))
+				{
+				case KIND_STRING:
+					out.writeLong(row_codes[row]);
+					break;
+				case KIND_INT:
+				case KIND_LONG:
+					out.writeLong(n.longValue());
+					break;
+				case KIND_FLOAT:
+					out.writeLong(Float.floatToRawIntBits(n.floatValue()));
+					break;
+				default:
+					out.writeLong(Double.doubleToRawLongBits(n.doubleValue()));
+				}
+			}
+			return;
+		}
+		for (int row = 0; row < values.length; row++)
+		{
+			Number n = presence[row] == PRESENT ? values[row].numberValue() : null;
+			switch (kind)
+			{
+			case KIND_INT:
+				out.writeInt(n == null ? 0 : n.intValue());
+				break;
+			case KIND_LONG:
+				out.writeLong(n == null ? 0 : n.longValue());
+				break;
+			case KIND_FLOAT:
+				out.writeFloat(n == null ? 0 : n.floatValue());
+				break;
+			default:
+				out.writeDouble(n == null ? 0 : n.doubleValue());
+			}
+		}
+	}
+
+	/**
+	 * Gets the type of a value in a column mixing types
+	 * @param n The number, or {@code null} if the value is a string
+	 * @return The type
+	 */
+	protected static byte getType(Number n)
+	{
+		if (n == null)
+		{
+			return KIND_STRING;
+		}
+		if (n instanceof Integer)
+		{
+			return KIND_INT;
+		}
+		if (n instanceof Long)
+		{
+			return KIND_LONG;
+		}
+		if (n instanceof Float)
+		{
+			return KIND_FLOAT;
+		}
+		return KIND_DOUBLE;
+	}
+
+	/**
+	 * Gets the number of bytes used to store an index in a dictionary
+	 * @param size The size of the dictionary
+	 * @return The number of bytes
+	 */
+	protected static int getCodeWidth(int size)
+	{
+		if (size <= 256)
+		{
+			return 1;
+		}
+		if (size <= 65536)
+		{
+			return 2;
+		}
+		return 4;
+	}
+
+	/**
+	 * Writes an index in a dictionary
+	 * @param out The stream
+	 * @param code The index
+	 * @param width The number of bytes used to store the index
+	 * @throws IOException If the stream cannot be written to
+	 */
+	protected static void writeCode(DataOutputStream out, int code, int width) throws IOException
+	{
+		switch (width)
+		{
+		case 1:
+			out.writeByte(code);
+			break;
+		case 2:
+			out.writeShort(code);
+			break;
+		default:
+			out.writeInt(code);
+		}
+	}
+
+	/**
+	 * Compresses a block
+	 * @param block The block
+	 * @return The compressed block
+	 */
+	protected static byte[] deflate(byte[] block)
+	{
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(block);
+		deflater.finish();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(block.length / 2 + 64);
+		byte[] buf = new byte[65536];
+		while (!deflater.finished())
+		{
+			int n = deflater.deflate(buf);
+			baos.write(buf, 0, n);
+		}
+		deflater.end();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Loads a table from a file
+	 * @param f The file
+	 * @return The table
+	 * @throws IOException If the file cannot be read, or is not in this
+	 *   format
+	 */
+	public HardTable read(File f) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			return read(raf.getChannel());
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Loads a table from a file channel
+	 * @param channel The channel
+	 * @return The table
+	 * @throws IOException If the channel cannot be read, or does not
+	 *   contain a table in this format
+	 */
+	public HardTable read(FileChannel channel) throws IOException
+	{
+		ByteBuffer start = ByteBuffer.allocate(12);
+		readFully(channel, start, 0);
+		if (start.getInt(0) != MAGIC)
+		{
+			throw new IOException("Not a binary table");
+		}
+		if (start.getInt(4) != VERSION)
+		{
+			throw new IOException("Unsupported version " + start.getInt(4));
+		}
+		int header_length = start.getInt(8);
+		if (header_length < 0 || header_length > channel.size() - 12)
+		{
+			throw new IOException("Invalid header");
+		}
+		ByteBuffer header_buf = ByteBuffer.allocate(header_length);
+		readFully(channel, header_buf, 12);
+		DataInputStream header = new DataInputStream(new ByteArrayInputStream(header_buf.array()));
+		String title = header.readUTF();
+		int num_cols = header.readInt();
+		final int num_rows = header.readInt();
+		if (num_cols < 0 || num_rows < 0)
+		{
+			throw new IOException("Invalid header");
+		}
+		final String[] col_names = new String[num_cols];
+		for (int col = 0; col < num_cols; col++)
+		{
+			col_names[col] = header.readUTF();
+		}
+		long data_start = 12L + header_length;
+		final ColumnBlock[] columns = new ColumnBlock[num_cols];
+		for (int col = 0; col < num_cols; col++)
+		{
+			byte kind = header.readByte();
+			byte flags = header.readByte();
+			int raw_length = header.readInt();
+			int stored_length = header.readInt();
+			long offset = header.readLong();
+			if (stored_length < 0 || raw_length < 0 || offset < 0 || data_start + offset + stored_length > channel.size())
+			{
+				throw new IOException("Invalid block for column " + col_names[col]);
+			}
+			ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, data_start + offset, stored_length);
+			if ((flags & FLAG_COMPRESSED) != 0)
+			{
+				block = inflate(block, stored_length, raw_length);
+			}
+			columns[col] = new ColumnBlock(kind, (flags & FLAG_PRESENCE) != 0, block, num_rows);
+		}
+		// Build the rows in parallel
+		final TableEntry[] entries = new TableEntry[num_rows];
+		if (num_rows <= s_chunkSize)
+		{
+			buildRows(col_names, columns, entries, 0, num_rows);
+		}
+		else
+		{
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for (int i = 0; i < num_rows; i += s_chunkSize)
+			{
+				final int from = i;
+				final int to = Math.min(num_rows, i + s_chunkSize);
+				tasks.add(new Callable<Object>()
+				{
+					@Override
+					public Object call()
+					{
+						buildRows(col_names, columns, entries, from, to);
+						return null;
+					}
+				});
+			}
+			MappedCsvLoader.runAll(tasks);
+		}
+		HardTable table = new HardTable(col_names);
+		table.addAll(Arrays.asList(entries));
+		if (!title.isEmpty())
+		{
+			table.setTitle(title);
+		}
+		return table;
+	}
+
+	/**
+	 * Creates the entries of a range of rows
+	 * @param col_names The names of the columns
+	 * @param columns The blocks of the columns
+	 * @param entries The array where the entries are put
+	 * @param from The index of the first row
+	 * @param to The index after the last row
+	 */
+	protected static void buildRows(String[] col_names, ColumnBlock[] columns, TableEntry[] entries, int from, int to)
+	{
+		for (int row = from; row < to; row++)
+		{
+			TableEntry te = new TableEntry();
+			for (int col = 0; col < columns.length; col++)
+			{
+				PrimitiveValue v = columns[col].get(row);
+				if (v != null)
+				{
+					te.put(col_names[col], v);
+				}
+			}
+			entries[row] = te;
+		}
+	}
+
+	/**
+	 * Reads bytes of a channel at a given position until a buffer is full
+	 * @param channel The channel
+	 * @param buf The buffer
+	 * @param position The position
+	 * @throws IOException If the channel ends before the buffer is full
+	 */
+	protected static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException
+	{
+		while (buf.hasRemaining())
+		{
+			int n = channel.read(buf, position);
+			if (n < 0)
+			{
+				throw new IOException("Unexpected end of file");
+			}
+			position += n;
+		}
+	}
+
+	/**
+	 * Uncompresses a block
+	 * @param block The compressed block
+	 * @param stored_length The size of the compressed block
+	 * @param raw_length The size of the uncompressed block
+	 * @return The uncompressed block
+	 * @throws IOException If the block cannot be uncompressed
+	 */
+	protected static ByteBuffer inflate(ByteBuffer block, int stored_length, int raw_length) throws IOException
+	{
+		byte[] in = new byte[stored_length];
+		block.get(in);
+		byte[] out = new byte[raw_length];
+		Inflater inflater = new Inflater();
+		inflater.setInput(in);
+		try
+		{
+			int n = 0;
+			while (n < raw_length && !inflater.finished())
+			{
+				int read = inflater.inflate(out, n, raw_length - n);
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				{
+					break;
+				}
+				n += read;
+			}
+			if (n != raw_length)
+			{
+				throw new IOException("Invalid compressed block");
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException(e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+		return ByteBuffer.wrap(out);
+	}
+
+	/**
+	 * The values of a column, read from a block of the file
+	 */
+	protected static class ColumnBlock
+	{
+		/**
+		 * The kind of block
+		 */
+		protected final byte m_kind;
+
+		/**
+		 * The contents of the block
+		 */
+		protected final ByteBuffer m_block;
+
+		/**
+		 * The position where the presence of each row starts, or -1 if
+		 * every row has a value
+		 */
+		protected final int m_presenceStart;
+
+		/**
+		 * The position where the values (or their type, in a column mixing
+		 * types) start
+		 */
+		protected final int m_valuesStart;
+
+		/**
+		 * The position of the values of a column mixing types
+		 */
+		protected final int m_slotsStart;
+
+		/**
+		 * The strings of the dictionary of the block
+		 */
+		protected final PrimitiveValue[] m_dictionary;
+
+		/**
+		 * The number of bytes used to store an index in the dictionary
+		 */
+		protected final int m_codeWidth;
+
+		/**
+		 * The value shared by the cells whose value is null
+		 */
+		protected static final transient PrimitiveValue s_null = PrimitiveValue.getInstance(null);
+
+		/**
+		 * Reads the beginning of a block
+		 * @param kind The kind of block
+		 * @param has_presence Whether the block starts with the presence of
+		 *   each row
+		 * @param block The contents of the block
+		 * @param num_rows The number of rows
+		 * @throws IOException If the block is not valid
+		 */
+		public ColumnBlock(byte kind, boolean has_presence, ByteBuffer block, int num_rows) throws IOException
+		{
+			super();
+			m_kind = kind;
+			m_block = block;
+			int pos = 0;
+			m_presenceStart = has_presence ? 0 : -1;
+			if (has_presence)
+			{
+				pos += num_rows;
+			}
+			if (kind == KIND_STRING || kind == KIND_MIXED)
+			{
+				int size = block.getInt(pos);
+				pos += 4;
+				if (size < 0 || size > block.capacity())
+				{
+					throw new IOException("Invalid dictionary");
+				}
+				m_dictionary = new PrimitiveValue[size];
+				// Few distinct strings are encoded, so that they are compared by
+				// their codes once the table is loaded
+				ValueDictionary encoder = size <= ValueDictionary.DEFAULT_LIMIT ? new ValueDictionary() : null;
+				for (int i = 0; i < size; i++)
+				{
+					int len = block.getInt(pos);
+					pos += 4;
+					byte[] bytes = new byte[len];
+					for (int j = 0; j < len; j++)
+					{
+						bytes[j] = block.get(pos + j);
+					}
+					pos += len;
+					String s = new String(bytes, UTF8);
+					m_dictionary[i] = encoder != null ? encoder.encode(s) : PrimitiveValue.getStringInstance(s);
+				}
+				m_codeWidth = getCodeWidth(size);
+			}
+			else
+			{
+				m_dictionary = null;
+				m_codeWidth = 0;
+			}
+			m_valuesStart = pos;
+			m_slotsStart = kind == KIND_MIXED ? pos + num_rows : pos;
+			int width;
+			switch (kind)
+			{
+			case KIND_INT:
+			case KIND_FLOAT:
+				width = 4;
+				break;
+			case KIND_LONG:
+			case KIND_DOUBLE:
+				width = 8;
+				break;
+			case KIND_STRING:
+				width = m_codeWidth;
+				break;
+			case KIND_MIXED:
+				width = 9;
+				break;
+			default:
+				throw new IOException("Unknown kind of block " + kind);
+			}
+			if ((long) pos + (long) width * num_rows > block.capacity())
+			{
+				throw new IOException("Truncated block");
+			}
+		}
+
+		/**
+		 * Gets the value of a row
+		 * @param row The index of the row
+		 * @return The value, or {@code null} if the row has no value in
+		 *   this column
+		 */
+		public PrimitiveValue get(int row)
+		{
+			if (m_presenceStart >= 0)
+			{
+				byte presence = m_block.get(m_presenceStart + row);
+				if (presence == ABSENT)
+				{
+					return null;
+				}
+				if (presence == NULL_VALUE)
+				{
+					return s_null;
+				}
+			}
+			switch (m_kind)
+			{
+			case KIND_INT:
+				return PrimitiveValue.getInstance(m_block.getInt(m_valuesStart + 4 * row));
+			case KIND_LONG:
+				return PrimitiveValue.getInstance(m_block.getLong(m_valuesStart + 8 * row));
+			case KIND_FLOAT:
+				return PrimitiveValue.getInstance(m_block.getFloat(m_valuesStart + 4 * row));
+			case KIND_DOUBLE:
+				return PrimitiveValue.getInstance(m_block.getDouble(m_valuesStart + 8 * row));
+			case KIND_STRING:
+				return m_dictionary[getCode(m_valuesStart + m_codeWidth * row)];
+			default:
+				long slot = m_block.getLong(m_slotsStart + 8 * row);
+				switch (m_block.get(m_valuesStart + row))
+				{
+				case KIND_STRING:
+					return m_dictionary[(int) slot];
+				case KIND_INT:
+					return PrimitiveValue.getInstance((int) slot);
+				case KIND_LONG:
+					return PrimitiveValue.getInstance(slot);
+				case KIND_FLOAT:
+					return PrimitiveValue.getInstance(Float.intBitsToFloat((int) slot));
+				default:
+					return PrimitiveValue.getInstance(Double.longBitsToDouble(slot));
+				}
+			}
+		}
+
+		/**
+		 * Reads an index in the dictionary
+		 * @param pos The position of the index
+		 * @return The index
+		 */
+		protected int getCode(int pos)
+		{
+			switch (m_codeWidth)
+			{
+			case 1:
+				return m_block.get(pos) & 0xFF;
+			case 2:
+				return m_block.getShort(pos) & 0xFFFF;
+			default:
+				return m_block.getInt(pos);
+			}
+		}
+	}
+}
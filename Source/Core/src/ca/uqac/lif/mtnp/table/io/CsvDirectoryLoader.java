@@ -0,0 +1,213 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+/**
+ * Reads all the CSV files of a directory into a single table. This is
+ * meant for directories where each run of an experiment writes its own
+ * small file. The files are read concurrently by a {@link CsvReader};
+ * the names of their columns are shared between files, so that all the
+ * rows of the table use the same strings as keys. The columns of the
+ * table are those of all the files, in the order they are first found;
+ * the rows appear in the order of the names of the files, and then in
+ * the order of each file.
+ * <p>
+ * Optionally, a column can be added to tell from which file each row
+ * comes (see {@link #setSourceColumn(String)}).
+ * @author Sylvain Hallé
+ */
+public class CsvDirectoryLoader
+{
+	/**
+	 * The reader used to parse the files
+	 */
+	protected final CsvReader m_reader;
+
+	/**
+	 * The name of the column giving the name of the file of each row, or
+	 * {@code null} to add no such column
+	 */
+	protected String m_sourceColumn = null;
+
+	/**
+	 * Creates a new loader using a reader with the default settings
+	 */
+	public CsvDirectoryLoader()
+	{
+		this(new CsvReader());
+	}
+
+	/**
+	 * Creates a new loader
+	 * @param reader The reader used to parse the files
+	 */
+	public CsvDirectoryLoader(CsvReader reader)
+	{
+		super();
+		m_reader = reader;
+	}
+
+	/**
+	 * Sets the name of a column giving the name of the file each row
+	 * comes from. This column is the first of the table.
+	 * @param name The name of the column, or {@code null} to add no such
+	 *   column
+	 * @return This loader
+	 */
+	public CsvDirectoryLoader setSourceColumn(String name)
+	{
+		m_sourceColumn = name;
+		return this;
+	}
+
+	/**
+	 * Reads the files of a directory whose name matches a pattern
+	 * @param directory The directory
+	 * @param pattern A glob pattern that the names of the files must
+	 *   match, such as <tt>*.csv</tt> or <tt>run-*.{csv,csv.gz}</tt>; see
+	 *   {@link java.nio.file.FileSystem#getPathMatcher(String)} for its
+	 *   syntax. Contrary to {@link ca.uqac.lif.mtnp.util.FileHelper#listAllFiles(java.net.URL, String)
+	 *   FileHelper.listAllFiles()}, this is not a regular expression.
+	 * @return The table
+	 * @throws IOException If the directory or one of the files cannot be
+	 *   read
+	 */
+	public HardTable read(File directory, String pattern) throws IOException
+	{
+		String[] names = directory.list();
+		if (names == null)
+		{
+			throw new IOException("Cannot list the files of " + directory);
+		}
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+		List<File> files = new ArrayList<File>();
+		for (String name : names)
+		{
+			File f = new File(directory, name);
+			if (matcher.matches(f.toPath().getFileName()) && f.isFile())
+			{
+				files.add(f);
+			}
+		}
+		Collections.sort(files);
+		return read(files);
+	}
+
+	/**
+	 * Reads a list of files
+	 * @param files The files
+	 * @return The table, whose rows appear in the order of the list
+	 * @throws IOException If one of the files cannot be read
+	 */
+	public HardTable read(final List<File> files) throws IOException
+	{
+		final ConcurrentMap<String,String> dictionary = new ConcurrentHashMap<String,String>();
+		final List<List<TableEntry>> parts = new ArrayList<List<TableEntry>>(files.size());
+		final String[][] col_names = new String[files.size()][];
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(files.size());
+		for (int i = 0; i < files.size(); i++)
+		{
+			final int index = i;
+			parts.add(new ArrayList<TableEntry>());
+			tasks.add(new Callable<Object>()
+			{
+				@Override
+				public Object call() throws IOException
+				{
+					col_names[index] = readFile(files.get(index), dictionary, parts.get(index));
+					return null;
+				}
+			});
+		}
+		MappedCsvLoader.runAll(tasks);
+		// Reconcile the columns of all the files
+		Set<String> all_names = new LinkedHashSet<String>();
+		if (m_sourceColumn != null)
+		{
+			all_names.add(m_sourceColumn);
+		}
+		for (String[] names : col_names)
+		{
+			if (names != null)
+			{
+				Collections.addAll(all_names, names);
+			}
+		}
+		HardTable table = new HardTable(all_names.toArray(new String[all_names.size()]));
+		for (List<TableEntry> part : parts)
+		{
+			table.addAll(part);
+		}
+		return table;
+	}
+
+	/**
+	 * Reads the rows of a file
+	 * @param f The file
+	 * @param dictionary The map used to share the names of columns
+	 * @param entries The list where the rows are added
+	 * @return The names of the columns of the file, or {@code null} if
+	 *   the file is empty
+	 * @throws IOException If the file cannot be read
+	 */
+	protected String[] readFile(File f, ConcurrentMap<String,String> dictionary, List<TableEntry> entries) throws IOException
+	{
+		CsvReader.Parser parser = m_reader.newParser();
+		parser.setColumnDictionary(dictionary);
+		ReadableByteChannel channel = GzipChannel.openInput(f);
+		try
+		{
+			parser.readAll(channel, entries);
+		}
+		catch (IOException e)
+		{
+			throw new IOException("Cannot read " + f, e);
+		}
+		finally
+		{
+			channel.close();
+		}
+		if (m_sourceColumn != null)
+		{
+			PrimitiveValue name = PrimitiveValue.getStringInstance(f.getName());
+			for (TableEntry te : entries)
+			{
+				te.put(m_sourceColumn, name);
+			}
+		}
+		return parser.getColumnNames();
+	}
+}
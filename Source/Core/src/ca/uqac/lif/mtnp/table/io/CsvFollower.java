@@ -0,0 +1,399 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+/**
+ * Reads the lines appended to a CSV file while it is being written, and
+ * adds them to a table. The follower remembers how many bytes of the
+ * file it has read, and the names of the columns found in its first
+ * line; each call to {@link #poll()} parses only the complete lines
+ * added since the previous call, and appends their rows to the table. A
+ * line that is still being written is left for a later call.
+ * <p>
+ * Since rows are only appended to the table, transformed tables that
+ * are computed incrementally (see
+ * {@link ca.uqac.lif.mtnp.table.TransformedTable#setIncremental(boolean)})
+ * only process the new rows when they are next computed. This only
+ * applies to transformed tables whose input is the table of the
+ * follower itself; tables computed from another transformed table are
+ * computed in full each time.
+ * <p>
+ * Instead of calling {@link #poll()} at regular intervals, one can call
+ * {@link #awaitChange(long)}, which waits for the file to be modified,
+ * as reported by a {@link WatchService}.
+ * <p>
+ * The names found in the first line of the file must be columns of the
+ * table; the values of each row are placed in the column of the same
+ * name, regardless of its position in the table.
+ * <p>
+ * The follower starts over and reads the file again from the start when
+ * it notices that the part already read has changed, which is when:
+ * <ul>
+ * <li>the file becomes shorter than this part;</li>
+ * <li>the file is replaced by another file with the same name, as told
+ * by its file key (such as its inode), if the file system provides
+ * one;</li>
+ * <li>the last bytes of this part (up to {@link #s_tailSize}) are no
+ * longer the same, for example when the file is truncated and written
+ * again beyond its former length between two calls.</li>
+ * </ul>
+ * A file rewritten in place that keeps its length and the bytes
+ * just before the end of the part already read can therefore go
+ * unnoticed. The rows the follower has added to the table are removed
+ * first; rows that were put there by other means are kept. Removing rows
+ * changes the generation of the table (see
+ * {@link HardTable#getGeneration()}), which tells incremental
+ * transformed tables reading the table to discard their state.
+ * <p>
+ * The rows are added to the table while holding the lock of the table;
+ * threads that read the table while it is being followed should do the
+ * same. Incremental transformed tables already do so.
+ * @author Sylvain Hallé
+ */
+public class CsvFollower
+{
+	/**
+	 * The number of bytes at the end of the part already read that are
+	 * compared with the file to notice when it is rewritten
+	 */
+	protected static final transient int s_tailSize = 256;
+
+	/**
+	 * The file being followed
+	 */
+	protected final File m_file;
+
+	/**
+	 * The table to which rows are added
+	 */
+	protected final HardTable m_table;
+
+	/**
+	 * The reader used to parse the file
+	 */
+	protected final CsvReader m_reader;
+
+	/**
+	 * The parser of the file, which keeps the names of its columns
+	 */
+	protected CsvReader.Parser m_parser;
+
+	/**
+	 * The number of bytes of the file that have been read
+	 */
+	protected long m_offset = 0;
+
+	/**
+	 * The object identifying the file that is being read (such as its
+	 * inode), used to notice when the file is replaced. May be
+	 * {@code null} if the file system does not provide one.
+	 */
+	protected Object m_fileKey = null;
+
+	/**
+	 * The last bytes of the part of the file that has been read
+	 */
+	protected byte[] m_tail = new byte[0];
+
+	/**
+	 * Whether the names of the columns of the file have been checked
+	 * against those of the table
+	 */
+	protected boolean m_checked = false;
+
+	/**
+	 * The rows this follower has added to the table
+	 */
+	protected final List<TableEntry> m_added = new ArrayList<TableEntry>();
+
+	/**
+	 * The service watching the directory of the file, or {@code null} if
+	 * it has not been created yet
+	 */
+	protected WatchService m_watcher = null;
+
+	/**
+	 * Creates a new follower using a reader with the default settings
+	 * @param f The file to follow
+	 * @param table The table to which rows are added
+	 */
+	public CsvFollower(File f, HardTable table)
+	{
+		this(f, table, new CsvReader());
+	}
+
+	/**
+	 * Creates a new follower
+	 * @param f The file to follow
+	 * @param table The table to which rows are added
+	 * @param reader The reader used to parse the file
+	 */
+	public CsvFollower(File f, HardTable table, CsvReader reader)
+	{
+		super();
+		m_file = f;
+		m_table = table;
+		m_reader = reader;
+		m_parser = reader.newParser();
+	}
+
+	/**
+	 * Gets the table to which rows are added
+	 * @return The table
+	 */
+	public HardTable getTable()
+	{
+		return m_table;
+	}
+
+	/**
+	 * Gets the number of bytes of the file that have been read
+	 * @return The number of bytes
+	 */
+	public synchronized long getOffset()
+	{
+		return m_offset;
+	}
+
+	/**
+	 * Reads the lines appended to the file since the last call, and adds
+	 * their rows to the table. Nothing happens if the file does not exist.
+	 * @return The number of rows added
+	 * @throws IOException If the file cannot be read
+	 */
+	public synchronized int poll() throws IOException
+	{
+		if (!m_file.exists())
+		{
+			return 0;
+		}
+		Object file_key = Files.readAttributes(m_file.toPath(), BasicFileAttributes.class).fileKey();
+		FileInputStream fis = new FileInputStream(m_file);
+		try
+		{
+			FileChannel channel = fis.getChannel();
+			long size = channel.size();
+			if (size < m_offset || (file_key != null && m_fileKey != null && !file_key.equals(m_fileKey)) || !Arrays.equals(m_tail, readTail(channel, m_offset)))
+			{
+				// The file was truncated, replaced or rewritten: start over
+				reset();
+			}
+			m_fileKey = file_key;
+			if (size == m_offset)
+			{
+				return 0;
+			}
+			channel.position(m_offset);
+			List<TableEntry> entries = new ArrayList<TableEntry>();
+			long read = m_parser.readComplete(channel, entries);
+			if (!m_checked && m_parser.getColumnNames() != null)
+			{
+				checkColumns(m_parser.getColumnNames());
+				m_checked = true;
+			}
+			m_offset += read;
+			m_tail = readTail(channel, m_offset);
+			if (!entries.isEmpty())
+			{
+				synchronized (m_table)
+				{
+					m_table.addAll(entries);
+				}
+				m_added.addAll(entries);
+			}
+			return entries.size();
+		}
+		finally
+		{
+			fis.close();
+		}
+	}
+
+	/**
+	 * Reads the bytes of a file that come just before a position
+	 * @param channel The channel reading the file
+	 * @param end The position
+	 * @return The bytes, of which there are at most {@link #s_tailSize}
+	 * @throws IOException If the file cannot be read
+	 */
+	protected static byte[] readTail(FileChannel channel, long end) throws IOException
+	{
+		int len = (int) Math.min(s_tailSize, end);
+		ByteBuffer buf = ByteBuffer.allocate(len);
+		long start = end - len;
+		while (buf.hasRemaining())
+		{
+			if (channel.read(buf, start + buf.position()) < 0)
+			{
+				break;
+			}
+		}
+		if (buf.hasRemaining())
+		{
+			// The file is shorter than the position
+			return Arrays.copyOf(buf.array(), buf.position());
+		}
+		return buf.array();
+	}
+
+	/**
+	 * Removes the rows added by this follower from the table, and
+	 * prepares to read the file from the start
+	 */
+	protected void reset()
+	{
+		m_offset = 0;
+		m_tail = new byte[0];
+		m_checked = false;
+		m_parser = m_reader.newParser();
+		if (!m_added.isEmpty())
+		{
+			synchronized (m_table)
+			{
+				m_table.removeAll(m_added);
+			}
+			m_added.clear();
+		}
+	}
+
+	/**
+	 * Checks that the names of the columns found in the file are columns
+	 * of the table. If not, the header will be read again on the next
+	 * call to {@link #poll()}.
+	 * @param names The names of the columns found in the file
+	 * @throws IOException If one of the names is not a column of the table
+	 */
+	protected void checkColumns(String[] names) throws IOException
+	{
+		for (String name : names)
+		{
+			if (m_table.getColumnPosition(name) < 0)
+			{
+				m_parser = m_reader.newParser();
+				throw new IOException("Column " + name + " of " + m_file + " is not a column of the table");
+			}
+		}
+	}
+
+	/**
+	 * Waits for the file to be modified, and reads the lines appended to
+	 * it. If lines were appended since the last call to {@link #poll()},
+	 * this method returns immediately.
+	 * @param timeout The maximum time to wait, in milliseconds
+	 * @return The number of rows added, which is 0 if the file was not
+	 *   modified before the end of the delay
+	 * @throws IOException If the file cannot be read or watched
+	 * @throws InterruptedException If the thread is interrupted while
+	 *   waiting
+	 */
+	public int awaitChange(long timeout) throws IOException, InterruptedException
+	{
+		WatchService watcher = getWatcher();
+		// Look at the file once the watcher is registered, so that no
+		// modification can be missed
+		int added = poll();
+		long deadline = System.currentTimeMillis() + timeout;
+		while (added == 0)
+		{
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+			{
+				return 0;
+			}
+			WatchKey key;
+			try
+			{
+				key = watcher.poll(remaining, TimeUnit.MILLISECONDS);
+			}
+			catch (ClosedWatchServiceException e)
+			{
+				return 0;
+			}
+			if (key == null)
+			{
+				return 0;
+			}
+			boolean concerned = false;
+			for (WatchEvent<?> event : key.pollEvents())
+			{
+				Object context = event.context();
+				concerned |= event.kind() == StandardWatchEventKinds.OVERFLOW || (context instanceof Path && ((Path) context).toString().compareTo(m_file.getName()) == 0);
+			}
+			key.reset();
+			if (concerned)
+			{
+				added = poll();
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Gets the service watching the directory of the file, creating it
+	 * if necessary
+	 * @return The service
+	 * @throws IOException If the directory cannot be watched
+	 */
+	protected synchronized WatchService getWatcher() throws IOException
+	{
+		if (m_watcher == null)
+		{
+			Path dir = m_file.getAbsoluteFile().getParentFile().toPath();
+			m_watcher = FileSystems.getDefault().newWatchService();
+			dir.register(m_watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		return m_watcher;
+	}
+
+	/**
+	 * Stops watching the file. The follower can still be used by calling
+	 * {@link #poll()}.
+	 * @throws IOException If the service watching the file cannot be
+	 *   closed
+	 */
+	public synchronized void close() throws IOException
+	{
+		if (m_watcher != null)
+		{
+			m_watcher.close();
+			m_watcher = null;
+		}
+	}
+}
@@ -0,0 +1,1032 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+/**
+ * Reads a table from a CSV file. This reader replaces
+ * {@link HardTable#read(java.util.Scanner, String)}, and gives the same
+ * table for the files that method can read:
+ * <ul>
+ * <li>the first record gives the names of the columns;</li>
+ * <li>blank lines, and lines whose first non-blank character is the
+ * comment character (<tt>#</tt> by default), are ignored;</li>
+ * <li>a value that is an integer or a floating-point number becomes a
+ * number, and any other value becomes a string; values are not
+ * trimmed, unless {@link #setTrimValues(boolean)} is used;</li>
+ * <li>empty values at the end of a record are ignored, and values
+ * beyond the last column are dropped.</li>
+ * </ul>
+ * In addition, a value can be enclosed in quotes, in which case it can
+ * contain the separator and line breaks; a quote is written inside such
+ * a value by doubling it. An escape character can also be defined with
+ * {@link #setEscape(char)}. Spaces between the closing quote and the
+ * next separator are ignored. A quoted value always becomes a string,
+ * even if its text is a number (such as <tt>"007"</tt>), unless the
+ * schema declares another type for its column.
+ * <p>
+ * When the type of some columns is known in advance, it can be declared
+ * in a {@link Schema} given to {@link #setSchema(Schema)}. The values of
+ * these columns are then parsed directly as the declared type, and a
+ * value that cannot be parsed leaves its cell empty instead of turning
+ * it into a string.
+ * <p>
+ * Instead of reading lines into strings and splitting them with a
+ * regular expression, the reader scans the bytes of the file directly,
+ * and creates a string only for the values that are not numbers. Most
+ * numbers are parsed without creating any object but their value; no
+ * exception is used to tell numbers from strings, except for rare values
+ * that look like numbers without being ones. The file must use an
+ * encoding where the separator, quote and line breaks are single bytes
+ * that cannot be part of another character, such as ASCII, ISO-8859-1
+ * or UTF-8 (the default).
+ * <p>
+ * A reader can be used by several threads at the same time, as long as
+ * its settings are not changed.
+ * @author Sylvain Hallé
+ */
+public class CsvReader
+{
+	/**
+	 * The ASCII characters other than digits that can appear in the text
+	 * of a number
+	 */
+	protected static final transient boolean[] s_numberChars = new boolean[128];
+
+	static
+	{
+		for (char c : "+-.xXpPabcdefABCDEFNIinty".toCharArray())
+		{
+			s_numberChars[c] = true;
+		}
+		for (char c = 0; c <= ' '; c++)
+		{
+			// Float.parseFloat ignores surrounding spaces
+			s_numberChars[c] = true;
+		}
+	}
+
+	/**
+	 * The character separating values
+	 */
+	protected byte m_separator = ',';
+
+	/**
+	 * The character enclosing values
+	 */
+	protected byte m_quote = '"';
+
+	/**
+	 * The escape character, or 0 if there is none
+	 */
+	protected byte m_escape = 0;
+
+	/**
+	 * The character starting a comment line, or 0 if there is none
+	 */
+	protected byte m_comment = '#';
+
+	/**
+	 * Whether to remove the spaces around values
+	 */
+	protected boolean m_trimValues = false;
+
+	/**
+	 * The encoding of the file
+	 */
+	protected Charset m_charset = Charset.forName("UTF-8");
+
+	/**
+	 * The schema giving the type of some columns, or {@code null} if none
+	 */
+	protected Schema m_schema = null;
+
+	/**
+	 * The initial size of the buffer used to read the file
+	 */
+	protected int m_bufferSize = 1 << 16;
+
+	/**
+	 * Creates a new CSV reader with the default settings
+	 */
+	public CsvReader()
+	{
+		super();
+	}
+
+	/**
+	 * Creates a new CSV reader
+	 * @param separator The character separating values
+	 */
+	public CsvReader(char separator)
+	{
+		super();
+		setSeparator(separator);
+	}
+
+	/**
+	 * Sets the character separating values
+	 * @param c The character
+	 * @return This reader
+	 */
+	public CsvReader setSeparator(char c)
+	{
+		m_separator = toByte(c);
+		return this;
+	}
+
+	/**
+	 * Sets the character enclosing values
+	 * @param c The character, or 0 to disable quoting
+	 * @return This reader
+	 */
+	public CsvReader setQuote(char c)
+	{
+		m_quote = toByte(c);
+		return this;
+	}
+
+	/**
+	 * Sets the escape character. Inside or outside quotes, the character
+	 * following the escape character is taken literally.
+	 * @param c The character, or 0 to disable escaping
+	 * @return This reader
+	 */
+	public CsvReader setEscape(char c)
+	{
+		m_escape = toByte(c);
+		return this;
+	}
+
+	/**
+	 * Sets the character starting a comment line
+	 * @param c The character, or 0 to disable comments
+	 * @return This reader
+	 */
+	public CsvReader setComment(char c)
+	{
+		m_comment = toByte(c);
+		return this;
+	}
+
+	/**
+	 * Sets whether to remove the spaces around values that are not
+	 * enclosed in quotes
+	 * @param b Set to {@code true} to remove spaces
+	 * @return This reader
+	 */
+	public CsvReader setTrimValues(boolean b)
+	{
+		m_trimValues = b;
+		return this;
+	}
+
+	/**
+	 * Sets the encoding of the file
+	 * @param charset The encoding
+	 * @return This reader
+	 */
+	public CsvReader setCharset(Charset charset)
+	{
+		m_charset = charset;
+		return this;
+	}
+
+	/**
+	 * Sets the schema giving the type of some columns
+	 * @param schema The schema, or {@code null} to guess the type of every
+	 *   value
+	 * @return This reader
+	 */
+	public CsvReader setSchema(Schema schema)
+	{
+		m_schema = schema;
+		return this;
+	}
+
+	/**
+	 * Gets the schema giving the type of some columns
+	 * @return The schema, or {@code null} if none
+	 */
+	public Schema getSchema()
+	{
+		return m_schema;
+	}
+
+	/**
+	 * Gets the character separating values
+	 * @return The character
+	 */
+	public char getSeparator()
+	{
+		return (char) m_separator;
+	}
+
+	/**
+	 * Converts a character of the syntax of the file into a byte
+	 * @param c The character
+	 * @return The byte
+	 */
+	protected static byte toByte(char c)
+	{
+		if (c > 127)
+		{
+			throw new IllegalArgumentException("Only ASCII characters are supported");
+		}
+		return (byte) c;
+	}
+
+	/**
+	 * Reads a table from a file. A file compressed with gzip is
+	 * decompressed while it is read (see {@link GzipChannel}).
+	 * @param f The file
+	 * @return The table
+	 * @throws IOException If the file cannot be read
+	 */
+	public HardTable read(File f) throws IOException
+	{
+		ReadableByteChannel channel = GzipChannel.openInput(f);
+		try
+		{
+			return read(channel);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads a table from a stream. The stream is not closed. To read a
+	 * stream compressed with gzip, wrap it in a {@link GzipChannel}.
+	 * @param in The stream
+	 * @return The table
+	 * @throws IOException If the stream cannot be read
+	 */
+	public HardTable read(InputStream in) throws IOException
+	{
+		return read(Channels.newChannel(in));
+	}
+
+	/**
+	 * Reads a table from a channel. The channel is not closed.
+	 * @param channel The channel
+	 * @return The table. If the channel contains no record, the table
+	 *   has no column and no row.
+	 * @throws IOException If the channel cannot be read
+	 */
+	public HardTable read(ReadableByteChannel channel) throws IOException
+	{
+		Parser p = newParser();
+		List<TableEntry> entries = new ArrayList<TableEntry>();
+		p.readAll(channel, entries);
+		return p.toTable(entries);
+	}
+
+	/**
+	 * Creates a new parser using the settings of this reader
+	 * @return The parser
+	 */
+	public Parser newParser()
+	{
+		return new Parser();
+	}
+
+	/**
+	 * Turns records into table entries. A parser keeps the names of the
+	 * columns, which it reads from the first record it is given, and
+	 * buffers reused from one record to the next; it must therefore be
+	 * used by a single thread.
+	 */
+	public class Parser
+	{
+		/**
+		 * The names of the columns, or {@code null} if the first record
+		 * has not been read yet
+		 */
+		protected String[] m_columnNames = null;
+
+		/**
+		 * A map used to share the names of columns between parsers, or
+		 * {@code null} to use the names as read
+		 */
+		protected ConcurrentMap<String,String> m_columnDictionary = null;
+
+		/**
+		 * The column of the schema at each position, or {@code null} if
+		 * there is no schema
+		 */
+		protected Schema.Column[] m_schemaColumns = null;
+
+		/**
+		 * The bytes of the values of the current record, after removing
+		 * quotes and escape characters
+		 */
+		protected byte[] m_bytes = new byte[256];
+
+		/**
+		 * The position in {@link #m_bytes} where each value of the current
+		 * record starts; the value ends where the next one starts
+		 */
+		protected int[] m_starts = new int[17];
+
+		/**
+		 * Whether each value of the current record was enclosed in quotes
+		 */
+		protected boolean[] m_quoted = new boolean[16];
+
+		/**
+		 * The number of values in the current record
+		 */
+		protected int m_numValues;
+
+		/**
+		 * The position in {@link #m_bytes} after the last byte that was
+		 * enclosed in quotes or escaped, and must not be trimmed
+		 */
+		protected int m_protectedEnd;
+
+		/**
+		 * Creates a new parser
+		 */
+		protected Parser()
+		{
+			super();
+		}
+
+		/**
+		 * Sets the names of the columns, so that the first record read is
+		 * not taken as the names of the columns
+		 * @param names The names
+		 */
+		public void setColumnNames(String[] names)
+		{
+			m_columnNames = names;
+			m_schemaColumns = null;
+			if (m_schema != null)
+			{
+				m_schemaColumns = new Schema.Column[names.length];
+				for (int i = 0; i < names.length; i++)
+				{
+					m_schemaColumns[i] = m_schema.getColumn(names[i]);
+				}
+			}
+		}
+
+		/**
+		 * Sets a map used to share the names of columns between parsers.
+		 * When a parser reads the names of the columns, it replaces each
+		 * name by the equal string found in the map, if any, and adds the
+		 * others to the map. Parsers reading many files with the same
+		 * columns then produce entries whose keys are the same objects.
+		 * @param names The map
+		 */
+		public void setColumnDictionary(ConcurrentMap<String,String> names)
+		{
+			m_columnDictionary = names;
+		}
+
+		/**
+		 * Gets the names of the columns
+		 * @return The names, or {@code null} if they have not been read yet
+		 */
+		public String[] getColumnNames()
+		{
+			return m_columnNames;
+		}
+
+		/**
+		 * Creates a table with the columns read by this parser
+		 * @param entries The entries to put in the table
+		 * @return The table
+		 */
+		public HardTable toTable(List<TableEntry> entries)
+		{
+			if (m_columnNames == null)
+			{
+				return new HardTable();
+			}
+			HardTable table = new HardTable(m_columnNames);
+			table.addAll(entries);
+			return table;
+		}
+
+		/**
+		 * Reads all the records of a channel
+		 * @param channel The channel
+		 * @param entries The list where the entries read are added
+		 * @throws IOException If the channel cannot be read
+		 */
+		public void readAll(ReadableByteChannel channel, List<TableEntry> entries) throws IOException
+		{
+			read(channel, entries, true);
+		}
+
+		/**
+		 * Reads the complete records of a channel. Contrary to
+		 * {@link #readAll(ReadableByteChannel, List) readAll()}, a last
+		 * record that does not end with a line break is not read, as more
+		 * of it may be written later.
+		 * @param channel The channel
+		 * @param entries The list where the entries read are added
+		 * @return The number of bytes of the records read; the first
+		 *   incomplete record starts after these bytes
+		 * @throws IOException If the channel cannot be read
+		 */
+		public long readComplete(ReadableByteChannel channel, List<TableEntry> entries) throws IOException
+		{
+			return read(channel, entries, false);
+		}
+
+		/**
+		 * Reads the records of a channel
+		 * @param channel The channel
+		 * @param entries The list where the entries read are added
+		 * @param eof_ends_record Whether the end of the channel also ends
+		 *   the last record
+		 * @return The number of bytes of the records read
+		 * @throws IOException If the channel cannot be read
+		 */
+		protected long read(ReadableByteChannel channel, List<TableEntry> entries, boolean eof_ends_record) throws IOException
+		{
+			int buffer_size = m_bufferSize;
+			if (channel instanceof FileChannel)
+			{
+				// Do not allocate a large buffer for a small file
+				FileChannel fc = (FileChannel) channel;
+				buffer_size = (int) Math.max(256, Math.min(buffer_size, fc.size() - fc.position() + 1));
+			}
+			ByteBuffer buf = ByteBuffer.allocate(buffer_size);
+			long total = 0;
+			while (true)
+			{
+				boolean eof = channel.read(buf) < 0;
+				int end = buf.position();
+				int consumed = parse(buf, 0, end, eof && eof_ends_record, entries);
+				total += consumed;
+				if (eof)
+				{
+					return total;
+				}
+				if (consumed == 0 && end == buf.capacity())
+				{
+					// A record is longer than the buffer
+					ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+					buf.flip();
+					bigger.put(buf);
+					buf = bigger;
+				}
+				else
+				{
+					buf.limit(end);
+					buf.position(consumed);
+					buf.compact();
+				}
+			}
+		}
+
+		/**
+		 * Parses the records found in a region of a buffer
+		 * @param buf The buffer. Its position and limit are ignored, and
+		 *   are not modified.
+		 * @param start The position of the first byte of the region
+		 * @param end The position after the last byte of the region
+		 * @param eof Set to {@code true} if the region is the end of the
+		 *   file; otherwise, the last record is parsed only if it ends with
+		 *   a line break
+		 * @param entries The list where the entries read are added
+		 * @return The position after the last record parsed; the bytes
+		 *   from this position onwards belong to a record that is not
+		 *   complete
+		 */
+		public int parse(ByteBuffer buf, int start, int end, boolean eof, List<TableEntry> entries)
+		{
+			return parse(buf, start, end, eof, entries, false);
+		}
+
+		/**
+		 * Reads the names of the columns from the first record found in a
+		 * region of a buffer
+		 * @param buf The buffer. Its position and limit are ignored, and
+		 *   are not modified.
+		 * @param start The position of the first byte of the region
+		 * @param end The position after the last byte of the region
+		 * @param eof Set to {@code true} if the region is the end of the
+		 *   file
+		 * @return The position after the first record, or -1 if the region
+		 *   does not contain a complete record. If the names of the columns
+		 *   are already known, nothing is read and {@code start} is returned.
+		 */
+		public int parseHeader(ByteBuffer buf, int start, int end, boolean eof)
+		{
+			if (m_columnNames != null)
+			{
+				return start;
+			}
+			int pos = parse(buf, start, end, eof, null, true);
+			if (m_columnNames == null)
+			{
+				return -1;
+			}
+			return pos;
+		}
+
+		/**
+		 * Parses the records found in a region of a buffer
+		 * @param buf The buffer
+		 * @param start The position of the first byte of the region
+		 * @param end The position after the last byte of the region
+		 * @param eof Set to {@code true} if the region is the end of the
+		 *   file
+		 * @param entries The list where the entries read are added
+		 * @param header_only Set to {@code true} to stop after the names of
+		 *   the columns are read
+		 * @return The position after the last record parsed
+		 */
+		protected int parse(ByteBuffer buf, int start, int end, boolean eof, List<TableEntry> entries, boolean header_only)
+		{
+			int pos = start;
+			while (true)
+			{
+				// Skip blank lines, the spaces at the start of a record, and
+				// comment lines
+				while (pos < end && isSpace(buf.get(pos)))
+				{
+					pos++;
+				}
+				if (pos == end)
+				{
+					return end;
+				}
+				if (m_comment != 0 && buf.get(pos) == m_comment)
+				{
+					int nl = pos;
+					while (nl < end && buf.get(nl) != '\n')
+					{
+						nl++;
+					}
+					if (nl == end && !eof)
+					{
+						return pos;
+					}
+					pos = nl;
+					continue;
+				}
+				int next = readRecord(buf, pos, end, eof);
+				if (next < 0)
+				{
+					// Incomplete record
+					return pos;
+				}
+				endRecord(entries);
+				pos = next;
+				if (header_only && m_columnNames != null)
+				{
+					return pos;
+				}
+			}
+		}
+
+		/**
+		 * Reads the values of a record
+		 * @param buf The buffer
+		 * @param start The position of the first byte of the record
+		 * @param end The position after the last byte available
+		 * @param eof Whether the end of the file is reached at position
+		 *   {@code end}
+		 * @return The position after the record, or -1 if the record is
+		 *   not complete
+		 */
+		protected int readRecord(ByteBuffer buf, int start, int end, boolean eof)
+		{
+			m_numValues = 0;
+			m_protectedEnd = 0;
+			int len = 0;
+			int pos = start;
+			boolean at_value_start = true;
+			boolean in_quotes = false;
+			while (true)
+			{
+				if (pos == end)
+				{
+					if (!eof || in_quotes)
+					{
+						if (eof)
+						{
+							// Unterminated quote: take everything up to the end
+							break;
+						}
+						return -1;
+					}
+					break;
+				}
+				byte b = buf.get(pos++);
+				if (at_value_start && m_trimValues && b != '\n' && isSpace(b))
+				{
+					// Spaces before a value, which may be enclosed in quotes
+					continue;
+				}
+				if (at_value_start)
+				{
+					startValue(len, m_quote != 0 && b == m_quote);
+					at_value_start = false;
+					if (m_quoted[m_numValues - 1])
+					{
+						in_quotes = true;
+						continue;
+					}
+				}
+				if (m_escape != 0 && b == m_escape)
+				{
+					if (pos == end)
+					{
+						if (!eof)
+						{
+							return -1;
+						}
+						break;
+					}
+					len = append(len, buf.get(pos++));
+					m_protectedEnd = len;
+					continue;
+				}
+				if (in_quotes)
+				{
+					if (b == m_quote)
+					{
+						if (pos < end && buf.get(pos) == m_quote)
+						{
+							// Doubled quote
+							len = append(len, b);
+							pos++;
+							continue;
+						}
+						if (pos == end && !eof)
+						{
+							// Cannot tell yet if the quote is doubled
+							return -1;
+						}
+						in_quotes = false;
+						m_protectedEnd = len;
+						continue;
+					}
+					len = append(len, b);
+					continue;
+				}
+				if (b == m_separator)
+				{
+					at_value_start = true;
+					continue;
+				}
+				if (b != '\n' && m_quoted[m_numValues - 1] && isSpace(b))
+				{
+					// Spaces after the closing quote
+					continue;
+				}
+				if (b == '\n')
+				{
+					if (at_value_start)
+					{
+						startValue(len, false);
+					}
+					m_starts[m_numValues] = len;
+					trimLast();
+					return pos;
+				}
+				len = append(len, b);
+			}
+			if (at_value_start)
+			{
+				startValue(len, false);
+			}
+			m_starts[m_numValues] = len;
+			trimLast();
+			return end;
+		}
+
+		/**
+		 * Marks the start of a new value in the current record
+		 * @param position The position of the value in {@link #m_bytes}
+		 * @param quoted Whether the value is enclosed in quotes
+		 */
+		protected void startValue(int position, boolean quoted)
+		{
+			if (m_numValues + 1 >= m_starts.length)
+			{
+				m_starts = Arrays.copyOf(m_starts, m_starts.length * 2);
+				m_quoted = Arrays.copyOf(m_quoted, m_quoted.length * 2);
+			}
+			m_starts[m_numValues] = position;
+			m_quoted[m_numValues] = quoted;
+			m_numValues++;
+		}
+
+		/**
+		 * Appends a byte to the values of the current record
+		 * @param len The number of bytes of the current record
+		 * @param b The byte
+		 * @return The new number of bytes
+		 */
+		protected int append(int len, byte b)
+		{
+			if (len == m_bytes.length)
+			{
+				m_bytes = Arrays.copyOf(m_bytes, len * 2);
+			}
+			m_bytes[len] = b;
+			return len + 1;
+		}
+
+		/**
+		 * Removes the spaces at the end of the record, and the empty values
+		 * at the end of the record, as {@link HardTable#read(java.util.Scanner, String)}
+		 * does
+		 */
+		protected void trimLast()
+		{
+			if (m_numValues > 0)
+			{
+				int last_end = m_starts[m_numValues];
+				int last_start = Math.max(m_starts[m_numValues - 1], m_protectedEnd);
+				while (last_end > last_start && isSpace(m_bytes[last_end - 1]))
+				{
+					last_end--;
+				}
+				m_starts[m_numValues] = last_end;
+			}
+			while (m_numValues > 0 && !m_quoted[m_numValues - 1] && m_starts[m_numValues - 1] == m_starts[m_numValues])
+			{
+				m_numValues--;
+			}
+		}
+
+		/**
+		 * Gets the number of values in the current record
+		 * @return The number of values
+		 */
+		public int getNumValues()
+		{
+			return m_numValues;
+		}
+
+		/**
+		 * Gets a value of the current record as a string
+		 * @param i The index of the value
+		 * @return The string
+		 */
+		public String getString(int i)
+		{
+			int start = m_starts[i];
+			return new String(m_bytes, start, m_starts[i + 1] - start, m_charset);
+		}
+
+		/**
+		 * Gets a value of the current record
+		 * @param i The index of the value
+		 * @return The value, or {@code null} if the schema declares a type
+		 *   for this column and the value is missing or cannot be parsed
+		 */
+		public PrimitiveValue getValue(int i)
+		{
+			int start = m_starts[i];
+			int end = m_starts[i + 1];
+			if (m_trimValues && !m_quoted[i])
+			{
+				while (start < end && isSpace(m_bytes[start]))
+				{
+					start++;
+				}
+				while (end > start && isSpace(m_bytes[end - 1]))
+				{
+					end--;
+				}
+			}
+			if (m_schemaColumns != null && i < m_schemaColumns.length && m_schemaColumns[i] != null)
+			{
+				return m_schemaColumns[i].parse(m_bytes, start, end, m_charset);
+			}
+			if (m_quoted[i])
+			{
+				return PrimitiveValue.getStringInstance(new String(m_bytes, start, end - start, m_charset));
+			}
+			return parseValue(m_bytes, start, end, m_charset);
+		}
+
+		/**
+		 * Handles the current record, once all its values are read
+		 * @param entries The list where the entry made from the record is
+		 *   added
+		 */
+		protected void endRecord(List<TableEntry> entries)
+		{
+			if (m_columnNames == null)
+			{
+				String[] names = new String[m_numValues];
+				for (int i = 0; i < m_numValues; i++)
+				{
+					names[i] = getString(i).trim();
+					if (m_columnDictionary != null)
+					{
+						String name = m_columnDictionary.putIfAbsent(names[i], names[i]);
+						if (name != null)
+						{
+							names[i] = name;
+						}
+					}
+				}
+				setColumnNames(names);
+				return;
+			}
+			TableEntry te = new TableEntry();
+			int n = Math.min(m_columnNames.length, m_numValues);
+			for (int i = 0; i < n; i++)
+			{
+				PrimitiveValue v = getValue(i);
+				if (v != null)
+				{
+					te.put(m_columnNames[i], v);
+				}
+			}
+			entries.add(te);
+		}
+	}
+
+	/**
+	 * Converts bytes into a value, as {@link PrimitiveValue#getInstance(Object)}
+	 * would do with the corresponding string
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @param charset The encoding of the bytes
+	 * @return The value
+	 */
+	public static PrimitiveValue parseValue(byte[] b, int start, int end, Charset charset)
+	{
+		int len = end - start;
+		if (len > 0 && len <= 10)
+		{
+			// Integers of up to 9 digits cannot overflow
+			int pos = start;
+			boolean negative = false;
+			if (b[pos] == '-' || b[pos] == '+')
+			{
+				negative = b[pos] == '-';
+				pos++;
+			}
+			if (pos < end && end - pos <= 9)
+			{
+				int value = 0;
+				while (pos < end && b[pos] >= '0' && b[pos] <= '9')
+				{
+					value = value * 10 + (b[pos] - '0');
+					pos++;
+				}
+				if (pos == end)
+				{
+					return PrimitiveValue.getInstance(negative ? -value : value);
+				}
+			}
+		}
+		String s = new String(b, start, len, charset);
+		if (!mayBeNumber(b, start, end))
+		{
+			return PrimitiveValue.getStringInstance(s);
+		}
+		if (isInteger(b, start, end))
+		{
+			// Too long for the loop above; may not fit in an int
+			return PrimitiveValue.getInstance(s);
+		}
+		// Not an integer: skip the attempt to parse it as one
+		try
+		{
+			return PrimitiveValue.getInstance(Float.parseFloat(s));
+		}
+		catch (NumberFormatException e)
+		{
+			return PrimitiveValue.getStringInstance(s);
+		}
+	}
+
+	/**
+	 * Checks whether bytes are an optional sign followed by digits
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @return {@code true} if the bytes are an integer
+	 */
+	protected static boolean isInteger(byte[] b, int start, int end)
+	{
+		int pos = start;
+		if (pos < end && (b[pos] == '-' || b[pos] == '+'))
+		{
+			pos++;
+		}
+		if (pos == end)
+		{
+			return false;
+		}
+		for (; pos < end; pos++)
+		{
+			if (b[pos] < '0' || b[pos] > '9')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether bytes can be the text of a number, as accepted by
+	 * {@link Integer#parseInt(String)} or {@link Float#parseFloat(String)}.
+	 * This is true when they contain only characters that can appear in
+	 * such a number, including hexadecimal digits, the words
+	 * <tt>NaN</tt> and <tt>Infinity</tt>, and type suffixes.
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @return {@code false} if the bytes cannot be a number, {@code true}
+	 *   if they may be one
+	 */
+	protected static boolean mayBeNumber(byte[] b, int start, int end)
+	{
+		boolean has_digit = false;
+		for (int i = start; i < end; i++)
+		{
+			byte c = b[i];
+			if (c >= '0' && c <= '9')
+			{
+				has_digit = true;
+				continue;
+			}
+			if (c < 0 || !s_numberChars[c])
+			{
+				return false;
+			}
+		}
+		// Without a digit, only NaN and Infinity are numbers
+		return has_digit || containsLetter(b, start, end, 'N') || containsLetter(b, start, end, 'I');
+	}
+
+	/**
+	 * Checks whether a byte is a space or a control character, which
+	 * {@link String#trim()} removes
+	 * @param b The byte
+	 * @return {@code true} if the byte is a space
+	 */
+	protected static boolean isSpace(byte b)
+	{
+		return b >= 0 && b <= ' ';
+	}
+
+	/**
+	 * Checks whether bytes contain a character
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @param c The character
+	 * @return {@code true} if the character is present
+	 */
+	protected static boolean containsLetter(byte[] b, int start, int end, char c)
+	{
+		for (int i = start; i < end; i++)
+		{
+			if (b[i] == c)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,314 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.Table;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+/**
+ * Writes tables as CSV files. Contrary to
+ * {@link ca.uqac.lif.mtnp.table.HardTable#toCsv() HardTable.toCsv()},
+ * which builds the whole file in a string, the writer sends each row to
+ * the output as soon as it is formatted, so that the memory it uses does
+ * not depend on the size of the table. A file whose name ends with
+ * {@code .gz} is compressed with gzip while it is written.
+ * <p>
+ * The first line contains the names of the columns. Each following line
+ * contains the values of a row, in the order the rows were added to the
+ * table. A value is enclosed in quotes when the {@link CsvReader} would
+ * otherwise read it differently: when it contains the separator, the
+ * quote character or a line break, when it starts or ends with a space,
+ * and when it is a string whose text is a number (such as <tt>"007"</tt>)
+ * or is empty. A row where every value is missing in a table with a
+ * single column is written as a lone separator, so that it is not taken
+ * for a blank line.
+ * <p>
+ * The file can therefore be read back with a {@link CsvReader} using the
+ * same separator and quote, and gives the same table, with these
+ * exceptions:
+ * <ul>
+ * <li>the names of the columns are trimmed;</li>
+ * <li>the reader only leaves a cell empty when its value is missing and
+ * is followed by no other value on its line; a missing value before a
+ * defined one is read back as the empty string;</li>
+ * <li>missing values are only read back as such when they are written as
+ * the empty text (the default; see {@link #setMissing(String)});</li>
+ * <li>the separator must not be a space or a tab, which the reader skips
+ * at the start of a line.</li>
+ * </ul>
+ * @author Sylvain Hallé
+ */
+public class CsvWriter
+{
+	/**
+	 * The character separating values
+	 */
+	protected char m_separator = ',';
+
+	/**
+	 * The character enclosing values that need it
+	 */
+	protected char m_quote = '"';
+
+	/**
+	 * The text written for missing values
+	 */
+	protected String m_missing = "";
+
+	/**
+	 * The encoding of the file
+	 */
+	protected Charset m_charset = Charset.forName("UTF-8");
+
+	/**
+	 * Creates a new CSV writer with the default settings
+	 */
+	public CsvWriter()
+	{
+		super();
+	}
+
+	/**
+	 * Creates a new CSV writer
+	 * @param separator The character separating values
+	 */
+	public CsvWriter(char separator)
+	{
+		super();
+		m_separator = separator;
+	}
+
+	/**
+	 * Sets the character separating values
+	 * @param c The character
+	 * @return This writer
+	 */
+	public CsvWriter setSeparator(char c)
+	{
+		m_separator = c;
+		return this;
+	}
+
+	/**
+	 * Sets the character enclosing values that contain the separator,
+	 * this character or a line break
+	 * @param c The character
+	 * @return This writer
+	 */
+	public CsvWriter setQuote(char c)
+	{
+		m_quote = c;
+		return this;
+	}
+
+	/**
+	 * Sets the text written for missing values
+	 * @param s The text
+	 * @return This writer
+	 */
+	public CsvWriter setMissing(String s)
+	{
+		m_missing = s;
+		return this;
+	}
+
+	/**
+	 * Sets the encoding of the file
+	 * @param charset The encoding
+	 * @return This writer
+	 */
+	public CsvWriter setCharset(Charset charset)
+	{
+		m_charset = charset;
+		return this;
+	}
+
+	/**
+	 * Writes a table to a file. If the name of the file ends with
+	 * {@code .gz}, the file is compressed with gzip.
+	 * @param t The table
+	 * @param f The file
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(Table t, File f) throws IOException
+	{
+		OutputStream os = GzipChannel.openOutput(f);
+		try
+		{
+			write(t, os);
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	/**
+	 * Writes a table to a stream. The stream is flushed, but not closed.
+	 * @param t The table
+	 * @param os The stream
+	 * @throws IOException If the stream cannot be written
+	 */
+	public void write(Table t, OutputStream os) throws IOException
+	{
+		HardTable table;
+		if (t instanceof HardTable)
+		{
+			table = (HardTable) t;
+		}
+		else
+		{
+			table = t.getDataTable();
+		}
+		Writer w = new BufferedWriter(new OutputStreamWriter(os, m_charset), 1 << 16);
+		String[] col_names = table.getColumnNames();
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < col_names.length; i++)
+		{
+			if (i > 0)
+			{
+				line.append(m_separator);
+			}
+			appendValue(line, col_names[i], i == 0);
+		}
+		line.append('\n');
+		w.append(line);
+		List<TableEntry> entries = table.getEntries();
+		for (int row = 0; row < entries.size(); row++)
+		{
+			TableEntry te = entries.get(row);
+			line.setLength(0);
+			for (int i = 0; i < col_names.length; i++)
+			{
+				if (i > 0)
+				{
+					line.append(m_separator);
+				}
+				PrimitiveValue v = te.get(col_names[i]);
+				if (v == null || v.isNull())
+				{
+					line.append(m_missing);
+					continue;
+				}
+				String s = v.toString();
+				if (!v.isNumeric() && (s.isEmpty() || isNumberText(s)))
+				{
+					// Without quotes, the reader would make it a number or a
+					// missing value
+					appendQuoted(line, s);
+				}
+				else
+				{
+					appendValue(line, s, i == 0);
+				}
+			}
+			if (line.length() == 0 && col_names.length > 0)
+			{
+				// An empty line would be skipped by the reader
+				line.append(m_separator);
+			}
+			line.append('\n');
+			w.append(line);
+		}
+		w.flush();
+	}
+
+	/**
+	 * Appends a value to a line, enclosing it in quotes if necessary
+	 * @param line The line
+	 * @param s The value
+	 * @param first Whether the value is the first of the line; such a value
+	 *   is also quoted if it starts with <code>#</code>, so that it is not
+	 *   mistaken for a comment
+	 */
+	protected void appendValue(StringBuilder line, String s, boolean first)
+	{
+		boolean quote = first && s.startsWith("#");
+		if (!s.isEmpty() && (s.charAt(0) <= ' ' || s.charAt(s.length() - 1) <= ' '))
+		{
+			// The reader drops the spaces around unquoted values at the
+			// start and the end of a line
+			quote = true;
+		}
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == m_separator || c == m_quote || c == '\n' || c == '\r')
+			{
+				quote = true;
+				break;
+			}
+		}
+		if (!quote)
+		{
+			line.append(s);
+			return;
+		}
+		appendQuoted(line, s);
+	}
+
+	/**
+	 * Appends a value to a line, enclosed in quotes
+	 * @param line The line
+	 * @param s The value
+	 */
+	protected void appendQuoted(StringBuilder line, String s)
+	{
+		line.append(m_quote);
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == m_quote)
+			{
+				// A quote inside a quoted value is doubled
+				line.append(m_quote);
+			}
+			line.append(c);
+		}
+		line.append(m_quote);
+	}
+
+	/**
+	 * Checks whether the text of a string would be read back as a number
+	 * @param s The string
+	 * @return {@code true} if {@link CsvReader#parseValue(byte[], int, int, Charset)}
+	 *   turns the text into a number
+	 */
+	protected boolean isNumberText(String s)
+	{
+		char c = s.charAt(0);
+		if (!(c >= '0' && c <= '9') && c != '-' && c != '+' && c != '.' && c != 'N' && c != 'I')
+		{
+			// No number starts with another character
+			return false;
+		}
+		byte[] b = s.getBytes(m_charset);
+		return CsvReader.parseValue(b, 0, b.length, m_charset).isNumeric();
+	}
+}
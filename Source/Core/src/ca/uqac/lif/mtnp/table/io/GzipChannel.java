@@ -0,0 +1,359 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Channel giving access to the decompressed contents of a gzip stream.
+ * Decompression takes place in a separate thread, which fills a small
+ * number of buffers ahead of the reader; the thread reading the channel
+ * (for example to parse a CSV file) therefore works at the same time as
+ * the data is being decompressed, instead of waiting for it.
+ * <p>
+ * The static methods of this class open files that may or may not be
+ * compressed: {@link #openInput(File)} recognizes a gzip file from its
+ * first bytes, and {@link #openOutput(File)} compresses the files whose
+ * name ends with {@code .gz}. The readers and writers of this package
+ * use them, so that compressed files are handled transparently.
+ * @author Sylvain Hallé
+ */
+public class GzipChannel implements ReadableByteChannel
+{
+	/**
+	 * The extension of compressed files
+	 */
+	public static final transient String EXTENSION = ".gz";
+
+	/**
+	 * The size of each buffer filled by the decompression thread
+	 */
+	protected static final transient int s_bufferSize = 1 << 18;
+
+	/**
+	 * The number of buffers the decompression thread can fill ahead of
+	 * the reader
+	 */
+	protected static final transient int s_numBuffers = 4;
+
+	/**
+	 * An empty buffer, put in the queue to indicate the end of the data
+	 */
+	protected static final transient ByteBuffer s_end = ByteBuffer.allocate(0);
+
+	/**
+	 * The buffers filled with decompressed data, in order
+	 */
+	protected final BlockingQueue<ByteBuffer> m_full;
+
+	/**
+	 * The buffers that can be filled again
+	 */
+	protected final BlockingQueue<ByteBuffer> m_free;
+
+	/**
+	 * The thread decompressing the data
+	 */
+	protected final Thread m_thread;
+
+	/**
+	 * The buffer being read, or {@code null} if none
+	 */
+	protected ByteBuffer m_current = null;
+
+	/**
+	 * The error that stopped the decompression, if any
+	 */
+	protected volatile IOException m_error = null;
+
+	/**
+	 * Whether the end of the data has been reached
+	 */
+	protected boolean m_eof = false;
+
+	/**
+	 * Whether the channel is closed
+	 */
+	protected boolean m_closed = false;
+
+	/**
+	 * Creates a channel decompressing a stream. The stream is not closed
+	 * by this channel.
+	 * @param in The stream containing the compressed data
+	 */
+	public GzipChannel(InputStream in)
+	{
+		this(in, false);
+	}
+
+	/**
+	 * Creates a channel decompressing a stream
+	 * @param in The stream containing the compressed data
+	 * @param close_input Set to {@code true} to close the stream once it
+	 *   has been read, or when the channel is closed
+	 */
+	public GzipChannel(final InputStream in, final boolean close_input)
+	{
+		super();
+		m_full = new ArrayBlockingQueue<ByteBuffer>(s_numBuffers + 1);
+		m_free = new ArrayBlockingQueue<ByteBuffer>(s_numBuffers);
+		for (int i = 0; i < s_numBuffers; i++)
+		{
+			m_free.add(ByteBuffer.allocate(s_bufferSize));
+		}
+		m_thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				InputStream source = in;
+				if (!close_input)
+				{
+					source = new FilterInputStream(in)
+					{
+						@Override
+						public void close()
+						{
+							// Leave the stream open
+						}
+					};
+				}
+				try
+				{
+					decompress(source);
+				}
+				catch (InterruptedException e)
+				{
+					// The channel was closed
+					return;
+				}
+			}
+		}, "mtnp-gunzip");
+		m_thread.setDaemon(true);
+		m_thread.start();
+	}
+
+	/**
+	 * Decompresses a stream into the buffers of this channel. This method
+	 * is called by the decompression thread, and closes the stream.
+	 * @param in The stream containing the compressed data
+	 * @throws InterruptedException If the thread is interrupted while
+	 *   waiting for a free buffer
+	 */
+	protected void decompress(InputStream in) throws InterruptedException
+	{
+		GZIPInputStream gz = null;
+		try
+		{
+			gz = new GZIPInputStream(in, 1 << 16);
+			boolean eof = false;
+			while (!eof)
+			{
+				ByteBuffer buf = m_free.take();
+				byte[] array = buf.array();
+				int len = 0;
+				while (len < array.length)
+				{
+					int n = gz.read(array, len, array.length - len);
+					if (n < 0)
+					{
+						eof = true;
+						break;
+					}
+					len += n;
+				}
+				buf.clear();
+				buf.limit(len);
+				m_full.put(buf);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw e;
+		}
+		catch (IOException e)
+		{
+			m_error = e;
+		}
+		catch (Throwable t)
+		{
+			// Any other failure must also reach the reader, which would
+			// otherwise wait forever for the end of the data
+			m_error = new IOException("Cannot decompress the stream", t);
+		}
+		finally
+		{
+			try
+			{
+				if (gz != null)
+				{
+					gz.close();
+				}
+				else
+				{
+					in.close();
+				}
+			}
+			catch (IOException e)
+			{
+				// Nothing to do
+			}
+		}
+		m_full.put(s_end);
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException
+	{
+		if (m_closed)
+		{
+			throw new ClosedChannelException();
+		}
+		while (m_current == null || !m_current.hasRemaining())
+		{
+			if (m_eof)
+			{
+				return -1;
+			}
+			if (m_current != null)
+			{
+				m_free.add(m_current);
+				m_current = null;
+			}
+			ByteBuffer buf;
+			try
+			{
+				buf = m_full.take();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if (buf == s_end)
+			{
+				m_eof = true;
+				if (m_error != null)
+				{
+					throw m_error;
+				}
+				return -1;
+			}
+			m_current = buf;
+		}
+		int n = Math.min(dst.remaining(), m_current.remaining());
+		dst.put(m_current.array(), m_current.position(), n);
+		m_current.position(m_current.position() + n);
+		return n;
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return !m_closed;
+	}
+
+	@Override
+	public void close()
+	{
+		if (!m_closed)
+		{
+			m_closed = true;
+			m_thread.interrupt();
+		}
+	}
+
+	/**
+	 * Checks whether a file is compressed with gzip, by looking at its
+	 * first two bytes
+	 * @param f The file
+	 * @return {@code true} if the file is compressed, {@code false}
+	 *   otherwise
+	 * @throws IOException If the file cannot be read
+	 */
+	public static boolean isCompressed(File f) throws IOException
+	{
+		FileInputStream fis = new FileInputStream(f);
+		try
+		{
+			return fis.read() == (GZIPInputStream.GZIP_MAGIC & 0xff) && fis.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
+		}
+		finally
+		{
+			fis.close();
+		}
+	}
+
+	/**
+	 * Opens a file for reading, decompressing it if it is compressed with
+	 * gzip. The channel must be closed by the caller.
+	 * @param f The file
+	 * @return A channel giving access to the (decompressed) contents of the
+	 *   file
+	 * @throws IOException If the file cannot be read
+	 */
+	public static ReadableByteChannel openInput(File f) throws IOException
+	{
+		if (isCompressed(f))
+		{
+			return new GzipChannel(new FileInputStream(f), true);
+		}
+		return new FileInputStream(f).getChannel();
+	}
+
+	/**
+	 * Opens a file for writing, compressing it with gzip if its name ends
+	 * with {@code .gz}. The stream must be closed by the caller.
+	 * @param f The file
+	 * @return A buffered stream writing to the file
+	 * @throws IOException If the file cannot be written
+	 */
+	public static OutputStream openOutput(File f) throws IOException
+	{
+		OutputStream os = new FileOutputStream(f);
+		if (f.getName().endsWith(EXTENSION))
+		{
+			try
+			{
+				return new GZIPOutputStream(os, 1 << 16);
+			}
+			catch (IOException e)
+			{
+				// The header could not be written
+				os.close();
+				throw e;
+			}
+		}
+		return new BufferedOutputStream(os, 1 << 16);
+	}
+}
@@ -0,0 +1,295 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.RowExecutor;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+/**
+ * Reads a large CSV file using all the available processors. The file
+ * is mapped into memory and divided into chunks of (roughly) equal size,
+ * each starting at the beginning of a line; the chunks are parsed in
+ * parallel by a {@link CsvReader}, and their rows are then put together
+ * in the order of the file. The resulting table is the same as the one
+ * produced by the reader alone.
+ * <p>
+ * A chunk may start inside a value enclosed in quotes that spans several
+ * lines. In such a case, the previous chunk ends with an incomplete
+ * record; this is detected once all chunks are parsed, and the file is
+ * then read again from the start in a single thread. Files without
+ * line breaks inside quoted values always benefit from parallel parsing.
+ * <p>
+ * Files smaller than one chunk are read in the calling thread.
+ * @author Sylvain Hallé
+ */
+public class MappedCsvLoader
+{
+	/**
+	 * The reader used to parse the chunks
+	 */
+	protected final CsvReader m_reader;
+
+	/**
+	 * The approximate size of a chunk, in bytes
+	 */
+	protected int m_chunkSize = 16 << 20;
+
+	/**
+	 * Creates a new loader using a reader with the default settings
+	 */
+	public MappedCsvLoader()
+	{
+		this(new CsvReader());
+	}
+
+	/**
+	 * Creates a new loader
+	 * @param reader The reader used to parse the chunks
+	 */
+	public MappedCsvLoader(CsvReader reader)
+	{
+		super();
+		m_reader = reader;
+	}
+
+	/**
+	 * Sets the approximate size of a chunk
+	 * @param size The size, in bytes
+	 * @return This loader
+	 */
+	public MappedCsvLoader setChunkSize(int size)
+	{
+		m_chunkSize = Math.max(1024, size);
+		return this;
+	}
+
+	/**
+	 * Reads a table from a file
+	 * @param f The file. A file compressed with gzip cannot be mapped,
+	 *   and is read sequentially.
+	 * @return The table
+	 * @throws IOException If the file cannot be read
+	 */
+	public HardTable read(File f) throws IOException
+	{
+		if (GzipChannel.isCompressed(f))
+		{
+			return m_reader.read(f);
+		}
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			return read(raf.getChannel());
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads a table from a file channel. The channel is not closed, and
+	 * its position is not modified.
+	 * @param channel The channel
+	 * @return The table
+	 * @throws IOException If the channel cannot be read
+	 */
+	public HardTable read(final FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		if (size <= m_chunkSize)
+		{
+			return readSequentially(channel);
+		}
+		// Read the names of the columns from the start of the file
+		CsvReader.Parser header_parser = m_reader.newParser();
+		ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, m_chunkSize);
+		int header_end = header_parser.parseHeader(head, 0, m_chunkSize, false);
+		if (header_end < 0)
+		{
+			return readSequentially(channel);
+		}
+		final String[] col_names = header_parser.getColumnNames();
+		// Divide the rest of the file into chunks starting at a new line
+		List<Long> starts = new ArrayList<Long>();
+		starts.add((long) header_end);
+		for (long pos = header_end + (long) m_chunkSize; pos < size; pos += m_chunkSize)
+		{
+			long line_start = findLineStart(channel, pos, size);
+			if (line_start >= size)
+			{
+				break;
+			}
+			if (line_start > starts.get(starts.size() - 1))
+			{
+				starts.add(line_start);
+			}
+		}
+		starts.add(size);
+		int num_chunks = starts.size() - 1;
+		final List<List<TableEntry>> chunks = new ArrayList<List<TableEntry>>(num_chunks);
+		final boolean[] complete = new boolean[num_chunks];
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(num_chunks);
+		for (int i = 0; i < num_chunks; i++)
+		{
+			chunks.add(new ArrayList<TableEntry>());
+			final int index = i;
+			final long start = starts.get(i);
+			final long end = starts.get(i + 1);
+			final boolean last = i == num_chunks - 1;
+			tasks.add(new Callable<Object>()
+			{
+				@Override
+				public Object call() throws IOException
+				{
+					int len = (int) (end - start);
+					ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+					CsvReader.Parser parser = m_reader.newParser();
+					parser.setColumnNames(col_names);
+					complete[index] = parser.parse(buf, 0, len, last, chunks.get(index)) == len;
+					return null;
+				}
+			});
+		}
+		runAll(tasks);
+		for (boolean b : complete)
+		{
+			if (!b)
+			{
+				// A chunk does not start at the beginning of a record
+				return readSequentially(channel);
+			}
+		}
+		HardTable table = new HardTable(col_names);
+		for (List<TableEntry> chunk : chunks)
+		{
+			table.addAll(chunk);
+		}
+		return table;
+	}
+
+	/**
+	 * Reads a table from a file channel in a single thread
+	 * @param channel The channel
+	 * @return The table
+	 * @throws IOException If the channel cannot be read
+	 */
+	protected HardTable readSequentially(FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE)
+		{
+			long position = channel.position();
+			channel.position(0);
+			try
+			{
+				return m_reader.read(channel);
+			}
+			finally
+			{
+				channel.position(position);
+			}
+		}
+		ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		CsvReader.Parser parser = m_reader.newParser();
+		List<TableEntry> entries = new ArrayList<TableEntry>();
+		parser.parse(buf, 0, (int) size, true, entries);
+		return parser.toTable(entries);
+	}
+
+	/**
+	 * Finds the start of the first line beginning at or after a position,
+	 * i.e. the position following the first line break found before it
+	 * @param channel The channel
+	 * @param pos The position
+	 * @param size The size of the file
+	 * @return The position of the start of the line, or the size of the
+	 *   file if there is no line break after the position
+	 * @throws IOException If the channel cannot be read
+	 */
+	protected static long findLineStart(FileChannel channel, long pos, long size) throws IOException
+	{
+		ByteBuffer window = ByteBuffer.allocate(8192);
+		// Look at the byte just before the position, which may be a line break
+		long offset = pos - 1;
+		while (offset < size)
+		{
+			window.clear();
+			int n = channel.read(window, offset);
+			if (n <= 0)
+			{
+				break;
+			}
+			for (int i = 0; i < n; i++)
+			{
+				if (window.get(i) == '\n')
+				{
+					return offset + i + 1;
+				}
+			}
+			offset += n;
+		}
+		return size;
+	}
+
+	/**
+	 * Runs tasks on the shared pool and waits for all of them to finish
+	 * @param tasks The tasks
+	 * @throws IOException If one of the tasks throws it
+	 */
+	protected static void runAll(List<Callable<Object>> tasks) throws IOException
+	{
+		try
+		{
+			for (Future<Object> f : RowExecutor.getPool().invokeAll(tasks))
+			{
+				f.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
@@ -0,0 +1,765 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+/**
+ * Reads tables from files in the <a href="http://ndjson.org">JSON
+ * Lines</a> format (also called NDJSON), where each line contains a JSON
+ * object giving the values of one row. The reader works on the bytes of
+ * the file, one line at a time, and turns each member of an object
+ * directly into a cell of the row; neither the document nor the objects
+ * it contains are ever built in memory. A file compressed with gzip is
+ * decompressed while it is read (see {@link GzipChannel}).
+ * <p>
+ * The columns of the table are the names of the members found in the
+ * objects, in the order they first appear. Values are converted as
+ * follows:
+ * <ul>
+ * <li>JSON numbers become numbers: integers are kept as {@code int} (or
+ * {@code long} if they are too large), and other numbers become
+ * {@code double}</li>
+ * <li>JSON strings become strings, even if their text looks like a
+ * number</li>
+ * <li>{@code true} and {@code false} become the strings "true" and
+ * "false"</li>
+ * <li>Nested objects and arrays become strings containing their JSON
+ * text</li>
+ * <li>Members whose value is {@code null} are left out of the row, and
+ * the corresponding cell is empty</li>
+ * </ul>
+ * A {@link Schema} can be given to the reader to declare the type of
+ * some columns. The values of these columns (either numbers or strings)
+ * are then parsed as the declared type, and become empty cells if they
+ * are missing or cannot be parsed. The columns of the schema come first in the table,
+ * even if no object contains them.
+ * <p>
+ * A reader can be used by several threads at the same time, as long as
+ * its settings are not changed.
+ * @author Sylvain Hallé
+ */
+public class NdjsonReader
+{
+	/**
+	 * The encoding of JSON files
+	 */
+	protected static final transient Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The literal values that can appear in a JSON object
+	 */
+	protected static final transient String[] s_literals = {"null", "true", "false"};
+
+	/**
+	 * The schema giving the type of some columns, or {@code null} if none
+	 */
+	protected Schema m_schema = null;
+
+	/**
+	 * The initial size of the buffer used to read the file
+	 */
+	protected int m_bufferSize = 1 << 16;
+
+	/**
+	 * Creates a new reader
+	 */
+	public NdjsonReader()
+	{
+		super();
+	}
+
+	/**
+	 * Sets the schema giving the type of some columns
+	 * @param schema The schema, or {@code null} to guess the type of every
+	 *   value
+	 * @return This reader
+	 */
+	public NdjsonReader setSchema(Schema schema)
+	{
+		m_schema = schema;
+		return this;
+	}
+
+	/**
+	 * Gets the schema giving the type of some columns
+	 * @return The schema, or {@code null} if none
+	 */
+	public Schema getSchema()
+	{
+		return m_schema;
+	}
+
+	/**
+	 * Reads a table from a file
+	 * @param f The file
+	 * @return The table
+	 * @throws IOException If the file cannot be read, or if one of its
+	 *   lines is not a JSON object
+	 */
+	public HardTable read(File f) throws IOException
+	{
+		ReadableByteChannel channel = GzipChannel.openInput(f);
+		try
+		{
+			return read(channel);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads a table from a stream. The stream is not closed.
+	 * @param in The stream
+	 * @return The table
+	 * @throws IOException If the stream cannot be read, or if one of its
+	 *   lines is not a JSON object
+	 */
+	public HardTable read(InputStream in) throws IOException
+	{
+		return read(Channels.newChannel(in));
+	}
+
+	/**
+	 * Reads a table from a channel. The channel is not closed.
+	 * @param channel The channel
+	 * @return The table
+	 * @throws IOException If the channel cannot be read, or if one of its
+	 *   lines is not a JSON object
+	 */
+	public HardTable read(ReadableByteChannel channel) throws IOException
+	{
+		Parser p = new Parser();
+		List<TableEntry> entries = new ArrayList<TableEntry>();
+		ByteBuffer buf = ByteBuffer.allocate(m_bufferSize);
+		int line = 1;
+		boolean eof = false;
+		while (!eof)
+		{
+			eof = channel.read(buf) < 0;
+			byte[] b = buf.array();
+			int end = buf.position();
+			int start = 0;
+			for (int i = 0; i < end; i++)
+			{
+				if (b[i] == '\n')
+				{
+					p.parseLine(b, start, i, line++, entries);
+					start = i + 1;
+				}
+			}
+			if (eof)
+			{
+				// The last line may not end with a line break
+				p.parseLine(b, start, end, line, entries);
+				break;
+			}
+			if (start == 0 && end == b.length)
+			{
+				// A line longer than the buffer
+				ByteBuffer bigger = ByteBuffer.allocate(b.length * 2);
+				buf.flip();
+				bigger.put(buf);
+				buf = bigger;
+			}
+			else
+			{
+				// Move the start of the incomplete line to the beginning
+				System.arraycopy(b, start, b, 0, end - start);
+				buf.position(end - start);
+			}
+		}
+		HardTable table = new HardTable(p.getColumnNames());
+		table.addAll(entries);
+		return table;
+	}
+
+	/**
+	 * Turns lines into table entries. A parser keeps the names of the
+	 * columns found so far, and must be used by a single thread.
+	 */
+	protected class Parser
+	{
+		/**
+		 * The names of the columns
+		 */
+		protected final List<String> m_names;
+
+		/**
+		 * The bytes of the name of each column, as they appear in the file,
+		 * or {@code null} if the name contains escape sequences
+		 */
+		protected final List<byte[]> m_nameBytes;
+
+		/**
+		 * The column of the schema for each column, or {@code null} if none
+		 */
+		protected final List<Schema.Column> m_schemaColumns;
+
+		/**
+		 * The position of each column, given its name
+		 */
+		protected final Map<String,Integer> m_positions;
+
+		/**
+		 * The column of each member in the last object read. Since the
+		 * objects of a file generally have the same members in the same order,
+		 * the name of a member is first compared with the name of the column
+		 * at the same place in the last object.
+		 */
+		protected int[] m_lastColumns = new int[16];
+
+		/**
+		 * The position of the next byte to read in the current line
+		 */
+		protected int m_pos;
+
+		/**
+		 * The number of the current line, for error messages
+		 */
+		protected int m_line;
+
+		/**
+		 * Creates a new parser
+		 */
+		public Parser()
+		{
+			super();
+			m_names = new ArrayList<String>();
+			m_nameBytes = new ArrayList<byte[]>();
+			m_schemaColumns = new ArrayList<Schema.Column>();
+			m_positions = new HashMap<String,Integer>();
+			if (m_schema != null)
+			{
+				for (String name : m_schema.getColumnNames())
+				{
+					addColumn(name, null);
+				}
+			}
+		}
+
+		/**
+		 * Gets the names of the columns found so far
+		 * @return The names
+		 */
+		public String[] getColumnNames()
+		{
+			return m_names.toArray(new String[m_names.size()]);
+		}
+
+		/**
+		 * Adds a column
+		 * @param name The name of the column
+		 * @param bytes The bytes of the name as they appear in the file, if
+		 *   known
+		 * @return The position of the column
+		 */
+		protected int addColumn(String name, byte[] bytes)
+		{
+			int pos = m_names.size();
+			m_names.add(name);
+			m_nameBytes.add(bytes == null ? name.getBytes(UTF8) : bytes);
+			m_schemaColumns.add(m_schema == null ? null : m_schema.getColumn(name));
+			m_positions.put(name, pos);
+			return pos;
+		}
+
+		/**
+		 * Reads a line
+		 * @param b The array containing the bytes of the line
+		 * @param start The position of the first byte of the line
+		 * @param end The position after the last byte of the line
+		 * @param line The number of the line
+		 * @param entries The list where the entry made from the line is added
+		 * @throws IOException If the line is not a JSON object
+		 */
+		public void parseLine(byte[] b, int start, int end, int line, List<TableEntry> entries) throws IOException
+		{
+			m_pos = start;
+			m_line = line;
+			skipSpaces(b, end);
+			if (m_pos == end)
+			{
+				// Empty line
+				return;
+			}
+			expect(b, end, '{');
+			TableEntry te = new TableEntry();
+			skipSpaces(b, end);
+			if (m_pos < end && b[m_pos] == '}')
+			{
+				m_pos++;
+			}
+			else
+			{
+				for (int member = 0; ; member++)
+				{
+					skipSpaces(b, end);
+					int col = readName(b, end, member);
+					skipSpaces(b, end);
+					expect(b, end, ':');
+					skipSpaces(b, end);
+					PrimitiveValue v = readValue(b, end, m_schemaColumns.get(col));
+					if (v != null && !v.isNull())
+					{
+						te.put(m_names.get(col), v);
+					}
+					skipSpaces(b, end);
+					if (m_pos < end && b[m_pos] == ',')
+					{
+						m_pos++;
+						continue;
+					}
+					expect(b, end, '}');
+					break;
+				}
+			}
+			skipSpaces(b, end);
+			if (m_pos != end)
+			{
+				throw error("unexpected characters after the object");
+			}
+			entries.add(te);
+		}
+
+		/**
+		 * Reads the name of a member, and finds the column it corresponds to
+		 * @param b The array containing the bytes of the line
+		 * @param end The position after the last byte of the line
+		 * @param member The position of the member in the object
+		 * @return The position of the column
+		 * @throws IOException If the name is not a valid JSON string
+		 */
+		protected int readName(byte[] b, int end, int member) throws IOException
+		{
+			expect(b, end, '"');
+			int start = m_pos;
+			boolean escaped = skipString(b, end);
+			int len = m_pos - 1 - start;
+			if (!escaped)
+			{
+				if (member < m_lastColumns.length && m_lastColumns[member] < m_nameBytes.size())
+				{
+					int col = m_lastColumns[member];
+					if (sameBytes(m_nameBytes.get(col), b, start, len))
+					{
+						return col;
+					}
+				}
+			}
+			String name = escaped ? unescape(b, start, m_pos - 1) : new String(b, start, len, UTF8);
+			if (name == null)
+			{
+				throw error("invalid escape sequence");
+			}
+			Integer col = m_positions.get(name);
+			if (col == null)
+			{
+				col = addColumn(name, escaped ? null : copy(b, start, len));
+			}
+			if (member >= m_lastColumns.length)
+			{
+				int[] cols = new int[m_lastColumns.length * 2];
+				System.arraycopy(m_lastColumns, 0, cols, 0, m_lastColumns.length);
+				m_lastColumns = cols;
+			}
+			m_lastColumns[member] = col;
+			return col;
+		}
+
+		/**
+		 * Reads a value
+		 * @param b The array containing the bytes of the line
+		 * @param end The position after the last byte of the line
+		 * @param column The column of the schema for the value, or
+		 *   {@code null} if none
+		 * @return The value, or {@code null} if the JSON value is
+		 *   {@code null}, or if it is missing or cannot be parsed according
+		 *   to the schema
+		 * @throws IOException If the value is not valid JSON
+		 */
+		protected PrimitiveValue readValue(byte[] b, int end, Schema.Column column) throws IOException
+		{
+			if (m_pos >= end)
+			{
+				throw error("missing value");
+			}
+			byte c = b[m_pos];
+			int start = m_pos;
+			if (c == '"')
+			{
+				m_pos++;
+				boolean escaped = skipString(b, end);
+				if (escaped)
+				{
+					String s = unescape(b, start + 1, m_pos - 1);
+					if (s == null)
+					{
+						throw error("invalid escape sequence");
+					}
+					return column == null ? PrimitiveValue.getStringInstance(s) : column.parse(s);
+				}
+				if (column != null)
+				{
+					return column.parse(b, start + 1, m_pos - 1, UTF8);
+				}
+				return PrimitiveValue.getStringInstance(new String(b, start + 1, m_pos - 2 - start, UTF8));
+			}
+			if (c == '-' || (c >= '0' && c <= '9'))
+			{
+				while (m_pos < end && isNumberChar(b[m_pos]))
+				{
+					m_pos++;
+				}
+				if (column != null)
+				{
+					return column.parse(b, start, m_pos, UTF8);
+				}
+				PrimitiveValue v = parseNumber(b, start, m_pos);
+				if (v == null)
+				{
+					throw error("invalid number");
+				}
+				return v;
+			}
+			if (c == '{' || c == '[')
+			{
+				skipNested(b, end);
+				String s = new String(b, start, m_pos - start, UTF8);
+				return column == null ? PrimitiveValue.getStringInstance(s) : column.parse(s);
+			}
+			for (String literal : s_literals)
+			{
+				if (startsWith(b, end, literal))
+				{
+					m_pos += literal.length();
+					if (literal.equals("null"))
+					{
+						return null;
+					}
+					return column == null ? PrimitiveValue.getStringInstance(literal) : column.parse(literal);
+				}
+			}
+			throw error("invalid value");
+		}
+
+		/**
+		 * Moves past a string, whose opening quote has already been read
+		 * @param b The array containing the bytes of the line
+		 * @param end The position after the last byte of the line
+		 * @return {@code true} if the string contains escape sequences,
+		 *   {@code false} otherwise
+		 * @throws IOException If the string is not closed
+		 */
+		protected boolean skipString(byte[] b, int end) throws IOException
+		{
+			boolean escaped = false;
+			while (m_pos < end)
+			{
+				byte c = b[m_pos++];
+				if (c == '"')
+				{
+					return escaped;
+				}
+				if (c == '\\')
+				{
+					escaped = true;
+					m_pos++;
+				}
+			}
+			throw error("unterminated string");
+		}
+
+		/**
+		 * Moves past a nested object or array
+		 * @param b The array containing the bytes of the line
+		 * @param end The position after the last byte of the line
+		 * @throws IOException If the object or array is not closed
+		 */
+		protected void skipNested(byte[] b, int end) throws IOException
+		{
+			int depth = 0;
+			while (m_pos < end)
+			{
+				byte c = b[m_pos++];
+				if (c == '"')
+				{
+					skipString(b, end);
+				}
+				else if (c == '{' || c == '[')
+				{
+					depth++;
+				}
+				else if (c == '}' || c == ']')
+				{
+					depth--;
+					if (depth == 0)
+					{
+						return;
+					}
+				}
+			}
+			throw error("unterminated object or array");
+		}
+
+		/**
+		 * Moves past spaces
+		 * @param b The array containing the bytes of the line
+		 * @param end The position after the last byte of the line
+		 */
+		protected void skipSpaces(byte[] b, int end)
+		{
+			while (m_pos < end && (b[m_pos] == ' ' || b[m_pos] == '\t' || b[m_pos] == '\r' || b[m_pos] == '\n'))
+			{
+				m_pos++;
+			}
+		}
+
+		/**
+		 * Moves past a character, which must be the next one in the line
+		 * @param b The array containing the bytes of the line
+		 * @param end The position after the last byte of the line
+		 * @param c The character
+		 * @throws IOException If the next character is not the one expected
+		 */
+		protected void expect(byte[] b, int end, char c) throws IOException
+		{
+			if (m_pos >= end || b[m_pos] != c)
+			{
+				throw error("expected '" + c + "'");
+			}
+			m_pos++;
+		}
+
+		/**
+		 * Checks whether the line continues with a given word
+		 * @param b The array containing the bytes of the line
+		 * @param end The position after the last byte of the line
+		 * @param s The word, in ASCII
+		 * @return {@code true} if the line continues with the word
+		 */
+		protected boolean startsWith(byte[] b, int end, String s)
+		{
+			if (end - m_pos < s.length())
+			{
+				return false;
+			}
+			for (int i = 0; i < s.length(); i++)
+			{
+				if (b[m_pos + i] != s.charAt(i))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Creates an exception describing a syntax error at the current
+		 * position
+		 * @param message The description of the error
+		 * @return The exception
+		 */
+		protected IOException error(String message)
+		{
+			return new IOException("Line " + m_line + ": " + message);
+		}
+	}
+
+	/**
+	 * Converts the text of a JSON number into a value
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @return The value, or {@code null} if the text is not a number
+	 */
+	protected static PrimitiveValue parseNumber(byte[] b, int start, int end)
+	{
+		if (CsvReader.isInteger(b, start, end))
+		{
+			if (end - start <= 9)
+			{
+				// Cannot overflow, and is parsed without creating a string
+				return CsvReader.parseValue(b, start, end, UTF8);
+			}
+		}
+		String s = new String(b, start, end - start, UTF8);
+		try
+		{
+			if (CsvReader.isInteger(b, start, end))
+			{
+				long l = Long.parseLong(s);
+				if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE)
+				{
+					return PrimitiveValue.getInstance((int) l);
+				}
+				return PrimitiveValue.getInstance(l);
+			}
+			return PrimitiveValue.getInstance(Double.parseDouble(s));
+		}
+		catch (NumberFormatException e)
+		{
+			// Too large for a long, or not a number at all
+		}
+		try
+		{
+			return PrimitiveValue.getInstance(Double.parseDouble(s));
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes the escape sequences of a JSON string
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte of the string, after the
+	 *   opening quote
+	 * @param end The position of the closing quote
+	 * @return The string, or {@code null} if it contains an invalid escape
+	 *   sequence
+	 */
+	protected static String unescape(byte[] b, int start, int end)
+	{
+		StringBuilder out = new StringBuilder(end - start);
+		int run = start;
+		int i = start;
+		while (i < end)
+		{
+			if (b[i] != '\\')
+			{
+				i++;
+				continue;
+			}
+			out.append(new String(b, run, i - run, UTF8));
+			char c = i + 1 < end ? (char) b[i + 1] : '\\';
+			i += 2;
+			switch (c)
+			{
+			case 'b':
+				out.append('\b');
+				break;
+			case 'f':
+				out.append('\f');
+				break;
+			case 'n':
+				out.append('\n');
+				break;
+			case 'r':
+				out.append('\r');
+				break;
+			case 't':
+				out.append('\t');
+				break;
+			case 'u':
+				if (i + 4 > end)
+				{
+					return null;
+				}
+				int code = 0;
+				for (int j = i; j < i + 4; j++)
+				{
+					int digit = Character.digit(b[j], 16);
+					if (digit < 0)
+					{
+						return null;
+					}
+					code = code * 16 + digit;
+				}
+				out.append((char) code);
+				i += 4;
+				break;
+			case '"':
+			case '\\':
+			case '/':
+				out.append(c);
+				break;
+			default:
+				return null;
+			}
+			run = i;
+		}
+		out.append(new String(b, run, Math.max(0, end - run), UTF8));
+		return out.toString();
+	}
+
+	/**
+	 * Checks whether a byte can be part of a JSON number
+	 * @param c The byte
+	 * @return {@code true} if it can, {@code false} otherwise
+	 */
+	protected static boolean isNumberChar(byte c)
+	{
+		return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+	}
+
+	/**
+	 * Checks whether a range of bytes is equal to an array
+	 * @param expected The array
+	 * @param b The array containing the range
+	 * @param start The position of the first byte of the range
+	 * @param len The length of the range
+	 * @return {@code true} if the bytes are the same
+	 */
+	protected static boolean sameBytes(byte[] expected, byte[] b, int start, int len)
+	{
+		if (expected.length != len)
+		{
+			return false;
+		}
+		for (int i = 0; i < len; i++)
+		{
+			if (expected[i] != b[start + i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies a range of bytes
+	 * @param b The array containing the range
+	 * @param start The position of the first byte of the range
+	 * @param len The length of the range
+	 * @return A new array with the bytes of the range
+	 */
+	protected static byte[] copy(byte[] b, int start, int len)
+	{
+		byte[] out = new byte[len];
+		System.arraycopy(b, start, out, 0, len);
+		return out;
+	}
+}
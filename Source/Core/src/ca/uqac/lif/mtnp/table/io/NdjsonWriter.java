@@ -0,0 +1,201 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.Table;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+/**
+ * Writes tables in the JSON Lines format, read by {@link NdjsonReader}.
+ * Each row of the table becomes a JSON object on its own line, whose
+ * members are the non-empty cells of the row; numbers are written as
+ * JSON numbers, and other values as JSON strings. Rows are sent to the
+ * output as soon as they are formatted. A file whose name ends with
+ * {@code .gz} is compressed with gzip while it is written.
+ * @author Sylvain Hallé
+ */
+public class NdjsonWriter
+{
+	/**
+	 * The encoding of JSON files
+	 */
+	protected static final transient Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Creates a new writer
+	 */
+	public NdjsonWriter()
+	{
+		super();
+	}
+
+	/**
+	 * Writes a table to a file. If the name of the file ends with
+	 * {@code .gz}, the file is compressed with gzip.
+	 * @param t The table
+	 * @param f The file
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(Table t, File f) throws IOException
+	{
+		OutputStream os = GzipChannel.openOutput(f);
+		try
+		{
+			write(t, os);
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	/**
+	 * Writes a table to a stream. The stream is flushed, but not closed.
+	 * @param t The table
+	 * @param os The stream
+	 * @throws IOException If the stream cannot be written
+	 */
+	public void write(Table t, OutputStream os) throws IOException
+	{
+		HardTable table;
+		if (t instanceof HardTable)
+		{
+			table = (HardTable) t;
+		}
+		else
+		{
+			table = t.getDataTable();
+		}
+		Writer w = new BufferedWriter(new OutputStreamWriter(os, UTF8), 1 << 16);
+		String[] col_names = table.getColumnNames();
+		// The names are the same on every line: escape them only once
+		String[] keys = new String[col_names.length];
+		for (int i = 0; i < col_names.length; i++)
+		{
+			StringBuilder key = new StringBuilder();
+			appendString(key, col_names[i]);
+			key.append(':');
+			keys[i] = key.toString();
+		}
+		StringBuilder line = new StringBuilder();
+		List<TableEntry> entries = table.getEntries();
+		for (int row = 0; row < entries.size(); row++)
+		{
+			TableEntry te = entries.get(row);
+			line.setLength(0);
+			line.append('{');
+			boolean first = true;
+			for (int i = 0; i < col_names.length; i++)
+			{
+				PrimitiveValue v = te.get(col_names[i]);
+				if (v == null || v.isNull())
+				{
+					continue;
+				}
+				if (!first)
+				{
+					line.append(',');
+				}
+				first = false;
+				line.append(keys[i]);
+				if (v.isNumeric())
+				{
+					appendNumber(line, v.numberValue());
+				}
+				else
+				{
+					appendString(line, v.stringValue());
+				}
+			}
+			line.append("}\n");
+			w.append(line);
+		}
+		w.flush();
+	}
+
+	/**
+	 * Appends a number to a line
+	 * @param line The line
+	 * @param n The number
+	 */
+	protected static void appendNumber(StringBuilder line, Number n)
+	{
+		double d = n.doubleValue();
+		if (Double.isNaN(d) || Double.isInfinite(d))
+		{
+			// Not allowed in JSON
+			line.append("null");
+			return;
+		}
+		line.append(n.toString());
+	}
+
+	/**
+	 * Appends a string to a line, in quotes and with the characters that
+	 * JSON does not allow in a string escaped
+	 * @param line The line
+	 * @param s The string
+	 */
+	protected static void appendString(StringBuilder line, String s)
+	{
+		line.append('"');
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch (c)
+			{
+			case '"':
+				line.append("\\\"");
+				break;
+			case '\\':
+				line.append("\\\\");
+				break;
+			case '\n':
+				line.append("\\n");
+				break;
+			case '\r':
+				line.append("\\r");
+				break;
+			case '\t':
+				line.append("\\t");
+				break;
+			default:
+				if (c < ' ')
+				{
+					line.append(String.format("\\u%04x", (int) c));
+				}
+				else
+				{
+					line.append(c);
+				}
+			}
+		}
+		line.append('"');
+	}
+}
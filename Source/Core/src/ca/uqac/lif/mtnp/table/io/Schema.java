@@ -0,0 +1,708 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.ValueDictionary;
+
+/**
+ * Gives the type of some of the columns of a table being read. Readers
+ * that are given a schema parse the values of these columns with a
+ * routine specific to the type declared for them, instead of guessing
+ * the type of each value. Columns that are not in the schema are read as
+ * usual. The possible types are:
+ * <ul>
+ * <li>{@link Type#INT INT} and {@link Type#LONG LONG}: integers, with an
+ * optional sign</li>
+ * <li>{@link Type#DOUBLE DOUBLE}: floating-point numbers</li>
+ * <li>{@link Type#STRING STRING}: text, kept as is even if it looks like
+ * a number</li>
+ * <li>{@link Type#CATEGORY CATEGORY}: text taking few distinct values,
+ * such as the name of an algorithm; each distinct value is created once,
+ * in a {@link ValueDictionary} shared by all the values of the
+ * column</li>
+ * <li>{@link Type#TIMESTAMP TIMESTAMP}: dates and times in ISO 8601
+ * format (such as <tt>2017-05-21</tt>, <tt>2017-05-21T14:30:00Z</tt> or
+ * <tt>2017-05-21 14:30:00.250+02:00</tt>), or integers giving a number of
+ * milliseconds; they become the number of milliseconds since
+ * January 1st, 1970, UTC. A time without an offset is taken as UTC.</li>
+ * </ul>
+ * A value equal to the missing value token (see
+ * {@link #setMissing(String)}) leaves its cell empty. A value that cannot
+ * be parsed as the type of its column also leaves its cell empty, and is
+ * counted; the number of such values can be obtained with
+ * {@link #getFailures(String)} once the table is read. Since these
+ * counters are shared by all the readers using the schema, a schema
+ * should only be used for one table at a time.
+ * <p>
+ * In formats where the file does not list the columns of the table, such
+ * as JSON Lines, the columns of the schema come first in the table, in
+ * the order they were added to the schema.
+ * @author Sylvain Hallé
+ */
+public class Schema
+{
+	/**
+	 * The types a column can be declared to have
+	 */
+	public static enum Type {INT, LONG, DOUBLE, STRING, TIMESTAMP, CATEGORY};
+
+	/**
+	 * The encoding of the text of missing values
+	 */
+	protected static final transient Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The powers of ten that can be represented exactly by a
+	 * {@code double}
+	 */
+	protected static final transient double[] s_powersOfTen = new double[23];
+
+	static
+	{
+		s_powersOfTen[0] = 1;
+		for (int i = 1; i < s_powersOfTen.length; i++)
+		{
+			s_powersOfTen[i] = s_powersOfTen[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * The columns of the schema, in the order they were added
+	 */
+	protected final Map<String,Column> m_columns;
+
+	/**
+	 * The text of missing values
+	 */
+	protected String m_missing = "";
+
+	/**
+	 * The bytes of the text of missing values, in UTF-8
+	 */
+	protected byte[] m_missingBytes = new byte[0];
+
+	/**
+	 * Creates a new empty schema
+	 */
+	public Schema()
+	{
+		super();
+		m_columns = new LinkedHashMap<String,Column>();
+	}
+
+	/**
+	 * Declares the type of a column
+	 * @param column The name of the column
+	 * @param type The type
+	 * @return This schema
+	 */
+	public Schema add(String column, Type type)
+	{
+		m_columns.put(column, new Column(type));
+		return this;
+	}
+
+	/**
+	 * Sets the text of missing values. By default, an empty value is
+	 * missing.
+	 * @param s The text, such as <tt>n/a</tt> or <tt>?</tt>. The text must
+	 *   be ASCII when reading files in another encoding than UTF-8.
+	 * @return This schema
+	 */
+	public Schema setMissing(String s)
+	{
+		m_missing = s;
+		m_missingBytes = s.getBytes(UTF8);
+		return this;
+	}
+
+	/**
+	 * Gets the text of missing values
+	 * @return The text
+	 */
+	public String getMissing()
+	{
+		return m_missing;
+	}
+
+	/**
+	 * Gets the type declared for a column
+	 * @param column The name of the column
+	 * @return The type, or {@code null} if the column is not in the schema
+	 */
+	public Type getType(String column)
+	{
+		Column c = m_columns.get(column);
+		if (c == null)
+		{
+			return null;
+		}
+		return c.getType();
+	}
+
+	/**
+	 * Gets a column of the schema
+	 * @param column The name of the column
+	 * @return The column, or {@code null} if the column is not in the
+	 *   schema
+	 */
+	public Column getColumn(String column)
+	{
+		return m_columns.get(column);
+	}
+
+	/**
+	 * Gets the names of the columns of the schema
+	 * @return The names, in the order the columns were added
+	 */
+	public String[] getColumnNames()
+	{
+		return m_columns.keySet().toArray(new String[m_columns.size()]);
+	}
+
+	/**
+	 * Gets the number of values of a column that could not be parsed
+	 * @param column The name of the column
+	 * @return The number of values
+	 */
+	public long getFailures(String column)
+	{
+		Column c = m_columns.get(column);
+		if (c == null)
+		{
+			return 0;
+		}
+		return c.m_failures.get();
+	}
+
+	/**
+	 * Gets the number of values of all the columns that could not be
+	 * parsed
+	 * @return The number of values
+	 */
+	public long getFailures()
+	{
+		long total = 0;
+		for (Column c : m_columns.values())
+		{
+			total += c.m_failures.get();
+		}
+		return total;
+	}
+
+	/**
+	 * Sets the number of values that could not be parsed back to zero
+	 */
+	public void resetFailures()
+	{
+		for (Column c : m_columns.values())
+		{
+			c.m_failures.set(0);
+		}
+	}
+
+	/**
+	 * A column of the schema. Readers get the column of each position
+	 * once, and then call it to parse the values at that position.
+	 */
+	public class Column
+	{
+		/**
+		 * The type of the column
+		 */
+		protected final Type m_type;
+
+		/**
+		 * The number of values that could not be parsed
+		 */
+		protected final AtomicLong m_failures;
+
+		/**
+		 * The dictionary of the values of the column, if its type is
+		 * {@link Type#CATEGORY CATEGORY}
+		 */
+		protected final ValueDictionary m_dictionary;
+
+		/**
+		 * Creates a new column
+		 * @param type The type of the column
+		 */
+		protected Column(Type type)
+		{
+			super();
+			m_type = type;
+			m_failures = new AtomicLong();
+			m_dictionary = type == Type.CATEGORY ? new ValueDictionary() : null;
+		}
+
+		/**
+		 * Gets the type of the column
+		 * @return The type
+		 */
+		public Type getType()
+		{
+			return m_type;
+		}
+
+		/**
+		 * Parses a value of this column
+		 * @param b The array containing the bytes of the value
+		 * @param start The position of the first byte
+		 * @param end The position after the last byte
+		 * @param charset The encoding of the bytes
+		 * @return The value, or {@code null} if the value is missing or
+		 *   cannot be parsed
+		 */
+		public PrimitiveValue parse(byte[] b, int start, int end, Charset charset)
+		{
+			if (m_type != Type.STRING && m_type != Type.CATEGORY)
+			{
+				// Spaces around a number are never significant
+				while (start < end && b[start] >= 0 && b[start] <= ' ')
+				{
+					start++;
+				}
+				while (end > start && b[end - 1] >= 0 && b[end - 1] <= ' ')
+				{
+					end--;
+				}
+			}
+			if (isMissing(b, start, end))
+			{
+				return null;
+			}
+			PrimitiveValue v;
+			switch (m_type)
+			{
+			case INT:
+				v = parseInt(b, start, end);
+				break;
+			case LONG:
+				v = parseLong(b, start, end);
+				break;
+			case DOUBLE:
+				v = parseDouble(b, start, end);
+				break;
+			case TIMESTAMP:
+				v = parseTimestamp(b, start, end);
+				break;
+			case CATEGORY:
+				return m_dictionary.encode(new String(b, start, end - start, charset));
+			default:
+				return PrimitiveValue.getStringInstance(new String(b, start, end - start, charset));
+			}
+			if (v == null)
+			{
+				m_failures.incrementAndGet();
+			}
+			return v;
+		}
+
+		/**
+		 * Parses a value of this column
+		 * @param s The text of the value
+		 * @return The value, or {@code null} if the value is missing or
+		 *   cannot be parsed
+		 */
+		public PrimitiveValue parse(String s)
+		{
+			if (m_type == Type.STRING || m_type == Type.CATEGORY)
+			{
+				if (s.equals(m_missing))
+				{
+					return null;
+				}
+				return m_dictionary != null ? m_dictionary.encode(s) : PrimitiveValue.getStringInstance(s);
+			}
+			byte[] b = s.getBytes(UTF8);
+			return parse(b, 0, b.length, UTF8);
+		}
+
+		/**
+		 * Checks whether bytes are the text of missing values
+		 * @param b The array containing the bytes
+		 * @param start The position of the first byte
+		 * @param end The position after the last byte
+		 * @return {@code true} if the value is missing
+		 */
+		protected boolean isMissing(byte[] b, int start, int end)
+		{
+			byte[] missing = m_missingBytes;
+			if (end - start != missing.length)
+			{
+				return false;
+			}
+			for (int i = 0; i < missing.length; i++)
+			{
+				if (b[start + i] != missing[i])
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Parses an integer that fits in an {@code int}
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @return The value, or {@code null} if the bytes are not such an
+	 *   integer
+	 */
+	public static PrimitiveValue parseInt(byte[] b, int start, int end)
+	{
+		int pos = start;
+		boolean negative = false;
+		if (pos < end && (b[pos] == '-' || b[pos] == '+'))
+		{
+			negative = b[pos] == '-';
+			pos++;
+		}
+		if (pos == end || end - pos > 10)
+		{
+			return null;
+		}
+		int value = 0;
+		for (; pos < end; pos++)
+		{
+			int digit = b[pos] - '0';
+			if (digit < 0 || digit > 9)
+			{
+				return null;
+			}
+			// The value is accumulated as a negative number, whose range
+			// includes that of positive numbers
+			if (value < (Integer.MIN_VALUE + digit) / 10)
+			{
+				return null;
+			}
+			value = value * 10 - digit;
+		}
+		if (!negative)
+		{
+			if (value == Integer.MIN_VALUE)
+			{
+				return null;
+			}
+			value = -value;
+		}
+		return PrimitiveValue.getInstance(value);
+	}
+
+	/**
+	 * Parses an integer that fits in a {@code long}
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @return The value, or {@code null} if the bytes are not such an
+	 *   integer
+	 */
+	public static PrimitiveValue parseLong(byte[] b, int start, int end)
+	{
+		int pos = start;
+		boolean negative = false;
+		if (pos < end && (b[pos] == '-' || b[pos] == '+'))
+		{
+			negative = b[pos] == '-';
+			pos++;
+		}
+		if (pos == end || end - pos > 19)
+		{
+			return null;
+		}
+		long value = 0;
+		for (; pos < end; pos++)
+		{
+			int digit = b[pos] - '0';
+			if (digit < 0 || digit > 9)
+			{
+				return null;
+			}
+			// The value is accumulated as a negative number, whose range
+			// includes that of positive numbers
+			if (value < (Long.MIN_VALUE + digit) / 10)
+			{
+				return null;
+			}
+			value = value * 10 - digit;
+		}
+		if (!negative)
+		{
+			if (value == Long.MIN_VALUE)
+			{
+				return null;
+			}
+			value = -value;
+		}
+		return PrimitiveValue.getInstance(value);
+	}
+
+	/**
+	 * Parses a floating-point number. Numbers with at most 15 digits and a
+	 * small exponent, which are the most common, are computed directly
+	 * from their digits; the result is the same as that of
+	 * {@link Double#parseDouble(String)}, since both the digits and the
+	 * power of ten are represented exactly.
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @return The value, or {@code null} if the bytes are not a number
+	 */
+	public static PrimitiveValue parseDouble(byte[] b, int start, int end)
+	{
+		int pos = start;
+		boolean negative = false;
+		if (pos < end && (b[pos] == '-' || b[pos] == '+'))
+		{
+			negative = b[pos] == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int num_digits = 0;
+		int exponent = 0;
+		boolean dot = false;
+		boolean simple = pos < end;
+		for (; pos < end; pos++)
+		{
+			byte c = b[pos];
+			if (c >= '0' && c <= '9')
+			{
+				mantissa = mantissa * 10 + (c - '0');
+				num_digits++;
+				if (dot)
+				{
+					exponent--;
+				}
+			}
+			else if (c == '.' && !dot)
+			{
+				dot = true;
+			}
+			else if (c == 'e' || c == 'E')
+			{
+				PrimitiveValue e = parseLong(b, pos + 1, end);
+				if (e == null || Math.abs(e.numberValue().longValue()) > 1000)
+				{
+					simple = false;
+					break;
+				}
+				exponent += e.numberValue().intValue();
+				break;
+			}
+			else
+			{
+				simple = false;
+				break;
+			}
+		}
+		if (simple && num_digits > 0 && num_digits <= 15 && exponent >= -22 && exponent <= 22)
+		{
+			double d = mantissa;
+			if (exponent >= 0)
+			{
+				d *= s_powersOfTen[exponent];
+			}
+			else
+			{
+				d /= s_powersOfTen[-exponent];
+			}
+			return PrimitiveValue.getInstance(negative ? -d : d);
+		}
+		try
+		{
+			return PrimitiveValue.getInstance(Double.parseDouble(new String(b, start, end - start, "US-ASCII")));
+		}
+		catch (Exception e)
+		{
+			// Not a number, or not ASCII
+			return null;
+		}
+	}
+
+	/**
+	 * Parses a date and time in ISO 8601 format, or a number of
+	 * milliseconds
+	 * @param b The array containing the bytes
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @return The number of milliseconds since January 1st, 1970, UTC,
+	 *   or {@code null} if the bytes are not a date, or are a date that
+	 *   does not exist (such as <tt>2017-02-29</tt>)
+	 */
+	public static PrimitiveValue parseTimestamp(byte[] b, int start, int end)
+	{
+		PrimitiveValue millis = parseLong(b, start, end);
+		if (millis != null)
+		{
+			return PrimitiveValue.getInstance(millis.numberValue().longValue());
+		}
+		if (end - start < 10 || b[start + 4] != '-' || b[start + 7] != '-')
+		{
+			return null;
+		}
+		int year = digits(b, start, 4);
+		int month = digits(b, start + 5, 2);
+		int day = digits(b, start + 8, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month))
+		{
+			return null;
+		}
+		int pos = start + 10;
+		int hour = 0, minute = 0, second = 0, milli = 0, offset = 0;
+		if (pos < end)
+		{
+			if ((b[pos] != 'T' && b[pos] != ' ') || end - pos < 6 || b[pos + 3] != ':')
+			{
+				return null;
+			}
+			hour = digits(b, pos + 1, 2);
+			minute = digits(b, pos + 4, 2);
+			pos += 6;
+			if (pos < end && b[pos] == ':')
+			{
+				second = end - pos < 3 ? -1 : digits(b, pos + 1, 2);
+				pos += 3;
+				if (pos < end && b[pos] == '.')
+				{
+					pos++;
+					int scale = 100;
+					while (pos < end && b[pos] >= '0' && b[pos] <= '9')
+					{
+						// Digits beyond the millisecond are ignored
+						milli += (b[pos] - '0') * scale;
+						scale /= 10;
+						pos++;
+					}
+				}
+			}
+			if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60)
+			{
+				return null;
+			}
+			if (pos < end)
+			{
+				if (b[pos] == 'Z' && pos + 1 == end)
+				{
+					pos++;
+				}
+				else if (b[pos] == '+' || b[pos] == '-')
+				{
+					int sign = b[pos] == '-' ? -1 : 1;
+					int len = end - pos - 1;
+					int off_h = len >= 2 ? digits(b, pos + 1, 2) : -1;
+					int off_m = 0;
+					if (len == 5 && b[pos + 3] == ':')
+					{
+						off_m = digits(b, pos + 4, 2);
+					}
+					else if (len == 4)
+					{
+						off_m = digits(b, pos + 3, 2);
+					}
+					else if (len != 2)
+					{
+						return null;
+					}
+					if (off_h < 0 || off_m < 0)
+					{
+						return null;
+					}
+					offset = sign * (off_h * 60 + off_m);
+					pos = end;
+				}
+				else
+				{
+					return null;
+				}
+			}
+		}
+		long days = daysFromCivil(year, month, day);
+		long time = days * 86400000L + ((hour * 60L + minute) * 60L + second) * 1000L + milli - offset * 60000L;
+		return PrimitiveValue.getInstance(time);
+	}
+
+	/**
+	 * Reads a fixed number of decimal digits
+	 * @param b The array containing the bytes
+	 * @param start The position of the first digit
+	 * @param n The number of digits
+	 * @return The value of the digits, or -1 if one of the bytes is not a
+	 *   digit
+	 */
+	protected static int digits(byte[] b, int start, int n)
+	{
+		int value = 0;
+		for (int i = start; i < start + n; i++)
+		{
+			if (b[i] < '0' || b[i] > '9')
+			{
+				return -1;
+			}
+			value = value * 10 + (b[i] - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the number of days of a month of the Gregorian calendar
+	 * @param year The year
+	 * @param month The month, from 1 to 12
+	 * @return The number of days
+	 */
+	protected static int daysInMonth(int year, int month)
+	{
+		if (month == 2)
+		{
+			boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+			return leap ? 29 : 28;
+		}
+		if (month == 4 || month == 6 || month == 9 || month == 11)
+		{
+			return 30;
+		}
+		return 31;
+	}
+
+	/**
+	 * Computes the number of days between January 1st, 1970 and a date of
+	 * the Gregorian calendar
+	 * @param year The year
+	 * @param month The month, from 1 to 12
+	 * @param day The day of the month
+	 * @return The number of days
+	 */
+	protected static long daysFromCivil(int year, int month, int day)
+	{
+		// Algorithm from H. Hinnant, "chrono-Compatible Low-Level Date
+		// Algorithms"; years start in March, so that February comes last
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yoe = y - era * 400;
+		long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+}
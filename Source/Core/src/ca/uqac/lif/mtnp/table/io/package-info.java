@@ -0,0 +1,25 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+/**
+ * Reading and writing tables in various file formats. These classes
+ * read files much faster than {@link ca.uqac.lif.mtnp.table.HardTable#read(java.util.Scanner, String)
+ * HardTable.read()}, and can handle files too large to be held in a
+ * single string.
+ * @author Sylvain Hallé
+ */
+package ca.uqac.lif.mtnp.table.io;
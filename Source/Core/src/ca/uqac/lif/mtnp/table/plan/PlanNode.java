@@ -0,0 +1,239 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.plan;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import ca.uqac.lif.mtnp.table.Composition;
+import ca.uqac.lif.mtnp.table.EvaluationContext;
+import ca.uqac.lif.mtnp.table.Table;
+import ca.uqac.lif.mtnp.table.TableTransformation;
+import ca.uqac.lif.mtnp.table.TempTable;
+import ca.uqac.lif.mtnp.table.TransformedTable;
+
+/**
+ * An operator in the logical plan of a table. A node produces a table
+ * from the tables produced by its input nodes. When they can be known
+ * without computing the table, a node also declares the names of the
+ * columns it produces.
+ * @author Sylvain Hallé
+ */
+public abstract class PlanNode
+{
+	/**
+	 * The nodes producing the input tables of this node
+	 */
+	protected final PlanNode[] m_inputs;
+
+	/**
+	 * The ID given to the table produced by this node, or -1 to keep the
+	 * ID given by the operator
+	 */
+	protected final int m_id;
+
+	/**
+	 * Creates a new plan node
+	 * @param id The ID given to the table produced by this node, or -1
+	 * @param inputs The nodes producing the input tables of this node
+	 */
+	public PlanNode(int id, PlanNode ... inputs)
+	{
+		super();
+		m_id = id;
+		m_inputs = inputs;
+	}
+
+	/**
+	 * Creates the logical plan that computes a table. Each
+	 * {@link TransformedTable} becomes a {@link TransformNode}, and a
+	 * {@link Composition} becomes a chain of such nodes; any other table is
+	 * a {@link SourceNode}. A table used in more than one place becomes a
+	 * single node with multiple parents. A transformed table whose contents
+	 * are already available in the current {@link EvaluationContext} also
+	 * becomes a source node.
+	 * @param table The table
+	 * @return The root of the plan
+	 */
+	public static PlanNode of(Table table)
+	{
+		return of(table, new IdentityHashMap<Table,PlanNode>());
+	}
+
+	/**
+	 * Creates the logical plan that computes a table
+	 * @param table The table
+	 * @param nodes The nodes already created for each table
+	 * @return The root of the plan
+	 */
+	protected static PlanNode of(Table table, Map<Table,PlanNode> nodes)
+	{
+		PlanNode node = nodes.get(table);
+		if (node != null)
+		{
+			return node;
+		}
+		EvaluationContext context = EvaluationContext.current();
+		if (table instanceof TransformedTable && (context == null || !context.contains(table)))
+		{
+			TransformedTable tt = (TransformedTable) table;
+			Table[] tables = tt.getInputTables();
+			PlanNode[] inputs = new PlanNode[tables.length];
+			for (int i = 0; i < tables.length; i++)
+			{
+				inputs[i] = of(tables[i], nodes);
+			}
+			node = chain(tt.getTransformation(), tt.getId(), inputs);
+		}
+		else
+		{
+			node = new SourceNode(table);
+		}
+		nodes.put(table, node);
+		return node;
+	}
+
+	/**
+	 * Creates the nodes applying a transformation, breaking compositions
+	 * into one node per transformation
+	 * @param t The transformation
+	 * @param id The ID given to the resulting table
+	 * @param inputs The nodes producing the input tables
+	 * @return The last node of the chain
+	 */
+	protected static PlanNode chain(TableTransformation t, int id, PlanNode ... inputs)
+	{
+		if (!(t instanceof Composition))
+		{
+			return new TransformNode(t, id, inputs);
+		}
+		TableTransformation[] stages = ((Composition) t).getTransformations();
+		PlanNode node = null;
+		for (int i = 0; i < stages.length; i++)
+		{
+			int stage_id = i == stages.length - 1 ? id : -1;
+			if (node == null)
+			{
+				node = chain(stages[i], stage_id, inputs);
+			}
+			else
+			{
+				node = chain(stages[i], stage_id, node);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Gets the nodes producing the input tables of this node
+	 * @return The nodes
+	 */
+	public PlanNode[] getInputs()
+	{
+		return m_inputs;
+	}
+
+	/**
+	 * Gets the ID given to the table produced by this node
+	 * @return The ID, or -1 if the ID given by the operator is kept
+	 */
+	public int getId()
+	{
+		return m_id;
+	}
+
+	/**
+	 * Gets the names of the columns of the table produced by this node
+	 * @return The names, or {@code null} if they cannot be known without
+	 *   computing the table
+	 */
+	public abstract String[] getColumns();
+
+	/**
+	 * Gets a short description of the operator of this node
+	 * @return The description
+	 */
+	public abstract String getLabel();
+
+	/**
+	 * Computes the table produced by this node
+	 * @param temporary Passed to {@link Table#getDataTable(boolean)} when
+	 *   obtaining the contents of the source tables
+	 * @return The table
+	 */
+	public abstract TempTable execute(boolean temporary);
+
+	/**
+	 * Gets a textual representation of the plan rooted at this node, with
+	 * one line per node, and the inputs of a node indented below it
+	 * @return The representation
+	 */
+	public String explain()
+	{
+		StringBuilder out = new StringBuilder();
+		explain(out, "");
+		return out.toString();
+	}
+
+	/**
+	 * Writes a textual representation of the plan rooted at this node
+	 * @param out The builder where the representation is written
+	 * @param indent The indentation of the line of this node
+	 */
+	protected void explain(StringBuilder out, String indent)
+	{
+		out.append(indent).append(getLabel());
+		String[] cols = getColumns();
+		if (cols != null)
+		{
+			out.append(" -> ").append(toString(cols));
+		}
+		out.append("\n");
+		for (PlanNode in : m_inputs)
+		{
+			in.explain(out, indent + "  ");
+		}
+	}
+
+	/**
+	 * Writes an array of names as a comma-separated list between brackets
+	 * @param names The names
+	 * @return The list
+	 */
+	protected static String toString(String[] names)
+	{
+		StringBuilder out = new StringBuilder();
+		out.append("[");
+		for (int i = 0; i < names.length; i++)
+		{
+			if (i > 0)
+			{
+				out.append(", ");
+			}
+			out.append(names[i]);
+		}
+		out.append("]");
+		return out.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return explain();
+	}
+}
@@ -0,0 +1,283 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.plan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.mtnp.table.ExpandAsColumns;
+import ca.uqac.lif.mtnp.table.Join;
+import ca.uqac.lif.mtnp.table.RemoveColumns;
+import ca.uqac.lif.mtnp.table.Select;
+import ca.uqac.lif.mtnp.table.SortRows;
+import ca.uqac.lif.mtnp.table.TableTransformation;
+
+/**
+ * Rewrites a logical plan into an equivalent plan that does less work.
+ * The optimizer applies the following rules, from the sources of the plan
+ * up to its root, until none of them applies:
+ * <ul>
+ * <li><b>Column pruning</b>: a {@link Select} that keeps all the columns
+ * of its input in the same order is removed; two consecutive
+ * {@link Select}s, or two consecutive {@link RemoveColumns}, are merged
+ * into one.</li>
+ * <li><b>Projection pushdown</b>: when a {@link Select} or a
+ * {@link RemoveColumns} is applied to the result of a {@link Join}, the
+ * columns of each input table that are neither kept nor used for the join
+ * are removed before joining. When a {@link RemoveColumns} is applied to
+ * the result of an {@link ExpandAsColumns}, no column is created for the
+ * values whose column is removed afterwards.</li>
+ * <li><b>Redundant sort elimination</b>: a {@link SortRows} applied to
+ * the result of another {@link SortRows} is removed.</li>
+ * </ul>
+ * Rules that depend on the columns of a table only apply when these
+ * columns can be known without computing the table (see
+ * {@link PlanNode#getColumns()}).
+ * @author Sylvain Hallé
+ */
+public class PlanOptimizer
+{
+	/**
+	 * Optimizes a plan
+	 * @param root The root of the plan
+	 * @return The root of the optimized plan
+	 */
+	public PlanNode optimize(PlanNode root)
+	{
+		return optimize(root, new IdentityHashMap<PlanNode,PlanNode>());
+	}
+
+	/**
+	 * Optimizes a plan, reusing the nodes already optimized so that a node
+	 * with multiple parents stays a single node
+	 * @param node The root of the plan
+	 * @param done The optimized version of each node already visited
+	 * @return The root of the optimized plan
+	 */
+	protected PlanNode optimize(PlanNode node, Map<PlanNode,PlanNode> done)
+	{
+		PlanNode optimized = done.get(node);
+		if (optimized != null)
+		{
+			return optimized;
+		}
+		optimized = node;
+		if (node instanceof TransformNode)
+		{
+			TransformNode tn = (TransformNode) node;
+			PlanNode[] inputs = tn.getInputs();
+			PlanNode[] new_inputs = new PlanNode[inputs.length];
+			boolean changed = false;
+			for (int i = 0; i < inputs.length; i++)
+			{
+				new_inputs[i] = optimize(inputs[i], done);
+				changed |= new_inputs[i] != inputs[i];
+			}
+			if (changed)
+			{
+				tn = new TransformNode(tn.getTransformation(), tn.getId(), new_inputs);
+			}
+			optimized = tn;
+			PlanNode rewritten = rewrite(tn);
+			if (rewritten != null)
+			{
+				// The new node may itself be rewritten further
+				optimized = optimize(rewritten, done);
+			}
+		}
+		done.put(node, optimized);
+		done.put(optimized, optimized);
+		return optimized;
+	}
+
+	/**
+	 * Applies the first rule that matches a node
+	 * @param node The node, whose inputs are already optimized
+	 * @return The node replacing it, or {@code null} if no rule applies
+	 */
+	protected PlanNode rewrite(TransformNode node)
+	{
+		TableTransformation t = node.getTransformation();
+		if (node.getInputs().length != 1 && !(t instanceof Join))
+		{
+			return null;
+		}
+		PlanNode input = node.getInputs()[0];
+		TableTransformation in_t = null;
+		if (input instanceof TransformNode)
+		{
+			in_t = ((TransformNode) input).getTransformation();
+		}
+		if (t instanceof Select)
+		{
+			return rewriteSelect(node, (Select) t, input, in_t);
+		}
+		if (t instanceof RemoveColumns)
+		{
+			return rewriteRemove(node, (RemoveColumns) t, input, in_t);
+		}
+		if (t instanceof SortRows && in_t instanceof SortRows)
+		{
+			// Sorting already sorted rows does nothing
+			return input;
+		}
+		return null;
+	}
+
+	/**
+	 * Applies the rules for a {@link Select}
+	 * @param node The node
+	 * @param sel The transformation of the node
+	 * @param input The input of the node
+	 * @param in_t The transformation of the input, if any
+	 * @return The node replacing it, or {@code null} if no rule applies
+	 */
+	protected PlanNode rewriteSelect(TransformNode node, Select sel, PlanNode input, TableTransformation in_t)
+	{
+		String[] selected = sel.getColumnNames();
+		if (input.getColumns() != null && Arrays.equals(selected, input.getColumns()))
+		{
+			// Keeps every column: nothing to do
+			return input;
+		}
+		if (in_t instanceof Select && containsAll(((Select) in_t).getColumnNames(), selected))
+		{
+			return new TransformNode(sel, node.getId(), input.getInputs()[0]);
+		}
+		if (in_t instanceof Join)
+		{
+			return pushIntoJoin(node, input, (Join) in_t, selected);
+		}
+		return null;
+	}
+
+	/**
+	 * Applies the rules for a {@link RemoveColumns}
+	 * @param node The node
+	 * @param rem The transformation of the node
+	 * @param input The input of the node
+	 * @param in_t The transformation of the input, if any
+	 * @return The node replacing it, or {@code null} if no rule applies
+	 */
+	protected PlanNode rewriteRemove(TransformNode node, RemoveColumns rem, PlanNode input, TableTransformation in_t)
+	{
+		String[] removed = rem.getRemovedColumns();
+		if (in_t instanceof RemoveColumns)
+		{
+			Set<String> all = new LinkedHashSet<String>();
+			all.addAll(Arrays.asList(((RemoveColumns) in_t).getRemovedColumns()));
+			all.addAll(Arrays.asList(removed));
+			return new TransformNode(new RemoveColumns(all.toArray(new String[all.size()])), node.getId(), input.getInputs()[0]);
+		}
+		if (in_t instanceof Join && input.getColumns() != null)
+		{
+			return pushIntoJoin(node, input, (Join) in_t, minus(input.getColumns(), removed));
+		}
+		if (in_t instanceof ExpandAsColumns)
+		{
+			ExpandAsColumns exp = (ExpandAsColumns) in_t;
+			if (exp.getIgnoredValues().containsAll(Arrays.asList(removed)))
+			{
+				// Already applied
+				return null;
+			}
+			ExpandAsColumns new_exp = new ExpandAsColumns(exp.getColumnKey(), exp.getValueKey());
+			new_exp.ignore(exp.getIgnoredValues().toArray(new String[0]));
+			new_exp.ignore(removed);
+			PlanNode new_input = new TransformNode(new_exp, input.getId(), input.getInputs());
+			return new TransformNode(rem, node.getId(), new_input);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes, from each input of a join, the columns that are neither used
+	 * for the join nor needed after it
+	 * @param node The node applied to the result of the join
+	 * @param join_node The node of the join
+	 * @param join The join
+	 * @param needed The columns needed after the join
+	 * @return The node replacing {@code node}, or {@code null} if no input
+	 *   of the join has columns to remove
+	 */
+	protected PlanNode pushIntoJoin(TransformNode node, PlanNode join_node, Join join, String[] needed)
+	{
+		Set<String> keep = new LinkedHashSet<String>(Arrays.asList(needed));
+		keep.addAll(Arrays.asList(join.getCommonDimensions()));
+		PlanNode[] inputs = join_node.getInputs();
+		PlanNode[] new_inputs = new PlanNode[inputs.length];
+		boolean changed = false;
+		for (int i = 0; i < inputs.length; i++)
+		{
+			new_inputs[i] = inputs[i];
+			String[] cols = inputs[i].getColumns();
+			if (cols == null)
+			{
+				continue;
+			}
+			List<String> kept = new ArrayList<String>();
+			for (String c : cols)
+			{
+				if (keep.contains(c))
+				{
+					kept.add(c);
+				}
+			}
+			if (kept.size() < cols.length)
+			{
+				new_inputs[i] = new TransformNode(new Select(kept.toArray(new String[kept.size()])), inputs[i]);
+				changed = true;
+			}
+		}
+		if (!changed)
+		{
+			return null;
+		}
+		PlanNode new_join = new TransformNode(join, join_node.getId(), new_inputs);
+		return new TransformNode(node.getTransformation(), node.getId(), new_join);
+	}
+
+	/**
+	 * Checks if an array contains all the elements of another
+	 * @param names The array
+	 * @param subset The elements
+	 * @return {@code true} if all elements are in the array
+	 */
+	protected static boolean containsAll(String[] names, String[] subset)
+	{
+		return Arrays.asList(names).containsAll(Arrays.asList(subset));
+	}
+
+	/**
+	 * Removes elements from an array
+	 * @param names The array
+	 * @param removed The elements to remove
+	 * @return A new array with the remaining elements, in the same order
+	 */
+	protected static String[] minus(String[] names, String[] removed)
+	{
+		List<String> out = new ArrayList<String>(Arrays.asList(names));
+		out.removeAll(Arrays.asList(removed));
+		return out.toArray(new String[out.size()]);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.plan;
+
+import ca.uqac.lif.mtnp.table.EvaluationContext;
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.Table;
+import ca.uqac.lif.mtnp.table.TempTable;
+
+/**
+ * A plan node that obtains the contents of a table that is not the
+ * result of a transformation
+ * @author Sylvain Hallé
+ */
+public class SourceNode extends PlanNode
+{
+	/**
+	 * The table
+	 */
+	protected final Table m_table;
+
+	/**
+	 * Creates a new source node
+	 * @param table The table
+	 */
+	public SourceNode(Table table)
+	{
+		super(table.getId());
+		m_table = table;
+	}
+
+	/**
+	 * Gets the table read by this node
+	 * @return The table
+	 */
+	public Table getTable()
+	{
+		return m_table;
+	}
+
+	@Override
+	public String[] getColumns()
+	{
+		if (m_table instanceof HardTable)
+		{
+			return ((HardTable) m_table).getColumnNames();
+		}
+		EvaluationContext context = EvaluationContext.current();
+		if (context != null)
+		{
+			return context.getColumnNames(m_table);
+		}
+		return null;
+	}
+
+	@Override
+	public String getLabel()
+	{
+		return "Table #" + m_table.getId();
+	}
+
+	@Override
+	public TempTable execute(boolean temporary)
+	{
+		TempTable t = m_table.getDataTable(temporary);
+		t.setId(m_table.getId());
+		return t;
+	}
+}
@@ -0,0 +1,177 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.plan;
+
+import ca.uqac.lif.mtnp.table.ExpandAsColumns;
+import ca.uqac.lif.mtnp.table.Join;
+import ca.uqac.lif.mtnp.table.LttbDownsample;
+import ca.uqac.lif.mtnp.table.RemoveColumns;
+import ca.uqac.lif.mtnp.table.RowTransformation;
+import ca.uqac.lif.mtnp.table.Select;
+import ca.uqac.lif.mtnp.table.SortRows;
+import ca.uqac.lif.mtnp.table.TableTransformation;
+import ca.uqac.lif.mtnp.table.TempTable;
+
+/**
+ * A plan node that applies a {@link TableTransformation} to the tables
+ * produced by its inputs
+ * @author Sylvain Hallé
+ */
+public class TransformNode extends PlanNode
+{
+	/**
+	 * The transformation to apply
+	 */
+	protected final TableTransformation m_transformation;
+
+	/**
+	 * The names of the columns produced by this node, or {@code null} if
+	 * they are not known
+	 */
+	protected final String[] m_columns;
+
+	/**
+	 * Creates a new transform node
+	 * @param t The transformation to apply
+	 * @param id The ID given to the table produced by this node, or -1
+	 * @param inputs The nodes producing the input tables
+	 */
+	public TransformNode(TableTransformation t, int id, PlanNode ... inputs)
+	{
+		super(id, inputs);
+		m_transformation = t;
+		m_columns = computeColumns();
+	}
+
+	/**
+	 * Creates a new transform node whose table keeps the ID given by the
+	 * transformation
+	 * @param t The transformation to apply
+	 * @param inputs The nodes producing the input tables
+	 */
+	public TransformNode(TableTransformation t, PlanNode ... inputs)
+	{
+		this(t, -1, inputs);
+	}
+
+	/**
+	 * Gets the transformation applied by this node
+	 * @return The transformation
+	 */
+	public TableTransformation getTransformation()
+	{
+		return m_transformation;
+	}
+
+	/**
+	 * Determines the names of the columns produced by this node, from the
+	 * columns of its inputs
+	 * @return The names, or {@code null} if they cannot be determined
+	 */
+	protected String[] computeColumns()
+	{
+		if (m_inputs.length == 0)
+		{
+			return null;
+		}
+		if (m_transformation instanceof Join)
+		{
+			String[][] input_columns = new String[m_inputs.length][];
+			for (int i = 0; i < m_inputs.length; i++)
+			{
+				input_columns[i] = m_inputs[i].getColumns();
+				if (input_columns[i] == null)
+				{
+					return null;
+				}
+			}
+			return ((Join) m_transformation).getOutputColumns(input_columns);
+		}
+		String[] in_cols = m_inputs[0].getColumns();
+		if (in_cols == null)
+		{
+			return null;
+		}
+		if (m_transformation instanceof RowTransformation)
+		{
+			return ((RowTransformation) m_transformation).getOutputColumns(in_cols);
+		}
+		if (m_transformation instanceof SortRows || m_transformation instanceof LttbDownsample)
+		{
+			return in_cols;
+		}
+		// Columns depend on the contents of the table
+		return null;
+	}
+
+	@Override
+	public String[] getColumns()
+	{
+		return m_columns;
+	}
+
+	@Override
+	public String getLabel()
+	{
+		TableTransformation t = m_transformation;
+		String name = t.getClass().getSimpleName();
+		if (name.isEmpty())
+		{
+			name = t.getClass().getName();
+		}
+		if (t instanceof Select)
+		{
+			return name + " " + toString(((Select) t).getColumnNames());
+		}
+		if (t instanceof RemoveColumns)
+		{
+			return name + " " + toString(((RemoveColumns) t).getRemovedColumns());
+		}
+		if (t instanceof Join)
+		{
+			return name + " on " + toString(((Join) t).getCommonDimensions());
+		}
+		if (t instanceof ExpandAsColumns)
+		{
+			ExpandAsColumns e = (ExpandAsColumns) t;
+			String label = name + " " + e.getColumnKey() + "/" + e.getValueKey();
+			if (!e.getIgnoredValues().isEmpty())
+			{
+				label += " ignoring " + toString(e.getIgnoredValues().toArray(new String[0]));
+			}
+			return label;
+		}
+		return name;
+	}
+
+	@Override
+	public TempTable execute(boolean temporary)
+	{
+		TempTable[] tables = new TempTable[m_inputs.length];
+		for (int i = 0; i < m_inputs.length; i++)
+		{
+			tables[i] = m_inputs[i].execute(temporary);
+		}
+		TempTable out = m_transformation.transform(tables);
+		if (m_id >= 0)
+		{
+			out.setId(m_id);
+		}
+		return out;
+	}
+}
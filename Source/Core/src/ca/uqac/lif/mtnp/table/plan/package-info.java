@@ -0,0 +1,26 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+/**
+ * Logical plans for computing transformed tables. A plan represents the
+ * graph of {@link ca.uqac.lif.mtnp.table.TransformedTable TransformedTable}s
+ * as operators whose input and output columns are known when possible,
+ * so that it can be rewritten into an equivalent plan that does less
+ * work before being executed.
+ * @author Sylvain Hallé
+ */
+package ca.uqac.lif.mtnp.table.plan;
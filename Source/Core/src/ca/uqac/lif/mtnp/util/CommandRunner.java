@@ -17,11 +17,11 @@
  */
 package ca.uqac.lif.mtnp.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
-import java.util.Vector;
 
 /**
  * Facilitates the execution of an external command and the collection of
@@ -36,6 +36,12 @@ public class CommandRunner extends Thread
 	protected StreamGobbler m_stderrGobbler;
 	protected int m_errorCode = 0;
 	
+	/**
+	 * If not null, the contents of stdout are written to this stream
+	 * instead of being kept in memory
+	 */
+	protected OutputStream m_stdout = null;
+	
 	/**
 	 * Creates a CommandRunner to run a command.
 	 * @param command The command to run
@@ -76,6 +82,22 @@ public class CommandRunner extends Thread
 		this(command, null);
 	}
 	
+	/**
+	 * Creates a CommandRunner to run a command, and sends its output to
+	 * a stream.
+	 * @param command The command to run
+	 * @param stdin If not set to null, this string will be sent to the stdin
+	 * of the command being run
+	 * @param stdout The stream where the contents of stdout are written as
+	 * they are produced. These contents are then not available from
+	 * {@link #getBytes()}.
+	 */
+	public CommandRunner(String[] command, String stdin, OutputStream stdout)
+	{
+		this(command, stdin);
+		m_stdout = stdout;
+	}
+	
 	/**
 	 * Constantly reads an input stream and captures its content.
 	 * Inspired from <a href="http://stackoverflow.com/questions/14165517/processbuilder-forwarding-stdout-and-stderr-of-started-processes-without-blocki">Stack Overflow</a>
@@ -83,14 +105,23 @@ public class CommandRunner extends Thread
 	protected class StreamGobbler extends Thread
 	{
 		InputStream m_is;
-		Vector<Byte> m_contents;
+		ByteArrayOutputStream m_contents;
+		OutputStream m_target;
+		long m_count = 0;
+		IOException m_targetException = null;
 		String m_name;
 		private StreamGobbler(InputStream is, String name)
+		{
+			this(is, name, null);
+		}
+		
+		private StreamGobbler(InputStream is, String name, OutputStream target)
 		{
 			super();
-			m_contents = new Vector<Byte>();
+			m_contents = new ByteArrayOutputStream();
 			this.m_is = is;
 			m_name = name;
+			m_target = target;
 		}
 		
 		@Override
@@ -104,9 +135,23 @@ public class CommandRunner extends Thread
 				{
 					synchronized (this)
 					{
-						for (int i = 0; i < len; i++)
+						m_count += len;
+						if (m_target == null)
+						{
+							m_contents.write(buffer, 0, len);
+						}
+						else if (m_targetException == null && !m_stop)
 						{
-							m_contents.add(buffer[i]);
+							try
+							{
+								m_target.write(buffer, 0, len);
+							}
+							catch (IOException e)
+							{
+								// Keep reading, so that the process does not block,
+								// but remember that the output is lost
+								m_targetException = e;
+							}
 						}
 					}
 				}
@@ -124,14 +169,7 @@ public class CommandRunner extends Thread
 		 */
 		public synchronized byte[] getBytes()
 		{
-			int size = m_contents.size();
-			byte[] out = new byte[size];
-			int i = 0;
-			for (byte b : m_contents)
-			{
-				out[i++] = b;
-			}
-			return out;
+			return m_contents.toByteArray();
 		}
 	}
 	
@@ -175,7 +213,7 @@ public class CommandRunner extends Thread
 		{
 			process = builder.start();
 			m_stderrGobbler = new StreamGobbler(process.getErrorStream(), "ERR");
-			m_stdoutGobbler = new StreamGobbler(process.getInputStream(), "IN");
+			m_stdoutGobbler = new StreamGobbler(process.getInputStream(), "IN", m_stdout);
 			// Send data into stdin of process
 			if (m_stdin != null)
 			{
@@ -216,6 +254,11 @@ public class CommandRunner extends Thread
 	 */
 	synchronized public byte[] getBytes()
 	{
+		if (m_stdoutGobbler == null)
+		{
+			// The command could not be launched
+			return new byte[0];
+		}
 		return m_stdoutGobbler.getBytes();
 	}
 	
@@ -237,6 +280,40 @@ public class CommandRunner extends Thread
 		return new String(out);
 	}
 	
+	/**
+	 * Gets the number of bytes sent to stdout by the command, whether
+	 * they were kept in memory or written to a stream
+	 * @return The number of bytes
+	 */
+	synchronized public long getByteCount()
+	{
+		if (m_stdoutGobbler == null)
+		{
+			return 0;
+		}
+		synchronized (m_stdoutGobbler)
+		{
+			return m_stdoutGobbler.m_count;
+		}
+	}
+	
+	/**
+	 * Gets the exception thrown when writing the contents of stdout to
+	 * the stream given to this runner
+	 * @return The exception, or {@code null} if none was thrown
+	 */
+	synchronized public IOException getOutputException()
+	{
+		if (m_stdoutGobbler == null)
+		{
+			return null;
+		}
+		synchronized (m_stdoutGobbler)
+		{
+			return m_stdoutGobbler.m_targetException;
+		}
+	}
+	
 	/**
 	 * Gets the return code of the command. Generally 0 indicates that
 	 * everything was OK; a non-zero value indicates an error. 
@@ -248,10 +325,18 @@ public class CommandRunner extends Thread
 	}
 	
 	/**
-	 * Interrupts the execution of the command
+	 * Interrupts the execution of the command. Once this method returns,
+	 * nothing more is written to the stream given to this runner.
 	 */
 	synchronized public void stopCommand()
 	{
 		m_stop = true;
+		if (m_stdoutGobbler != null)
+		{
+			synchronized (m_stdoutGobbler)
+			{
+				// Wait for a write in progress to be over
+			}
+		}
 	}
 }
\ No newline at end of file
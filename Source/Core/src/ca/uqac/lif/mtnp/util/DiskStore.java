@@ -0,0 +1,300 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.util;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores arrays of bytes as files in a directory, each under a
+ * string key. The store can be given a maximum size; when the files it
+ * contains exceed this size, the least recently used ones are deleted.
+ * The last access to an entry is recorded as the modification date of
+ * its file, so that this information survives from one run to the next.
+ * <p>
+ * Keys are used as file names, and should therefore only contain
+ * characters that are valid in a file name (such as the hexadecimal
+ * hashes produced by {@link HashHelper}).
+ * @author Sylvain Hallé
+ */
+public class DiskStore
+{
+	/**
+	 * The extension given to the files of the store
+	 */
+	protected static final transient String s_extension = ".bin";
+
+	/**
+	 * The directory where the files are stored
+	 */
+	protected final File m_directory;
+
+	/**
+	 * The maximum number of bytes occupied by the files of the store.
+	 * A value of 0 or less means no limit.
+	 */
+	protected final long m_maxBytes;
+
+	/**
+	 * The number of bytes currently occupied by the files of the store
+	 */
+	protected long m_bytes = -1;
+
+	/**
+	 * Creates a new disk store with no size limit
+	 * @param directory The directory where the files are stored. It is
+	 *   created if it does not exist.
+	 */
+	public DiskStore(File directory)
+	{
+		this(directory, 0);
+	}
+
+	/**
+	 * Creates a new disk store
+	 * @param directory The directory where the files are stored. It is
+	 *   created if it does not exist.
+	 * @param max_bytes The maximum number of bytes occupied by the files of
+	 *   the store. Set to 0 for no limit.
+	 */
+	public DiskStore(File directory, long max_bytes)
+	{
+		super();
+		m_directory = directory;
+		m_maxBytes = max_bytes;
+		m_directory.mkdirs();
+	}
+
+	/**
+	 * Gets the directory where the files are stored
+	 * @return The directory
+	 */
+	public File getDirectory()
+	{
+		return m_directory;
+	}
+
+	/**
+	 * Gets the file associated to a key
+	 * @param key The key
+	 * @return The file (which may not exist)
+	 */
+	public File getFile(String key)
+	{
+		return new File(m_directory, key + s_extension);
+	}
+
+	/**
+	 * Checks if the store contains an entry for a key
+	 * @param key The key
+	 * @return {@code true} if an entry exists, {@code false} otherwise
+	 */
+	public synchronized boolean contains(String key)
+	{
+		return getFile(key).isFile();
+	}
+
+	/**
+	 * Gets the contents stored under a key, and marks the entry as
+	 * recently used
+	 * @param key The key
+	 * @return The contents, or {@code null} if no entry exists for this key
+	 */
+	public synchronized byte[] get(String key)
+	{
+		File f = getFile(key);
+		if (!f.isFile())
+		{
+			return null;
+		}
+		f.setLastModified(System.currentTimeMillis());
+		return FileHelper.readToBytes(f);
+	}
+
+	/**
+	 * Marks the entry stored under a key as recently used, without reading
+	 * its contents. This is useful when the file of the entry is read
+	 * directly (see {@link #getFile(String)}).
+	 * @param key The key
+	 * @return {@code true} if an entry exists for this key, {@code false}
+	 *   otherwise
+	 */
+	public synchronized boolean touch(String key)
+	{
+		File f = getFile(key);
+		if (!f.isFile())
+		{
+			return false;
+		}
+		f.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Stores contents under a key, replacing any previous entry. If the
+	 * store exceeds its maximum size, least recently used entries are
+	 * deleted.
+	 * @param key The key
+	 * @param contents The contents to store
+	 */
+	public synchronized void put(String key, byte[] contents)
+	{
+		File f = getFile(key);
+		computeSize();
+		if (f.isFile())
+		{
+			m_bytes -= f.length();
+		}
+		// Write to a temporary file first, so that a crash never leaves a
+		// truncated entry under the final name
+		File temp = new File(m_directory, key + ".tmp");
+		FileHelper.writeFromBytes(temp, contents);
+		f.delete();
+		if (!temp.renameTo(f))
+		{
+			temp.delete();
+			return;
+		}
+		m_bytes += f.length();
+		evict(f);
+	}
+
+	/**
+	 * Removes the entry stored under a key
+	 * @param key The key
+	 */
+	public synchronized void remove(String key)
+	{
+		File f = getFile(key);
+		if (f.isFile())
+		{
+			computeSize();
+			m_bytes -= f.length();
+			f.delete();
+		}
+	}
+
+	/**
+	 * Deletes all the entries of the store
+	 */
+	public synchronized void clear()
+	{
+		for (File f : listFiles())
+		{
+			f.delete();
+		}
+		m_bytes = 0;
+	}
+
+	/**
+	 * Gets the number of bytes occupied by the files of the store
+	 * @return The number of bytes
+	 */
+	public synchronized long getSize()
+	{
+		computeSize();
+		return m_bytes;
+	}
+
+	/**
+	 * Computes the size of the store from the files in its directory, if
+	 * it is not already known
+	 */
+	protected void computeSize()
+	{
+		if (m_bytes >= 0)
+		{
+			return;
+		}
+		m_bytes = 0;
+		for (File f : listFiles())
+		{
+			m_bytes += f.length();
+		}
+	}
+
+	/**
+	 * Deletes least recently used entries until the store fits within its
+	 * maximum size
+	 * @param keep A file that must not be deleted (normally the entry that
+	 *   has just been written)
+	 */
+	protected void evict(File keep)
+	{
+		if (m_maxBytes <= 0 || m_bytes <= m_maxBytes)
+		{
+			return;
+		}
+		File[] files = listFiles();
+		// Take a snapshot of the dates, as they may change while sorting
+		final Map<File,Long> dates = new HashMap<File,Long>();
+		for (File f : files)
+		{
+			dates.put(f, f.lastModified());
+		}
+		Arrays.sort(files, new Comparator<File>()
+		{
+			@Override
+			public int compare(File f1, File f2)
+			{
+				return dates.get(f1).compareTo(dates.get(f2));
+			}
+		});
+		for (File f : files)
+		{
+			if (m_bytes <= m_maxBytes)
+			{
+				break;
+			}
+			if (f.equals(keep))
+			{
+				continue;
+			}
+			long size = f.length();
+			if (f.delete())
+			{
+				m_bytes -= size;
+			}
+		}
+	}
+
+	/**
+	 * Lists the files of the entries in the store
+	 * @return The files
+	 */
+	protected File[] listFiles()
+	{
+		File[] files = m_directory.listFiles();
+		if (files == null)
+		{
+			return new File[0];
+		}
+		int count = 0;
+		for (File f : files)
+		{
+			if (f.isFile() && f.getName().endsWith(s_extension))
+			{
+				files[count++] = f;
+			}
+		}
+		return Arrays.copyOf(files, count);
+	}
+}
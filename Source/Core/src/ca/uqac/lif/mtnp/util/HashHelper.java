@@ -0,0 +1,106 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.util;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A number of helpful utilities to compute hashes of contents
+ * @author Sylvain Hallé
+ */
+public class HashHelper
+{
+	/**
+	 * The charset used to convert strings into bytes before hashing them
+	 */
+	protected static final transient Charset s_charset = Charset.forName("UTF-8");
+
+	/**
+	 * The digits used to write a hash in hexadecimal
+	 */
+	protected static final transient char[] s_hexDigits = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Gets a new instance of the message digest used to compute hashes
+	 * @return The digest
+	 */
+	public static MessageDigest getDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Adds a string to a message digest being computed
+	 * @param digest The digest
+	 * @param s The string
+	 */
+	public static void update(MessageDigest digest, String s)
+	{
+		digest.update(s.getBytes(s_charset));
+	}
+
+	/**
+	 * Computes the hash of a string
+	 * @param s The string
+	 * @return The hash, as a string of hexadecimal digits
+	 */
+	public static String hash(String s)
+	{
+		MessageDigest digest = getDigest();
+		update(digest, s);
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Computes the hash of an array of bytes
+	 * @param bytes The bytes
+	 * @return The hash, as a string of hexadecimal digits
+	 */
+	public static String hash(byte[] bytes)
+	{
+		MessageDigest digest = getDigest();
+		digest.update(bytes);
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Writes an array of bytes as a string of hexadecimal digits
+	 * @param bytes The bytes
+	 * @return The string
+	 */
+	public static String toHex(byte[] bytes)
+	{
+		char[] out = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			out[2 * i] = s_hexDigits[(bytes[i] >> 4) & 0xF];
+			out[2 * i + 1] = s_hexDigits[bytes[i] & 0xF];
+		}
+		return new String(out);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+
+public class ImageCacheTest
+{
+	@Test
+	public void testKey()
+	{
+		String k1 = ImageCache.getKey("foo", ImageType.PNG, true);
+		assertEquals(k1, ImageCache.getKey("foo", ImageType.PNG, true));
+		assertFalse(k1.equals(ImageCache.getKey("foo", ImageType.PDF, true)));
+		assertFalse(k1.equals(ImageCache.getKey("foo", ImageType.PNG, false)));
+		assertFalse(k1.equals(ImageCache.getKey("bar", ImageType.PNG, true)));
+	}
+
+	@Test
+	public void testMemory()
+	{
+		ImageCache cache = new ImageCache(10);
+		cache.put("a", new byte[4]);
+		cache.put("b", new byte[4]);
+		assertNotNull(cache.get("a"));
+		// "b" is now the least recently used image, and is evicted
+		cache.put("c", new byte[4]);
+		assertEquals(8, cache.getSize());
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testDisk() throws Exception
+	{
+		File dir = File.createTempFile("mtnp", "");
+		dir.delete();
+		try
+		{
+			ImageCache cache = new ImageCache(10, dir);
+			cache.put("a", new byte[]{1, 2, 3});
+			// A new cache on the same directory finds the image on disk
+			ImageCache cache2 = new ImageCache(10, dir);
+			byte[] image = cache2.get("a");
+			assertNotNull(image);
+			assertEquals(3, image.length);
+			assertEquals(1, cache2.getDiskHits());
+			assertNotNull(cache2.get("a"));
+			assertEquals(1, cache2.getHits());
+			cache2.clear();
+			assertNull(new ImageCache(10, dir).get("a"));
+		}
+		finally
+		{
+			dir.delete();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+import ca.uqac.lif.mtnp.plot.java2d.DensityPlot;
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+public class PlotImageTest
+{
+	@Test
+	public void testDefaultStream() throws IOException
+	{
+		// A plot written against the old API only produces arrays of bytes
+		Plot plot = new Plot()
+		{
+			@Override
+			public byte[] getImage(ImageType type, boolean with_caption)
+			{
+				return new byte[]{1, 2, 3};
+			}
+		};
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		plot.getImage(ImageType.PNG, true, 100, 100, bos);
+		assertArrayEquals(new byte[]{1, 2, 3}, bos.toByteArray());
+		assertArrayEquals(new byte[]{1, 2, 3}, plot.getImage(ImageType.PNG, true, 100, 100));
+	}
+
+	@Test
+	public void testDefaultStreamNoImage()
+	{
+		Plot plot = new Plot()
+		{
+			@Override
+			public byte[] getImage(ImageType type, boolean with_caption)
+			{
+				return null;
+			}
+		};
+		try
+		{
+			plot.getImage(ImageType.PNG, true, 100, 100, new ByteArrayOutputStream());
+			fail("A missing image should be reported");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+		assertNull(plot.getImage(ImageType.PNG, true, 100, 100));
+	}
+
+	@Test
+	public void testStreamSize() throws IOException
+	{
+		HardTable table = new HardTable("x", "y");
+		for (int i = 0; i < 1000; i++)
+		{
+			TableEntry te = new TableEntry("x", i);
+			te.put("y", i % 37);
+			table.add(te);
+		}
+		DensityPlot plot = new DensityPlot(table);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		plot.getImage(ImageType.PNG, false, 320, 200, bos);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+		assertEquals(320, image.getWidth());
+		assertEquals(200, image.getHeight());
+		image = ImageIO.read(new ByteArrayInputStream(plot.getImage(ImageType.PNG, false)));
+		assertEquals(Plot.DEFAULT_WIDTH, image.getWidth());
+		assertEquals(Plot.DEFAULT_HEIGHT, image.getHeight());
+	}
+}
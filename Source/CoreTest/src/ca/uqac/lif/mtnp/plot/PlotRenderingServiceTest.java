@@ -0,0 +1,257 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+import ca.uqac.lif.mtnp.plot.PlotRenderingService.RenderResult;
+import ca.uqac.lif.mtnp.plot.gnuplot.Scatterplot;
+import ca.uqac.lif.mtnp.plot.java2d.DensityPlot;
+
+public class PlotRenderingServiceTest
+{
+	@Test
+	public void testExternal()
+	{
+		assertTrue(new Scatterplot().isExternal());
+		assertFalse(new DensityPlot().isExternal());
+		assertFalse(new DummyPlot(false, null, 0).isExternal());
+	}
+
+	@Test
+	public void testPools() throws InterruptedException
+	{
+		PlotRenderingService service = new PlotRenderingService(1, 1, 8);
+		DummyPlot external = new DummyPlot(true, null, 0);
+		DummyPlot internal = new DummyPlot(false, null, 0);
+		List<DummyPlot> plots = new ArrayList<DummyPlot>();
+		plots.add(external);
+		plots.add(internal);
+		service.renderAll(plots, ImageType.PNG, false);
+		service.shutdown();
+		assertTrue(external.m_threadName.startsWith("mtnp-process-"));
+		assertTrue(internal.m_threadName.startsWith("mtnp-cpu-"));
+	}
+
+	@Test
+	public void testLimits() throws InterruptedException
+	{
+		PlotRenderingService service = new PlotRenderingService(2, 3, 64);
+		Counter external = new Counter();
+		Counter internal = new Counter();
+		List<DummyPlot> plots = new ArrayList<DummyPlot>();
+		for (int i = 0; i < 12; i++)
+		{
+			plots.add(new DummyPlot(true, external, 20));
+			plots.add(new DummyPlot(false, internal, 20));
+		}
+		List<RenderResult> results = service.renderAll(plots, ImageType.PNG, false);
+		service.shutdown();
+		assertEquals(2, external.m_max.get());
+		assertEquals(3, internal.m_max.get());
+		// Results come back in the order the plots were given
+		assertEquals(plots.size(), results.size());
+		for (int i = 0; i < plots.size(); i++)
+		{
+			assertSame(plots.get(i), results.get(i).getPlot());
+			assertNull(results.get(i).getError());
+			assertEquals(1, results.get(i).getImage().length);
+		}
+	}
+
+	@Test
+	public void testBackpressure() throws Exception
+	{
+		final PlotRenderingService service = new PlotRenderingService(4, 4, 2);
+		CountDownLatch gate = new CountDownLatch(1);
+		Future<RenderResult> f1 = service.submit(new DummyPlot(false, null, 0, gate), ImageType.PNG, false);
+		Future<RenderResult> f2 = service.submit(new DummyPlot(false, null, 0, gate), ImageType.PNG, false);
+		final AtomicBoolean submitted = new AtomicBoolean(false);
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread producer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					service.submit(new DummyPlot(false, null, 0), ImageType.PNG, false).get();
+					submitted.set(true);
+				}
+				catch (Exception e)
+				{
+					// Leaves the flag unset
+				}
+				done.countDown();
+			}
+		};
+		producer.start();
+		// Two plots are pending: the third submission must wait
+		assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+		assertFalse(submitted.get());
+		gate.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(submitted.get());
+		assertNull(f1.get().getError());
+		assertNull(f2.get().getError());
+		service.shutdown();
+	}
+
+	@Test
+	public void testTimes() throws Exception
+	{
+		PlotRenderingService service = new PlotRenderingService(1, 1, 8);
+		Future<RenderResult> slow = service.submit(new DummyPlot(false, null, 100), ImageType.PNG, false);
+		Future<RenderResult> fast = service.submit(new DummyPlot(false, null, 0), ImageType.PNG, false);
+		RenderResult r_slow = slow.get();
+		RenderResult r_fast = fast.get();
+		service.shutdown();
+		long ms = TimeUnit.MILLISECONDS.toNanos(1);
+		assertTrue(r_slow.getRenderTime() >= 90 * ms);
+		// The second plot waits for the single thread to finish the first
+		assertTrue(r_fast.getWaitTime() >= 90 * ms);
+		assertTrue(r_fast.getRenderTime() < r_slow.getRenderTime());
+		assertEquals(r_fast.getWaitTime() + r_fast.getRenderTime(), r_fast.getLatency());
+	}
+
+	@Test
+	public void testError() throws Exception
+	{
+		PlotRenderingService service = new PlotRenderingService(1, 1, 1);
+		Plot plot = new Plot()
+		{
+			@Override
+			public byte[] getImage(ImageType type, boolean with_caption)
+			{
+				throw new IllegalStateException("boom");
+			}
+		};
+		RenderResult r = service.submit(plot, ImageType.PNG, false).get();
+		assertNull(r.getImage());
+		assertTrue(r.getError() instanceof IllegalStateException);
+		// The permit of the failed plot was given back
+		r = service.submit(new DummyPlot(false, null, 0), ImageType.PNG, false).get();
+		assertNull(r.getError());
+		service.shutdown();
+	}
+
+	/**
+	 * Keeps track of the number of plots being drawn at the same time
+	 */
+	protected static class Counter
+	{
+		protected final AtomicInteger m_running = new AtomicInteger();
+
+		protected final AtomicInteger m_max = new AtomicInteger();
+
+		public void start()
+		{
+			int running = m_running.incrementAndGet();
+			int max = m_max.get();
+			while (running > max && !m_max.compareAndSet(max, running))
+			{
+				max = m_max.get();
+			}
+		}
+
+		public void stop()
+		{
+			m_running.decrementAndGet();
+		}
+	}
+
+	/**
+	 * A plot that takes some time to draw and records where it was drawn
+	 */
+	protected static class DummyPlot extends Plot
+	{
+		protected final boolean m_external;
+
+		protected final Counter m_counter;
+
+		protected final long m_duration;
+
+		protected final CountDownLatch m_gate;
+
+		protected volatile String m_threadName;
+
+		public DummyPlot(boolean external, Counter counter, long duration)
+		{
+			this(external, counter, duration, null);
+		}
+
+		public DummyPlot(boolean external, Counter counter, long duration, CountDownLatch gate)
+		{
+			super();
+			m_external = external;
+			m_counter = counter;
+			m_duration = duration;
+			m_gate = gate;
+		}
+
+		@Override
+		public boolean isExternal()
+		{
+			return m_external;
+		}
+
+		@Override
+		public byte[] getImage(ImageType type, boolean with_caption)
+		{
+			m_threadName = Thread.currentThread().getName();
+			if (m_counter != null)
+			{
+				m_counter.start();
+			}
+			try
+			{
+				if (m_gate != null)
+				{
+					m_gate.await();
+				}
+				if (m_duration > 0)
+				{
+					Thread.sleep(m_duration);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				if (m_counter != null)
+				{
+					m_counter.stop();
+				}
+			}
+			return new byte[]{1};
+		}
+	}
+}
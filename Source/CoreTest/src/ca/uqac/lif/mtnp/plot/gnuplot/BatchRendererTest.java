@@ -0,0 +1,157 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot.gnuplot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.plot.Plot;
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+import ca.uqac.lif.mtnp.util.FileHelper;
+
+public class BatchRendererTest
+{
+	/**
+	 * A stand-in for Gnuplot. It writes the argument of each <tt>plot</tt>
+	 * line to the current output file, stops with an error on a line
+	 * starting with <tt>FAIL</tt>, and logs each of its launches.
+	 */
+	protected static final String FAKE_GNUPLOT = "#!/bin/sh\n"
+			+ "echo run >> \"$0.log\"\n"
+			+ "out=''\n"
+			+ "while IFS= read -r line; do\n"
+			+ "  line=$(printf '%s' \"$line\" | tr -d '\\r')\n"
+			+ "  case \"$line\" in\n"
+			+ "    \"set output '\"*) out=${line#set output \\'}; out=${out%\\'};;\n"
+			+ "    FAIL*) exit 1;;\n"
+			+ "    \"plot \"*) printf '%s' \"${line#plot }\" > \"$out\";;\n"
+			+ "  esac\n"
+			+ "done\n";
+
+	@Test
+	public void testImages() throws IOException
+	{
+		List<GnuPlot> plots = new ArrayList<GnuPlot>();
+		plots.add(new DummyPlot("plot A"));
+		plots.add(new DummyPlot("plot B"));
+		Map<Plot,byte[]> images = render(plots, 1);
+		assertEquals(2, images.size());
+		assertEquals("A", new String(images.get(plots.get(0))));
+		assertEquals("B", new String(images.get(plots.get(1))));
+	}
+
+	@Test
+	public void testErrors() throws IOException
+	{
+		List<GnuPlot> plots = new ArrayList<GnuPlot>();
+		plots.add(new DummyPlot("plot A"));
+		plots.add(new DummyPlot("FAIL"));
+		plots.add(new DummyPlot(null));
+		plots.add(new DummyPlot("plot D"));
+		// The failure stops the first launch; a second one draws the rest
+		Map<Plot,byte[]> images = render(plots, 2);
+		assertEquals(4, images.size());
+		assertEquals("A", new String(images.get(plots.get(0))));
+		assertArrayEquals(Plot.getBlankImage(ImageType.PNG), images.get(plots.get(1)));
+		assertArrayEquals(Plot.getBlankImage(ImageType.PNG), images.get(plots.get(2)));
+		assertEquals("D", new String(images.get(plots.get(3))));
+		// The map follows the order of the plots
+		int i = 0;
+		for (Plot p : images.keySet())
+		{
+			assertSame(plots.get(i++), p);
+		}
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		assertTrue(new BatchRenderer(new ArrayList<GnuPlot>()).getImages(ImageType.PNG, false).isEmpty());
+	}
+
+	/**
+	 * Renders plots with the fake Gnuplot
+	 * @param plots The plots
+	 * @param launches The number of times Gnuplot is expected to be launched
+	 * @return The images
+	 */
+	protected static Map<Plot,byte[]> render(List<GnuPlot> plots, int launches) throws IOException
+	{
+		File script = File.createTempFile("mtnp", ".sh");
+		File log = new File(script.getAbsolutePath() + ".log");
+		FileHelper.writeFromString(script, FAKE_GNUPLOT);
+		script.setExecutable(true);
+		long old_interval = GnuPlot.s_waitInterval;
+		try
+		{
+			System.setProperty(GnuplotBackend.PATH_PROPERTY, script.getAbsolutePath());
+			System.setProperty(GnuplotBackend.VERSION_PROPERTY, "fake");
+			System.setProperty(GnuplotBackend.TERMINALS_PROPERTY, "png");
+			// Also makes the plots launch the script
+			GnuplotBackend.reset();
+			GnuPlot.s_waitInterval = 10;
+			Map<Plot,byte[]> images = new BatchRenderer(plots).getImages(ImageType.PNG, false);
+			assertEquals(launches, FileHelper.readToString(log).split("\n").length);
+			return images;
+		}
+		finally
+		{
+			System.clearProperty(GnuplotBackend.PATH_PROPERTY);
+			System.clearProperty(GnuplotBackend.VERSION_PROPERTY);
+			System.clearProperty(GnuplotBackend.TERMINALS_PROPERTY);
+			GnuplotBackend.reset();
+			GnuPlot.s_waitInterval = old_interval;
+			script.delete();
+			log.delete();
+		}
+	}
+
+	/**
+	 * A plot whose instructions are a fixed line
+	 */
+	protected static class DummyPlot extends GnuPlot
+	{
+		/**
+		 * The line, or {@code null} to fail when producing the instructions
+		 */
+		protected final String m_line;
+
+		public DummyPlot(String line)
+		{
+			super();
+			m_line = line;
+		}
+
+		@Override
+		public String toGnuplot(ImageType term, String lab_title, boolean with_caption)
+		{
+			if (m_line == null)
+			{
+				throw new IllegalStateException("No instructions");
+			}
+			return m_line + "\n";
+		}
+	}
+}
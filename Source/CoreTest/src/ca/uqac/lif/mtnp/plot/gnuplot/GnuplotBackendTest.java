@@ -0,0 +1,66 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot.gnuplot;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+
+public class GnuplotBackendTest 
+{
+	@Test
+	public void testCairoTerminals()
+	{
+		Set<String> terminals = new HashSet<String>(Arrays.asList("dumb", "pngcairo", "pdfcairo"));
+		GnuplotBackend backend = new GnuplotBackend("gnuplot", "gnuplot 5.4", true, terminals);
+		assertTrue(backend.supportsTerminal(GnuPlot.getTerminalName(ImageType.PDF)));
+		assertTrue(backend.supportsTerminal(GnuPlot.getTerminalName(ImageType.PNG)));
+		assertTrue(backend.supportsTerminal(GnuPlot.getTerminalName(ImageType.DUMB)));
+		assertFalse(backend.supportsTerminal(GnuPlot.getTerminalName(ImageType.CACA)));
+	}
+
+	@Test
+	public void testAbsent()
+	{
+		GnuplotBackend backend = new GnuplotBackend("gnuplot", "none", false, new HashSet<String>());
+		assertFalse(backend.supportsTerminal("png"));
+	}
+
+	@Test
+	public void testResetPath()
+	{
+		try
+		{
+			System.setProperty(GnuplotBackend.PATH_PROPERTY, "/opt/gnuplot/bin/gnuplot");
+			GnuplotBackend.reset();
+			assertEquals("/opt/gnuplot/bin/gnuplot", GnuPlot.s_path);
+		}
+		finally
+		{
+			System.clearProperty(GnuplotBackend.PATH_PROPERTY);
+			GnuplotBackend.reset();
+		}
+		assertEquals("gnuplot", GnuPlot.s_path);
+	}
+}
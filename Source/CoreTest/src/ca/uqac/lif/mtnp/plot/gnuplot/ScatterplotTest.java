@@ -0,0 +1,67 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot.gnuplot;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+public class ScatterplotTest 
+{
+	@Test
+	public void testDownsampling()
+	{
+		HardTable table = new HardTable("x", "y");
+		for (int i = 0; i < 10000; i++)
+		{
+			TableEntry te = new TableEntry("x", i);
+			te.put("y", (i * 7919) % 1000);
+			table.add(te);
+		}
+		Scatterplot plot = new Scatterplot(table);
+		assertEquals(10000, countDataLines(plot.toGnuplot(ImageType.PNG, "", false, 200, 100)));
+		plot.withDownsampling(true);
+		int lines = countDataLines(plot.toGnuplot(ImageType.PNG, "", false, 200, 100));
+		assertTrue(lines > 100 && lines <= 200);
+		// The number of points follows the width of the image
+		lines = countDataLines(plot.toGnuplot(ImageType.PNG, "", false, 500, 100));
+		assertTrue(lines > 200 && lines <= 500);
+	}
+
+	/**
+	 * Counts the lines of data in a Gnuplot script
+	 * @param script The script
+	 * @return The number of lines starting with a digit
+	 */
+	protected static int countDataLines(String script)
+	{
+		int count = 0;
+		for (String line : script.split("\n"))
+		{
+			if (!line.isEmpty() && Character.isDigit(line.charAt(0)))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+}
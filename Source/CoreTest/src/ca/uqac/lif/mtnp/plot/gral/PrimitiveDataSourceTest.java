@@ -0,0 +1,155 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot.gral;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+public class PrimitiveDataSourceTest
+{
+	@Test
+	public void testFromTable()
+	{
+		PrimitiveDataSource source = PrimitiveDataSource.fromTable(getTable());
+		assertEquals(4, source.getColumnCount());
+		assertEquals(4, source.getRowCount());
+		assertEquals("y", source.getColumnName(1));
+		assertTrue(source.isColumnNumeric(0));
+		assertTrue(source.isColumnNumeric(1));
+		assertFalse(source.isColumnNumeric(3));
+		assertEquals(Double.class, source.getColumnTypes()[0]);
+		assertEquals(String.class, source.getColumnTypes()[3]);
+		assertEquals(2.5, source.getDouble(1, 0), 0);
+		assertEquals(2.5, ((Number) source.get(1, 0)).doubleValue(), 0);
+		// Undefined cells
+		assertNull(source.get(1, 1));
+		assertTrue(Double.isNaN(source.getDouble(1, 1)));
+		assertNull(source.get(2, 2));
+		// Non-numeric columns keep their values as objects
+		assertEquals("b", source.get(3, 1));
+		assertTrue(Double.isNaN(source.getDouble(3, 1)));
+	}
+
+	@Test
+	public void testDefinedView()
+	{
+		PrimitiveDataSource source = PrimitiveDataSource.fromTable(getTable());
+		PrimitiveDataSource view = source.getDefinedView("y", 0, 1);
+		assertEquals("y", view.getName());
+		assertEquals(2, view.getColumnCount());
+		assertEquals(3, view.getRowCount());
+		assertEquals("x", view.getColumnName(0));
+		// Row 1 has no "y" and is skipped
+		assertEquals(0, view.getDouble(0, 0), 0);
+		assertEquals(2, view.getDouble(0, 1), 0);
+		assertEquals(3, view.getDouble(0, 2), 0);
+		assertEquals(7, view.getDouble(1, 2), 0);
+		view = source.getDefinedView("z", 0, 2);
+		assertEquals(2, view.getRowCount());
+		assertEquals(1, view.getDouble(0, 0), 0);
+		assertEquals(-1, view.getDouble(1, 0), 0);
+		assertEquals(3, view.getDouble(0, 1), 0);
+		// The source itself is left untouched
+		assertEquals(4, source.getRowCount());
+	}
+
+	@Test
+	public void testViewOfView()
+	{
+		PrimitiveDataSource source = PrimitiveDataSource.fromTable(getTable());
+		PrimitiveDataSource view = source.getDefinedView("y", 1, 2);
+		assertEquals("y", view.getColumnName(0));
+		assertEquals("z", view.getColumnName(1));
+		// Column indices are relative to the view
+		PrimitiveDataSource inner = view.getDefinedView("z", 1);
+		assertEquals(1, inner.getColumnCount());
+		assertEquals("z", inner.getColumnName(0));
+		assertEquals(1, inner.getRowCount());
+		assertEquals(4, inner.getDouble(0, 0), 0);
+	}
+
+	@Test
+	public void testIterator()
+	{
+		PrimitiveDataSource view = PrimitiveDataSource.fromTable(getTable()).getDefinedView("v", 0, 1);
+		List<Double> values = new ArrayList<Double>();
+		Iterator<Comparable<?>> it = view.iterator();
+		while (it.hasNext())
+		{
+			values.add(((Number) it.next()).doubleValue());
+		}
+		// Values are enumerated row by row
+		assertEquals(6, values.size());
+		assertEquals(0d, values.get(0), 0);
+		assertEquals(2.5, values.get(1), 0);
+		assertEquals(2d, values.get(2), 0);
+		assertEquals(7d, values.get(5), 0);
+	}
+
+	@Test
+	public void testSomeColumns()
+	{
+		PrimitiveDataSource source = PrimitiveDataSource.fromTable(getTable(), "z", "x");
+		assertEquals(2, source.getColumnCount());
+		assertEquals("z", source.getColumnName(0));
+		assertEquals(2, source.getDefinedView("z", 0, 1).getRowCount());
+	}
+
+	/**
+	 * Creates a table where some cells are missing:
+	 * <pre>
+	 * x  y    z   label
+	 * 0  2.5  -   a
+	 * 1  -    -1  b
+	 * 2  5    -   c
+	 * 3  7    4   d
+	 * </pre>
+	 */
+	protected static HardTable getTable()
+	{
+		HardTable table = new HardTable("x", "y", "z", "label");
+		table.add(getEntry(0, 2.5f, null, "a"));
+		table.add(getEntry(1, null, -1, "b"));
+		table.add(getEntry(2, 5, null, "c"));
+		table.add(getEntry(3, 7, 4, "d"));
+		return table;
+	}
+
+	protected static TableEntry getEntry(int x, Number y, Number z, String label)
+	{
+		TableEntry te = new TableEntry("x", x);
+		if (y != null)
+		{
+			te.put("y", y);
+		}
+		if (z != null)
+		{
+			te.put("z", z);
+		}
+		te.put("label", label);
+		return te;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.plot.java2d;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.plot.Plot;
+import ca.uqac.lif.mtnp.plot.Plot.ImageType;
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+public class DensityPlotTest
+{
+	@Test
+	public void testGrid()
+	{
+		List<TableEntry> entries = new ArrayList<TableEntry>();
+		entries.add(getEntry(0, 0));
+		entries.add(getEntry(10, 10));
+		entries.add(getEntry(6, 1));
+		entries.add(getEntry(6, 1));
+		TableEntry no_y = new TableEntry("x", 3);
+		entries.add(no_y);
+		double[] bounds = DensityPlot.getBounds(entries, "x", "y");
+		assertEquals(0, bounds[0], 0);
+		assertEquals(10, bounds[1], 0);
+		assertEquals(0, bounds[2], 0);
+		assertEquals(10, bounds[3], 0);
+		int[] grid = DensityPlot.getGrid(entries, "x", "y", bounds, 2, 2);
+		// Rows start from the bottom; the maximum falls into the last pixel
+		assertEquals(1, grid[0]);
+		assertEquals(2, grid[1]);
+		assertEquals(0, grid[2]);
+		assertEquals(1, grid[3]);
+	}
+
+	@Test
+	public void testGridParts()
+	{
+		// Enough rows to be split across all processors
+		List<TableEntry> entries = new ArrayList<TableEntry>();
+		int num_rows = 10007;
+		for (int i = 0; i < num_rows; i++)
+		{
+			entries.add(getEntry(i % 10, i % 3));
+		}
+		double[] bounds = DensityPlot.getBounds(entries, "x", "y");
+		int[] grid = DensityPlot.getGrid(entries, "x", "y", bounds, 10, 3);
+		int total = 0;
+		for (int i = 0; i < grid.length; i++)
+		{
+			total += grid[i];
+		}
+		assertEquals(num_rows, total);
+		int[] expected = new int[10 * 3];
+		for (int i = 0; i < num_rows; i++)
+		{
+			int px = Math.min(9, (int) ((i % 10) / 9d * 10));
+			int py = Math.min(2, (int) ((i % 3) / 2d * 3));
+			expected[py * 10 + px]++;
+		}
+		for (int i = 0; i < grid.length; i++)
+		{
+			assertEquals(expected[i], grid[i]);
+		}
+	}
+
+	@Test
+	public void testPng() throws IOException
+	{
+		HardTable table = new HardTable("x", "y");
+		table.add(getEntry(0, 0));
+		table.add(getEntry(6, 1));
+		for (int i = 0; i < 3; i++)
+		{
+			table.add(getEntry(10, 10));
+		}
+		DensityPlot plot = new DensityPlot(table);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		plot.getImage(ImageType.PNG, false, 4, 4, bos);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+		assertEquals(4, image.getWidth());
+		assertEquals(4, image.getHeight());
+		int[] ramp = plot.getRamp();
+		int white = Color.WHITE.getRGB();
+		// The densest pixel is in the top right corner and gets the last color
+		assertEquals(ramp[ramp.length - 1], image.getRGB(3, 0));
+		// Pixels with a single point share a lighter color
+		int single = image.getRGB(0, 3);
+		assertTrue(single != white);
+		assertTrue(single != ramp[ramp.length - 1]);
+		assertEquals(single, image.getRGB(2, 3));
+		int colored = 0;
+		for (int x = 0; x < 4; x++)
+		{
+			for (int y = 0; y < 4; y++)
+			{
+				if (image.getRGB(x, y) != white)
+				{
+					colored++;
+				}
+			}
+		}
+		assertEquals(3, colored);
+	}
+
+	@Test
+	public void testOtherType() throws IOException
+	{
+		DensityPlot plot = new DensityPlot(new HardTable("x", "y"));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		plot.getImage(ImageType.PDF, false, 4, 4, bos);
+		assertArrayEquals(Plot.getBlankImage(ImageType.PDF), bos.toByteArray());
+	}
+
+	protected static TableEntry getEntry(int x, int y)
+	{
+		TableEntry te = new TableEntry("x", x);
+		te.put("y", y);
+		return te;
+	}
+}
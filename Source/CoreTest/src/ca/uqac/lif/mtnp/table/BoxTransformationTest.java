@@ -0,0 +1,83 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.util.KllSketch;
+
+public class BoxTransformationTest 
+{
+	@Test
+	public void testExact()
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		for (int i = 100; i > 0; i--)
+		{
+			TableEntry te = new TableEntry("A", i);
+			te.put("B", i % 2);
+			ht.add(te);
+		}
+		TransformedTable tt = new TransformedTable(new BoxTransformation(), ht);
+		List<TableEntry> entries = tt.getDataTable().getEntries();
+		// Column C has no value, and produces no row
+		assertEquals(2, entries.size());
+		TableEntry te = entries.get(0);
+		assertEquals(1, te.get("Min").numberValue().intValue());
+		assertEquals(25, te.get("Q1").numberValue().intValue());
+		assertEquals(50, te.get("Q2").numberValue().intValue());
+		assertEquals(75, te.get("Q3").numberValue().intValue());
+		assertEquals(100, te.get("Max").numberValue().intValue());
+		te = entries.get(1);
+		assertEquals(0, te.get("Q2").numberValue().intValue());
+		assertEquals(1, te.get("Q3").numberValue().intValue());
+	}
+	
+	@Test
+	public void testSketch()
+	{
+		Random r = new Random(0);
+		KllSketch s1 = new KllSketch(), s2 = new KllSketch();
+		int n = 200000;
+		for (int i = 0; i < n; i++)
+		{
+			float f = r.nextFloat();
+			if (i % 2 == 0)
+			{
+				s1.update(f);
+			}
+			else
+			{
+				s2.update(f);
+			}
+		}
+		s1.merge(s2);
+		assertEquals(n, s1.getCount());
+		assertTrue(s1.getRetainedCount() < 2000);
+		// Values are uniform in [0,1]: a quantile is close to its rank
+		for (double q = 0.1; q < 1; q += 0.1)
+		{
+			assertEquals(q, s1.getQuantile(q), 0.02);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class CompositionTest 
+{
+	@Test
+	public void testFused()
+	{
+		HardTable ht = new HardTable("x", "A", "B");
+		for (int i = 0; i < 50000; i++)
+		{
+			TableEntry te = new TableEntry();
+			te.put("x", i);
+			te.put("A", i * 2);
+			te.put("B", "b" + i);
+			ht.add(te);
+		}
+		FilterRows even = new FilterRows()
+		{
+			@Override
+			public boolean accept(TableEntry entry)
+			{
+				return entry.get("x").numberValue().intValue() % 2 == 0;
+			}
+		};
+		Composition comp = new Composition(new RemoveColumns("B"), even, new RenameColumns("u", "v"), new NumberFormatting("0.0"));
+		TempTable in = ht.getDataTable(true);
+		TempTable fused = comp.transform(in);
+		// Same transformations, applied one at a time
+		TempTable t = new RemoveColumns("B").transform(in);
+		t = even.transform(t);
+		t = new RenameColumns("u", "v").transform(t);
+		t = new NumberFormatting("0.0").transform(t);
+		assertArrayEquals(t.getColumnNames(), fused.getColumnNames());
+		List<TableEntry> expected = t.getEntries();
+		List<TableEntry> actual = fused.getEntries();
+		assertEquals(25000, actual.size());
+		assertEquals(expected, actual);
+		assertEquals(24, actual.get(6).get("v").numberValue().intValue());
+		assertEquals(3, actual.get(3).getRowIndex());
+		// Cells depend on the cells of the input table
+		assertNotNull(actual.get(3).getDependency("v"));
+	}
+
+	@Test
+	public void testFilterFirst()
+	{
+		HardTable ht = new HardTable("x", "A");
+		for (int i = 0; i < 10; i++)
+		{
+			TableEntry te = new TableEntry();
+			te.put("x", i);
+			te.put("A", i);
+			ht.add(te);
+		}
+		FilterRows small = new FilterRows()
+		{
+			@Override
+			public boolean accept(TableEntry entry)
+			{
+				return entry.get("x").numberValue().intValue() < 3;
+			}
+		};
+		Composition comp = new Composition(small, new Select("A"));
+		TempTable out = comp.transform(ht.getDataTable(true));
+		assertEquals(3, out.getEntries().size());
+		assertArrayEquals(new String[]{"A"}, out.getColumnNames());
+		assertFalse(out.getEntries().get(0).containsKey("x"));
+		// The input table is untouched
+		assertEquals(10, ht.getEntries().size());
+		assertEquals(9, ht.getEntries().get(9).getRowIndex());
+	}
+}
@@ -0,0 +1,140 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EvaluationContextTest 
+{
+	@Test
+	public void testComputedOnce()
+	{
+		for (int threads = 1; threads <= 2; threads++)
+		{
+			HardTable source = getSource();
+			CountingTransformation count = new CountingTransformation();
+			TransformedTable shared = new TransformedTable(count, source);
+			TransformedTable t1 = new TransformedTable(new Select("A"), shared);
+			TransformedTable t2 = new TransformedTable(new Select("B"), shared);
+			EvaluationContext ctx = new EvaluationContext(threads);
+			ctx.add(t1).add(t2);
+			ctx.refresh();
+			assertEquals(1, count.m_calls);
+			assertEquals(3, ctx.getEvaluationCount());
+			// The two selections read the shared table from the context
+			assertEquals(2, ctx.getHits());
+			ctx.enter();
+			try
+			{
+				TempTable a = t1.getDataTable();
+				TempTable b = shared.getDataTable();
+				assertEquals(1, count.m_calls);
+				assertEquals(4, ctx.getHits());
+				assertEquals(3, a.getRowCount());
+				// Each request gets its own copy
+				b.getEntries().get(0).put("A", 100);
+				assertEquals(0, shared.getDataTable().get(0, 0).numberValue().intValue());
+			}
+			finally
+			{
+				ctx.exit();
+			}
+			assertNull(EvaluationContext.current());
+			shared.getDataTable();
+			assertEquals(2, count.m_calls);
+		}
+	}
+
+	@Test
+	public void testNested()
+	{
+		EvaluationContext outer = new EvaluationContext();
+		EvaluationContext inner = new EvaluationContext();
+		outer.enter();
+		try
+		{
+			inner.enter();
+			try
+			{
+				assertSame(inner, EvaluationContext.current());
+			}
+			finally
+			{
+				inner.exit();
+			}
+			assertSame(outer, EvaluationContext.current());
+		}
+		finally
+		{
+			outer.exit();
+		}
+		assertNull(EvaluationContext.current());
+	}
+
+	@Test
+	public void testInterrupted()
+	{
+		CountingTransformation count = new CountingTransformation();
+		EvaluationContext ctx = new EvaluationContext();
+		ctx.add(new TransformedTable(count, getSource()));
+		Thread.currentThread().interrupt();
+		ctx.refresh();
+		// The interrupted status is kept, and nothing is computed
+		assertTrue(Thread.interrupted());
+		assertEquals(0, count.m_calls);
+		assertEquals(0, ctx.getEvaluationCount());
+	}
+
+	protected static HardTable getSource()
+	{
+		HardTable source = new HardTable("A", "B");
+		for (int i = 0; i < 3; i++)
+		{
+			TableEntry te = new TableEntry("A", i);
+			te.put("B", i * 2);
+			source.add(te);
+		}
+		return source;
+	}
+
+	/**
+	 * A transformation that copies its input and counts how many times it
+	 * is applied
+	 */
+	protected static class CountingTransformation implements TableTransformation
+	{
+		int m_calls = 0;
+
+		@Override
+		public synchronized TempTable transform(TempTable ... tables)
+		{
+			m_calls++;
+			List<TableEntry> entries = new ArrayList<TableEntry>();
+			for (TableEntry te : tables[0].getEntries())
+			{
+				entries.add(new TableEntry(te));
+			}
+			return new TempTable(tables[0].getId(), entries, tables[0].getColumnNames());
+		}
+	}
+}
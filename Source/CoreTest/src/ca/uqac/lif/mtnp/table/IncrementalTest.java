@@ -0,0 +1,75 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class IncrementalTest 
+{
+	@Test
+	public void testRemovedRows()
+	{
+		HardTable input = getInput(0, 10);
+		TransformedTable sum = new TransformedTable(ColumnSum.get(), input).setIncremental(true);
+		assertSameSum(input, sum);
+		List<TableEntry> removed = new ArrayList<TableEntry>(input.getEntries().subList(0, 5));
+		input.removeAll(removed);
+		input.addAll(getInput(100, 5).getEntries());
+		assertEquals(10, input.getRowCount());
+		assertSameSum(input, sum);
+		input.addAll(getInput(200, 3).getEntries());
+		assertSameSum(input, sum);
+	}
+
+	@Test
+	public void testComputedInput()
+	{
+		HardTable input = getInput(0, 10);
+		TransformedTable select = new TransformedTable(new Select("A"), input);
+		TransformedTable sum = new TransformedTable(ColumnSum.get(), select).setIncremental(true);
+		assertSameSum(select, sum);
+		// Replace rows of the source without reducing their number
+		List<TableEntry> removed = new ArrayList<TableEntry>(input.getEntries().subList(0, 5));
+		input.removeAll(removed);
+		input.addAll(getInput(100, 5).getEntries());
+		assertSameSum(select, sum);
+	}
+
+	protected static void assertSameSum(Table input, TransformedTable sum)
+	{
+		TempTable full = ColumnSum.get().transform(input.getDataTable());
+		TempTable incremental = sum.getDataTable();
+		assertEquals(full.getRowCount(), incremental.getRowCount());
+		assertEquals(full.get(0, 0).numberValue().floatValue(), incremental.get(0, 0).numberValue().floatValue(), 0);
+	}
+
+	protected static HardTable getInput(int start, int num_rows)
+	{
+		HardTable table = new HardTable("A");
+		for (int i = 0; i < num_rows; i++)
+		{
+			table.add(new TableEntry("A", start + i));
+		}
+		return table;
+	}
+}
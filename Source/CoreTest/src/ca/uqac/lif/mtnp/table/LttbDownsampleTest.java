@@ -0,0 +1,105 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class LttbDownsampleTest 
+{
+	@Test
+	public void testDownsample()
+	{
+		double[] xs = new double[1000];
+		double[] ys = new double[1000];
+		for (int i = 0; i < xs.length; i++)
+		{
+			xs[i] = i;
+		}
+		// A single spike in an otherwise flat series
+		ys[500] = 100;
+		int[] kept = LttbDownsample.downsample(xs, ys, 50);
+		assertEquals(50, kept.length);
+		assertEquals(0, kept[0]);
+		assertEquals(999, kept[49]);
+		boolean has_spike = false;
+		for (int i = 0; i < kept.length; i++)
+		{
+			if (i > 0)
+			{
+				assertTrue(kept[i] > kept[i - 1]);
+			}
+			has_spike |= kept[i] == 500;
+		}
+		assertTrue(has_spike);
+	}
+	
+	@Test
+	public void testTable()
+	{
+		HardTable ht = new HardTable("x", "A", "B");
+		for (int i = 0; i < 100; i++)
+		{
+			TableEntry te = new TableEntry("x", i);
+			te.put("A", i % 2);
+			if (i % 10 == 0)
+			{
+				te.put("B", i);
+			}
+			ht.add(te);
+		}
+		TransformedTable tt = new TransformedTable(new LttbDownsample(20), ht);
+		TempTable ht_out = tt.getDataTable();
+		List<TableEntry> entries = ht_out.getEntries();
+		int count_a = 0, count_b = 0;
+		for (TableEntry te : entries)
+		{
+			assertNotNull(te.get("x"));
+			if (te.containsKey("A"))
+			{
+				count_a++;
+			}
+			if (te.containsKey("B"))
+			{
+				count_b++;
+			}
+		}
+		assertEquals(20, count_a);
+		// Series B only has 10 points, and is left unchanged
+		assertEquals(10, count_b);
+		// Each cell depends on the cell it was copied from
+		assertNotNull(ht_out.dependsOn(0, 1));
+	}
+	
+	@Test
+	public void testSmallTable()
+	{
+		HardTable ht = new HardTable("x", "A");
+		for (int i = 0; i < 10; i++)
+		{
+			TableEntry te = new TableEntry("x", i);
+			te.put("A", i);
+			ht.add(te);
+		}
+		TransformedTable tt = new TransformedTable(new LttbDownsample(20), ht);
+		assertEquals(10, tt.getDataTable().getRowCount());
+	}
+}
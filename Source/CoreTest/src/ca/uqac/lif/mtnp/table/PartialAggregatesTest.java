@@ -0,0 +1,189 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.GroupBy.Aggregate;
+
+/**
+ * Combines partial aggregates computed by separate processes, which
+ * stand for separate machines.
+ */
+public class PartialAggregatesTest 
+{
+	protected static final int NUM_ROWS = 5000;
+	
+	protected static final int NUM_WORKERS = 3;
+	
+	@Test
+	public void testProcesses() throws IOException, InterruptedException
+	{
+		List<List<byte[]>> parts = new ArrayList<List<byte[]>>();
+		for (int i = 0; i < 3; i++)
+		{
+			parts.add(new ArrayList<byte[]>());
+		}
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<Process> workers = new ArrayList<Process>();
+		for (int w = 0; w < NUM_WORKERS; w++)
+		{
+			ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), PartialAggregatesTest.class.getName(), Integer.toString(w));
+			pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+			workers.add(pb.start());
+		}
+		for (Process p : workers)
+		{
+			DataInputStream in = new DataInputStream(p.getInputStream());
+			for (int i = 0; i < 3; i++)
+			{
+				byte[] part = new byte[in.readInt()];
+				in.readFully(part);
+				parts.get(i).add(part);
+			}
+			assertEquals(0, p.waitFor());
+		}
+		IncrementalTransformation[] transformations = getTransformations();
+		HardTable all = getTable(-1);
+		for (int i = 0; i < transformations.length; i++)
+		{
+			TempTable expected = transformations[i].transform(all.getDataTable());
+			TempTable combined = PartialAggregates.combine(transformations[i], all.getColumnNames(), parts.get(i));
+			assertEquals(getRows(expected), getRows(combined));
+		}
+	}
+	
+	@Test
+	public void testSketches() throws IOException
+	{
+		BoxTransformation box = new BoxTransformation().setSketchSize(100);
+		HardTable all = getTable(-1);
+		MergeableState state = PartialAggregates.newState(box, all.getColumnNames());
+		for (int w = 0; w < NUM_WORKERS; w++)
+		{
+			MergeableState local = PartialAggregates.aggregate(box, getTable(w));
+			// Force the use of sketches, which only appear in large columns
+			for (BoxTransformation.ColumnValues values : ((BoxTransformation.BoxState) local).m_columns)
+			{
+				values.toSketch(100);
+			}
+			byte[] bytes = PartialAggregates.toBytes(local);
+			assertTrue(bytes.length < 4 * NUM_ROWS);
+			PartialAggregates.merge(state, bytes);
+		}
+		TableEntry te = state.getTable(all).getEntries().get(0);
+		assertEquals(0, te.get("Min").numberValue().intValue());
+		assertEquals(NUM_ROWS / 2, te.get("Q2").numberValue().floatValue(), NUM_ROWS / 20);
+		assertEquals(NUM_ROWS - 1, te.get("Max").numberValue().intValue());
+	}
+	
+	@Test
+	public void testIncompatible()
+	{
+		HardTable table = getTable(0);
+		byte[] bytes = PartialAggregates.toBytes(PartialAggregates.aggregate(ColumnSum.instance, table));
+		try
+		{
+			PartialAggregates.merge(PartialAggregates.newState(new GroupBy("g", Aggregate.SUM), table.getColumnNames()), bytes);
+			fail("A sum was merged into a grouping");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+	}
+	
+	/**
+	 * Computes the partial aggregates of a part of the table, and writes
+	 * them to the standard output
+	 * @param args The index of the part
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		HardTable table = getTable(Integer.parseInt(args[0]));
+		DataOutputStream out = new DataOutputStream(System.out);
+		for (IncrementalTransformation t : getTransformations())
+		{
+			byte[] bytes = PartialAggregates.toBytes(PartialAggregates.aggregate(t, table));
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.flush();
+	}
+	
+	protected static IncrementalTransformation[] getTransformations()
+	{
+		return new IncrementalTransformation[] {ColumnSum.instance, new BoxTransformation(), new GroupBy("g", Aggregate.AVERAGE)};
+	}
+	
+	/**
+	 * Gets the rows of the table handled by a worker
+	 * @param worker The index of the worker, or -1 for all the rows
+	 * @return The table
+	 */
+	protected static HardTable getTable(int worker)
+	{
+		HardTable table = new HardTable("g", "x", "y");
+		for (int i = 0; i < NUM_ROWS; i++)
+		{
+			if (worker >= 0 && i % NUM_WORKERS != worker)
+			{
+				continue;
+			}
+			TableEntry te = new TableEntry("g", "group" + ((i / 7) % 4));
+			te.put("x", (i * 31) % NUM_ROWS);
+			if (i % 5 != 0)
+			{
+				te.put("y", i % 10);
+			}
+			table.add(te);
+		}
+		return table;
+	}
+	
+	/**
+	 * Gets the rows of a table as strings, in sorted order
+	 * @param table The table
+	 * @return The rows
+	 */
+	protected static List<String> getRows(TempTable table)
+	{
+		List<String> rows = new ArrayList<String>();
+		for (TableEntry te : table.getEntries())
+		{
+			StringBuilder out = new StringBuilder();
+			for (String name : table.getColumnNames())
+			{
+				out.append(te.get(name)).append(",");
+			}
+			rows.add(out.toString());
+		}
+		Collections.sort(rows);
+		return rows;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.GroupBy.Aggregate;
+
+public class ResultCacheTest 
+{
+	@Test
+	public void testReload() throws IOException
+	{
+		File dir = File.createTempFile("mtnp", "");
+		dir.delete();
+		try
+		{
+			HardTable input = getInput(100);
+			TransformedTable tt = getTable(input, new ResultCache(dir));
+			TempTable expected = tt.getDataTable();
+			assertEquals(0, tt.getResultCache().getHits());
+			assertEquals(1, tt.getResultCache().getMisses());
+			// A new cache on the same directory, as after a restart
+			ResultCache cache = new ResultCache(dir);
+			TransformedTable tt2 = getTable(getInput(100), cache);
+			TempTable actual = tt2.getDataTable();
+			assertEquals(1, cache.getHits());
+			assertArrayEquals(expected.getColumnNames(), actual.getColumnNames());
+			assertEquals(expected.getEntries(), actual.getEntries());
+			// Different data or a different configuration is computed again
+			getTable(getInput(101), cache).getDataTable();
+			new TransformedTable(new GroupBy("a", Aggregate.MAX), input).setResultCache(cache).getDataTable();
+			assertEquals(1, cache.getHits());
+			assertEquals(2, cache.getMisses());
+		}
+		finally
+		{
+			new ResultCache(dir).clear();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testSizeBound() throws IOException
+	{
+		File dir = File.createTempFile("mtnp", "");
+		dir.delete();
+		try
+		{
+			ResultCache cache = new ResultCache(dir, 1);
+			getTable(getInput(10), cache).getDataTable();
+			getTable(getInput(20), cache).getDataTable();
+			// Only the last table is kept
+			getTable(getInput(10), cache).getDataTable();
+			assertEquals(0, cache.getHits());
+			getTable(getInput(10), cache).getDataTable();
+			assertEquals(1, cache.getHits());
+		}
+		finally
+		{
+			new ResultCache(dir).clear();
+			dir.delete();
+		}
+	}
+
+	protected static HardTable getInput(int size)
+	{
+		HardTable t = new HardTable("a", "b");
+		for (int i = 0; i < size; i++)
+		{
+			TableEntry te = new TableEntry("a", i % 7);
+			te.put("b", i);
+			t.add(te);
+		}
+		return t;
+	}
+
+	protected static TransformedTable getTable(HardTable input, ResultCache cache)
+	{
+		TransformedTable grouped = new TransformedTable(new GroupBy("a", Aggregate.SUM), input);
+		return new TransformedTable(new RenameColumns("x", "y"), grouped).setResultCache(cache);
+	}
+}
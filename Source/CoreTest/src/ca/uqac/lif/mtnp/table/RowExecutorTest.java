@@ -0,0 +1,126 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.petitpoucet.DirectValue;
+import ca.uqac.lif.petitpoucet.NodeFunction;
+
+/**
+ * Checks that processing the rows of a table in parallel chunks gives
+ * the same table as processing them one after the other.
+ */
+public class RowExecutorTest 
+{
+	@Test
+	public void testSmallTable()
+	{
+		// Smaller than the default chunk size; force several chunks
+		checkChunks(1000, 64);
+	}
+
+	@Test
+	public void testLargeTable()
+	{
+		checkChunks(RowExecutor.s_chunkSize * 3 + 17, RowExecutor.s_chunkSize);
+	}
+
+	protected static void checkChunks(int num_rows, int chunk_size)
+	{
+		TempTable input = getTable(num_rows);
+		RowTransformation remove = new RemoveColumns("B");
+		RowTransformation even = new FilterRows()
+		{
+			@Override
+			public boolean accept(TableEntry entry)
+			{
+				return entry.get("A").numberValue().intValue() % 2 == 0;
+			}
+		};
+		int old_size = RowExecutor.s_chunkSize;
+		TempTable seq_remove, par_remove, seq_even, par_even;
+		try
+		{
+			RowExecutor.s_chunkSize = Integer.MAX_VALUE;
+			seq_remove = RowExecutor.transform(remove, input);
+			seq_even = RowExecutor.transform(even, input);
+			RowExecutor.s_chunkSize = chunk_size;
+			par_remove = RowExecutor.transform(remove, input);
+			par_even = RowExecutor.transform(even, input);
+		}
+		finally
+		{
+			RowExecutor.s_chunkSize = old_size;
+		}
+		assertSameRows(seq_remove, par_remove);
+		assertSameRows(seq_even, par_even);
+		assertEquals(num_rows, par_remove.getRowCount());
+		assertEquals((num_rows + 1) / 2, par_even.getRowCount());
+		List<TableEntry> entries = par_remove.getEntries();
+		for (int i = 0; i < entries.size(); i++)
+		{
+			// Rows keep their order, and each cell points to its source cell
+			TableEntry te = entries.get(i);
+			assertEquals(i, te.getRowIndex());
+			assertEquals(i, te.get("A").numberValue().intValue());
+			assertSource(te.getDependency("A"), input, i, 0);
+			assertSource(te.getDependency("C"), input, i, 2);
+		}
+		entries = par_even.getEntries();
+		for (int i = 0; i < entries.size(); i++)
+		{
+			assertEquals(i, entries.get(i).getRowIndex());
+			assertEquals(2 * i, entries.get(i).get("A").numberValue().intValue());
+		}
+	}
+
+	protected static void assertSameRows(TempTable expected, TempTable actual)
+	{
+		assertArrayEquals(expected.getColumnNames(), actual.getColumnNames());
+		assertEquals(expected.getEntries(), actual.getEntries());
+	}
+
+	protected static void assertSource(NodeFunction nf, Table input, int row, int col)
+	{
+		assertTrue(nf instanceof DirectValue);
+		List<NodeFunction> nodes = ((DirectValue) nf).getDependencyNodes();
+		assertEquals(1, nodes.size());
+		TableCellNode cell = (TableCellNode) nodes.get(0);
+		assertEquals(row, cell.getRow());
+		assertEquals(col, cell.getCol());
+		assertEquals(input.getId(), cell.getOwner().getId());
+	}
+
+	protected static TempTable getTable(int num_rows)
+	{
+		TempTable table = new TempTable(1, "A", "B", "C");
+		for (int i = 0; i < num_rows; i++)
+		{
+			TableEntry te = new TableEntry("A", i);
+			te.put("B", "b" + (i % 7));
+			te.put("C", i * 0.5f);
+			table.add(te);
+		}
+		return table;
+	}
+}
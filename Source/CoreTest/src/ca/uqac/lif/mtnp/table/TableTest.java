@@ -2,6 +2,8 @@ package ca.uqac.lif.mtnp.table;
 
 import static org.junit.Assert.*;
 
+import java.util.Scanner;
+
 import org.junit.Test;
 
 import ca.uqac.lif.mtnp.DataFormatter;
@@ -32,4 +34,39 @@ public class TableTest
 		assertEquals("1,3,4", lines[1]);
 		assertEquals("2,3,6", lines[2]);
 	}
+
+	@Test
+	public void testFingerprintDelimiters()
+	{
+		HardTable t1 = new HardTable("A", "B");
+		TableEntry te1 = new TableEntry("A", "a\tsb");
+		te1.put("B", "c");
+		t1.add(te1);
+		HardTable t2 = new HardTable("A", "B");
+		TableEntry te2 = new TableEntry("A", "a");
+		te2.put("B", "b\tsc");
+		t2.add(te2);
+		assertFalse(t1.getFingerprint().equals(t2.getFingerprint()));
+		HardTable t3 = new HardTable("A", "B");
+		TableEntry te3 = new TableEntry("A", "a\tsb");
+		te3.put("B", "c");
+		t3.add(te3);
+		assertEquals(t1.getFingerprint(), t3.getFingerprint());
+		// Column names with delimiters
+		assertFalse(new HardTable("A\tB", "C").getFingerprint().equals(new HardTable("A", "B\tC").getFingerprint()));
+	}
+
+	@Test
+	public void testReadScanner()
+	{
+		String csv = "# A comment\n A , B,C\n1,2.5,\"foo\"\n\n-3, 4 ,bar,extra\r\n5,,\n  # Another\n007,NaN,1e3 ";
+		// The single-character separator goes through CsvReader, the regular
+		// expression through String.split
+		HardTable fast = HardTable.read(new Scanner(csv), ",");
+		HardTable split = HardTable.read(new Scanner(csv), "[,]");
+		assertArrayEquals(split.getColumnNames(), fast.getColumnNames());
+		assertEquals(split.getEntries(), fast.getEntries());
+		assertEquals("\"foo\"", fast.getEntries().get(0).get("C").stringValue());
+		assertNull(HardTable.read(new Scanner("# Nothing\n"), ","));
+	}
 }
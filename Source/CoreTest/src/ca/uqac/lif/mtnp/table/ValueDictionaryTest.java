@@ -0,0 +1,97 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ValueDictionaryTest 
+{
+	@Test
+	public void testCodes()
+	{
+		ValueDictionary d = new ValueDictionary();
+		PrimitiveValue b = d.encode("b");
+		PrimitiveValue a = d.encode("a");
+		assertSame(b, d.encode(PrimitiveValue.getInstance("b")));
+		assertEquals(0, b.getCode());
+		assertEquals(1, a.getCode());
+		assertEquals(2, d.size());
+		assertTrue(a.compareTo(b) < 0);
+		assertTrue(d.encode("c").compareTo(b) > 0);
+		// Values from elsewhere are compared by their strings
+		assertEquals(PrimitiveValue.getInstance("a"), a);
+		assertEquals(a, PrimitiveValue.getInstance("a"));
+		assertEquals(PrimitiveValue.getInstance("a").hashCode(), a.hashCode());
+		// Numbers are not encoded
+		assertEquals(-1, d.encode(PrimitiveValue.getInstance(3)).getCode());
+	}
+
+	@Test
+	public void testSameResults()
+	{
+		HardTable plain = getTable();
+		HardTable encoded = getTable();
+		assertEquals(2, encoded.encodeStrings(ValueDictionary.DEFAULT_LIMIT));
+		assertNotNull(encoded.getEntries().get(0).get("Algorithm").getDictionary());
+		assertNull(encoded.getEntries().get(0).get("Time").getDictionary());
+		assertEquals(plain.toCsv(), encoded.toCsv());
+		assertSameEntries(new SortRows().transform(new TempTable(0, plain.getEntries(), plain.getColumnNames())),
+				new SortRows().transform(new TempTable(0, encoded.getEntries(), encoded.getColumnNames())));
+		TempTable g_plain = new GroupInColumns("Algorithm", "Time").transform(new TempTable(0, plain.getEntries(), plain.getColumnNames()));
+		TempTable g_encoded = new GroupInColumns("Algorithm", "Time").transform(new TempTable(0, encoded.getEntries(), encoded.getColumnNames()));
+		assertArrayEquals(g_plain.getColumnNames(), g_encoded.getColumnNames());
+		assertSameEntries(g_plain, g_encoded);
+		TempTable e_plain = new ExpandAsColumns("Dataset", "Time").transform(new TempTable(0, plain.getEntries(), plain.getColumnNames()));
+		TempTable e_encoded = new ExpandAsColumns("Dataset", "Time").transform(new TempTable(0, encoded.getEntries(), encoded.getColumnNames()));
+		assertEquals(e_plain.toCsv(), e_encoded.toCsv());
+	}
+
+	@Test
+	public void testLimit()
+	{
+		HardTable t = getTable();
+		assertFalse(t.encodeColumn("Algorithm", new ValueDictionary(), 2));
+		assertFalse(t.encodeColumn("Time", new ValueDictionary(), 100));
+		assertTrue(t.encodeColumn("Algorithm", new ValueDictionary(), 3));
+	}
+
+	protected static HardTable getTable()
+	{
+		HardTable t = new HardTable("Algorithm", "Dataset", "Time");
+		String[] algorithms = {"quick", "merge", "heap"};
+		for (int i = 0; i < 60; i++)
+		{
+			TableEntry te = new TableEntry("Algorithm", algorithms[(i * 7) % 3]);
+			te.put("Dataset", "d" + (i % 4));
+			te.put("Time", i);
+			t.add(te);
+		}
+		return t;
+	}
+
+	protected static void assertSameEntries(HardTable expected, HardTable actual)
+	{
+		assertEquals(expected.getRowCount(), actual.getRowCount());
+		for (int i = 0; i < expected.getRowCount(); i++)
+		{
+			assertEquals(expected.getEntries().get(i), actual.getEntries().get(i));
+		}
+	}
+}
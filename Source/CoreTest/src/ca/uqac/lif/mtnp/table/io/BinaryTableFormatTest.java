@@ -0,0 +1,89 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+public class BinaryTableFormatTest 
+{
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		HardTable table = new HardTable("Int", "Float", "String", "Mixed");
+		for (int i = 0; i < 1000; i++)
+		{
+			TableEntry te = new TableEntry("Int", i);
+			te.put("Float", i / 3f);
+			// Looks like a number, but is a string
+			te.put("String", PrimitiveValue.getStringInstance(Integer.toString(i % 5)));
+			if (i % 3 == 0)
+			{
+				te.put("Mixed", "x");
+			}
+			else if (i % 3 == 1)
+			{
+				te.put("Mixed", (long) i);
+			}
+			table.add(te);
+		}
+		table.setTitle("Results");
+		for (boolean compressed : new boolean[] {false, true})
+		{
+			File f = File.createTempFile("mtnp", ".bin");
+			try
+			{
+				new BinaryTableFormat().setCompressed(compressed).write(table, f);
+				HardTable loaded = new BinaryTableFormat().read(f);
+				assertEquals("Results", loaded.getTitle());
+				assertArrayEquals(table.getColumnNames(), loaded.getColumnNames());
+				assertEquals(table.getRowCount(), loaded.getRowCount());
+				for (int i = 0; i < table.getRowCount(); i++)
+				{
+					TableEntry expected = table.getEntries().get(i);
+					TableEntry actual = loaded.getEntries().get(i);
+					assertEquals(expected, actual);
+					for (String name : table.getColumnNames())
+					{
+						PrimitiveValue v = actual.get(name);
+						if (v != null)
+						{
+							assertEquals(expected.get(name).isNumeric(), v.isNumeric());
+							if (v.isNumeric())
+							{
+								assertEquals(expected.get(name).numberValue().getClass(), v.numberValue().getClass());
+							}
+						}
+					}
+				}
+			}
+			finally
+			{
+				f.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+
+public class CsvDirectoryLoaderTest 
+{
+	@Test
+	public void testReconcileColumns() throws IOException
+	{
+		File dir = File.createTempFile("mtnp", "");
+		dir.delete();
+		dir.mkdir();
+		File f1 = new File(dir, "run1.csv");
+		File f2 = new File(dir, "run2.csv");
+		File f3 = new File(dir, "notes.txt");
+		try
+		{
+			CsvFollowerTest.write(f1, "A,B\n1,2\n3,4\n", false);
+			// Columns in another order, one missing and one new
+			CsvFollowerTest.write(f2, "C,A\nx,5\n", false);
+			CsvFollowerTest.write(f3, "Z\n0\n", false);
+			HardTable table = new CsvDirectoryLoader().setSourceColumn("file").read(dir, "*.csv");
+			assertArrayEquals(new String[]{"file", "A", "B", "C"}, table.getColumnNames());
+			assertEquals(3, table.getRowCount());
+			assertEquals("run1.csv", table.get(0, 0).stringValue());
+			assertEquals("run1.csv", table.get(0, 1).stringValue());
+			assertEquals("run2.csv", table.get(0, 2).stringValue());
+			assertEquals(1, table.get(1, 0).numberValue().intValue());
+			assertEquals(4, table.get(2, 1).numberValue().intValue());
+			assertEquals(5, table.get(1, 2).numberValue().intValue());
+			assertEquals("x", table.get(3, 2).stringValue());
+			// Cells of columns a file does not have are missing
+			assertNull(table.get(3, 0));
+			assertNull(table.get(2, 2));
+			String[] lines = table.toCsv().split("\\r?\\n");
+			assertEquals("file,A,B,C", lines[0]);
+			assertEquals("run1.csv,1,2,?", lines[1]);
+			assertEquals("run2.csv,5,?,x", lines[3]);
+			// The pattern is a glob, not a regular expression
+			table = new CsvDirectoryLoader().read(dir, "run1.*");
+			assertEquals(2, table.getRowCount());
+			table = new CsvDirectoryLoader().read(dir, "*.{csv,txt}");
+			assertArrayEquals(new String[]{"Z", "A", "B", "C"}, table.getColumnNames());
+			assertEquals(0, new CsvDirectoryLoader().read(dir, ".*\\.csv").getRowCount());
+		}
+		finally
+		{
+			f1.delete();
+			f2.delete();
+			f3.delete();
+			dir.delete();
+		}
+	}
+}
@@ -0,0 +1,263 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.ColumnSum;
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.table.TransformedTable;
+
+public class CsvFollowerTest 
+{
+	@Test
+	public void testAppend() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".csv");
+		try
+		{
+			write(f, "A,B\n1,2\n3,4\n", false);
+			HardTable table = new HardTable("A", "B");
+			CsvFollower follower = new CsvFollower(f, table);
+			assertEquals(2, follower.poll());
+			assertEquals(0, follower.poll());
+			write(f, "5,6\n", true);
+			assertEquals(1, follower.poll());
+			assertEquals(3, table.getRowCount());
+			assertEquals(5, table.get(0, 2).numberValue().intValue());
+			assertEquals(6, table.get(1, 2).numberValue().intValue());
+			assertEquals(f.length(), follower.getOffset());
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testPartialLine() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".csv");
+		try
+		{
+			write(f, "A,B\n1,2\n3,", false);
+			HardTable table = new HardTable("A", "B");
+			CsvFollower follower = new CsvFollower(f, table);
+			assertEquals(1, follower.poll());
+			assertEquals(1, table.getRowCount());
+			write(f, "4", true);
+			assertEquals(0, follower.poll());
+			write(f, "5\n", true);
+			assertEquals(1, follower.poll());
+			assertEquals(2, table.getRowCount());
+			assertEquals(3, table.get(0, 1).numberValue().intValue());
+			assertEquals(45, table.get(1, 1).numberValue().intValue());
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testColumnsByName() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".csv");
+		try
+		{
+			write(f, "B,A\n1,2\n", false);
+			HardTable table = new HardTable("A", "B");
+			CsvFollower follower = new CsvFollower(f, table);
+			assertEquals(1, follower.poll());
+			assertEquals(2, table.get(0, 0).numberValue().intValue());
+			assertEquals(1, table.get(1, 0).numberValue().intValue());
+			write(f, "A,C\n", false);
+			try
+			{
+				follower.poll();
+				fail("Column C is not in the table");
+			}
+			catch (IOException e)
+			{
+				// Expected
+			}
+			// The rows of the previous file are gone, and none were added
+			assertEquals(0, table.getRowCount());
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testTruncate() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".csv");
+		try
+		{
+			HardTable table = new HardTable("A");
+			table.add(new TableEntry("A", 100));
+			TransformedTable sum = new TransformedTable(ColumnSum.get(), table).setIncremental(true);
+			write(f, "A\n1\n2\n3\n", false);
+			CsvFollower follower = new CsvFollower(f, table);
+			assertEquals(3, follower.poll());
+			assertEquals(106, sum.getDataTable().get(0, 0).numberValue().intValue());
+			write(f, "A\n7\n", false);
+			assertEquals(1, follower.poll());
+			// The row put in the table by the caller is kept
+			assertEquals(2, table.getRowCount());
+			assertEquals(100, table.get(0, 0).numberValue().intValue());
+			assertEquals(7, table.get(0, 1).numberValue().intValue());
+			assertEquals(1, table.getEntries().get(1).getRowIndex());
+			assertEquals(107, sum.getDataTable().get(0, 0).numberValue().intValue());
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testRotate() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".csv");
+		File f2 = new File(f.getPath() + ".new");
+		try
+		{
+			write(f, "A\n1\n2\n", false);
+			HardTable table = new HardTable("A");
+			TransformedTable sum = new TransformedTable(ColumnSum.get(), table).setIncremental(true);
+			CsvFollower follower = new CsvFollower(f, table);
+			assertEquals(2, follower.poll());
+			assertEquals(3, sum.getDataTable().get(0, 0).numberValue().intValue());
+			// Replace the file with a longer one, instead of truncating it
+			write(f2, "A\n10\n20\n30\n", false);
+			assertTrue(f2.renameTo(f));
+			assertEquals(3, follower.poll());
+			assertEquals(3, table.getRowCount());
+			assertEquals(10, table.get(0, 0).numberValue().intValue());
+			// The table has more rows than before, but the incremental table
+			// still starts over
+			assertEquals(60, sum.getDataTable().get(0, 0).numberValue().intValue());
+		}
+		finally
+		{
+			f.delete();
+			f2.delete();
+		}
+	}
+
+	@Test
+	public void testTruncateRegrow() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".csv");
+		try
+		{
+			write(f, "A\n1\n2\n", false);
+			HardTable table = new HardTable("A");
+			TransformedTable sum = new TransformedTable(ColumnSum.get(), table).setIncremental(true);
+			CsvFollower follower = new CsvFollower(f, table);
+			assertEquals(2, follower.poll());
+			assertEquals(3, sum.getDataTable().get(0, 0).numberValue().intValue());
+			// Truncate the same file and write it past its former length
+			// before the next poll
+			write(f, "A\n10\n20\n30\n", false);
+			assertEquals(3, follower.poll());
+			assertEquals(3, table.getRowCount());
+			assertEquals(10, table.get(0, 0).numberValue().intValue());
+			assertEquals(60, sum.getDataTable().get(0, 0).numberValue().intValue());
+			// Appending to the rewritten file is read as usual
+			write(f, "40\n", true);
+			assertEquals(1, follower.poll());
+			assertEquals(100, sum.getDataTable().get(0, 0).numberValue().intValue());
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testConcurrentIncremental() throws Exception
+	{
+		final File f = File.createTempFile("mtnp", ".csv");
+		try
+		{
+			write(f, "A\n", false);
+			HardTable table = new HardTable("A");
+			final CsvFollower follower = new CsvFollower(f, table);
+			TransformedTable sum = new TransformedTable(ColumnSum.get(), table).setIncremental(true);
+			final int batches = 200;
+			final Exception[] error = new Exception[1];
+			Thread writer = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						for (int i = 0; i < batches; i++)
+						{
+							write(f, "1\n1\n1\n1\n1\n", true);
+							follower.poll();
+						}
+					}
+					catch (IOException e)
+					{
+						error[0] = e;
+					}
+				}
+			});
+			writer.start();
+			while (writer.isAlive())
+			{
+				sum.getDataTable();
+			}
+			writer.join();
+			assertNull(error[0]);
+			assertEquals(batches * 5, table.getRowCount());
+			assertEquals(batches * 5, sum.getDataTable().get(0, 0).numberValue().intValue());
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	protected static void write(File f, String contents, boolean append) throws IOException
+	{
+		OutputStream os = new FileOutputStream(f, append);
+		try
+		{
+			os.write(contents.getBytes("UTF-8"));
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+}
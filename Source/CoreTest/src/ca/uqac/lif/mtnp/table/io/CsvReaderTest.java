@@ -0,0 +1,100 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+public class CsvReaderTest 
+{
+	@Test
+	public void testSameAsScanner() throws IOException
+	{
+		String csv = "# A comment\n A , B,C\n1,2.5,foo\n\n-3, 4 ,bar,extra\r\n5,,\n  # Another\n007,NaN,1e3";
+		HardTable expected = HardTable.read(new Scanner(csv), ",");
+		HardTable actual = read(new CsvReader(), csv);
+		assertArrayEquals(expected.getColumnNames(), actual.getColumnNames());
+		List<TableEntry> e_entries = expected.getEntries();
+		List<TableEntry> a_entries = actual.getEntries();
+		assertEquals(e_entries.size(), a_entries.size());
+		for (int i = 0; i < e_entries.size(); i++)
+		{
+			assertEquals(e_entries.get(i), a_entries.get(i));
+			assertEquals(i, a_entries.get(i).getRowIndex());
+		}
+		// " 4 " is not an integer, but Float.parseFloat accepts it
+		assertEquals(4f, a_entries.get(1).get("B").numberValue());
+		assertEquals(7, a_entries.get(3).get("A").numberValue());
+	}
+	
+	@Test
+	public void testQuotes() throws IOException
+	{
+		String csv = "A;B\n\"x;\"\"y\"\"\";\"two\nlines\"\r\n \"12\" ;'a\\;b'";
+		HardTable table = read(new CsvReader(';').setEscape('\\').setTrimValues(true), csv);
+		List<TableEntry> entries = table.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals("x;\"y\"", entries.get(0).get("A").stringValue());
+		assertEquals("two\nlines", entries.get(0).get("B").stringValue());
+		// A quoted value stays a string, even if it looks like a number
+		assertEquals("12", entries.get(1).get("A").stringValue());
+		assertFalse(entries.get(1).get("A").isNumeric());
+		assertEquals("'a;b'", entries.get(1).get("B").stringValue());
+	}
+
+	@Test
+	public void testQuotedNumbers() throws IOException
+	{
+		HardTable table = read(new CsvReader(), "A,B,C\n\"007\",\"1e3\",007\n");
+		TableEntry te = table.getEntries().get(0);
+		assertEquals("007", te.get("A").stringValue());
+		assertFalse(te.get("A").isNumeric());
+		assertEquals("1e3", te.get("B").stringValue());
+		assertFalse(te.get("B").isNumeric());
+		assertEquals(7, te.get("C").numberValue());
+	}
+	
+	@Test
+	public void testLongRecord() throws IOException
+	{
+		// A record larger than the buffer of the reader
+		StringBuilder csv = new StringBuilder("A,B\n\"");
+		for (int i = 0; i < 100000; i++)
+		{
+			csv.append("abcdefghij");
+		}
+		csv.append("\",1\n");
+		HardTable table = read(new CsvReader(), csv.toString());
+		assertEquals(1000000, table.getEntries().get(0).get("A").stringValue().length());
+		assertEquals(1, table.getEntries().get(0).get("B").numberValue());
+	}
+	
+	protected static HardTable read(CsvReader reader, String csv) throws IOException
+	{
+		return reader.read(new ByteArrayInputStream(csv.getBytes("UTF-8")));
+	}
+}
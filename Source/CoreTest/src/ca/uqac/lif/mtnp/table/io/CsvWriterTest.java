@@ -0,0 +1,142 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+public class CsvWriterTest 
+{
+	@Test
+	public void testQuotes() throws IOException
+	{
+		HardTable table = new HardTable("A", "B");
+		TableEntry te = new TableEntry("A", "#x");
+		te.put("B", "a,\"b\"");
+		table.add(te);
+		table.add(new TableEntry("A", 3));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		new CsvWriter().write(table, bos);
+		assertEquals("A,B\n\"#x\",\"a,\"\"b\"\"\"\n3,\n", bos.toString("UTF-8"));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		String[] strings = {" lead", "trail ", " both ", "007", "1e3", "-5", "NaN", "", "Infinity", "a b", "#c"};
+		HardTable table = new HardTable("A", "B", "C");
+		for (String s : strings)
+		{
+			// Keep the strings that look like numbers as strings
+			PrimitiveValue v = PrimitiveValue.getStringInstance(s);
+			TableEntry te = new TableEntry("A", v);
+			te.put("B", v);
+			te.put("C", v);
+			table.add(te);
+		}
+		TableEntry te = new TableEntry("A", 7);
+		te.put("B", 2.5f);
+		table.add(te);
+		// A row where every value is missing
+		table.add(new TableEntry());
+		HardTable loaded = roundTrip(table);
+		MappedCsvLoaderTest.assertSameTable(table, loaded);
+		for (int i = 0; i < strings.length; i++)
+		{
+			for (String col : table.getColumnNames())
+			{
+				assertFalse(loaded.getEntries().get(i).get(col).isNumeric());
+				assertEquals(strings[i], loaded.getEntries().get(i).get(col).stringValue());
+			}
+		}
+		assertTrue(loaded.getEntries().get(strings.length).get("A").isNumeric());
+		assertNull(loaded.getEntries().get(strings.length).get("C"));
+		assertEquals(0, loaded.getEntries().get(strings.length + 1).size());
+	}
+
+	@Test
+	public void testMissingBeforeValue() throws IOException
+	{
+		HardTable table = new HardTable("A", "B", "C");
+		table.add(new TableEntry("C", " last"));
+		HardTable loaded = roundTrip(table);
+		// Only missing values at the end of a line are read back as missing
+		TableEntry te = loaded.getEntries().get(0);
+		assertEquals("", te.get("A").stringValue());
+		assertEquals("", te.get("B").stringValue());
+		assertEquals(" last", te.get("C").stringValue());
+	}
+
+	@Test
+	public void testRoundTripOneColumn() throws IOException
+	{
+		HardTable table = new HardTable("A");
+		table.add(new TableEntry("A", 1));
+		table.add(new TableEntry());
+		table.add(new TableEntry());
+		table.add(new TableEntry("A", PrimitiveValue.getStringInstance("")));
+		table.add(new TableEntry("A", 2));
+		HardTable loaded = roundTrip(table);
+		assertEquals(5, loaded.getRowCount());
+		MappedCsvLoaderTest.assertSameTable(table, loaded);
+	}
+
+	protected static HardTable roundTrip(HardTable table) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		new CsvWriter().write(table, bos);
+		return new CsvReader().read(new ByteArrayInputStream(bos.toByteArray()));
+	}
+
+	@Test
+	public void testGzipRoundTrip() throws IOException
+	{
+		HardTable table = new HardTable("A", "B", "C");
+		for (int i = 0; i < 200000; i++)
+		{
+			TableEntry te = new TableEntry("A", i);
+			te.put("B", i / 4f);
+			te.put("C", "s" + (i % 13));
+			table.add(te);
+		}
+		File f = File.createTempFile("mtnp", ".csv.gz");
+		try
+		{
+			new CsvWriter().write(table, f);
+			assertTrue(GzipChannel.isCompressed(f));
+			HardTable loaded = new CsvReader().read(f);
+			MappedCsvLoaderTest.assertSameTable(table, loaded);
+			loaded = new MappedCsvLoader().read(f);
+			MappedCsvLoaderTest.assertSameTable(table, loaded);
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+}
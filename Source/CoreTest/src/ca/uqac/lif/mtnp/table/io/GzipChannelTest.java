@@ -0,0 +1,76 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class GzipChannelTest 
+{
+	@Test
+	public void testUncheckedFailure() throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		GZIPOutputStream gz = new GZIPOutputStream(bos);
+		gz.write(new byte[100000]);
+		gz.close();
+		// A stream that fails with an unchecked exception after a few bytes
+		FilterInputStream in = new FilterInputStream(new ByteArrayInputStream(bos.toByteArray()))
+		{
+			int m_count = 0;
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException
+			{
+				if (m_count > 20)
+				{
+					throw new IllegalStateException("Broken stream");
+				}
+				int n = super.read(b, off, Math.min(len, 10));
+				m_count += n;
+				return n;
+			}
+		};
+		GzipChannel channel = new GzipChannel(in);
+		ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+		try
+		{
+			while (channel.read(buf) >= 0)
+			{
+				buf.clear();
+			}
+			fail("The failure should be reported");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+}
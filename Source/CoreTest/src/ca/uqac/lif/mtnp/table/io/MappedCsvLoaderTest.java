@@ -0,0 +1,90 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+public class MappedCsvLoaderTest 
+{
+	@Test
+	public void testChunks() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".csv");
+		try
+		{
+			PrintWriter pw = new PrintWriter(f);
+			pw.println("# Results\nA,B,C");
+			for (int i = 0; i < 5000; i++)
+			{
+				pw.println(i + "," + (i * 0.5f) + ",run" + (i % 7));
+			}
+			pw.close();
+			assertSameTable(new CsvReader().read(f), new MappedCsvLoader().setChunkSize(4096).read(f));
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+	
+	@Test
+	public void testQuotedLineBreaks() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".csv");
+		try
+		{
+			PrintWriter pw = new PrintWriter(f);
+			pw.println("A,B");
+			for (int i = 0; i < 2000; i++)
+			{
+				pw.println(i + ",\"first\nsecond\"");
+			}
+			pw.close();
+			HardTable table = new MappedCsvLoader().setChunkSize(4096).read(f);
+			assertSameTable(new CsvReader().read(f), table);
+			assertEquals(2000, table.getRowCount());
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+	
+	protected static void assertSameTable(HardTable expected, HardTable actual)
+	{
+		assertArrayEquals(expected.getColumnNames(), actual.getColumnNames());
+		List<TableEntry> e_entries = expected.getEntries();
+		List<TableEntry> a_entries = actual.getEntries();
+		assertEquals(e_entries.size(), a_entries.size());
+		for (int i = 0; i < e_entries.size(); i++)
+		{
+			assertEquals(e_entries.get(i), a_entries.get(i));
+			assertEquals(i, a_entries.get(i).getRowIndex());
+		}
+	}
+}
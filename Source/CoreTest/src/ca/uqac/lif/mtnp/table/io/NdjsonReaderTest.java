@@ -0,0 +1,126 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+public class NdjsonReaderTest 
+{
+	@Test
+	public void testValues() throws IOException
+	{
+		String json = "{\"a\": 1, \"b\": \"x\\\"y\\u00e9\", \"c\": 2.5}\n"
+				+ "\n"
+				+ "{\"c\": 12345678901, \"a\": \"3\", \"d\": [1, {\"e\": \"]\"}], \"b\": null, \"f\": true}";
+		HardTable t = new NdjsonReader().read(getStream(json));
+		assertArrayEquals(new String[] {"a", "b", "c", "d", "f"}, t.getColumnNames());
+		assertEquals(2, t.getRowCount());
+		TableEntry te = t.getEntries().get(0);
+		assertEquals(1, te.get("a").numberValue());
+		assertEquals("x\"yé", te.get("b").stringValue());
+		assertEquals(2.5, te.get("c").numberValue());
+		te = t.getEntries().get(1);
+		assertTrue(te.get("a").isString());
+		assertEquals(12345678901L, te.get("c").numberValue());
+		assertEquals("[1, {\"e\": \"]\"}]", te.get("d").stringValue());
+		assertNull(te.get("b"));
+		assertEquals("true", te.get("f").stringValue());
+	}
+
+	@Test
+	public void testSchema() throws IOException
+	{
+		String json = "{\"a\": \"3\", \"b\": 4}\n{\"a\": \"n/a\", \"b\": 5}\n";
+		Schema s = new Schema().add("z", Schema.Type.INT).add("a", Schema.Type.LONG).add("b", Schema.Type.STRING);
+		HardTable t = new NdjsonReader().setSchema(s).read(getStream(json));
+		assertArrayEquals(new String[] {"z", "a", "b"}, t.getColumnNames());
+		assertEquals(3L, t.getEntries().get(0).get("a").numberValue());
+		assertTrue(t.getEntries().get(0).get("b").isString());
+		assertNull(t.getEntries().get(1).get("a"));
+		assertEquals(1, s.getFailures("a"));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		HardTable table = new HardTable("A", "B\"", "C");
+		for (int i = 0; i < 1000; i++)
+		{
+			TableEntry te = new TableEntry("A", i);
+			te.put("B\"", PrimitiveValue.getStringInstance("l\n" + (i % 7)));
+			if (i % 2 == 0)
+			{
+				te.put("C", i / 8d);
+			}
+			table.add(te);
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		new NdjsonWriter().write(table, bos);
+		HardTable loaded = new NdjsonReader().read(new ByteArrayInputStream(bos.toByteArray()));
+		MappedCsvLoaderTest.assertSameTable(table, loaded);
+	}
+
+	@Test
+	public void testInvalid()
+	{
+		try
+		{
+			new NdjsonReader().read(getStream("{\"a\": 1}\n{\"a\" 2}"));
+			fail("Invalid JSON was accepted");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage().startsWith("Line 2"));
+		}
+	}
+
+	@Test
+	public void testInvalidEscape() throws IOException
+	{
+		HardTable table = new NdjsonReader().read(getStream("{\"a\": \"x\\u00e9\\/\"}"));
+		assertEquals("x\u00e9/", table.get(0, 0).stringValue());
+		String[] lines = {"{\"a\": \"\\u00g9\"}", "{\"a\": \"\\u00\"}", "{\"a\\u12\": 1}", "{\"a\": \"\\q\"}"};
+		for (String line : lines)
+		{
+			try
+			{
+				new NdjsonReader().read(getStream("{\"a\": \"b\"}\n" + line));
+				fail("Invalid escape sequence was accepted in " + line);
+			}
+			catch (IOException e)
+			{
+				assertTrue(e.getMessage().startsWith("Line 2"));
+			}
+		}
+	}
+
+	protected static ByteArrayInputStream getStream(String s) throws IOException
+	{
+		return new ByteArrayInputStream(s.getBytes("UTF-8"));
+	}
+}
@@ -0,0 +1,124 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.table.io.Schema.Type;
+
+public class SchemaTest 
+{
+	@Test
+	public void testCsv() throws IOException
+	{
+		String csv = "n,x,label,time\n"
+				+ "1,2.5,007,2017-05-21T14:30:00.250+02:00\n"
+				+ "n/a,n/a,n/a,1969-12-31\n"
+				+ "3,oops,x,2000-02-29 23:59:59-05:30\n";
+		Schema s = new Schema().setMissing("n/a").add("n", Type.INT).add("x", Type.DOUBLE).add("label", Type.STRING).add("time", Type.TIMESTAMP);
+		HardTable t = new CsvReader().setSchema(s).read(new ByteArrayInputStream(csv.getBytes("UTF-8")));
+		TableEntry te = t.getEntries().get(0);
+		assertEquals(1, te.get("n").numberValue());
+		assertEquals(2.5, te.get("x").numberValue());
+		assertEquals("007", te.get("label").stringValue());
+		assertEquals(1495369800250L, te.get("time").numberValue());
+		te = t.getEntries().get(1);
+		assertNull(te.get("n"));
+		assertNull(te.get("x"));
+		assertNull(te.get("label"));
+		assertEquals(-86400000L, te.get("time").numberValue());
+		te = t.getEntries().get(2);
+		assertNull(te.get("x"));
+		assertEquals(951888599000L, te.get("time").numberValue());
+		assertEquals(1, s.getFailures("x"));
+		assertEquals(1, s.getFailures());
+	}
+
+	@Test
+	public void testIntegers()
+	{
+		assertEquals(Integer.MAX_VALUE, parse(Type.INT, "2147483647"));
+		assertEquals(Integer.MIN_VALUE, parse(Type.INT, "-2147483648"));
+		assertNull(parse(Type.INT, "2147483648"));
+		assertEquals(Long.MIN_VALUE, parse(Type.LONG, "-9223372036854775808"));
+		assertNull(parse(Type.LONG, "9223372036854775808"));
+		assertNull(parse(Type.LONG, "12a"));
+		assertNull(parse(Type.INT, "-"));
+	}
+
+	@Test
+	public void testDoubles()
+	{
+		Random r = new Random(0);
+		for (int i = 0; i < 10000; i++)
+		{
+			String s;
+			switch (i % 3)
+			{
+			case 0:
+				s = Double.toString(r.nextDouble() * Math.pow(10, r.nextInt(40) - 20));
+				break;
+			case 1:
+				s = Long.toString(r.nextLong() % 100000000) + "." + r.nextInt(100000);
+				break;
+			default:
+				s = Float.toString((float) r.nextGaussian());
+			}
+			assertEquals(s, Double.parseDouble(s), parse(Type.DOUBLE, s));
+		}
+		assertNull(parse(Type.DOUBLE, "1.2.3"));
+		assertNull(parse(Type.DOUBLE, "."));
+	}
+
+	@Test
+	public void testImpossibleDates() throws IOException
+	{
+		assertEquals(1456704000000L, parse(Type.TIMESTAMP, "2016-02-29"));
+		assertEquals(951782400000L, parse(Type.TIMESTAMP, "2000-02-29"));
+		assertEquals(1514678400000L, parse(Type.TIMESTAMP, "2017-12-31"));
+		assertEquals(1493510400000L, parse(Type.TIMESTAMP, "2017-04-30"));
+		assertNull(parse(Type.TIMESTAMP, "2017-02-29"));
+		assertNull(parse(Type.TIMESTAMP, "1900-02-29"));
+		assertNull(parse(Type.TIMESTAMP, "2017-04-31T10:00:00"));
+		assertNull(parse(Type.TIMESTAMP, "2017-06-31"));
+		assertNull(parse(Type.TIMESTAMP, "2017-02-31 12:00"));
+		// Impossible dates are counted as failures
+		String csv = "time\n2017-02-31\n2017-04-31\n2017-03-31\n";
+		Schema s = new Schema().add("time", Type.TIMESTAMP);
+		HardTable t = new CsvReader().setSchema(s).read(new ByteArrayInputStream(csv.getBytes("UTF-8")));
+		assertNull(t.getEntries().get(0).get("time"));
+		assertNull(t.getEntries().get(1).get("time"));
+		assertEquals(1490918400000L, t.getEntries().get(2).get("time").numberValue());
+		assertEquals(2, s.getFailures("time"));
+	}
+
+	protected static Number parse(Type type, String s)
+	{
+		PrimitiveValue v = new Schema().add("a", type).getColumn("a").parse(s);
+		return v == null ? null : v.numberValue();
+	}
+}
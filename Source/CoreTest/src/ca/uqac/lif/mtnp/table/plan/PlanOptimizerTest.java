@@ -0,0 +1,100 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.plan;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.Composition;
+import ca.uqac.lif.mtnp.table.ExpandAsColumns;
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.Join;
+import ca.uqac.lif.mtnp.table.RemoveColumns;
+import ca.uqac.lif.mtnp.table.Select;
+import ca.uqac.lif.mtnp.table.SortRows;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.table.TempTable;
+import ca.uqac.lif.mtnp.table.TransformedTable;
+
+public class PlanOptimizerTest 
+{
+	@Test
+	public void testJoinPushdown()
+	{
+		HardTable t1 = new HardTable("k", "a", "b");
+		HardTable t2 = new HardTable("k", "c", "d");
+		for (int i = 0; i < 5; i++)
+		{
+			TableEntry te = new TableEntry("k", i);
+			te.put("a", i * 10);
+			te.put("b", i * 100);
+			t1.add(te);
+			te = new TableEntry("k", i);
+			te.put("c", i + 1);
+			te.put("d", i + 2);
+			t2.add(te);
+		}
+		TransformedTable join = new TransformedTable(new Join("k"), t1, t2);
+		TransformedTable tt = new TransformedTable(new Composition(new Select("k", "a", "c"), new SortRows(), new SortRows()), join);
+		PlanNode plan = tt.getOptimizedPlan();
+		// Each input of the join only keeps the columns that are needed;
+		// the select after the join then keeps all of them, and disappears,
+		// as does the second sort
+		TransformNode sort = (TransformNode) plan;
+		assertTrue(sort.getTransformation() instanceof SortRows);
+		TransformNode join_node = (TransformNode) sort.getInputs()[0];
+		assertTrue(join_node.getTransformation() instanceof Join);
+		assertArrayEquals(new String[]{"k", "a", "c"}, join_node.getColumns());
+		String explained = plan.explain();
+		assertTrue(explained.contains("Select [k, a]"));
+		assertTrue(explained.contains("Select [k, c]"));
+		TempTable expected = tt.getDataTable();
+		tt.setOptimized(true);
+		TempTable actual = tt.getDataTable();
+		assertArrayEquals(expected.getColumnNames(), actual.getColumnNames());
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(tt.getId(), actual.getId());
+	}
+
+	@Test
+	public void testExpandPruning()
+	{
+		HardTable ht = new HardTable("A", "Y", "Z");
+		String[] markets = {"B", "C", "D"};
+		for (int i = 0; i < 3; i++)
+		{
+			for (String m : markets)
+			{
+				TableEntry te = new TableEntry("A", i);
+				te.put("Y", m);
+				te.put("Z", i + m.length());
+				ht.add(te);
+			}
+		}
+		TransformedTable tt = new TransformedTable(new Composition(new ExpandAsColumns("Y", "Z"), new RemoveColumns("C"), new RemoveColumns("D")), ht);
+		String explained = tt.getOptimizedPlan().explain();
+		assertTrue(explained.contains("RemoveColumns [C, D]"));
+		assertTrue(explained.contains("ignoring"));
+		TempTable expected = tt.getDataTable();
+		tt.setOptimized(true);
+		TempTable actual = tt.getDataTable();
+		assertEquals(2, actual.getColumnNames().length);
+		assertEquals(expected.toString(), actual.toString());
+	}
+}